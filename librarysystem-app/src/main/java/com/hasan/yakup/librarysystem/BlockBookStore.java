@@ -0,0 +1,760 @@
+/**
+ * @file BlockBookStore.java
+ * @brief BookStore for the block-framed books file format.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * @class BlockBookStore
+ * @brief Stores books in independently decodable blocks so a file can be loaded in parallel.
+ * @details The file starts with a header (magic, version, block size, codec) followed by
+ * blocks. A block header gives the number of records, the stored and the raw payload length
+ * and the lowest and highest book ID in the block; the payload holds stream-format records
+ * (ID, writeUTF title, three flag bytes), which never span blocks, and is stored through the
+ * file's BlockCodec. Writers fill a block up to the block size before starting the next one,
+ * so the headers are sync points: a load first walks the headers, then decodes the blocks on
+ * the common ForkJoinPool and merges them in file order.
+ * <p>
+ * Additions are appended as new blocks; any other change rewrites the file. An appended block
+ * only holds the additions of one group commit, so interactive additions leave small blocks,
+ * each with its own header and codec stream. Blocks filled to less than half the block size
+ * are counted, and once there is more than one and they take more than
+ * {@value #MAX_PARTIAL_SHARE} of the file, the next append rewrites the file into full blocks
+ * instead, much like LogBookStore compacts its log. A single such block, which ends every
+ * rewritten file, never causes a rewrite.
+ * A block cut off by a crash during an append is ignored on load and overwritten by the next
+ * append. Files of
+ * version 1, whose block headers only hold the count and the length of an uncompressed
+ * payload, are still read and are rewritten in the current version on the first change.
+ * </p>
+ * <p>
+ * {@link #find(int)} looks up a single book without loading the file. Only blocks whose ID
+ * range contains the ID are read, and their decoded payloads are kept in a small LRU cache
+ * of {@value #CACHE_BYTES} bytes.
+ * </p>
+ */
+public class BlockBookStore extends FileBookStore {
+    /** Magic number at the start of a block books file ("BKBL"). */
+    static final int MAGIC = 0x424B424C;
+    /** Version of the block layout. */
+    static final int VERSION = 2;
+    /** Size of the file header in bytes. */
+    static final int HEADER_SIZE = 16;
+    /** Size of a block header: record count, stored length, raw length, lowest and highest ID. */
+    static final int BLOCK_HEADER_SIZE = 20;
+    /** Size of a version 1 block header: record count and payload length. */
+    static final int BLOCK_HEADER_SIZE_V1 = 8;
+    /** Raw payload size new blocks are filled up to. */
+    static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+    /** Size of the decoded blocks kept for point lookups. */
+    static final int CACHE_BYTES = 4 << 20;
+    /** Share of the file that under-filled blocks may take before an append rewrites the file. */
+    static final double MAX_PARTIAL_SHARE = 0.125;
+
+    /** Bytes of a record besides its title: ID, title length and three flags. */
+    private static final int RECORD_OVERHEAD = 9;
+    /** Blocks decoded by one fork/join task without splitting further. */
+    private static final int BLOCKS_PER_TASK = 4;
+
+    private long validEnd;
+    private int partialBlocks;
+    private long partialBytes;
+    private int version = VERSION;
+    private BlockCodec codec = BlockCodec.configured();
+
+    private Layout lookupLayout;
+    private FileStamp lookupStamp;
+    private final BlockCache cache = new BlockCache();
+
+    /**
+     * @brief Constructor for BlockBookStore.
+     * @param path The path to the file containing book information.
+     */
+    public BlockBookStore(Path path) {
+        super(path);
+    }
+
+    @Override
+    public BookFormat getFormat() {
+        return BookFormat.BLOCK;
+    }
+
+    @Override
+    public void load(Map<Integer, Book> books) throws IOException {
+        remember();
+        validEnd = 0;
+        partialBlocks = 0;
+        partialBytes = 0;
+        version = VERSION;
+        codec = BlockCodec.configured();
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Layout layout = Layout.scan(channel);
+            validEnd = layout.end;
+            partialBlocks = layout.partialBlocks;
+            partialBytes = layout.partialBytes;
+            if (layout.end > 0) {
+                version = layout.version;
+                codec = layout.codec;
+            }
+            if (books instanceof BookTable.Loader) {
+                loadTable(channel, layout, ((BookTable.Loader) books).table());
+            } else {
+                Book[][] blocks = new Book[layout.blocks][];
+                decode(new Decoder(channel, layout, blocks, null, null, null));
+                for (Book[] block : blocks) {
+                    for (Book book : block) {
+                        putLoaded(books, book);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @brief Decodes all blocks straight into an empty BookTable.
+     * @details The record count and title bytes of each block follow from its header, so
+     * every block knows its first row and arena offset before any block is decoded, and
+     * the blocks can fill their rows in parallel without decoding titles.
+     * @param channel The open file.
+     * @param layout The blocks of the file.
+     * @param table The empty table to fill.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void loadTable(FileChannel channel, Layout layout, BookTable table) throws IOException {
+        int[] firstRows = new int[layout.blocks];
+        int[] titleOffsets = new int[layout.blocks];
+        long rows = 0;
+        long titleBytes = 0;
+        for (int block = 0; block < layout.blocks; block++) {
+            firstRows[block] = (int) rows;
+            titleOffsets[block] = (int) Math.min(Integer.MAX_VALUE, titleBytes);
+            rows += layout.counts[block];
+            titleBytes += layout.rawLengths[block] - (long) RECORD_OVERHEAD * layout.counts[block];
+        }
+        if (rows > Integer.MAX_VALUE) {
+            throw new IOException("Too many books for one catalog");
+        }
+        table.startBulk((int) rows, titleBytes);
+        decode(new Decoder(channel, layout, null, table, firstRows, titleOffsets));
+        try {
+            table.finishBulk();
+        } catch (IllegalStateException e) {
+            throw new IOException("Book IDs occur more than once in " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void decode(Decoder decoder) throws IOException {
+        try {
+            ForkJoinPool.commonPool().invoke(decoder);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @brief Looks up one book without loading the catalog.
+     * @details The block headers are read once and again whenever the file changed. Each block
+     * whose ID range contains the ID is decoded, or taken from the cache, and searched.
+     * @param id The ID of the book.
+     * @return The book, or null if the file does not contain it.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized Book find(int id) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            FileStamp stamp = FileStamp.of(path);
+            if (lookupLayout == null || !stamp.equals(lookupStamp)) {
+                lookupLayout = Layout.scan(channel);
+                lookupStamp = stamp;
+                cache.clear();
+            }
+            Scratch scratch = new Scratch();
+            for (int block = 0; block < lookupLayout.blocks; block++) {
+                if (id < lookupLayout.minIds[block] || id > lookupLayout.maxIds[block]) {
+                    continue;
+                }
+                ByteBuffer payload = cache.get(block);
+                if (payload == null) {
+                    payload = lookupLayout.read(channel, block, new Scratch());
+                    cache.put(block, payload);
+                }
+                ByteBuffer records = payload.duplicate();
+                Book found = null;
+                for (int i = 0; i < lookupLayout.counts[block]; i++) {
+                    if (records.getInt(records.position()) == id) {
+                        found = scratch.readBook(records);
+                    } else {
+                        int length = records.getShort(records.position() + 4) & 0xFFFF;
+                        records.position(records.position() + RECORD_OVERHEAD + length);
+                    }
+                }
+                if (found != null) {
+                    return found;
+                }
+            }
+            return null;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new UTFDataFormatException("Block record overruns its block");
+        }
+    }
+
+    /**
+     * @brief Gets the codec of the loaded file, or the configured codec for a new file.
+     * @return The codec.
+     */
+    BlockCodec getCodec() {
+        return codec;
+    }
+
+    @Override
+    public boolean rewrites(List<BookChange> changes) {
+        if (validEnd > 0 && version != VERSION) {
+            return true;
+        }
+        if (partialBlocks > 1 && partialBytes > validEnd * MAX_PARTIAL_SHARE) {
+            return true;
+        }
+        for (BookChange change : changes) {
+            if (change.getKind() != BookChange.Kind.ADD) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void write(List<BookChange> changes, Collection<Book> books) throws IOException {
+        if (rewrites(changes)) {
+            Path temporary = temporaryPathOf(path);
+            try (FileOutputStream output = new FileOutputStream(temporary.toFile())) {
+                BlockWriter writer = new BlockWriter(new BufferedOutputStream(output, 1 << 16), codec, true);
+                for (Book book : books) {
+                    writer.add(book);
+                }
+                writer.finish();
+                if (forceWrites) {
+                    output.getFD().sync();
+                }
+                partialBlocks = writer.partialBlocks;
+                partialBytes = writer.partialBytes;
+            }
+            replace(temporary, path, forceWrites);
+            validEnd = Files.size(path);
+            version = VERSION;
+        } else {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                if (channel.size() > validEnd) {
+                    channel.truncate(validEnd);
+                }
+                channel.position(validEnd);
+                BlockWriter writer = new BlockWriter(
+                        new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), codec, validEnd == 0);
+                for (BookChange change : changes) {
+                    writer.add(change.getBook());
+                }
+                writer.finish();
+                if (forceWrites) {
+                    channel.force(false);
+                }
+                validEnd = channel.size();
+                partialBlocks += writer.partialBlocks;
+                partialBytes += writer.partialBytes;
+            }
+        }
+        remember();
+    }
+
+    /**
+     * @brief Writes a complete block file with the configured codec from a sequence of books.
+     * @param books The books in file order.
+     * @param target The file to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void writeAll(Iterable<Book> books, Path target) throws IOException {
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(target.toFile()), 1 << 16)) {
+            BlockWriter writer = new BlockWriter(output, BlockCodec.configured(), true);
+            for (Book book : books) {
+                writer.add(book);
+            }
+            writer.finish();
+        }
+    }
+
+    /**
+     * @brief Visits every book of a block file in file order, one block in memory at a time.
+     * @param path The path of the block file.
+     * @param sink Receives the books.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void forEach(Path path, Consumer<Book> sink) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Layout layout = Layout.scan(channel);
+            Scratch scratch = new Scratch();
+            for (int block = 0; block < layout.blocks; block++) {
+                ByteBuffer payload = layout.read(channel, block, scratch);
+                for (int i = 0; i < layout.counts[block]; i++) {
+                    sink.accept(scratch.readBook(payload));
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new UTFDataFormatException("Block record overruns its block");
+        }
+    }
+
+    /**
+     * @brief Opens a cursor over the books of a block file.
+     * @details The blocks are read one at a time, so only one decoded block is in memory.
+     * @param path The path of the block file, which must exist.
+     * @return The cursor.
+     * @throws IOException If an I/O error occurs or the file is not in the block format.
+     */
+    static BookCursor cursor(Path path) throws IOException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        final Layout layout;
+        try {
+            layout = Layout.scan(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new BookCursor() {
+            private final Scratch scratch = new Scratch();
+            private ByteBuffer payload;
+            private int block = -1;
+            private int left;
+
+            @Override
+            public Book next() throws IOException {
+                while (left == 0) {
+                    if (++block >= layout.blocks) {
+                        return null;
+                    }
+                    payload = layout.read(channel, block, scratch);
+                    left = layout.counts[block];
+                }
+                left--;
+                try {
+                    return scratch.readBook(payload);
+                } catch (BufferUnderflowException e) {
+                    throw new UTFDataFormatException("Block record overruns its block");
+                }
+            }
+
+            @Override
+            public long recordCount() {
+                long count = 0;
+                for (int i = 0; i < layout.blocks; i++) {
+                    count += layout.counts[i];
+                }
+                return count;
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    /**
+     * @brief Checks whether a block is filled to less than half the block size.
+     * @param rawLength The raw payload length of the block.
+     * @return True if the block counts towards the rewrite threshold.
+     */
+    private static boolean isPartial(int rawLength) {
+        return rawLength < DEFAULT_BLOCK_SIZE / 2;
+    }
+
+    /**
+     * @brief Checks whether a file is in the block format.
+     * @param path The path of the file.
+     * @return True if the file starts with the block magic number.
+     * @throws IOException If an I/O error occurs.
+     */
+    static boolean isBlock(Path path) throws IOException {
+        if (!Files.exists(path) || Files.size(path) < HEADER_SIZE) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            SlottedBookStore.readFully(channel, magic, 0);
+            magic.flip();
+            return magic.getInt() == MAGIC;
+        }
+    }
+
+    /**
+     * @brief The positions and sizes of the complete blocks of a file.
+     */
+    private static final class Layout {
+        private int version = VERSION;
+        private BlockCodec codec = BlockCodec.NONE;
+        private long[] offsets = new long[64];
+        private int[] counts = new int[64];
+        private int[] storedLengths = new int[64];
+        private int[] rawLengths = new int[64];
+        private int[] minIds = new int[64];
+        private int[] maxIds = new int[64];
+        private int blocks;
+        private int partialBlocks;
+        private long partialBytes;
+        private long end;
+
+        /**
+         * @brief Walks the block headers of a file.
+         * @param channel The open file.
+         * @return The layout; a block that is cut off at the end of the file is left out.
+         * @throws IOException If an I/O error occurs or the file header is invalid.
+         */
+        static Layout scan(FileChannel channel) throws IOException {
+            Layout layout = new Layout();
+            long size = channel.size();
+            if (size == 0) {
+                return layout;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (size < HEADER_SIZE) {
+                throw new IOException("Block books file is too short");
+            }
+            SlottedBookStore.readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a block books file");
+            }
+            layout.version = header.getInt();
+            if (layout.version != 1 && layout.version != VERSION) {
+                throw new IOException("Unsupported block books file version " + layout.version);
+            }
+            header.getInt();
+            int codec = header.getInt();
+            if (layout.version > 1) {
+                if (codec < 0 || codec >= BlockCodec.values().length) {
+                    throw new IOException("Unknown block codec " + codec);
+                }
+                layout.codec = BlockCodec.values()[codec];
+            }
+
+            int headerSize = layout.version == 1 ? BLOCK_HEADER_SIZE_V1 : BLOCK_HEADER_SIZE;
+            long position = HEADER_SIZE;
+            ByteBuffer blockHeader = ByteBuffer.allocate(headerSize);
+            while (position + headerSize <= size) {
+                blockHeader.clear();
+                SlottedBookStore.readFully(channel, blockHeader, position);
+                blockHeader.flip();
+                int count = blockHeader.getInt();
+                int stored = blockHeader.getInt();
+                int raw = layout.version == 1 ? stored : blockHeader.getInt();
+                int minId = layout.version == 1 ? Integer.MIN_VALUE : blockHeader.getInt();
+                int maxId = layout.version == 1 ? Integer.MAX_VALUE : blockHeader.getInt();
+                if (count < 0 || stored < 0 || raw < (long) RECORD_OVERHEAD * count
+                        || position + headerSize + stored > size) {
+                    break;
+                }
+                layout.add(position + headerSize, count, stored, raw, minId, maxId);
+                if (isPartial(raw)) {
+                    layout.partialBlocks++;
+                    layout.partialBytes += headerSize + stored;
+                }
+                position += headerSize + stored;
+            }
+            layout.end = position;
+            return layout;
+        }
+
+        private void add(long offset, int count, int stored, int raw, int minId, int maxId) {
+            if (blocks == offsets.length) {
+                offsets = Arrays.copyOf(offsets, blocks * 2);
+                counts = Arrays.copyOf(counts, blocks * 2);
+                storedLengths = Arrays.copyOf(storedLengths, blocks * 2);
+                rawLengths = Arrays.copyOf(rawLengths, blocks * 2);
+                minIds = Arrays.copyOf(minIds, blocks * 2);
+                maxIds = Arrays.copyOf(maxIds, blocks * 2);
+            }
+            offsets[blocks] = offset;
+            counts[blocks] = count;
+            storedLengths[blocks] = stored;
+            rawLengths[blocks] = raw;
+            minIds[blocks] = minId;
+            maxIds[blocks] = maxId;
+            blocks++;
+        }
+
+        /**
+         * @brief Reads and decodes the payload of a block.
+         * @param channel The open file.
+         * @param block The index of the block.
+         * @param scratch The buffers to reuse.
+         * @return A buffer positioned at the first record and limited to the payload; it is
+         * overwritten by the next read with the same scratch.
+         * @throws IOException If an I/O error occurs or the block is corrupt.
+         */
+        ByteBuffer read(FileChannel channel, int block, Scratch scratch) throws IOException {
+            ByteBuffer raw = scratch.raw(rawLengths[block]);
+            if (codec == BlockCodec.NONE) {
+                SlottedBookStore.readFully(channel, raw, offsets[block]);
+            } else {
+                ByteBuffer stored = scratch.stored(storedLengths[block]);
+                SlottedBookStore.readFully(channel, stored, offsets[block]);
+                stored.flip();
+                codec.decompress(stored, raw);
+            }
+            raw.flip();
+            return raw;
+        }
+    }
+
+    /**
+     * @brief Buffers reused by one reader thread.
+     */
+    private static final class Scratch {
+        private ByteBuffer stored = ByteBuffer.allocate(0);
+        private ByteBuffer raw = ByteBuffer.allocate(0);
+        private char[] chars = new char[64];
+
+        ByteBuffer stored(int length) {
+            if (stored.capacity() < length) {
+                stored = ByteBuffer.allocate(Math.max(length, DEFAULT_BLOCK_SIZE));
+            }
+            stored.clear();
+            stored.limit(length);
+            return stored;
+        }
+
+        ByteBuffer raw(int length) {
+            if (raw.capacity() < length) {
+                raw = ByteBuffer.allocate(Math.max(length, DEFAULT_BLOCK_SIZE));
+            }
+            raw.clear();
+            raw.limit(length);
+            return raw;
+        }
+
+        /**
+         * @brief Decodes the record at the position of a payload.
+         * @param payload The payload; its position is moved past the record.
+         * @return The book.
+         * @throws UTFDataFormatException If the title is not valid modified UTF-8.
+         */
+        Book readBook(ByteBuffer payload) throws UTFDataFormatException {
+            int id = payload.getInt();
+            int length = payload.getShort() & 0xFFFF;
+            if (chars.length < length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+            }
+            String name = ModifiedUtf8.decode(payload, length, chars);
+            return new Book(id, name, payload.get() != 0, payload.get() != 0, payload.get() != 0);
+        }
+    }
+
+    /**
+     * @brief LRU cache of decoded block payloads, bounded by their total size.
+     */
+    private static final class BlockCache extends LinkedHashMap<Integer, ByteBuffer> {
+        private static final long serialVersionUID = 1L;
+
+        private long bytes;
+
+        BlockCache() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        public ByteBuffer put(Integer block, ByteBuffer payload) {
+            ByteBuffer copy = ByteBuffer.allocate(payload.remaining());
+            copy.put(payload.duplicate()).flip();
+            bytes += copy.capacity();
+            ByteBuffer previous = super.put(block, copy);
+            if (previous != null) {
+                bytes -= previous.capacity();
+            }
+            return previous;
+        }
+
+        @Override
+        public void clear() {
+            super.clear();
+            bytes = 0;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, ByteBuffer> eldest) {
+            if (bytes > CACHE_BYTES && size() > 1) {
+                bytes -= eldest.getValue().capacity();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @brief Fork/join task that decodes a range of blocks.
+     * @details Blocks are read with positional reads, which do not share a file position,
+     * so tasks can read the same channel concurrently. Each block either becomes an array of
+     * books or is written into its own rows of a BookTable.
+     */
+    private static final class Decoder extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final Layout layout;
+        private final Book[][] books;
+        private final BookTable table;
+        private final int[] firstRows;
+        private final int[] titleOffsets;
+        private final int from;
+        private final int to;
+
+        Decoder(FileChannel channel, Layout layout, Book[][] books, BookTable table, int[] firstRows,
+                int[] titleOffsets) {
+            this(channel, layout, books, table, firstRows, titleOffsets, 0, layout.blocks);
+        }
+
+        private Decoder(FileChannel channel, Layout layout, Book[][] books, BookTable table, int[] firstRows,
+                int[] titleOffsets, int from, int to) {
+            this.channel = channel;
+            this.layout = layout;
+            this.books = books;
+            this.table = table;
+            this.firstRows = firstRows;
+            this.titleOffsets = titleOffsets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BLOCKS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Decoder(channel, layout, books, table, firstRows, titleOffsets, from, middle),
+                        new Decoder(channel, layout, books, table, firstRows, titleOffsets, middle, to));
+                return;
+            }
+            try {
+                Scratch scratch = new Scratch();
+                BookTable.BulkWriter writer = table == null ? null : table.new BulkWriter();
+                for (int block = from; block < to; block++) {
+                    ByteBuffer payload = layout.read(channel, block, scratch);
+                    int count = layout.counts[block];
+                    if (writer == null) {
+                        Book[] decoded = new Book[count];
+                        for (int i = 0; i < count; i++) {
+                            decoded[i] = scratch.readBook(payload);
+                        }
+                        books[block] = decoded;
+                        continue;
+                    }
+                    ByteBuffer title = payload.duplicate();
+                    int row = firstRows[block];
+                    int titleOffset = titleOffsets[block];
+                    for (int i = 0; i < count; i++) {
+                        int id = payload.getInt();
+                        int length = payload.getShort() & 0xFFFF;
+                        int start = payload.position();
+                        payload.position(start + length);
+                        title.limit(start + length).position(start);
+                        writer.write(row++, id, title, titleOffset, payload.get() != 0, payload.get() != 0,
+                                payload.get() != 0);
+                        titleOffset += length;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new UncheckedIOException(new UTFDataFormatException("Block record overruns its block"));
+            }
+        }
+    }
+
+    /**
+     * @brief Packs records into blocks of up to DEFAULT_BLOCK_SIZE raw payload bytes.
+     */
+    private static final class BlockWriter {
+        private final OutputStream output;
+        private final BlockCodec codec;
+        private final ByteArrayOutputStream payload = new ByteArrayOutputStream(DEFAULT_BLOCK_SIZE + 1024);
+        private final DataOutputStream records = new DataOutputStream(payload);
+        private int count;
+        private int minId;
+        private int maxId;
+        private int partialBlocks;
+        private long partialBytes;
+
+        BlockWriter(OutputStream output, BlockCodec codec, boolean writeHeader) throws IOException {
+            this.output = output;
+            this.codec = codec;
+            if (writeHeader) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putInt(DEFAULT_BLOCK_SIZE).putInt(codec.ordinal());
+                output.write(header.array());
+            }
+        }
+
+        void add(Book book) throws IOException {
+            int size = RECORD_OVERHEAD + ModifiedUtf8.encodedLength(book.getName());
+            if (count > 0 && payload.size() + size > DEFAULT_BLOCK_SIZE) {
+                flushBlock();
+            }
+            StreamBookStore.writeBook(records, book);
+            minId = count == 0 ? book.getId() : Math.min(minId, book.getId());
+            maxId = count == 0 ? book.getId() : Math.max(maxId, book.getId());
+            count++;
+        }
+
+        void finish() throws IOException {
+            if (count > 0) {
+                flushBlock();
+            }
+            output.flush();
+        }
+
+        private void flushBlock() throws IOException {
+            byte[] stored = codec.compress(payloadBytes(), payload.size());
+            ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+            header.putInt(count).putInt(stored.length).putInt(payload.size()).putInt(minId).putInt(maxId);
+            output.write(header.array());
+            output.write(stored);
+            if (isPartial(payload.size())) {
+                partialBlocks++;
+                partialBytes += BLOCK_HEADER_SIZE + stored.length;
+            }
+            payload.reset();
+            count = 0;
+        }
+
+        private byte[] payloadBytes() {
+            return payload.toByteArray();
+        }
+    }
+}
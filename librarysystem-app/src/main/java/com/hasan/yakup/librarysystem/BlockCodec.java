@@ -0,0 +1,105 @@
+/**
+ * @file BlockCodec.java
+ * @brief Compression codecs for the payload of block books files.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * @enum BlockCodec
+ * @brief How the payload of each block of a block books file is stored.
+ * @details The codec of a file is recorded in its header by ordinal, so new codecs must be
+ * added at the end. New files use the codec named by the system property
+ * {@value #CODEC_PROPERTY}; existing files keep the codec they were written with.
+ */
+public enum BlockCodec {
+    /** Payloads are stored as they are. */
+    NONE {
+        @Override
+        byte[] compress(byte[] raw, int length) {
+            byte[] stored = new byte[length];
+            System.arraycopy(raw, 0, stored, 0, length);
+            return stored;
+        }
+
+        @Override
+        void decompress(ByteBuffer stored, ByteBuffer raw) {
+            raw.put(stored);
+        }
+    },
+    /** Payloads are compressed with java.util.zip at the fastest level. */
+    DEFLATE {
+        @Override
+        byte[] compress(byte[] raw, int length) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+            try {
+                deflater.setInput(raw, 0, length);
+                deflater.finish();
+                ByteArrayOutputStream stored = new ByteArrayOutputStream(length / 2 + 64);
+                byte[] chunk = new byte[8192];
+                while (!deflater.finished()) {
+                    stored.write(chunk, 0, deflater.deflate(chunk));
+                }
+                return stored.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        void decompress(ByteBuffer stored, ByteBuffer raw) throws IOException {
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(stored.array(), stored.arrayOffset() + stored.position(), stored.remaining());
+                int offset = raw.arrayOffset() + raw.position();
+                int end = raw.arrayOffset() + raw.limit();
+                while (offset < end) {
+                    int inflated = inflater.inflate(raw.array(), offset, end - offset);
+                    if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new IOException("Compressed block is shorter than its header says");
+                    }
+                    offset += inflated;
+                }
+                raw.position(offset - raw.arrayOffset());
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt compressed block", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    };
+
+    /** System property naming the codec of new block files. */
+    public static final String CODEC_PROPERTY = "librarysystem.block.codec";
+
+    /**
+     * @brief Gets the codec for new block files.
+     * @return The configured codec, or NONE if none is configured.
+     */
+    public static BlockCodec configured() {
+        String codec = System.getProperty(CODEC_PROPERTY);
+        return codec == null ? NONE : valueOf(codec.trim().toUpperCase());
+    }
+
+    /**
+     * @brief Encodes a block payload.
+     * @param raw The payload bytes.
+     * @param length The number of payload bytes.
+     * @return The bytes to store.
+     */
+    abstract byte[] compress(byte[] raw, int length);
+
+    /**
+     * @brief Decodes a stored block payload.
+     * @param stored A heap buffer with the stored bytes remaining.
+     * @param raw A heap buffer with exactly the payload length remaining; it is filled.
+     * @throws IOException If the stored bytes are corrupt.
+     */
+    abstract void decompress(ByteBuffer stored, ByteBuffer raw) throws IOException;
+}
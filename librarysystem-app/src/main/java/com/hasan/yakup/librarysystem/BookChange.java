@@ -0,0 +1,87 @@
+/**
+ * @file BookChange.java
+ * @brief A single mutation of the book catalog handed to a BookStore.
+ */
+package com.hasan.yakup.librarysystem;
+
+/**
+ * @class BookChange
+ * @brief Describes one change of the resident catalog that has to be persisted.
+ * @details The kind tells a store how much of the record changed, so that formats
+ * with addressable records can write only the affected bytes.
+ */
+public final class BookChange {
+    /**
+     * @brief The kinds of catalog changes.
+     */
+    public enum Kind {
+        /** A new book was added. */
+        ADD,
+        /** The name of a book changed. */
+        RENAME,
+        /** One of the marked, wishlist or loaned flags changed. */
+        FLAGS,
+        /** A book was deleted. */
+        DELETE
+    }
+
+    private final Kind kind;
+    private final Book book;
+
+    private BookChange(Kind kind, Book book) {
+        this.kind = kind;
+        this.book = book;
+    }
+
+    /**
+     * @brief Creates a change for an added book.
+     * @param book The added book.
+     * @return The change.
+     */
+    public static BookChange add(Book book) {
+        return new BookChange(Kind.ADD, book);
+    }
+
+    /**
+     * @brief Creates a change for a renamed book.
+     * @param book The book after the rename.
+     * @return The change.
+     */
+    public static BookChange rename(Book book) {
+        return new BookChange(Kind.RENAME, book);
+    }
+
+    /**
+     * @brief Creates a change for a book whose flags changed.
+     * @param book The book after the change.
+     * @return The change.
+     */
+    public static BookChange flags(Book book) {
+        return new BookChange(Kind.FLAGS, book);
+    }
+
+    /**
+     * @brief Creates a change for a deleted book.
+     * @param book The book as it was before the deletion.
+     * @return The change.
+     */
+    public static BookChange delete(Book book) {
+        return new BookChange(Kind.DELETE, book);
+    }
+
+    /**
+     * @brief Gets the kind of the change.
+     * @return The kind of the change.
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @brief Gets the affected book.
+     * @return The affected book.
+     */
+    public Book getBook() {
+        return book;
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * @file BookCursor.java
+ * @brief Pull-style reader over the books of a file.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * @interface BookCursor
+ * @brief Decodes the books of a file one at a time, in file order.
+ * @details A cursor reads the file as it was when the cursor was opened; books appended
+ * later are not returned. It backs a BookSpliterator, which closes it at the end.
+ */
+interface BookCursor extends Closeable {
+    /**
+     * @brief Decodes the next book.
+     * @return The book, or null at the end of the file.
+     * @throws IOException If an I/O error occurs or the file is corrupt.
+     */
+    Book next() throws IOException;
+
+    /**
+     * @brief Gets the number of books the file claims to hold.
+     * @return The record count of the file header, or -1 if the file does not record it.
+     */
+    long recordCount();
+}
@@ -0,0 +1,34 @@
+/**
+ * @file BookFlag.java
+ * @brief The boolean properties of a book.
+ */
+package com.hasan.yakup.librarysystem;
+
+/**
+ * @enum BookFlag
+ * @brief Names one of the status flags of a book, e.g. for filtered listings.
+ */
+public enum BookFlag {
+    /** The book was read. */
+    MARKED,
+    /** The book is on the wishlist. */
+    WISHLIST,
+    /** The book is loaned out. */
+    LOANED;
+
+    /**
+     * @brief Reads this flag from a book.
+     * @param book The book.
+     * @return The value of the flag.
+     */
+    public boolean of(Book book) {
+        switch (this) {
+            case MARKED:
+                return book.isMarked();
+            case WISHLIST:
+                return book.isWishlist();
+            default:
+                return book.isLoaned();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ * @file BookFormat.java
+ * @brief On-disk formats of a books file.
+ */
+package com.hasan.yakup.librarysystem;
+
+/**
+ * @enum BookFormat
+ * @brief The on-disk formats a books file can be stored in.
+ */
+public enum BookFormat {
+    /** Variable-length records written with DataOutputStream (id, writeUTF name, three booleans) after a FileHeader. */
+    STREAM,
+    /** Fixed-size slots addressable by position, with tombstoned deletes. */
+    SLOTTED,
+    /** A stream-format snapshot plus an append-only log of changes ({@code <file>.log}). */
+    LOG,
+    /** Stream-format records framed in blocks with a record count and length, decodable in parallel. */
+    BLOCK,
+    /** Delta-varint IDs, packed flags and front-coded UTF-8 titles after a FileHeader. */
+    COMPACT
+}
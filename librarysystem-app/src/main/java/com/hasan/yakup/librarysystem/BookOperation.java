@@ -0,0 +1,81 @@
+/**
+ * @file BookOperation.java
+ * @brief A status change of one book requested as part of a batch.
+ */
+package com.hasan.yakup.librarysystem;
+
+/**
+ * @class BookOperation
+ * @brief Names a book and the status change to apply to it, e.g. one book of a returned cart.
+ * @details A list of operations is applied with {@link LibraryService#applyBatch(java.util.List, String)}.
+ */
+public final class BookOperation {
+    /**
+     * @brief The status changes that can be batched.
+     */
+    public enum Kind {
+        /** Lends the book out. */
+        BORROW(BookFlag.LOANED, true),
+        /** Takes a loaned book back. */
+        RETURN(BookFlag.LOANED, false),
+        /** Marks the book as read. */
+        MARK_READ(BookFlag.MARKED, true),
+        /** Puts the book on the wishlist. */
+        WISHLIST(BookFlag.WISHLIST, true),
+        /** Takes the book off the wishlist. */
+        UNWISHLIST(BookFlag.WISHLIST, false);
+
+        private final BookFlag flag;
+        private final boolean value;
+
+        Kind(BookFlag flag, boolean value) {
+            this.flag = flag;
+            this.value = value;
+        }
+
+        /**
+         * @brief Gets the flag set by this kind of operation.
+         * @return The flag.
+         */
+        public BookFlag getFlag() {
+            return flag;
+        }
+
+        /**
+         * @brief Gets the value the flag is set to.
+         * @return The new value of the flag.
+         */
+        public boolean getValue() {
+            return value;
+        }
+    }
+
+    private final int bookId;
+    private final Kind kind;
+
+    /**
+     * @brief Constructor for BookOperation.
+     * @param bookId The ID of the book.
+     * @param kind The status change to apply.
+     */
+    public BookOperation(int bookId, Kind kind) {
+        this.bookId = bookId;
+        this.kind = kind;
+    }
+
+    /**
+     * @brief Gets the ID of the book.
+     * @return The ID of the book.
+     */
+    public int getBookId() {
+        return bookId;
+    }
+
+    /**
+     * @brief Gets the status change.
+     * @return The kind of the operation.
+     */
+    public Kind getKind() {
+        return kind;
+    }
+}
@@ -0,0 +1,860 @@
+/**
+ * @file BookRepository.java
+ * @brief Resident in-memory view of a books file.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Stream;
+
+/**
+ * @class BookRepository
+ * @brief Keeps the books of one file in memory and writes changes back to it.
+ * @details The file is decoded once into a column-oriented BookTable and every read is
+ * served from it. Mutations update the table first and are then handed to the BookStore
+ * matching the file format, so the table and the file stay in sync. Before each operation the store
+ * is asked whether its files were changed by another writer since the last load or
+ * write; only then is the catalog reloaded.
+ * <p>
+ * Reads never wait for a write. Writers hold a StampedLock on the table only while they
+ * change it in memory, never during file I/O.
+ * Lookups by ID and the size use optimistic reads that are retried under the read lock
+ * only if a writer intervened; listings, filters and counts take the read lock, which
+ * readers share. A reader that finds the writer lock taken skips the staleness check,
+ * since the resident catalog already holds the change being written.
+ * </p>
+ * <p>
+ * Every applied change is put on a lock-free queue that the next group commit drains, in
+ * the order the changes were applied to the table. Flag changes such as borrowing and
+ * returning take the shared table read lock and the book's StripedLocks stripe: the check
+ * and the change are one compare-and-set, so a book cannot be borrowed twice, and the stripe
+ * keeps other flag changes of the book out until the book is read back for
+ * {@link #apply(BookOperation)}. Both are released before the commit, and the committer
+ * writes the state of each queued book as it is when the group is formed, which always
+ * includes the latest change. Renames and deletes change the title arena and the ID index,
+ * so like additions, batches and reloads they take the writer lock; only flag changes of
+ * different books run in parallel. In {@link SyncMode#ASYNC} mode single-book changes
+ * return right away and a background thread commits; {@link #flush()} waits for it.
+ * </p>
+ * <p>
+ * Mutations may come from several threads. A mutation returns once its change is committed,
+ * but changes are committed in groups: the first waiting thread becomes the committer and
+ * writes every change queued so far in one store write (and one fsync), while changes that
+ * arrive during that write are queued for the next group. In {@link SyncMode#GROUP} mode the
+ * committer additionally waits a short window before writing.
+ * </p>
+ * <p>
+ * Several processes may work on the same file. The catalog is loaded under the shared and
+ * every group is written under the exclusive ProcessLock of the file, whose change counter
+ * tells each process with one small read whether its catalog is still current. A group
+ * that was applied to a catalog another process has changed since is not written: its
+ * callers get an IOException and the next operation works on the reloaded catalog.
+ * </p>
+ */
+public class BookRepository {
+    private final Path path;
+    private volatile BookTable books = new BookTable();
+    private BookStore store;
+    private final IdAllocator ids;
+    private final ProcessLock processLock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition committed = lock.newCondition();
+    private final StampedLock tableLock = new StampedLock();
+    private volatile boolean loaded;
+    private final long windowNanos;
+    private final Queue<Pending> pending = new ConcurrentLinkedQueue<Pending>();
+    private final StripedLocks stripes = StripedLocks.configured();
+    private final ExecutorService committer;
+    private final AtomicBoolean commitScheduled = new AtomicBoolean();
+    private IOException asyncFailure;
+    private boolean committing;
+    private boolean reload;
+    private long seenChanges;
+    private long commitCount;
+
+    /**
+     * @brief Changes that are committed together.
+     */
+    private static final class Batch {
+        private final List<BookChange> changes = new ArrayList<BookChange>();
+        private boolean done;
+        private IOException failure;
+    }
+
+    /**
+     * @brief A change that was applied to the table and waits for a group commit.
+     */
+    private static final class Pending {
+        private final int bookId;
+        private final BookChange change;
+        private Batch batch;
+
+        /**
+         * @param bookId The ID of the changed book.
+         * @param change The change, or null for a flag change whose book is read when the
+         * group is formed.
+         */
+        Pending(int bookId, BookChange change) {
+            this.bookId = bookId;
+            this.change = change;
+        }
+    }
+
+    /**
+     * @brief Constructor for BookRepository.
+     * @param pathFileBooks The path to the file containing book information.
+     */
+    public BookRepository(String pathFileBooks) {
+        this.path = Paths.get(pathFileBooks);
+        this.ids = new IdAllocator(path);
+        this.processLock = ProcessLock.of(path);
+        SyncMode mode = SyncMode.configured();
+        this.windowNanos = mode.windowNanos();
+        this.committer = !mode.commitsAsync() ? null : Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "book-committer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @brief Returns all books in file order.
+     * @return Detached copies of the books of the catalog.
+     * @throws IOException If an I/O error occurs.
+     */
+    public List<Book> findAll() throws IOException {
+        refreshForRead();
+        long stamp = tableLock.readLock();
+        try {
+            return books.list();
+        } finally {
+            tableLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @brief Returns the books as they are now, decoded on demand.
+     * @details Unlike {@link #findAll()}, no Book is built up front: the columns of the
+     * resident catalog are copied under the read lock and decoded one book at a time while
+     * the caller iterates, so a slow consumer, e.g. a network client, never holds a lock.
+     * The copy covers every change applied so far and none made later.
+     * @return Detached copies of the books of the catalog, in file order.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Collection<Book> snapshot() throws IOException {
+        refreshForRead();
+        long stamp = tableLock.readLock();
+        try {
+            return books.snapshot();
+        } finally {
+            tableLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @brief Streams all books in file order, decoding them from the file on demand.
+     * @details Unlike {@link #findAll()}, no list of the catalog is built. Queued changes are
+     * written before the file is opened, so the stream covers every change applied so far,
+     * also in the asynchronous sync mode, and none that is committed while it is read. See
+     * {@link BookStores#stream(Path)}.
+     * @return The books; the stream should be closed unless it is consumed to the end.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Stream<Book> stream() throws IOException {
+        lock.lock();
+        try {
+            drain();
+            return BookStores.stream(path);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @brief Streams the books whose flag has the given value, in file order.
+     * @details See {@link #stream()} and {@link BookStores#stream(Path, BookFlag, boolean)}.
+     * @param flag The flag to test.
+     * @param value The wanted value of the flag.
+     * @return The matching books; the stream should be closed unless it is consumed to the end.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Stream<Book> stream(BookFlag flag, boolean value) throws IOException {
+        lock.lock();
+        try {
+            drain();
+            return BookStores.stream(path, flag, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @brief Looks up a book by its ID.
+     * @param bookId The ID of the book.
+     * @return A detached copy of the book, or null if there is no book with the given ID.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Book findById(int bookId) throws IOException {
+        refreshForRead();
+        long stamp = tableLock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                Book book = books.get(bookId);
+                if (tableLock.validate(stamp)) {
+                    return book;
+                }
+            } catch (RuntimeException e) {
+                // The table changed under the read; the validation below fails as well.
+            }
+        }
+        stamp = tableLock.readLock();
+        try {
+            return books.get(bookId);
+        } finally {
+            tableLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @brief Returns the books whose flag has the given value, in file order.
+     * @details Only the flag bitsets are scanned; titles are decoded for the matches alone.
+     * @param flag The flag to test.
+     * @param value The wanted value of the flag.
+     * @return Detached copies of the matching books.
+     * @throws IOException If an I/O error occurs.
+     */
+    public List<Book> findByFlag(BookFlag flag, boolean value) throws IOException {
+        refreshForRead();
+        long stamp = tableLock.readLock();
+        try {
+            return books.select(flag, value);
+        } finally {
+            tableLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @brief Counts the books whose flag has the given value.
+     * @param flag The flag to test.
+     * @param value The wanted value of the flag.
+     * @return The number of matching books.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int count(BookFlag flag, boolean value) throws IOException {
+        refreshForRead();
+        long stamp = tableLock.readLock();
+        try {
+            return books.count(flag, value);
+        } finally {
+            tableLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @brief Returns the number of books in the catalog.
+     * @return The number of books.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int size() throws IOException {
+        refreshForRead();
+        long stamp = tableLock.tryOptimisticRead();
+        int size = books.size();
+        if (tableLock.validate(stamp)) {
+            return size;
+        }
+        stamp = tableLock.readLock();
+        try {
+            return books.size();
+        } finally {
+            tableLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @brief Allocates the ID for a new book.
+     * @details IDs grow monotonically and are never reused, even after the book holding an
+     * ID was deleted. The catalog is not scanned.
+     * @return The new ID.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int nextId() throws IOException {
+        lock.lock();
+        try {
+            refresh();
+            return ids.allocate();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @brief Adds a book and appends it to the file.
+     * @param book The book to be added.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void add(Book book) throws IOException {
+        lock.lock();
+        try {
+            refresh();
+            Book added = copyOf(book);
+            Pending change;
+            long stamp = tableLock.writeLock();
+            try {
+                books.put(added);
+                change = queue(added.getId(), BookChange.add(added));
+            } finally {
+                tableLock.unlockWrite(stamp);
+            }
+            ids.observe(added.getId());
+            awaitCommitted(change);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @brief Deletes a book.
+     * @param bookId The ID of the book to be deleted.
+     * @return True if the book existed and was deleted, false otherwise.
+     * @throws IOException If an I/O error occurs.
+     */
+    public boolean delete(int bookId) throws IOException {
+        Pending change;
+        refreshForRead();
+        long stamp = tableLock.writeLock();
+        try {
+            Book book = books.get(bookId);
+            if (book == null) {
+                return false;
+            }
+            books.remove(bookId);
+            change = queue(bookId, BookChange.delete(book));
+        } finally {
+            tableLock.unlockWrite(stamp);
+        }
+        commitChange(change);
+        return true;
+    }
+
+    /**
+     * @brief Renames a book.
+     * @param bookId The ID of the book to be renamed.
+     * @param newBookName The new name for the book.
+     * @return True if the book exists, false otherwise.
+     * @throws IOException If an I/O error occurs.
+     */
+    public boolean rename(int bookId, String newBookName) throws IOException {
+        return retitle(bookId, newBookName).isSuccess();
+    }
+
+    /**
+     * @brief Renames a book and returns it as renamed.
+     * @param bookId The ID of the book to be renamed.
+     * @param newBookName The new name for the book.
+     * @return OK with the book after the rename, or NOT_FOUND.
+     * @throws IOException If an I/O error occurs.
+     */
+    public OperationResult retitle(int bookId, String newBookName) throws IOException {
+        Pending change;
+        Book renamed;
+        refreshForRead();
+        long stamp = tableLock.writeLock();
+        try {
+            if (!books.rename(bookId, newBookName)) {
+                return OperationResult.of(OperationResult.Status.NOT_FOUND);
+            }
+            renamed = books.get(bookId);
+            change = queue(bookId, BookChange.rename(renamed));
+        } finally {
+            tableLock.unlockWrite(stamp);
+        }
+        commitChange(change);
+        return OperationResult.ok(renamed);
+    }
+
+    /**
+     * @brief Changes the marked (read) status of a book.
+     * @param bookId The ID of the book.
+     * @param marked The new marked status.
+     * @return True if the book exists and its status changed, false otherwise.
+     * @throws IOException If an I/O error occurs.
+     */
+    public boolean setMarked(int bookId, boolean marked) throws IOException {
+        return changeFlag(bookId, BookFlag.MARKED, marked).isSuccess();
+    }
+
+    /**
+     * @brief Changes the wishlist status of a book.
+     * @param bookId The ID of the book.
+     * @param wishlist The new wishlist status.
+     * @return True if the book exists and its status changed, false otherwise.
+     * @throws IOException If an I/O error occurs.
+     */
+    public boolean setWishlist(int bookId, boolean wishlist) throws IOException {
+        return changeFlag(bookId, BookFlag.WISHLIST, wishlist).isSuccess();
+    }
+
+    /**
+     * @brief Changes the loaned status of a book.
+     * @param bookId The ID of the book.
+     * @param loaned The new loaned status.
+     * @return True if the book exists and its status changed, false otherwise.
+     * @throws IOException If an I/O error occurs.
+     */
+    public boolean setLoaned(int bookId, boolean loaned) throws IOException {
+        return changeFlag(bookId, BookFlag.LOANED, loaned).isSuccess();
+    }
+
+    /**
+     * @brief Applies the status change of one book and returns the book as changed.
+     * @details The returned book shows this change and no later flag change of the book.
+     * @param operation The operation to apply.
+     * @return OK with the book after the change, NOT_FOUND, or UNCHANGED if the book already
+     * had the requested status.
+     * @throws IOException If an I/O error occurs.
+     */
+    public OperationResult apply(BookOperation operation) throws IOException {
+        BookOperation.Kind kind = operation.getKind();
+        return changeFlag(operation.getBookId(), kind.getFlag(), kind.getValue());
+    }
+
+    /**
+     * @brief Applies a list of status changes and persists them with one store write.
+     * @details The operations are validated and applied in order against the catalog as it
+     * is when the call starts, so a later operation sees the effect of an earlier one on the
+     * same book. All changes are then queued as one group, which costs one rewrite of a
+     * stream file instead of one per operation. If that write fails, none of the changes is
+     * kept and the catalog is reloaded on the next operation.
+     * @param operations The operations to apply.
+     * @return One result per operation: OK with the book after the change, NOT_FOUND, or
+     * UNCHANGED if the book already had the requested status.
+     * @throws IOException If an I/O error occurs.
+     */
+    public List<OperationResult> apply(List<BookOperation> operations) throws IOException {
+        lock.lock();
+        try {
+            refresh();
+            List<OperationResult> results = new ArrayList<OperationResult>(operations.size());
+            List<Pending> changes = new ArrayList<Pending>();
+            for (BookOperation operation : operations) {
+                int bookId = operation.getBookId();
+                BookOperation.Kind kind = operation.getKind();
+                if (!books.contains(bookId)) {
+                    results.add(OperationResult.of(OperationResult.Status.NOT_FOUND));
+                } else if (!set(bookId, kind.getFlag(), kind.getValue())) {
+                    results.add(OperationResult.of(OperationResult.Status.UNCHANGED));
+                } else {
+                    changes.add(queue(bookId, null));
+                    results.add(OperationResult.ok(books.get(bookId)));
+                }
+            }
+            for (Pending change : changes) {
+                awaitCommitted(change);
+            }
+            return results;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @brief Waits until every change made so far is committed.
+     * @details Only needed in {@link SyncMode#ASYNC} mode; in the other modes a change is
+     * committed before its method returns.
+     * @throws IOException If a background commit failed since the last flush.
+     */
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            drain();
+            IOException failure = asyncFailure;
+            asyncFailure = null;
+            if (failure != null) {
+                throw new IOException("Could not commit changes to " + path, failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @brief Gets the number of store writes made by this repository.
+     * @return The number of committed groups.
+     */
+    long getCommitCount() {
+        lock.lock();
+        try {
+            return commitCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @brief Gets the version of the file.
+     * @details The version is the change counter of the file's ProcessLock, which every
+     * group committed by any process increments, so it costs one 16-byte read and no
+     * decoding. A stream opened after this call shows at least the changes the version
+     * counts; a listing kept together with its version is therefore current as long as the
+     * version stays the same. Changes that are applied but not committed yet, e.g. in
+     * {@link SyncMode#ASYNC} mode, are written first, so the version counts every change
+     * applied to the catalog before the call.
+     * @return The number of groups committed to the file so far.
+     * @throws IOException If an I/O error occurs.
+     */
+    public long getVersion() throws IOException {
+        lock.lock();
+        try {
+            drain();
+        } finally {
+            lock.unlock();
+        }
+        return processLock.changeCount();
+    }
+
+    /**
+     * @brief Reloads the catalog if the file changed since it was last seen.
+     * @details While changes are queued or being written, the file is expected to change
+     * and the resident catalog is kept. A change by another process shows in the change
+     * counter of the ProcessLock, a change by a program that does not lock the file in the
+     * store's file stamps. The file is loaded under the shared lock.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void refresh() throws IOException {
+        if (store != null && (committing || !pending.isEmpty()
+                || !reload && processLock.changeCount() == seenChanges && !store.isStale())) {
+            return;
+        }
+
+        if (store != null) {
+            store.close();
+        }
+        reload = false;
+        BookTable table = new BookTable();
+        long changes;
+        try (ProcessLock.Hold hold = processLock.shared()) {
+            store = BookStores.open(path);
+            store.load(table.asMap());
+            changes = processLock.changeCount();
+        }
+        long stamp = tableLock.writeLock();
+        try {
+            if (!pending.isEmpty()) {
+                // A book changed while the file was read; keep that change and reload later.
+                reload = true;
+                return;
+            }
+            books = table;
+        } finally {
+            tableLock.unlockWrite(stamp);
+        }
+        seenChanges = changes;
+        loaded = true;
+        ids.reset(table.maxId(), Files.exists(path) || LogBookStore.hasLog(path));
+    }
+
+    /**
+     * @brief Loads the catalog on first use and reloads it if the file changed, without
+     * waiting for writers.
+     * @details If the lock is taken, a change of this repository is being applied or
+     * committed, so the resident catalog is already newer than the file and the check is
+     * skipped. Only the first load is waited for.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void refreshForRead() throws IOException {
+        if (!lock.tryLock()) {
+            if (loaded) {
+                return;
+            }
+            lock.lock();
+        }
+        try {
+            refresh();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @brief Changes a flag without the writer lock and queues the book for a commit.
+     * @details The book's stripe is held from the change until the book is read back, and
+     * released before the commit.
+     * @param bookId The ID of the book.
+     * @param flag The flag to change.
+     * @param value The new value.
+     * @return OK with the book after the change, NOT_FOUND, or UNCHANGED.
+     * @throws IOException If an I/O error occurs or the change could not be committed.
+     */
+    private OperationResult changeFlag(int bookId, BookFlag flag, boolean value) throws IOException {
+        refreshForRead();
+        Pending change;
+        Book changed;
+        Lock stripe = stripes.of(bookId);
+        stripe.lock();
+        try {
+            long stamp = tableLock.readLock();
+            try {
+                if (!books.contains(bookId)) {
+                    return OperationResult.of(OperationResult.Status.NOT_FOUND);
+                }
+                if (!books.set(bookId, flag, value)) {
+                    return OperationResult.of(OperationResult.Status.UNCHANGED);
+                }
+                changed = books.get(bookId);
+                change = queue(bookId, null);
+            } finally {
+                tableLock.unlockRead(stamp);
+            }
+        } finally {
+            stripe.unlock();
+        }
+        commitChange(change);
+        return OperationResult.ok(changed);
+    }
+
+    /**
+     * @brief Puts an applied change on the commit queue.
+     * @details Must be called under the table lock that covered the change, so the queue
+     * holds the changes of a book in the order they were applied.
+     * @param bookId The ID of the changed book.
+     * @param change The change, or null for a flag change.
+     * @return The queued entry.
+     */
+    private Pending queue(int bookId, BookChange change) {
+        Pending entry = new Pending(bookId, change);
+        pending.add(entry);
+        return entry;
+    }
+
+    /**
+     * @brief Waits for a queued single-book change, or hands it to the background committer.
+     * @param change The queued change.
+     * @throws IOException If the group containing the change could not be written.
+     */
+    private void commitChange(Pending change) throws IOException {
+        if (committer != null) {
+            scheduleCommit();
+            return;
+        }
+        lock.lock();
+        try {
+            awaitCommitted(change);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @brief Makes sure the background committer will drain the queued flag changes.
+     */
+    private void scheduleCommit() {
+        if (!commitScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        committer.execute(new Runnable() {
+            @Override
+            public void run() {
+                commitScheduled.set(false);
+                lock.lock();
+                try {
+                    while (committing) {
+                        committed.awaitUninterruptibly();
+                    }
+                    if (!pending.isEmpty()) {
+                        commit();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * @brief Changes a flag in the table under the table write lock.
+     * @details Must be called with the lock held.
+     * @param bookId The ID of the book.
+     * @param flag The flag to change.
+     * @param value The new value.
+     * @return True if the book exists and the flag changed.
+     */
+    private boolean set(int bookId, BookFlag flag, boolean value) {
+        long stamp = tableLock.writeLock();
+        try {
+            return books.set(bookId, flag, value);
+        } finally {
+            tableLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @brief Waits until a queued change is committed, committing it if nobody else does.
+     * @details Must be called with the lock held, exactly once, since the committer releases
+     * it while the store writes. Changes queued while the lock is held go into the same group.
+     * @param change The queued change.
+     * @throws IOException If the group containing the change could not be written.
+     */
+    private void awaitCommitted(Pending change) throws IOException {
+        while (change.batch == null || !change.batch.done) {
+            if (committing) {
+                committed.awaitUninterruptibly();
+            } else {
+                commit();
+            }
+        }
+        if (change.batch.failure != null) {
+            throw new IOException("Could not commit changes to " + path, change.batch.failure);
+        }
+    }
+
+    /**
+     * @brief Writes the queued changes as one group.
+     * @details Must be called with the lock held. The lock is released while the store
+     * writes, so other threads can keep applying and queueing changes.
+     */
+    private void commit() {
+        committing = true;
+        awaitWindow();
+        Batch current = new Batch();
+        BookStore target = store;
+        long seen = seenChanges;
+        Collection<Book> catalog;
+        long stamp = tableLock.readLock();
+        try {
+            Pending change;
+            while ((change = pending.poll()) != null) {
+                if (change.change != null) {
+                    current.changes.add(change.change);
+                } else {
+                    Book book = books.get(change.bookId);
+                    if (book != null) {
+                        current.changes.add(BookChange.flags(book));
+                    }
+                }
+                change.batch = current;
+            }
+            catalog = books.values();
+            if (!current.changes.isEmpty() && target.rewrites(current.changes)) {
+                catalog = books.copy().views();
+            }
+        } finally {
+            tableLock.unlockRead(stamp);
+        }
+        if (current.changes.isEmpty()) {
+            current.done = true;
+            committing = false;
+            committed.signalAll();
+            return;
+        }
+
+        long changes = seen;
+        lock.unlock();
+        try {
+            changes = write(target, current.changes, catalog, seen);
+        } catch (IOException e) {
+            current.failure = e;
+        } finally {
+            lock.lock();
+        }
+        seenChanges = changes;
+
+        if (current.failure != null) {
+            reload = true;
+            if (committer != null) {
+                asyncFailure = current.failure;
+            }
+        }
+        commitCount++;
+        current.done = true;
+        committing = false;
+        committed.signalAll();
+    }
+
+    /**
+     * @brief Writes a group to the store under the exclusive ProcessLock.
+     * @details The group was applied to the catalog as loaded when the change counter was
+     * {@code seen}. If another process changed the file since, writing the group would undo
+     * that change (or, for stores that write in place, write to the wrong places), so the
+     * group is rejected instead and the catalog is reloaded on the next operation.
+     * @param target The store.
+     * @param changes The changes of the group.
+     * @param catalog The catalog with the changes applied.
+     * @param seen The change counter of the loaded catalog.
+     * @return The change counter after the write.
+     * @throws IOException If the file was changed by another process or an I/O error occurs.
+     */
+    private long write(BookStore target, List<BookChange> changes, Collection<Book> catalog, long seen)
+            throws IOException {
+        try (ProcessLock.Hold hold = processLock.exclusive()) {
+            if (processLock.changeCount() != seen) {
+                throw new IOException(path + " was changed by another process; try again");
+            }
+            try {
+                target.write(changes, catalog);
+            } catch (IOException e) {
+                // A failed write may have changed the file all the same.
+                processLock.recordChange();
+                throw e;
+            }
+            return processLock.recordChange();
+        }
+    }
+
+    /**
+     * @brief Writes every queued change, waiting for a group that is being written.
+     * @details Must be called with the lock held. A failed group is kept for
+     * {@link #flush()}, as for any asynchronous commit.
+     */
+    private void drain() {
+        while (committing || !pending.isEmpty()) {
+            if (committing) {
+                committed.awaitUninterruptibly();
+            } else {
+                commit();
+            }
+        }
+    }
+
+    /**
+     * @brief Gives other threads the group commit window to queue their changes.
+     */
+    private void awaitWindow() {
+        long remaining = windowNanos;
+        try {
+            while (remaining > 0) {
+                remaining = committed.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @brief Creates a detached copy of a book.
+     * @param book The book to be copied.
+     * @return The copy.
+     */
+    static Book copyOf(Book book) {
+        return new Book(book.getId(), book.getName(), book.isMarked(), book.isWishlist(), book.isLoaned());
+    }
+}
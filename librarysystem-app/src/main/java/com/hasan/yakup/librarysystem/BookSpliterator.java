@@ -0,0 +1,129 @@
+/**
+ * @file BookSpliterator.java
+ * @brief Spliterator that decodes the books of a file on demand.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * @class BookSpliterator
+ * @brief Traverses a BookCursor, decoding one book per step.
+ * @details Only the current book is held, so a sequential traversal needs constant memory
+ * and stops reading as soon as the stream is short-circuited. Records of a file can only be
+ * found by decoding their predecessors, so {@link #trySplit()} decodes a batch from the
+ * front into an array and hands that out; batches grow by {@value #BATCH_UNIT} books per
+ * split, as in the iterator spliterators of the JDK, which keeps parallel streams busy
+ * without buffering the file.
+ * <p>
+ * The spliterator is ORDERED and NONNULL. The record count of a FileHeader is only a hint,
+ * so it is reported as the size estimate but not as SIZED; split-off batches are SIZED and
+ * SUBSIZED. I/O errors are thrown as UncheckedIOException. The cursor is closed when the
+ * end is reached and by {@link #close()}.
+ * </p>
+ */
+final class BookSpliterator implements Spliterator<Book> {
+    /** Growth of the batches handed out by trySplit. */
+    static final int BATCH_UNIT = 1 << 10;
+    /** Largest batch handed out by trySplit. */
+    static final int MAX_BATCH = 1 << 25;
+
+    private final BookCursor cursor;
+    private long estimate;
+    private int batch;
+    private boolean done;
+
+    /**
+     * @brief Constructor for BookSpliterator.
+     * @param cursor The cursor to traverse; it is owned by the spliterator.
+     */
+    BookSpliterator(BookCursor cursor) {
+        this.cursor = cursor;
+        long count = cursor.recordCount();
+        this.estimate = count < 0 ? Long.MAX_VALUE : count;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Book> action) {
+        Book book = read();
+        if (book == null) {
+            return false;
+        }
+        action.accept(book);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Book> action) {
+        Book book;
+        while ((book = read()) != null) {
+            action.accept(book);
+        }
+    }
+
+    @Override
+    public Spliterator<Book> trySplit() {
+        if (done || estimate <= 1) {
+            return null;
+        }
+        int size = (int) Math.min(Math.min(batch + BATCH_UNIT, MAX_BATCH), estimate);
+        Book[] books = new Book[size];
+        int count = 0;
+        Book book;
+        while (count < size && (book = read()) != null) {
+            books[count++] = book;
+        }
+        if (count == 0) {
+            return null;
+        }
+        batch = count;
+        return Spliterators.spliterator(books, 0, count, ORDERED | NONNULL | IMMUTABLE);
+    }
+
+    @Override
+    public long estimateSize() {
+        return done ? 0 : estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+    /**
+     * @brief Closes the cursor if the traversal was not completed.
+     */
+    void close() {
+        if (!done) {
+            done = true;
+            try {
+                cursor.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private Book read() {
+        if (done) {
+            return null;
+        }
+        Book book;
+        try {
+            book = cursor.next();
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        }
+        if (book == null) {
+            close();
+        } else if (estimate != Long.MAX_VALUE && estimate > 1) {
+            estimate--;
+        }
+        return book;
+    }
+}
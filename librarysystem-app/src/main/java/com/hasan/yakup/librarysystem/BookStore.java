@@ -0,0 +1,69 @@
+/**
+ * @file BookStore.java
+ * @brief Persistence backend of a BookRepository.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @interface BookStore
+ * @brief Reads and writes the books of one file in a specific on-disk format.
+ * @details A store is driven by a BookRepository: it loads the catalog once and is then
+ * told about every change. Each store decides how to persist a change; formats without
+ * addressable records may rewrite the whole file from the catalog they are given.
+ */
+public interface BookStore extends Closeable {
+    /**
+     * @brief Gets the format written by this store.
+     * @return The format of the file.
+     */
+    BookFormat getFormat();
+
+    /**
+     * @brief Loads all books of the file.
+     * @param books The map to fill, keyed by book ID, in file order. Its {@code get} may return
+     * copies, so a book that is changed after it was put has to be put again.
+     * @throws IOException If an I/O error occurs.
+     */
+    void load(Map<Integer, Book> books) throws IOException;
+
+    /**
+     * @brief Persists changes that have already been applied to the catalog.
+     * @param changes The changes in the order they were applied.
+     * @param books The whole catalog after the changes. The books may be flyweights that change
+     * while iterating, so implementations must not keep references to them.
+     * @throws IOException If an I/O error occurs.
+     */
+    void write(List<BookChange> changes, Collection<Book> books) throws IOException;
+
+    /**
+     * @brief Checks whether writing the changes reads the whole catalog.
+     * @details The repository hands such stores a snapshot of the catalog, so it can
+     * keep accepting changes while the write is in progress.
+     * @param changes The changes to be written.
+     * @return True if {@link #write} iterates the catalog for these changes.
+     */
+    default boolean rewrites(List<BookChange> changes) {
+        return false;
+    }
+
+    /**
+     * @brief Checks whether the files of this store were changed by another writer.
+     * @return True if the catalog has to be loaded again.
+     * @throws IOException If an I/O error occurs.
+     */
+    boolean isStale() throws IOException;
+
+    /**
+     * @brief Releases resources held by the store.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,403 @@
+/**
+ * @file BookStores.java
+ * @brief Factory and conversion helpers for BookStore implementations.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * @class BookStores
+ * @brief Opens the right BookStore for a books file and converts files between formats.
+ * @details Existing files are recognised by their content. New files are created in the
+ * format named by the {@code librarysystem.books.format} system property, or in the
+ * stream format when it is not set.
+ */
+public final class BookStores {
+    /** System property selecting the format of newly created books files. */
+    public static final String FORMAT_PROPERTY = "librarysystem.books.format";
+
+    private BookStores() {
+    }
+
+    /**
+     * @brief Opens a store for a books file.
+     * @param path The path to the file containing book information.
+     * @return A store matching the format of the file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static BookStore open(Path path) throws IOException {
+        return create(path, detect(path));
+    }
+
+    /**
+     * @brief Detects the format of a books file.
+     * @param path The path to the file containing book information.
+     * @return The format of the file, or the default format if the file is missing or empty.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static BookFormat detect(Path path) throws IOException {
+        if (LogBookStore.hasLog(path)) {
+            return BookFormat.LOG;
+        }
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            return defaultFormat();
+        }
+        if (SlottedBookStore.isSlotted(path)) {
+            return BookFormat.SLOTTED;
+        }
+        if (CompactBookStore.isCompact(path)) {
+            return BookFormat.COMPACT;
+        }
+        return BlockBookStore.isBlock(path) ? BookFormat.BLOCK : BookFormat.STREAM;
+    }
+
+    /**
+     * @brief Gets the format used for new books files.
+     * @return The configured format, or STREAM if none is configured.
+     */
+    public static BookFormat defaultFormat() {
+        String format = System.getProperty(FORMAT_PROPERTY);
+        return format == null ? BookFormat.STREAM : BookFormat.valueOf(format.trim().toUpperCase());
+    }
+
+    /**
+     * @brief Creates a store of the given format.
+     * @param path The path to the file containing book information.
+     * @param format The format of the file.
+     * @return The store.
+     */
+    public static BookStore create(Path path, BookFormat format) {
+        switch (format) {
+            case SLOTTED:
+                return new SlottedBookStore(path);
+            case LOG:
+                return new LogBookStore(path);
+            case BLOCK:
+                return new BlockBookStore(path);
+            case COMPACT:
+                return new CompactBookStore(path);
+            case STREAM:
+            default:
+                return new StreamBookStore(path);
+        }
+    }
+
+    /**
+     * @brief Converts a books file to another format in place.
+     * @details The new file is written next to the old one and then moved over it, so the
+     * original stays intact until the conversion is complete. Stream files are converted
+     * record by record without loading the catalog into memory. Converting to the log
+     * format keeps a stream file as the snapshot and starts an empty log next to it. The
+     * conversion holds the exclusive ProcessLock of the file and counts as one change, so
+     * repositories of any process wait for it and reload afterwards.
+     * @param pathFileBooks The path to the file containing book information.
+     * @param target The format to convert to.
+     * @return True if the file was converted, false if it already had the target format.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static boolean convert(String pathFileBooks, BookFormat target) throws IOException {
+        Path path = Paths.get(pathFileBooks);
+        ProcessLock lock = ProcessLock.of(path);
+        try (ProcessLock.Hold hold = lock.exclusive()) {
+            if (!convertLocked(path, target)) {
+                return false;
+            }
+            lock.recordChange();
+            return true;
+        }
+    }
+
+    /**
+     * @brief Converts a books file while the exclusive lock is held.
+     * @param path The path to the file containing book information.
+     * @param target The format to convert to.
+     * @return True if the file was converted, false if it already had the target format.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static boolean convertLocked(Path path, BookFormat target) throws IOException {
+        BookFormat source = detect(path);
+        if (!Files.exists(path) && !LogBookStore.hasLog(path) || source == target) {
+            return false;
+        }
+        if (target == BookFormat.LOG) {
+            if (source != BookFormat.STREAM) {
+                convertLocked(path, BookFormat.STREAM);
+            }
+            LogBookStore.createLog(path);
+            return true;
+        }
+
+        Path temporary = FileBookStore.temporaryPathOf(path);
+        Iterable<Book> books = source == BookFormat.STREAM ? streamRecords(path) : loadAll(path, source);
+        try {
+            if (target == BookFormat.SLOTTED) {
+                SlottedBookStore.writeAll(books, temporary);
+            } else if (target == BookFormat.BLOCK) {
+                BlockBookStore.writeAll(books, temporary);
+            } else if (target == BookFormat.COMPACT) {
+                CompactBookStore.writeAll(books, temporary);
+            } else {
+                StreamBookStore.writeAll(books, temporary);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        Path heap = SlottedBookStore.heapPathOf(path);
+        Path temporaryHeap = SlottedBookStore.heapPathOf(temporary);
+        boolean force = SyncMode.configured().forcesWrites();
+        if (force) {
+            FileBookStore.force(temporary);
+            if (Files.exists(temporaryHeap)) {
+                FileBookStore.force(temporaryHeap);
+            }
+        }
+        FileBookStore.replace(temporary, path, force);
+        if (Files.exists(temporaryHeap)) {
+            FileBookStore.replace(temporaryHeap, heap, force);
+        } else {
+            Files.deleteIfExists(heap);
+        }
+        if (source == BookFormat.LOG) {
+            LogBookStore.deleteLogs(path);
+        }
+        return true;
+    }
+
+    /**
+     * @brief Visits every book of a books file in file order without loading the catalog.
+     * @param path The path to the file containing book information.
+     * @param sink Receives the books; it may throw UncheckedIOException.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void forEach(Path path, Consumer<Book> sink) throws IOException {
+        try {
+            switch (detect(path)) {
+                case SLOTTED:
+                    SlottedBookStore.forEach(path, sink);
+                    break;
+                case LOG:
+                    LogBookStore.forEach(path, sink);
+                    break;
+                case BLOCK:
+                    BlockBookStore.forEach(path, sink);
+                    break;
+                case COMPACT:
+                    CompactBookStore.forEach(path, sink);
+                    break;
+                default:
+                    if (Files.exists(path)) {
+                        for (Book book : streamRecords(path)) {
+                            sink.accept(book);
+                        }
+                    }
+                    break;
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @brief Visits the books of a books file whose flag has the given value.
+     * @details For stream files the titles of the other books are skipped without being
+     * decoded; the other formats are filtered after reading.
+     * @param path The path to the file containing book information.
+     * @param flag The flag to test.
+     * @param value The wanted value of the flag.
+     * @param sink Receives the matching books; it may throw UncheckedIOException.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void forEach(Path path, final BookFlag flag, final boolean value, final Consumer<Book> sink)
+            throws IOException {
+        if (detect(path) != BookFormat.STREAM) {
+            forEach(path, new Consumer<Book>() {
+                @Override
+                public void accept(Book book) {
+                    if (flag.of(book) == value) {
+                        sink.accept(book);
+                    }
+                }
+            });
+            return;
+        }
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (StreamRecordReader reader = StreamRecordReader.open(path)) {
+            Book book;
+            while ((book = reader.nextWhole(flag, value)) != null) {
+                sink.accept(book);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @brief Streams the books of a books file in file order without loading the catalog.
+     * @details Stream, compact and block files are decoded on demand through a BookSpliterator,
+     * so a sequential pipeline holds one book at a time and a short-circuiting operation stops
+     * reading; {@code parallel()} splits off batches of decoded books. Slotted and log files
+     * have no sequential record order to read from and are loaded into memory first. The
+     * stream reads the file as it was when this method returned. It should be closed, for
+     * example with try-with-resources, unless it is consumed to the end. I/O errors during
+     * the traversal are thrown as UncheckedIOException.
+     * @param path The path to the file containing book information.
+     * @return The books.
+     * @throws IOException If the file cannot be opened.
+     */
+    public static Stream<Book> stream(Path path) throws IOException {
+        BookFormat format = detect(path);
+        if (format == BookFormat.SLOTTED || format == BookFormat.LOG) {
+            return loadAll(path, format).stream();
+        }
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            return Stream.empty();
+        }
+        if (format == BookFormat.COMPACT || format == BookFormat.BLOCK) {
+            return stream(format == BookFormat.COMPACT ? CompactBookStore.cursor(path) : BlockBookStore.cursor(path));
+        }
+        final StreamRecordReader reader = StreamRecordReader.open(path);
+        return stream(new BookCursor() {
+            @Override
+            public Book next() throws IOException {
+                return reader.nextWhole();
+            }
+
+            @Override
+            public long recordCount() {
+                return reader.recordCount();
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        });
+    }
+
+    /**
+     * @brief Streams the books of a books file whose flag has the given value.
+     * @details For stream files the titles of the other books are skipped without being
+     * decoded; the other formats are filtered after decoding. See {@link #stream(Path)}.
+     * @param path The path to the file containing book information.
+     * @param flag The flag to test.
+     * @param value The wanted value of the flag.
+     * @return The matching books.
+     * @throws IOException If the file cannot be opened.
+     */
+    public static Stream<Book> stream(Path path, final BookFlag flag, final boolean value) throws IOException {
+        if (detect(path) != BookFormat.STREAM || !Files.exists(path) || Files.size(path) == 0) {
+            return stream(path).filter(new Predicate<Book>() {
+                @Override
+                public boolean test(Book book) {
+                    return flag.of(book) == value;
+                }
+            });
+        }
+        final StreamRecordReader reader = StreamRecordReader.open(path);
+        return stream(new BookCursor() {
+            @Override
+            public Book next() throws IOException {
+                return reader.nextWhole(flag, value);
+            }
+
+            @Override
+            public long recordCount() {
+                return -1;
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        });
+    }
+
+    private static Stream<Book> stream(BookCursor cursor) {
+        final BookSpliterator books = new BookSpliterator(cursor);
+        return StreamSupport.stream(books, false).onClose(new Runnable() {
+            @Override
+            public void run() {
+                books.close();
+            }
+        });
+    }
+
+    /**
+     * @brief Loads the whole catalog of a books file.
+     * @param path The path to the file containing book information.
+     * @param format The format of the file.
+     * @return The books in file order.
+     * @throws IOException If an I/O error occurs.
+     */
+    static Collection<Book> loadAll(Path path, BookFormat format) throws IOException {
+        Map<Integer, Book> books = new LinkedHashMap<Integer, Book>();
+        try (BookStore store = create(path, format)) {
+            store.load(books);
+        }
+        return books.values();
+    }
+
+    /**
+     * @brief Iterates over the records of a stream books file one at a time.
+     * @param path The path of the stream file.
+     * @return A single-use iterable over the records.
+     */
+    static Iterable<Book> streamRecords(final Path path) {
+        return new Iterable<Book>() {
+            @Override
+            public Iterator<Book> iterator() {
+                return new Iterator<Book>() {
+                    private StreamRecordReader reader;
+                    private Book next;
+                    private boolean done;
+
+                    @Override
+                    public boolean hasNext() {
+                        try {
+                            if (reader == null) {
+                                reader = StreamRecordReader.open(path);
+                            }
+                            if (next == null && !done) {
+                                next = reader.nextWhole();
+                                if (next == null) {
+                                    done = true;
+                                    reader.close();
+                                }
+                            }
+                            return next != null;
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+
+                    @Override
+                    public Book next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Book book = next;
+                        next = null;
+                        return book;
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,992 @@
+/**
+ * @file BookTable.java
+ * @brief Column-oriented in-memory catalog.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.UTFDataFormatException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.Set;
+
+/**
+ * @class BookTable
+ * @brief Keeps a catalog as parallel arrays instead of one object per book.
+ * @details Row {@code r} is a fixed-size record (ID, title offset, title length) at
+ * {@code r * RECORD_SIZE} in a record buffer, a title stored as modified UTF-8 in a shared
+ * byte arena, and one bit in each of the live, marked, wishlist and loaned bitsets.
+ * Rows stay in insertion order. A delete only clears the live bit and a rename appends the
+ * new title to the arena; the table is compacted once more than half of its rows or arena
+ * bytes are dead. An open-addressing index maps IDs to rows without boxing.
+ * <p>
+ * Flag filters and counts work on whole 64-bit words of the bitsets, and titles are only
+ * decoded for the rows that are returned as Book objects. Reads leave the table unchanged,
+ * so any number of threads may read it as long as none changes it; the caller has to
+ * exclude writers. The exception is {@link #set}: the flag bitsets are atomic words and a
+ * flag changes by compare-and-set, so flags may be changed by several threads alongside
+ * readers, as long as no rows are added, removed or renamed meanwhile.
+ * </p>
+ * <p>
+ * The record buffer and the arena are heap buffers by default. With the system property
+ * {@value #OFF_HEAP_PROPERTY} set to true they are direct buffers, so a catalog of tens of
+ * millions of books adds only the bitsets and the ID index to the heap the garbage collector
+ * has to trace. Direct memory is limited by {@code -XX:MaxDirectMemorySize}, which defaults
+ * to the maximum heap size, and one arena holds at most 2 GB of titles.
+ * </p>
+ */
+final class BookTable {
+    /** System property that moves records and titles into direct buffers. */
+    static final String OFF_HEAP_PROPERTY = "librarysystem.table.offHeap";
+    /** Size of a row record: ID, title offset and title length. */
+    static final int RECORD_SIZE = 12;
+
+    private static final int INITIAL_ROWS = 16;
+    private static final int MIN_COMPACT_ROWS = 64;
+    private static final int MAX_ARENA = Integer.MAX_VALUE - 8;
+
+    private final boolean offHeap;
+    private ByteBuffer records;
+    private long[] live;
+    private AtomicLongArray marked;
+    private AtomicLongArray wishlist;
+    private AtomicLongArray loaned;
+    private int rows;
+    private int liveRows;
+
+    private ByteBuffer arena;
+    private int arenaSize;
+    private int arenaGarbage;
+
+    private final RowIndex index = new RowIndex();
+    private byte[] bulkFlags;
+
+    /**
+     * @brief Constructor for an empty BookTable in the configured memory mode.
+     */
+    BookTable() {
+        this(Boolean.getBoolean(OFF_HEAP_PROPERTY));
+    }
+
+    /**
+     * @brief Constructor for an empty BookTable.
+     * @param offHeap Whether records and titles are kept in direct buffers.
+     */
+    BookTable(boolean offHeap) {
+        this.offHeap = offHeap;
+        this.arena = allocate(INITIAL_ROWS * 16);
+        allocateRows(INITIAL_ROWS);
+    }
+
+    /**
+     * @brief Builds a table from books in the configured memory mode.
+     * @param books The books in the order they are to be kept.
+     * @return The table.
+     */
+    static BookTable of(Collection<Book> books) {
+        return of(books, Boolean.getBoolean(OFF_HEAP_PROPERTY));
+    }
+
+    /**
+     * @brief Builds a table from books.
+     * @param books The books in the order they are to be kept.
+     * @param offHeap Whether records and titles are kept in direct buffers.
+     * @return The table.
+     */
+    static BookTable of(Collection<Book> books, boolean offHeap) {
+        BookTable table = new BookTable(offHeap);
+        table.allocateRows(Math.max(INITIAL_ROWS, books.size()));
+        table.index.ensureCapacity(books.size());
+        long titleChars = 0;
+        for (Book book : books) {
+            titleChars += book.getName().length();
+        }
+        table.arena = table.allocate((int) Math.min(MAX_ARENA, Math.max(16, titleChars)));
+        for (Book book : books) {
+            table.put(book);
+        }
+        return table;
+    }
+
+    /**
+     * @brief Gets the number of books.
+     * @return The number of live rows.
+     */
+    int size() {
+        return liveRows;
+    }
+
+    /**
+     * @brief Looks up a book.
+     * @param id The ID of the book.
+     * @return A new Book with the values of the row, or null if there is no such book.
+     */
+    Book get(int id) {
+        int row = index.get(id);
+        return row < 0 ? null : materialize(row, new Scratch());
+    }
+
+    /**
+     * @brief Checks whether a book exists.
+     * @param id The ID of the book.
+     * @return True if the table holds a book with the ID.
+     */
+    boolean contains(int id) {
+        return index.get(id) >= 0;
+    }
+
+    /**
+     * @brief Adds a book or replaces the values of the book with the same ID.
+     * @param book The book; it is copied, not kept.
+     */
+    void put(Book book) {
+        int row = row(book.getId());
+        storeTitle(row, book.getName());
+        setFlags(row, book.isMarked(), book.isWishlist(), book.isLoaned());
+    }
+
+    /**
+     * @brief Removes a book.
+     * @param id The ID of the book.
+     * @return True if the book existed.
+     */
+    boolean remove(int id) {
+        int row = index.remove(id);
+        if (row < 0) {
+            return false;
+        }
+        setBit(live, row, false);
+        liveRows--;
+        arenaGarbage += titleLength(row);
+        compactIfSparse();
+        return true;
+    }
+
+    /**
+     * @brief Changes the title of a book.
+     * @param id The ID of the book.
+     * @param name The new title.
+     * @return True if the book exists.
+     */
+    boolean rename(int id, String name) {
+        int row = index.get(id);
+        if (row < 0) {
+            return false;
+        }
+        arenaGarbage += titleLength(row);
+        storeTitle(row, name);
+        compactIfSparse();
+        return true;
+    }
+
+    /**
+     * @brief Changes a flag of a book if it does not have the value yet.
+     * @details The check and the change are one compare-and-set of the bitset word, so of
+     * several threads setting the same flag of a book to the same value exactly one gets true;
+     * e.g. a book cannot be borrowed twice.
+     * @param id The ID of the book.
+     * @param flag The flag to change.
+     * @param value The new value.
+     * @return True if the book exists and the flag changed.
+     */
+    boolean set(int id, BookFlag flag, boolean value) {
+        int row = index.get(id);
+        if (row < 0) {
+            return false;
+        }
+        return setBit(bits(flag), row, value);
+    }
+
+    /**
+     * @brief Counts the books with a flag set or cleared.
+     * @param flag The flag to test.
+     * @param value The wanted value.
+     * @return The number of matching books.
+     */
+    int count(BookFlag flag, boolean value) {
+        AtomicLongArray bits = bits(flag);
+        int count = 0;
+        for (int word = 0; word < words(); word++) {
+            long flags = bits.get(word);
+            count += Long.bitCount(live[word] & (value ? flags : ~flags));
+        }
+        return count;
+    }
+
+    /**
+     * @brief Returns the books with a flag set or cleared.
+     * @param flag The flag to test.
+     * @param value The wanted value.
+     * @return New Book objects for the matching rows, in table order.
+     */
+    List<Book> select(BookFlag flag, boolean value) {
+        AtomicLongArray bits = bits(flag);
+        Scratch scratch = new Scratch();
+        List<Book> books = new ArrayList<Book>();
+        for (int word = 0; word < words(); word++) {
+            long flags = bits.get(word);
+            long matches = live[word] & (value ? flags : ~flags);
+            while (matches != 0) {
+                int row = (word << 6) + Long.numberOfTrailingZeros(matches);
+                Book book = materialize(row, scratch);
+                if (flag.of(book) == value) {
+                    // Skips a book whose flag was changed since its word was read.
+                    books.add(book);
+                }
+                matches &= matches - 1;
+            }
+        }
+        return books;
+    }
+
+    /**
+     * @brief Returns all books.
+     * @return New Book objects for all rows, in table order.
+     */
+    List<Book> list() {
+        List<Book> books = new ArrayList<Book>(liveRows);
+        for (Book book : values()) {
+            books.add(book);
+        }
+        return books;
+    }
+
+    /**
+     * @brief Copies the books so they can be read after the caller's lock is released.
+     * @details The record buffer, the used part of the arena and the bitsets are copied in
+     * bulk into heap buffers; unlike {@link #copy()} no row is rewritten and no title is
+     * decoded. The copy has no ID index, so it is only
+     * handed out as a view of its books, which later changes of this table do not affect.
+     * @return The books of the copy in table order, decoded one row at a time.
+     */
+    Collection<Book> snapshot() {
+        BookTable copy = new BookTable(false);
+        copy.records = copy.grow(records, rows * RECORD_SIZE, rows * RECORD_SIZE);
+        copy.arena = copy.grow(arena, arenaSize, arenaSize);
+        copy.arenaSize = arenaSize;
+        copy.live = Arrays.copyOf(live, live.length);
+        copy.marked = grow(marked, marked.length());
+        copy.wishlist = grow(wishlist, wishlist.length());
+        copy.loaned = grow(loaned, loaned.length());
+        copy.rows = rows;
+        copy.liveRows = liveRows;
+        return copy.values();
+    }
+
+    /**
+     * @brief Returns a view of all books that decodes one row at a time.
+     * @details The view must not be used while the table changes.
+     * @return The books in table order.
+     */
+    Collection<Book> values() {
+        return new AbstractCollection<Book>() {
+            @Override
+            public Iterator<Book> iterator() {
+                return new Iterator<Book>() {
+                    private final Scratch scratch = new Scratch();
+                    private int row = nextLive(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return row < rows;
+                    }
+
+                    @Override
+                    public Book next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Book book = materialize(row, scratch);
+                        row = nextLive(row + 1);
+                        return book;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return liveRows;
+            }
+        };
+    }
+
+    /**
+     * @brief Returns a view of all books through one reused flyweight.
+     * @details Every step of an iterator moves the same read-only Book to the next row, so
+     * iterating allocates no Book objects; the title is decoded only when getName is called.
+     * Callers must not keep a returned Book beyond the next step, and the view must not be
+     * used while the table changes.
+     * @return The books in table order.
+     */
+    Collection<Book> views() {
+        return new AbstractCollection<Book>() {
+            @Override
+            public Iterator<Book> iterator() {
+                return new Iterator<Book>() {
+                    private final View view = new View();
+                    private int row = nextLive(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return row < rows;
+                    }
+
+                    @Override
+                    public Book next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        view.row = row;
+                        row = nextLive(row + 1);
+                        return view;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return liveRows;
+            }
+        };
+    }
+
+    /**
+     * @brief Returns a map view that lets a BookStore load straight into the table.
+     * @return The view, keyed by book ID in table order.
+     */
+    Loader asMap() {
+        return new Loader();
+    }
+
+    /**
+     * @brief Adds a book from its raw fields unless its ID is taken.
+     * @details The title is copied as it is, without being decoded. Unlike {@link #put(Book)},
+     * an existing book is never replaced, so a file that repeats an ID is noticed instead of
+     * silently losing the earlier book.
+     * @param id The ID of the book.
+     * @param title The modified UTF-8 title in the remaining bytes; its position is not changed.
+     * @param marked The marked flag.
+     * @param wishlist The wishlist flag.
+     * @param loaned The loaned flag.
+     * @return False if the table already holds a book with the ID; the table is then unchanged.
+     */
+    boolean add(int id, ByteBuffer title, boolean marked, boolean wishlist, boolean loaned) {
+        if (contains(id)) {
+            return false;
+        }
+        int row = row(id);
+        int length = title.remaining();
+        ensureArena(length);
+        records.putInt(row * RECORD_SIZE + 4, arenaSize);
+        records.putInt(row * RECORD_SIZE + 8, length);
+        copyTitle(title, arena, arenaSize);
+        arenaSize += length;
+        setFlags(row, marked, wishlist, loaned);
+        return true;
+    }
+
+    /**
+     * @brief Prepares an empty table for rows that are written in parallel.
+     * @details Every row below {@code rowCount} must then be written exactly once through a
+     * {@link BulkWriter}, each thread using its own writer, before {@link #finishBulk()}
+     * makes the rows visible.
+     * @param rowCount The number of rows.
+     * @param titleBytes The total size of all titles in bytes.
+     */
+    void startBulk(int rowCount, long titleBytes) {
+        if (rows != 0) {
+            throw new IllegalStateException("Bulk loads need an empty table");
+        }
+        if (titleBytes > MAX_ARENA) {
+            throw new IllegalStateException("The title arena is full");
+        }
+        allocateRows(Math.max(INITIAL_ROWS, rowCount));
+        arena = allocate((int) Math.max(16, titleBytes));
+        arenaSize = (int) titleBytes;
+        bulkFlags = new byte[rowCount];
+    }
+
+    /**
+     * @brief Makes the rows written since {@link #startBulk} visible.
+     * @details The rows must have distinct IDs; no row replaces another.
+     * @throws IllegalStateException If two rows have the same ID. The table must then be
+     * discarded.
+     */
+    void finishBulk() {
+        int count = bulkFlags.length;
+        index.ensureCapacity(count);
+        for (int row = 0; row < count; row++) {
+            if (index.get(id(row)) >= 0) {
+                throw new IllegalStateException("Duplicate book ID " + id(row));
+            }
+            int flags = bulkFlags[row];
+            setBit(live, row, true);
+            setFlags(row, (flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0);
+            liveRows++;
+            index.put(id(row), row);
+        }
+        rows = count;
+        bulkFlags = null;
+        compactIfSparse();
+    }
+
+    /**
+     * @brief Gets the highest ID in the table.
+     * @return The highest ID, or 0 if the table is empty.
+     */
+    int maxId() {
+        int maxId = 0;
+        for (int row = nextLive(0); row < rows; row = nextLive(row + 1)) {
+            maxId = Math.max(maxId, id(row));
+        }
+        return maxId;
+    }
+
+    /**
+     * @brief Creates an independent copy with only the live rows.
+     * @return The copy.
+     */
+    BookTable copy() {
+        BookTable copy = new BookTable(offHeap);
+        copy.allocateRows(Math.max(INITIAL_ROWS, liveRows));
+        copy.arena = copy.allocate(Math.max(16, arenaSize - arenaGarbage));
+        copyLiveRowsTo(copy);
+        return copy;
+    }
+
+    /**
+     * @brief Checks where records and titles are kept.
+     * @return True if they are in direct buffers.
+     */
+    boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * @brief Estimates the memory used by the table.
+     * @param direct True for the direct buffers, false for the heap arrays and buffers.
+     * @return The approximate size in bytes.
+     */
+    long footprint(boolean direct) {
+        long buffers = (long) records.capacity() + arena.capacity();
+        long heap = 4L * 8 * live.length + index.footprint();
+        if (offHeap) {
+            return direct ? buffers : heap;
+        }
+        return direct ? 0 : heap + buffers;
+    }
+
+    /**
+     * @brief Finds the row of an ID for a put, appending a row if the ID is new.
+     * @param id The ID of the book.
+     * @return The row; the title of an existing row is counted as garbage.
+     */
+    private int row(int id) {
+        int row = index.get(id);
+        if (row < 0) {
+            if (rows == capacity()) {
+                allocateRows(rows * 2);
+            }
+            row = rows++;
+            records.putInt(row * RECORD_SIZE, id);
+            setBit(live, row, true);
+            liveRows++;
+            index.put(id, row);
+        } else {
+            arenaGarbage += titleLength(row);
+        }
+        return row;
+    }
+
+    private void setFlags(int row, boolean marked, boolean wishlist, boolean loaned) {
+        setBit(this.marked, row, marked);
+        setBit(this.wishlist, row, wishlist);
+        setBit(this.loaned, row, loaned);
+    }
+
+    private int capacity() {
+        return records.capacity() / RECORD_SIZE;
+    }
+
+    private int id(int row) {
+        return records.getInt(row * RECORD_SIZE);
+    }
+
+    private int titleOffset(int row) {
+        return records.getInt(row * RECORD_SIZE + 4);
+    }
+
+    private int titleLength(int row) {
+        return records.getInt(row * RECORD_SIZE + 8);
+    }
+
+    private Book materialize(int row, Scratch scratch) {
+        return new Book(id(row), title(row, scratch), getBit(marked, row), getBit(wishlist, row),
+                getBit(loaned, row));
+    }
+
+    private String title(int row, Scratch scratch) {
+        int offset = titleOffset(row);
+        int length = titleLength(row);
+        if (offset < 0 || length < 0 || length > arena.capacity() - offset) {
+            throw new IndexOutOfBoundsException("Title of row " + row + " is outside the arena");
+        }
+        try {
+            return ModifiedUtf8.decode(arena, offset, length, scratch.chars(length));
+        } catch (UTFDataFormatException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void storeTitle(int row, String name) {
+        int length = ModifiedUtf8.encodedLength(name);
+        ensureArena(length);
+        records.putInt(row * RECORD_SIZE + 4, arenaSize);
+        records.putInt(row * RECORD_SIZE + 8, length);
+        arenaSize = ModifiedUtf8.encode(name, arena, arenaSize);
+    }
+
+    private static void copyTitle(ByteBuffer title, ByteBuffer target, int offset) {
+        int start = title.position();
+        target.position(offset);
+        target.put(title);
+        title.position(start);
+    }
+
+    private void ensureArena(int length) {
+        if ((long) arenaSize + length > arena.capacity()) {
+            if ((long) arenaSize + length > MAX_ARENA) {
+                throw new IllegalStateException("The title arena is full");
+            }
+            long capacity = Math.max((long) arenaSize + length, 2L * arena.capacity());
+            arena = grow(arena, arenaSize, (int) Math.min(MAX_ARENA, capacity));
+        }
+    }
+
+    private int nextLive(int row) {
+        while (row < rows) {
+            int word = row >>> 6;
+            long bits = live[word] & (-1L << (row & 63));
+            if (bits != 0) {
+                return Math.min(rows, (word << 6) + Long.numberOfTrailingZeros(bits));
+            }
+            row = (word + 1) << 6;
+        }
+        return rows;
+    }
+
+    private void compactIfSparse() {
+        boolean sparseRows = rows >= MIN_COMPACT_ROWS && liveRows < rows / 2;
+        boolean sparseArena = arenaSize >= MIN_COMPACT_ROWS * 16 && arenaGarbage > arenaSize / 2;
+        if (!sparseRows && !sparseArena) {
+            return;
+        }
+        BookTable compacted = copy();
+        records = compacted.records;
+        live = compacted.live;
+        marked = compacted.marked;
+        wishlist = compacted.wishlist;
+        loaned = compacted.loaned;
+        rows = compacted.rows;
+        arena = compacted.arena;
+        arenaSize = compacted.arenaSize;
+        arenaGarbage = 0;
+        index.clear();
+        for (int row = 0; row < rows; row++) {
+            index.put(id(row), row);
+        }
+    }
+
+    private void copyLiveRowsTo(BookTable target) {
+        for (int row = nextLive(0); row < rows; row = nextLive(row + 1)) {
+            int to = target.rows++;
+            int length = titleLength(row);
+            target.records.putInt(to * RECORD_SIZE, id(row));
+            target.records.putInt(to * RECORD_SIZE + 4, target.arenaSize);
+            target.records.putInt(to * RECORD_SIZE + 8, length);
+            ByteBuffer title = arena.duplicate();
+            title.limit(titleOffset(row) + length).position(titleOffset(row));
+            target.arena.position(target.arenaSize);
+            target.arena.put(title);
+            target.arenaSize += length;
+            setBit(target.live, to, true);
+            setBit(target.marked, to, getBit(marked, row));
+            setBit(target.wishlist, to, getBit(wishlist, row));
+            setBit(target.loaned, to, getBit(loaned, row));
+            target.index.put(id(row), to);
+        }
+        target.liveRows = target.rows;
+    }
+
+    private void allocateRows(int capacity) {
+        int words = (capacity + 63) >>> 6;
+        records = records == null ? allocate(capacity * RECORD_SIZE) : grow(records, rows * RECORD_SIZE,
+                capacity * RECORD_SIZE);
+        live = live == null ? new long[words] : Arrays.copyOf(live, words);
+        marked = grow(marked, words);
+        wishlist = grow(wishlist, words);
+        loaned = grow(loaned, words);
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        ByteBuffer buffer = offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        return buffer.order(ByteOrder.nativeOrder());
+    }
+
+    private ByteBuffer grow(ByteBuffer buffer, int used, int capacity) {
+        ByteBuffer grown = allocate(capacity);
+        ByteBuffer content = buffer.duplicate();
+        content.limit(used).position(0);
+        grown.put(content);
+        grown.clear();
+        return grown;
+    }
+
+    private static AtomicLongArray grow(AtomicLongArray bits, int words) {
+        AtomicLongArray grown = new AtomicLongArray(words);
+        if (bits != null) {
+            for (int word = 0; word < Math.min(words, bits.length()); word++) {
+                grown.set(word, bits.get(word));
+            }
+        }
+        return grown;
+    }
+
+    private int words() {
+        return (rows + 63) >>> 6;
+    }
+
+    private AtomicLongArray bits(BookFlag flag) {
+        switch (flag) {
+            case MARKED:
+                return marked;
+            case WISHLIST:
+                return wishlist;
+            default:
+                return loaned;
+        }
+    }
+
+    private static boolean getBit(long[] bits, int row) {
+        return (bits[row >>> 6] & (1L << row)) != 0;
+    }
+
+    private static void setBit(long[] bits, int row, boolean value) {
+        if (value) {
+            bits[row >>> 6] |= 1L << row;
+        } else {
+            bits[row >>> 6] &= ~(1L << row);
+        }
+    }
+
+    private static boolean getBit(AtomicLongArray bits, int row) {
+        return (bits.get(row >>> 6) & (1L << row)) != 0;
+    }
+
+    private static boolean setBit(AtomicLongArray bits, int row, boolean value) {
+        int word = row >>> 6;
+        long mask = 1L << row;
+        while (true) {
+            long current = bits.get(word);
+            long next = value ? current | mask : current & ~mask;
+            if (current == next) {
+                return false;
+            }
+            if (bits.compareAndSet(word, current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @class Loader
+     * @brief Map view of the table for BookStore.load.
+     * @details {@code put} copies the book into a row, {@code get} returns a detached copy
+     * (a changed book has to be put back) and {@code remove} deletes the row. Unlike a regular
+     * map, {@code put} and {@code remove} always return null, so no book is decoded. Stores
+     * that can read raw titles use {@link #table()} to skip decoding altogether.
+     */
+    final class Loader extends AbstractMap<Integer, Book> {
+        /**
+         * @brief Gets the table behind this view.
+         * @return The table.
+         */
+        BookTable table() {
+            return BookTable.this;
+        }
+
+        @Override
+        public Book get(Object key) {
+            return key instanceof Integer ? BookTable.this.get((Integer) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Integer && contains((Integer) key);
+        }
+
+        @Override
+        public Book put(Integer key, Book book) {
+            if (key != book.getId()) {
+                throw new IllegalArgumentException("Book " + book.getId() + " put under ID " + key);
+            }
+            BookTable.this.put(book);
+            return null;
+        }
+
+        @Override
+        public Book remove(Object key) {
+            if (key instanceof Integer) {
+                BookTable.this.remove((Integer) key);
+            }
+            return null;
+        }
+
+        @Override
+        public int size() {
+            return liveRows;
+        }
+
+        @Override
+        public Set<Map.Entry<Integer, Book>> entrySet() {
+            return new AbstractSet<Map.Entry<Integer, Book>>() {
+                @Override
+                public Iterator<Map.Entry<Integer, Book>> iterator() {
+                    final Iterator<Book> books = values().iterator();
+                    return new Iterator<Map.Entry<Integer, Book>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return books.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<Integer, Book> next() {
+                            Book book = books.next();
+                            return new AbstractMap.SimpleImmutableEntry<Integer, Book>(book.getId(), book);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return liveRows;
+                }
+            };
+        }
+    }
+
+    /**
+     * @class BulkWriter
+     * @brief Writes rows of a bulk load; one writer must not be shared between threads.
+     */
+    final class BulkWriter {
+        private final ByteBuffer titles = arena.duplicate();
+
+        /**
+         * @brief Writes one row.
+         * @param row The row, below the row count given to startBulk.
+         * @param id The ID of the book.
+         * @param title The modified UTF-8 title in the remaining bytes; its position is not changed.
+         * @param titleOffset The arena offset of the title; rows must not overlap.
+         * @param marked The marked flag.
+         * @param wishlist The wishlist flag.
+         * @param loaned The loaned flag.
+         */
+        void write(int row, int id, ByteBuffer title, int titleOffset, boolean marked, boolean wishlist,
+                boolean loaned) {
+            records.putInt(row * RECORD_SIZE, id);
+            records.putInt(row * RECORD_SIZE + 4, titleOffset);
+            records.putInt(row * RECORD_SIZE + 8, title.remaining());
+            copyTitle(title, titles, titleOffset);
+            bulkFlags[row] = (byte) ((marked ? 1 : 0) | (wishlist ? 2 : 0) | (loaned ? 4 : 0));
+        }
+    }
+
+    /**
+     * @brief Character buffer for decoding titles, owned by one reader.
+     */
+    private static final class Scratch {
+        private char[] chars = new char[64];
+
+        char[] chars(int length) {
+            if (chars.length < length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+            }
+            return chars;
+        }
+    }
+
+    /**
+     * @brief Read-only Book that shows whichever row it is moved to.
+     */
+    private final class View extends Book {
+        private final Scratch scratch = new Scratch();
+        private int row;
+
+        @Override
+        public int getId() {
+            return id(row);
+        }
+
+        @Override
+        public String getName() {
+            return title(row, scratch);
+        }
+
+        @Override
+        public boolean isMarked() {
+            return getBit(marked, row);
+        }
+
+        @Override
+        public boolean isWishlist() {
+            return getBit(wishlist, row);
+        }
+
+        @Override
+        public boolean isLoaned() {
+            return getBit(loaned, row);
+        }
+
+        @Override
+        public void setId(int id) {
+            throw new UnsupportedOperationException("Book views are read-only");
+        }
+
+        @Override
+        public void setName(String name) {
+            throw new UnsupportedOperationException("Book views are read-only");
+        }
+
+        @Override
+        public void setMarked(boolean marked) {
+            throw new UnsupportedOperationException("Book views are read-only");
+        }
+
+        @Override
+        public void setWishlist(boolean wishlist) {
+            throw new UnsupportedOperationException("Book views are read-only");
+        }
+
+        @Override
+        public void setLoaned(boolean loaned) {
+            throw new UnsupportedOperationException("Book views are read-only");
+        }
+    }
+
+    /**
+     * @brief Open-addressing hash map from book ID to row with linear probing.
+     */
+    private static final class RowIndex {
+        private static final int EMPTY = -1;
+
+        private int[] keys = new int[32];
+        private int[] values = newValues(32);
+        private int size;
+
+        private static int[] newValues(int capacity) {
+            int[] values = new int[capacity];
+            Arrays.fill(values, EMPTY);
+            return values;
+        }
+
+        private int slot(int key) {
+            int hash = key * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & (keys.length - 1);
+        }
+
+        int get(int key) {
+            for (int slot = slot(key); values[slot] != EMPTY; slot = (slot + 1) & (keys.length - 1)) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return EMPTY;
+        }
+
+        void put(int key, int value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            int slot = slot(key);
+            while (values[slot] != EMPTY) {
+                if (keys[slot] == key) {
+                    values[slot] = value;
+                    return;
+                }
+                slot = (slot + 1) & (keys.length - 1);
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            size++;
+        }
+
+        int remove(int key) {
+            int mask = keys.length - 1;
+            int slot = slot(key);
+            while (values[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            int removed = values[slot];
+            if (removed == EMPTY) {
+                return EMPTY;
+            }
+            // Shift later entries of the probe chain back so lookups need no tombstones.
+            int hole = slot;
+            for (int next = (hole + 1) & mask; values[next] != EMPTY; next = (next + 1) & mask) {
+                int home = slot(keys[next]);
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    values[hole] = values[next];
+                    hole = next;
+                }
+            }
+            values[hole] = EMPTY;
+            size--;
+            return removed;
+        }
+
+        void ensureCapacity(int entries) {
+            int capacity = keys.length;
+            while (entries * 2L > capacity) {
+                capacity *= 2;
+            }
+            if (capacity != keys.length) {
+                resize(capacity);
+            }
+        }
+
+        void clear() {
+            Arrays.fill(values, EMPTY);
+            size = 0;
+        }
+
+        long footprint() {
+            return 8L * keys.length;
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new int[capacity];
+            values = newValues(capacity);
+            size = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldValues[slot] != EMPTY) {
+                    put(oldKeys[slot], oldValues[slot]);
+                }
+            }
+        }
+    }
+}
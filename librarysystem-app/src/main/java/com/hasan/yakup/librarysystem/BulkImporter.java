@@ -0,0 +1,493 @@
+/**
+ * @file BulkImporter.java
+ * @brief Streaming import of large title lists into a books file.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @class BulkImporter
+ * @brief Appends titles from a CSV, TSV or plain text file to a books file.
+ * @details The source is parsed line by line on the calling thread. Titles are grouped into
+ * chunks, each chunk receives one contiguous range of IDs from the IdAllocator, and the
+ * chunks are encoded into stream records on a worker pool. Encoded chunks are appended in
+ * source order through a large buffer.
+ * <p>
+ * Every few chunks the books file is flushed (and synced, see SyncMode) and a checkpoint
+ * with the number of consumed source lines and the books file length is written to
+ * {@code <file>.import}. An interrupted import of the same source resumes from that
+ * checkpoint: records written after it are cut off and the source lines before it are
+ * skipped. The import holds the exclusive ProcessLock of the books file from start to end
+ * and counts as one change, so repositories of any process wait for it and reload afterwards.
+ * </p>
+ */
+public final class BulkImporter {
+    /**
+     * @brief Layouts of an import source.
+     */
+    public enum SourceFormat {
+        /** Comma-separated values; the title is the first field, optionally quoted. */
+        CSV,
+        /** Tab-separated values; the title is the first field. */
+        TSV,
+        /** One title per line. */
+        LINES;
+
+        /**
+         * @brief Guesses the layout from the file name extension.
+         * @param source The path of the source file.
+         * @return CSV for {@code .csv}, TSV for {@code .tsv}, LINES otherwise.
+         */
+        public static SourceFormat of(Path source) {
+            String name = source.getFileName().toString().toLowerCase();
+            if (name.endsWith(".csv")) {
+                return CSV;
+            }
+            if (name.endsWith(".tsv")) {
+                return TSV;
+            }
+            return LINES;
+        }
+    }
+
+    /**
+     * @brief Outcome of an import run.
+     */
+    public static final class Result {
+        private final long rows;
+        private final long skipped;
+        private final double rowsPerSecond;
+        private final boolean resumed;
+
+        private Result(long rows, long skipped, double rowsPerSecond, boolean resumed) {
+            this.rows = rows;
+            this.skipped = skipped;
+            this.rowsPerSecond = rowsPerSecond;
+            this.resumed = resumed;
+        }
+
+        /**
+         * @brief Gets the number of imported titles, including those of a resumed run.
+         * @return The number of books added.
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * @brief Gets the number of source lines that held no usable title.
+         * @return The number of skipped lines.
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * @brief Checks whether the run continued from a checkpoint.
+         * @return True if the import was resumed.
+         */
+        public boolean isResumed() {
+            return resumed;
+        }
+
+        /**
+         * @brief Gets the import rate of this run, not counting rows of a resumed run.
+         * @return Imported titles per second.
+         */
+        public double getRowsPerSecond() {
+            return rowsPerSecond;
+        }
+    }
+
+    /** Number of titles encoded as one task. */
+    static final int CHUNK_ROWS = 8192;
+    /** Number of chunks between two checkpoints. */
+    static final int CHECKPOINT_CHUNKS = 16;
+
+    private static final int CHECKPOINT_MAGIC = 0x424B494D;
+    private static final int CHECKPOINT_VERSION = 1;
+    private static final int MAX_UTF_LENGTH = 65535;
+
+    private final Path path;
+    private final Path source;
+    private final SourceFormat format;
+    private final int threads;
+    private final Path checkpointPath;
+    private final boolean forceWrites = SyncMode.configured().forcesWrites();
+
+    /**
+     * @brief Constructor for BulkImporter.
+     * @param path The path to the file containing book information.
+     * @param source The path of the file with the titles.
+     * @param format The layout of the source file.
+     * @param threads The number of encoding threads.
+     */
+    public BulkImporter(Path path, Path source, SourceFormat format, int threads) {
+        this.path = path;
+        this.source = source;
+        this.format = format;
+        this.threads = threads;
+        this.checkpointPath = checkpointPathOf(path);
+    }
+
+    /**
+     * @brief Runs the import, resuming from a checkpoint of the same source if there is one.
+     * @param progress The stream for progress messages.
+     * @return The outcome of the import.
+     * @throws IOException If an I/O error occurs or the books file is not in the stream or log format.
+     */
+    public Result run(PrintStream progress) throws IOException {
+        ProcessLock lock = ProcessLock.of(path);
+        try (ProcessLock.Hold hold = lock.exclusive()) {
+            try {
+                return runLocked(progress);
+            } finally {
+                // A failed import may still have appended records or cut off a torn tail.
+                lock.recordChange();
+            }
+        }
+    }
+
+    private Result runLocked(PrintStream progress) throws IOException {
+        BookFormat target = BookStores.detect(path);
+        if (target == BookFormat.SLOTTED || target == BookFormat.BLOCK || target == BookFormat.COMPACT) {
+            throw new IOException("Bulk import appends stream records; convert " + path + " to stream first");
+        }
+
+        long startLine = 0;
+        long rows = 0;
+        long skipped = 0;
+        boolean resumed = false;
+        Checkpoint checkpoint = readCheckpoint();
+        if (checkpoint != null && checkpoint.source.equals(source.toAbsolutePath().toString())) {
+            truncate(checkpoint.length);
+            startLine = checkpoint.lines;
+            rows = checkpoint.rows;
+            skipped = checkpoint.skipped;
+            resumed = true;
+            progress.println("Resuming import of " + source + " after line " + startLine + ".");
+        }
+
+        FileHeader header = FileHeader.read(path, FileHeader.BOOKS_MAGIC);
+        boolean created = !Files.exists(path) || Files.size(path) == 0;
+        IdAllocator ids = new IdAllocator(path);
+        ids.reset(maxId(target), Files.exists(path));
+
+        long started = System.nanoTime();
+        long startRows = rows;
+        ExecutorService encoders = Executors.newFixedThreadPool(threads);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(source), StandardCharsets.UTF_8), 1 << 20);
+                FileOutputStream output = new FileOutputStream(path.toFile(), true);
+                BufferedOutputStream writer = new BufferedOutputStream(output, 1 << 20)) {
+            long length = output.getChannel().size();
+            if (created) {
+                DataOutputStream headerWriter = new DataOutputStream(writer);
+                FileHeader.of(FileHeader.BOOKS_MAGIC, 0).write(headerWriter);
+                length += FileHeader.SIZE;
+            }
+            Deque<Chunk> pending = new ArrayDeque<Chunk>();
+            List<String> titles = new ArrayList<String>(CHUNK_ROWS);
+            long line = 0;
+            int chunksSinceCheckpoint = 0;
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (line <= startLine) {
+                    continue;
+                }
+                String title = titleOf(text, line);
+                if (title == null) {
+                    skipped++;
+                } else {
+                    titles.add(title);
+                }
+                if (titles.size() == CHUNK_ROWS) {
+                    pending.add(submit(encoders, ids, titles, line, skipped));
+                    titles = new ArrayList<String>(CHUNK_ROWS);
+                }
+                while (pending.size() > threads * 2) {
+                    Chunk chunk = pending.poll();
+                    length += append(writer, chunk);
+                    rows += chunk.rows;
+                    if (++chunksSinceCheckpoint == CHECKPOINT_CHUNKS) {
+                        checkpoint(writer, output, chunk, length, rows);
+                        chunksSinceCheckpoint = 0;
+                        progress.printf("%d titles imported (%.0f rows/s)%n", rows,
+                                (rows - startRows) * 1e9 / (System.nanoTime() - started));
+                    }
+                }
+            }
+            if (!titles.isEmpty()) {
+                pending.add(submit(encoders, ids, titles, line, skipped));
+            }
+            while (!pending.isEmpty()) {
+                Chunk chunk = pending.poll();
+                length += append(writer, chunk);
+                rows += chunk.rows;
+            }
+            writer.flush();
+        } finally {
+            encoders.shutdownNow();
+        }
+        // The header is only updated here, so after a resume it still counts the records
+        // from before the import and every imported row is added once.
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            if (created || !header.isLegacy()) {
+                FileHeader.writeCount(channel, header.getRecordCount() + rows);
+            }
+            if (forceWrites) {
+                channel.force(false);
+            }
+        }
+        Files.deleteIfExists(checkpointPath);
+        double rowsPerSecond = (rows - startRows) * 1e9 / Math.max(1, System.nanoTime() - started);
+        return new Result(rows, skipped, rowsPerSecond, resumed);
+    }
+
+    /**
+     * @brief Gets the checkpoint file of a books file.
+     * @param path The path of the books file.
+     * @return The path of its import checkpoint.
+     */
+    static Path checkpointPathOf(Path path) {
+        return Paths.get(path.toString() + ".import");
+    }
+
+    /**
+     * @brief Extracts the title from a source line.
+     * @param text The source line.
+     * @param line The 1-based line number.
+     * @return The title, or null if the line is blank, a header or too long to store.
+     */
+    String titleOf(String text, long line) {
+        String title;
+        switch (format) {
+            case CSV:
+                title = firstField(text, ',');
+                break;
+            case TSV:
+                title = firstField(text, '\t');
+                break;
+            default:
+                title = text;
+                break;
+        }
+        if (title.isEmpty() || line == 1 && format != SourceFormat.LINES
+                && ("title".equalsIgnoreCase(title) || "name".equalsIgnoreCase(title))) {
+            return null;
+        }
+        if (title.length() > MAX_UTF_LENGTH / 3 && utfLength(title) > MAX_UTF_LENGTH) {
+            return null;
+        }
+        return title;
+    }
+
+    /**
+     * @brief Gets the first field of a delimited line.
+     * @details A field starting with a double quote ends at the closing quote; doubled quotes
+     * inside it stand for one quote.
+     * @param text The line.
+     * @param separator The field separator.
+     * @return The unquoted first field.
+     */
+    static String firstField(String text, char separator) {
+        if (text.isEmpty() || text.charAt(0) != '"' || separator == '\t') {
+            int end = text.indexOf(separator);
+            return end < 0 ? text : text.substring(0, end);
+        }
+        StringBuilder field = new StringBuilder();
+        int index = 1;
+        while (index < text.length()) {
+            char c = text.charAt(index);
+            if (c == '"') {
+                if (index + 1 < text.length() && text.charAt(index + 1) == '"') {
+                    field.append('"');
+                    index += 2;
+                    continue;
+                }
+                break;
+            }
+            field.append(c);
+            index++;
+        }
+        return field.toString();
+    }
+
+    private static int utfLength(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            length += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+        }
+        return length;
+    }
+
+    private int maxId(BookFormat target) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        Iterable<Book> books = target == BookFormat.STREAM ? BookStores.streamRecords(path)
+                : BookStores.loadAll(path, target);
+        int maxId = 0;
+        for (Book book : books) {
+            maxId = Math.max(maxId, book.getId());
+        }
+        return maxId;
+    }
+
+    private Chunk submit(ExecutorService encoders, IdAllocator ids, final List<String> titles, long line,
+            long skipped) throws IOException {
+        final int firstId = ids.reserve(titles.size());
+        Future<byte[]> encoded = encoders.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(titles.size() * 32);
+                DataOutputStream writer = new DataOutputStream(bytes);
+                int id = firstId;
+                for (String title : titles) {
+                    StreamBookStore.writeBook(writer, new Book(id++, title, false, false, false));
+                }
+                return bytes.toByteArray();
+            }
+        });
+        return new Chunk(encoded, titles.size(), line, skipped);
+    }
+
+    private static int append(BufferedOutputStream writer, Chunk chunk) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = chunk.encoded.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not encode titles", e.getCause());
+        }
+        writer.write(bytes);
+        return bytes.length;
+    }
+
+    private void checkpoint(BufferedOutputStream writer, FileOutputStream output, Chunk chunk, long length, long rows)
+            throws IOException {
+        writer.flush();
+        if (forceWrites) {
+            output.getFD().sync();
+        }
+        writeCheckpoint(new Checkpoint(source.toAbsolutePath().toString(), chunk.line, length, rows, chunk.skipped));
+    }
+
+    /**
+     * @brief Atomically replaces the checkpoint file.
+     * @param checkpoint The position to record.
+     * @throws IOException If an I/O error occurs.
+     */
+    void writeCheckpoint(Checkpoint checkpoint) throws IOException {
+        Path temporary = FileBookStore.temporaryPathOf(checkpointPath);
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+                DataOutputStream writer = new DataOutputStream(file)) {
+            writer.writeInt(CHECKPOINT_MAGIC);
+            writer.writeInt(CHECKPOINT_VERSION);
+            writer.writeUTF(checkpoint.source);
+            writer.writeLong(checkpoint.lines);
+            writer.writeLong(checkpoint.length);
+            writer.writeLong(checkpoint.rows);
+            writer.writeLong(checkpoint.skipped);
+            writer.flush();
+            if (forceWrites) {
+                file.getFD().sync();
+            }
+        }
+        FileBookStore.replace(temporary, checkpointPath, forceWrites);
+    }
+
+    private Checkpoint readCheckpoint() throws IOException {
+        if (!Files.exists(checkpointPath)) {
+            return null;
+        }
+        try (DataInputStream reader = new DataInputStream(Files.newInputStream(checkpointPath))) {
+            if (reader.readInt() != CHECKPOINT_MAGIC || reader.readInt() != CHECKPOINT_VERSION) {
+                throw new IOException("Not an import checkpoint: " + checkpointPath);
+            }
+            return new Checkpoint(reader.readUTF(), reader.readLong(), reader.readLong(), reader.readLong(),
+                    reader.readLong());
+        }
+    }
+
+    private void truncate(long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            if (channel.size() < length) {
+                throw new IOException(path + " is shorter than its import checkpoint");
+            }
+            channel.truncate(length);
+        }
+    }
+
+    /**
+     * @brief A chunk of titles being encoded.
+     */
+    private static final class Chunk {
+        private final Future<byte[]> encoded;
+        private final int rows;
+        private final long line;
+        private final long skipped;
+
+        private Chunk(Future<byte[]> encoded, int rows, long line, long skipped) {
+            this.encoded = encoded;
+            this.rows = rows;
+            this.line = line;
+            this.skipped = skipped;
+        }
+    }
+
+    /**
+     * @brief Position of an interrupted import.
+     */
+    static final class Checkpoint {
+        private final String source;
+        private final long lines;
+        private final long length;
+        private final long rows;
+        private final long skipped;
+
+        /**
+         * @brief Constructor for Checkpoint.
+         * @param source The absolute path of the source file.
+         * @param lines The number of source lines whose titles are in the books file.
+         * @param length The length of the books file after those titles.
+         * @param rows The number of titles imported so far.
+         * @param skipped The number of source lines skipped so far.
+         */
+        Checkpoint(String source, long lines, long length, long rows, long skipped) {
+            this.source = source;
+            this.lines = lines;
+            this.length = length;
+            this.rows = rows;
+            this.skipped = skipped;
+        }
+    }
+}
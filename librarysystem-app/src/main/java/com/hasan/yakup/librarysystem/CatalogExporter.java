@@ -0,0 +1,228 @@
+/**
+ * @file CatalogExporter.java
+ * @brief Streaming export of a books file to CSV or JSON Lines.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @class CatalogExporter
+ * @brief Writes every book of a books file as one CSV row or JSON object per line.
+ * @details Books are visited one at a time through {@link BookStores#forEach}, so memory use
+ * does not depend on the size of the catalog. Each line is built in a reused StringBuilder and
+ * encoded as UTF-8 straight into a direct buffer that is drained into the output channel when
+ * it fills up. Compression, if wanted, is a property of the channel the caller passes in.
+ */
+public final class CatalogExporter {
+    /**
+     * @brief Output formats of an export.
+     */
+    public enum Format {
+        /** A header row followed by {@code id,title,marked,wishlist,loaned} rows (RFC 4180 quoting). */
+        CSV,
+        /** One JSON object per line with the fields id, title, marked, wishlist and loaned. */
+        JSONL
+    }
+
+    /** Size of the output buffer. */
+    static final int BUFFER_SIZE = 1 << 20;
+
+    private final Format format;
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final StringBuilder line = new StringBuilder(256);
+    private long count;
+
+    /**
+     * @brief Constructor for CatalogExporter.
+     * @param format The output format.
+     * @param channel The channel to write to; it is flushed but not closed.
+     */
+    public CatalogExporter(Format format, WritableByteChannel channel) {
+        this.format = format;
+        this.channel = channel;
+    }
+
+    /**
+     * @brief Exports all books of a books file.
+     * @param path The path to the file containing book information.
+     * @return The number of exported books.
+     * @throws IOException If an I/O error occurs.
+     */
+    public long export(Path path) throws IOException {
+        if (format == Format.CSV) {
+            line.setLength(0);
+            line.append("id,title,marked,wishlist,loaned\n");
+            encode();
+        }
+        BookStores.forEach(path, new Consumer<Book>() {
+            @Override
+            public void accept(Book book) {
+                try {
+                    write(book);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        drain();
+        return count;
+    }
+
+    private void write(Book book) throws IOException {
+        line.setLength(0);
+        if (format == Format.CSV) {
+            line.append(book.getId()).append(',');
+            appendCsv(book.getName());
+            line.append(',').append(book.isMarked()).append(',').append(book.isWishlist()).append(',')
+                    .append(book.isLoaned()).append('\n');
+        } else {
+            appendJson(line, book);
+            line.append('\n');
+        }
+        encode();
+        count++;
+    }
+
+    private void appendCsv(String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    /**
+     * @brief Appends a book as a JSON object with the fields id, title, marked, wishlist and loaned.
+     * @param out The builder to append to.
+     * @param book The book.
+     */
+    static void appendJson(StringBuilder out, Book book) {
+        out.append("{\"id\":").append(book.getId()).append(",\"title\":");
+        appendJson(out, book.getName());
+        out.append(",\"marked\":").append(book.isMarked()).append(",\"wishlist\":").append(book.isWishlist())
+                .append(",\"loaned\":").append(book.isLoaned()).append('}');
+    }
+
+    /**
+     * @brief Appends a string as a quoted JSON string.
+     * @param out The builder to append to.
+     * @param value The string.
+     */
+    static void appendJson(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                    break;
+            }
+        }
+        out.append('"');
+    }
+
+    private void encode() throws IOException {
+        CharBuffer chars = CharBuffer.wrap(line);
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                drain();
+            } else {
+                break;
+            }
+        }
+        encoder.reset();
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * @brief Exports a books file to a file or to a stream, optionally gzip-compressed.
+     * @param path The path to the file containing book information.
+     * @param format The output format.
+     * @param target The output file, or {@code -} for the given stream.
+     * @param gzip Whether the output is gzip-compressed.
+     * @param stdout The stream used for {@code -}; it is flushed but not closed.
+     * @return The number of exported books.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static long export(Path path, Format format, String target, boolean gzip, OutputStream stdout)
+            throws IOException {
+        boolean toStream = "-".equals(target);
+        OutputStream output = toStream ? stdout : new FileOutputStream(target);
+        try {
+            if (gzip) {
+                GZIPOutputStream compressed = new GZIPOutputStream(output, 1 << 16);
+                long count = new CatalogExporter(format, Channels.newChannel(compressed)).export(path);
+                compressed.finish();
+                output.flush();
+                return count;
+            }
+            WritableByteChannel channel = toStream ? Channels.newChannel(output)
+                    : ((FileOutputStream) output).getChannel();
+            long count = new CatalogExporter(format, channel).export(path);
+            output.flush();
+            return count;
+        } finally {
+            if (!toStream) {
+                output.close();
+            }
+        }
+    }
+}
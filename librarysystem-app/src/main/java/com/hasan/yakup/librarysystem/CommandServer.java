@@ -0,0 +1,667 @@
+/**
+ * @file CommandServer.java
+ * @brief Non-blocking TCP server for a line-oriented library command protocol.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @class CommandServer
+ * @brief Serves the library operations to many connections with one selector thread.
+ * @details Clients send one command per line and get one reply per command, in the order
+ * the commands were sent. A client may send any number of commands without waiting for
+ * their replies (pipelining); they are read, executed and answered in batches. Commands
+ * and their words are separated by spaces, keywords are case-insensitive and lines end
+ * with {@code \n} (a preceding {@code \r} is ignored):
+ * <ul>
+ * <li>{@code LOGIN <email> <password>} must succeed before any other command but QUIT.</li>
+ * <li>{@code LIST [MARKED|WISHLIST|LOANED]} lists all books, or those having the flag.</li>
+ * <li>{@code FIND <id>}, {@code BORROW <id>}, {@code RETURN <id>}, {@code MARK <id>},
+ * {@code WISH <id>}, {@code UNWISH <id>} and {@code DELETE <id>} work on one book.</li>
+ * <li>{@code ADD <title>} and {@code RENAME <id> <title>}; the title is the rest of the line.</li>
+ * <li>{@code QUIT} ends the connection once the earlier replies are sent.</li>
+ * </ul>
+ * A reply is {@code OK}, {@code OK <id> <flags> <title>} for commands on one book, or
+ * {@code OK <count>} followed by that many such book lines for LIST. The flags are three
+ * characters, {@code M}, {@code W} and {@code L} for marked, wishlisted and loaned or
+ * {@code -} where the flag is not set. Failures are {@code ERR <status>} with a status of
+ * OperationResult or {@code LOGIN_REQUIRED}, or {@code ERR BAD_REQUEST <message>} and
+ * {@code ERR IO <message>}. Titles and messages are written with {@code \\}, {@code \n}
+ * and {@code \r} in place of backslashes and line breaks, so every reply line stays one line.
+ * <p>
+ * The selector thread does all socket I/O. It reads into one direct buffer, splits the
+ * bytes into lines and queues them on their connection; a session waiting for input costs
+ * a registered key and a few small objects rather than a thread. Commands may block on a
+ * commit, so each connection with queued commands gets one worker on a virtual thread,
+ * which executes everything queued so far in order and hands the encoded replies back to
+ * the selector thread. Workers of different connections run concurrently, so their
+ * changes share the group commits of the BookRepository. Replies are gathered into a
+ * second direct buffer, which the socket writes without another copy. A connection whose
+ * unsent replies or unexecuted commands pile up is not read from until they drain; lines
+ * already read beyond that point are kept on the connection and split once it has drained.
+ * </p>
+ */
+public class CommandServer implements Closeable {
+    /** Port used when none is given. */
+    public static final int DEFAULT_PORT = 7071;
+    /** Length of the queue of connections not yet accepted. */
+    static final int BACKLOG = 1024;
+    /** Longest accepted command line in bytes. */
+    static final int MAX_LINE = 8192;
+    /** Size of the direct read and write buffers of the selector thread. */
+    static final int BUFFER_SIZE = 64 * 1024;
+    /** Unexecuted commands at which a connection is no longer read from. */
+    static final int MAX_QUEUED_COMMANDS = 1024;
+    /** Unsent reply bytes at which a connection is no longer read from. */
+    static final int MAX_QUEUED_OUTPUT = 1 << 20;
+
+    /** Queued in place of a line that exceeded MAX_LINE; no line read from a socket contains '\n'. */
+    private static final String OVERFLOW = "\n";
+
+    private final int port;
+    private final String pathFileUsers;
+    private final String pathFileBooks;
+    private final LibraryService service;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Queue<Connection> replied = new ConcurrentLinkedQueue<Connection>();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final ExecutorService workers = Executors
+            .newThreadPerTaskExecutor(Thread.ofVirtual().name("library-command-", 0).factory());
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread loop;
+    private volatile boolean closed;
+
+    /**
+     * @class Connection
+     * @brief State of one client connection.
+     * @details The line being read belongs to the selector thread and the login to the
+     * worker; the queues are shared by both and guarded by the connection's monitor.
+     */
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private byte[] line = new byte[128];
+        private int lineLength;
+        private ByteBuffer unread;
+        private boolean loggedIn;
+
+        private final ArrayDeque<String> commands = new ArrayDeque<String>();
+        private final ArrayDeque<ByteBuffer> output = new ArrayDeque<ByteBuffer>();
+        private int outputBytes;
+        private boolean running;
+        private boolean ending;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        /**
+         * @brief Appends a byte to the line being read.
+         * @return False if the line is too long.
+         */
+        boolean append(byte b) {
+            if (lineLength == MAX_LINE) {
+                return false;
+            }
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, Math.min(MAX_LINE, line.length * 2));
+            }
+            line[lineLength++] = b;
+            return true;
+        }
+
+        String takeLine() {
+            int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+            lineLength = 0;
+            return new String(line, 0, length, StandardCharsets.UTF_8);
+        }
+
+        synchronized boolean isDone() {
+            return ending && !running && commands.isEmpty() && output.isEmpty();
+        }
+
+        synchronized boolean isBacklogged() {
+            return commands.size() >= MAX_QUEUED_COMMANDS || outputBytes >= MAX_QUEUED_OUTPUT;
+        }
+    }
+
+    /**
+     * @brief Constructor for CommandServer with a service of its own.
+     * @param port The port to listen on; 0 picks a free port.
+     * @param pathFileUsers The path to the file containing user information.
+     * @param pathFileBooks The path to the file containing book information.
+     */
+    public CommandServer(int port, String pathFileUsers, String pathFileBooks) {
+        this(port, pathFileUsers, pathFileBooks, new LibraryService());
+    }
+
+    /**
+     * @brief Constructor for CommandServer on top of an existing service.
+     * @param port The port to listen on; 0 picks a free port.
+     * @param pathFileUsers The path to the file containing user information.
+     * @param pathFileBooks The path to the file containing book information.
+     * @param service The service shared by all connections.
+     */
+    public CommandServer(int port, String pathFileUsers, String pathFileBooks, LibraryService service) {
+        this.port = port;
+        this.pathFileUsers = pathFileUsers;
+        this.pathFileBooks = pathFileBooks;
+        this.service = service;
+    }
+
+    /**
+     * @brief Binds the port and starts the selector thread.
+     * @throws IOException If the port cannot be bound.
+     */
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(port), BACKLOG);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        loop = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                select();
+            }
+        }, "library-selector");
+        loop.start();
+    }
+
+    /**
+     * @brief Gets the port the server listens on.
+     * @return The bound port.
+     * @throws IOException If the address cannot be read.
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * @brief Gets the number of open connections.
+     * @return The number of accepted connections not closed yet.
+     */
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * @brief Waits until the server is closed.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public void join() throws InterruptedException {
+        loop.join();
+    }
+
+    /**
+     * @brief Stops accepting connections and closes all open ones.
+     * @details Commands being executed are finished, but their replies are not sent.
+     * @throws IOException If the server channel cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            loop.join();
+            workers.shutdown();
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void select() {
+        try {
+            while (!closed) {
+                selector.select();
+                Connection connection;
+                while ((connection = replied.poll()) != null) {
+                    if (connection.key.isValid()) {
+                        try {
+                            write(connection);
+                        } catch (IOException e) {
+                            close(connection);
+                        }
+                    }
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(connection);
+                        }
+                    } catch (IOException e) {
+                        // The connection was reset.
+                        close(connection);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            // The selector broke; all connections are closed below.
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    close((Connection) key.attachment());
+                }
+            }
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept() {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+                if (channel == null) {
+                    return;
+                }
+            } catch (IOException e) {
+                // The connection was reset before it was accepted, or no descriptors are left.
+                return;
+            }
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new Connection(channel, key));
+                connectionCount.incrementAndGet();
+            } catch (IOException e) {
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    /**
+     * @brief Reads what the socket has, queues the complete lines and starts their worker.
+     * @param connection The readable connection.
+     * @throws IOException If the socket cannot be read.
+     */
+    private void read(Connection connection) throws IOException {
+        readBuffer.clear();
+        int read = connection.channel.read(readBuffer);
+        if (read == -1) {
+            synchronized (connection) {
+                connection.ending = true;
+            }
+            updateInterest(connection);
+            return;
+        }
+        readBuffer.flip();
+        split(connection, readBuffer);
+        updateInterest(connection);
+    }
+
+    /**
+     * @brief Queues the complete lines of the bytes and starts their worker.
+     * @details The backlog is checked before each line; the bytes left when it is reached
+     * are kept in the connection's unread buffer until updateInterest finds it drained.
+     * @param connection The connection the bytes were read from.
+     * @param bytes The bytes read, or the connection's unread buffer.
+     */
+    private void split(Connection connection, ByteBuffer bytes) {
+        boolean queued = false;
+        boolean overflow = false;
+        while (bytes.hasRemaining()) {
+            if (connection.lineLength == 0 && connection.isBacklogged()) {
+                break;
+            }
+            byte b = bytes.get();
+            if (b == '\n') {
+                queued |= enqueue(connection, connection.takeLine());
+            } else if (!connection.append(b)) {
+                queued |= enqueue(connection, OVERFLOW);
+                overflow = true;
+                break;
+            }
+        }
+        if (overflow || !bytes.hasRemaining()) {
+            connection.unread = null;
+        } else if (bytes != connection.unread) {
+            connection.unread = ByteBuffer.allocate(bytes.remaining()).put(bytes).flip();
+        }
+        if (queued) {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    work(connection);
+                }
+            });
+        }
+    }
+
+    /**
+     * @brief Queues a command line.
+     * @return True if the connection needs a new worker to execute it.
+     */
+    private static boolean enqueue(Connection connection, String line) {
+        synchronized (connection) {
+            if (connection.ending) {
+                return false;
+            }
+            connection.commands.add(line);
+            if (line == OVERFLOW) {
+                connection.ending = true;
+            }
+            if (connection.running) {
+                return false;
+            }
+            connection.running = true;
+            return true;
+        }
+    }
+
+    /**
+     * @brief Sends as many queued replies as the socket takes.
+     * @param connection The connection.
+     * @throws IOException If the socket cannot be written.
+     */
+    private void write(Connection connection) throws IOException {
+        while (true) {
+            writeBuffer.clear();
+            synchronized (connection) {
+                for (ByteBuffer reply : connection.output) {
+                    if (!writeBuffer.hasRemaining()) {
+                        break;
+                    }
+                    ByteBuffer part = reply.duplicate();
+                    if (part.remaining() > writeBuffer.remaining()) {
+                        part.limit(part.position() + writeBuffer.remaining());
+                    }
+                    writeBuffer.put(part);
+                }
+            }
+            if (writeBuffer.position() == 0) {
+                break;
+            }
+            writeBuffer.flip();
+            int written = connection.channel.write(writeBuffer);
+            synchronized (connection) {
+                connection.outputBytes -= written;
+                while (written > 0) {
+                    ByteBuffer reply = connection.output.peek();
+                    int part = Math.min(written, reply.remaining());
+                    reply.position(reply.position() + part);
+                    written -= part;
+                    if (!reply.hasRemaining()) {
+                        connection.output.poll();
+                    }
+                }
+            }
+            if (writeBuffer.hasRemaining()) {
+                // The socket send buffer is full.
+                break;
+            }
+        }
+        updateInterest(connection);
+    }
+
+    /**
+     * @brief Closes a finished connection or selects the events it waits for.
+     * @param connection The connection.
+     */
+    private void updateInterest(Connection connection) {
+        if (connection.unread != null && !connection.isBacklogged()) {
+            split(connection, connection.unread);
+        }
+        if (connection.isDone()) {
+            close(connection);
+            return;
+        }
+        int ops = 0;
+        synchronized (connection) {
+            if (!connection.ending && connection.unread == null && !connection.isBacklogged()) {
+                ops |= SelectionKey.OP_READ;
+            }
+            if (!connection.output.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+        }
+        connection.key.interestOps(ops);
+    }
+
+    private void close(Connection connection) {
+        if (connection.key.isValid() || connection.channel.isOpen()) {
+            connection.key.cancel();
+            closeQuietly(connection.channel);
+            connectionCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * @brief Executes the queued commands of a connection until none are left.
+     * @param connection The connection.
+     */
+    private void work(Connection connection) {
+        while (true) {
+            String[] batch;
+            synchronized (connection) {
+                if (connection.commands.isEmpty()) {
+                    connection.running = false;
+                    break;
+                }
+                batch = connection.commands.toArray(new String[connection.commands.size()]);
+                connection.commands.clear();
+            }
+            StringBuilder replies = new StringBuilder();
+            boolean quit = false;
+            for (String line : batch) {
+                quit = execute(connection, line, replies);
+                if (quit) {
+                    break;
+                }
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(replies.toString().getBytes(StandardCharsets.UTF_8));
+            synchronized (connection) {
+                connection.output.add(bytes);
+                connection.outputBytes += bytes.remaining();
+                if (quit) {
+                    connection.ending = true;
+                    connection.commands.clear();
+                }
+            }
+            replied.add(connection);
+            selector.wakeup();
+        }
+        // The selector closes the connection if it is ending and everything is sent.
+        replied.add(connection);
+        selector.wakeup();
+    }
+
+    /**
+     * @brief Executes one command line and appends its reply.
+     * @param connection The connection the command came from.
+     * @param line The command line.
+     * @param reply Receives the reply lines.
+     * @return True if the connection is to be closed after the reply.
+     */
+    private boolean execute(Connection connection, String line, StringBuilder reply) {
+        if (line == OVERFLOW) {
+            reply.append("ERR BAD_REQUEST line longer than ").append(MAX_LINE).append(" bytes\n");
+            return true;
+        }
+        String trimmed = line.trim();
+        int space = trimmed.indexOf(' ');
+        String command = (space < 0 ? trimmed : trimmed.substring(0, space)).toUpperCase(Locale.ROOT);
+        String argument = space < 0 ? "" : trimmed.substring(space + 1).trim();
+        try {
+            if (command.isEmpty()) {
+                return badRequest(reply, "empty command");
+            }
+            if ("QUIT".equals(command)) {
+                reply.append("OK\n");
+                return true;
+            }
+            if ("LOGIN".equals(command)) {
+                String[] credentials = argument.split(" +");
+                if (credentials.length != 2) {
+                    return badRequest(reply, "LOGIN takes an email and a password");
+                }
+                User user = new User();
+                user.setEmail(credentials[0]);
+                user.setPassword(credentials[1]);
+                OperationResult result = service.loginUser(user, pathFileUsers);
+                connection.loggedIn = result.isSuccess();
+                return append(reply, result);
+            }
+            if (!connection.loggedIn) {
+                reply.append("ERR LOGIN_REQUIRED\n");
+                return false;
+            }
+            switch (command) {
+                case "LIST":
+                    return list(argument, reply);
+                case "ADD":
+                    if (argument.isEmpty()) {
+                        return badRequest(reply, "ADD takes a title");
+                    }
+                    return append(reply, service.addBook(argument, pathFileBooks));
+                case "RENAME":
+                    int separator = argument.indexOf(' ');
+                    if (separator < 0) {
+                        return badRequest(reply, "RENAME takes an ID and a title");
+                    }
+                    return append(reply, service.renameBook(Integer.parseInt(argument.substring(0, separator)),
+                            argument.substring(separator + 1).trim(), pathFileBooks));
+                case "FIND":
+                    return append(reply, service.findBook(Integer.parseInt(argument), pathFileBooks));
+                case "BORROW":
+                    return append(reply, service.borrowBook(Integer.parseInt(argument), pathFileBooks));
+                case "RETURN":
+                    return append(reply, service.returnBook(Integer.parseInt(argument), pathFileBooks));
+                case "MARK":
+                    return append(reply, service.markAsRead(Integer.parseInt(argument), pathFileBooks));
+                case "WISH":
+                    return append(reply, service.setWishlist(Integer.parseInt(argument), true, pathFileBooks));
+                case "UNWISH":
+                    return append(reply, service.setWishlist(Integer.parseInt(argument), false, pathFileBooks));
+                case "DELETE":
+                    return append(reply, service.deleteBook(Integer.parseInt(argument), pathFileBooks));
+                default:
+                    return badRequest(reply, "unknown command " + command);
+            }
+        } catch (NumberFormatException e) {
+            return badRequest(reply, command + " takes a book ID");
+        } catch (IOException e) {
+            appendText(reply.append("ERR IO "), String.valueOf(e.getMessage())).append('\n');
+            return false;
+        }
+    }
+
+    private boolean list(String argument, StringBuilder reply) throws IOException {
+        List<Book> books;
+        if (argument.isEmpty()) {
+            books = service.listBooks(pathFileBooks);
+        } else {
+            BookFlag flag;
+            try {
+                flag = BookFlag.valueOf(argument.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return badRequest(reply, "LIST takes MARKED, WISHLIST or LOANED");
+            }
+            books = service.listBooks(pathFileBooks, flag, true);
+        }
+        reply.append("OK ").append(books.size()).append('\n');
+        for (Book book : books) {
+            appendBook(reply, book);
+        }
+        return false;
+    }
+
+    private static boolean append(StringBuilder reply, OperationResult result) {
+        if (!result.isSuccess()) {
+            reply.append("ERR ").append(result.getStatus()).append('\n');
+        } else if (result.getBook() == null) {
+            reply.append("OK\n");
+        } else {
+            reply.append("OK ");
+            appendBook(reply, result.getBook());
+        }
+        return false;
+    }
+
+    private static void appendBook(StringBuilder reply, Book book) {
+        reply.append(book.getId()).append(' ')
+                .append(book.isMarked() ? 'M' : '-')
+                .append(book.isWishlist() ? 'W' : '-')
+                .append(book.isLoaned() ? 'L' : '-')
+                .append(' ');
+        appendText(reply, book.getName()).append('\n');
+    }
+
+    private static boolean badRequest(StringBuilder reply, String message) {
+        appendText(reply.append("ERR BAD_REQUEST "), message).append('\n');
+        return false;
+    }
+
+    /**
+     * @brief Appends a title or message with its backslashes and line breaks escaped.
+     * @param reply Receives the text.
+     * @param text The text, which may hold any character.
+     * @return The reply.
+     */
+    private static StringBuilder appendText(StringBuilder reply, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                reply.append("\\\\");
+            } else if (c == '\n') {
+                reply.append("\\n");
+            } else if (c == '\r') {
+                reply.append("\\r");
+            } else {
+                reply.append(c);
+            }
+        }
+        return reply;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Already broken.
+        }
+    }
+}
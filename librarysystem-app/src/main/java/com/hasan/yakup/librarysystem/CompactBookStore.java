@@ -0,0 +1,396 @@
+/**
+ * @file CompactBookStore.java
+ * @brief BookStore for the varint-encoded compact books file format.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * @class CompactBookStore
+ * @brief Stores books as variable-length records with delta-coded IDs and packed flags.
+ * @details The records follow a FileHeader with magic number "LSBC". A record is the
+ * difference to the previous book ID as a zigzag varint, one byte holding the marked (bit 0),
+ * wishlist (bit 1) and loaned (bit 2) flags, and the title as a varint length followed by
+ * UTF-8 bytes, so titles are not limited to 64 KB. With the FileHeader.FLAG_SHARED_PREFIX
+ * flag the title is front coded: a varint gives the number of leading bytes it shares with
+ * the previous title and only the rest is stored, which keeps series titles such as
+ * "... Volume 12" short. New files use front coding unless the system property
+ * {@value #PREFIX_PROPERTY} is {@code false}; existing files keep their setting.
+ * <p>
+ * As in the stream format, additions are appended and every other change rewrites the file.
+ * An append continues the deltas from the last record of the loaded file.
+ * </p>
+ */
+public class CompactBookStore extends FileBookStore {
+    /** System property turning front coding of titles in new files on or off. */
+    public static final String PREFIX_PROPERTY = "librarysystem.compact.sharedPrefix";
+
+    /** Longest record header: ID delta, flags, shared prefix length and title length. */
+    private static final int MAX_RECORD_HEADER = 5 + 1 + 5 + 5;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private int flags = defaultFlags();
+    private long recordCount;
+    private int lastId;
+    private byte[] lastTitle = new byte[0];
+
+    /**
+     * @brief Constructor for CompactBookStore.
+     * @param path The path to the file containing book information.
+     */
+    public CompactBookStore(Path path) {
+        super(path);
+    }
+
+    @Override
+    public BookFormat getFormat() {
+        return BookFormat.COMPACT;
+    }
+
+    @Override
+    public void load(Map<Integer, Book> books) throws IOException {
+        remember();
+        flags = defaultFlags();
+        recordCount = 0;
+        lastId = 0;
+        lastTitle = new byte[0];
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            return;
+        }
+        try (Reader reader = new Reader(path)) {
+            flags = reader.header.hasFlag(FileHeader.FLAG_SHARED_PREFIX) ? FileHeader.FLAG_SHARED_PREFIX : 0;
+            Book book;
+            while ((book = reader.next()) != null) {
+                putLoaded(books, book);
+                recordCount++;
+            }
+            lastId = reader.previousId;
+            lastTitle = Arrays.copyOf(reader.title, reader.titleLength);
+        }
+    }
+
+    @Override
+    public boolean rewrites(List<BookChange> changes) {
+        for (BookChange change : changes) {
+            if (change.getKind() != BookChange.Kind.ADD) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void write(List<BookChange> changes, Collection<Book> books) throws IOException {
+        if (rewrites(changes)) {
+            Path temporary = temporaryPathOf(path);
+            Encoder encoder = new Encoder(flags);
+            try (FileOutputStream output = new FileOutputStream(temporary.toFile());
+                    DataOutputStream writer = new DataOutputStream(new BufferedOutputStream(output, BUFFER_SIZE))) {
+                FileHeader.of(FileHeader.COMPACT_MAGIC, flags, books.size()).write(writer);
+                for (Book book : books) {
+                    encoder.write(writer, book);
+                }
+                writer.flush();
+                if (forceWrites) {
+                    output.getFD().sync();
+                }
+            }
+            replace(temporary, path, forceWrites);
+            recordCount = books.size();
+            lastId = encoder.previousId;
+            lastTitle = Arrays.copyOf(encoder.previous, encoder.previousLength);
+        } else {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                boolean created = channel.size() == 0;
+                channel.position(channel.size());
+                DataOutputStream writer = new DataOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+                Encoder encoder = new Encoder(flags);
+                if (created) {
+                    FileHeader.of(FileHeader.COMPACT_MAGIC, flags, 0).write(writer);
+                } else {
+                    encoder.continueAfter(lastId, lastTitle);
+                }
+                for (BookChange change : changes) {
+                    encoder.write(writer, change.getBook());
+                }
+                writer.flush();
+                recordCount += changes.size();
+                FileHeader.writeCount(channel, recordCount);
+                if (forceWrites) {
+                    channel.force(false);
+                }
+                lastId = encoder.previousId;
+                lastTitle = Arrays.copyOf(encoder.previous, encoder.previousLength);
+            }
+        }
+        remember();
+    }
+
+    /**
+     * @brief Writes a complete compact file from a sequence of books.
+     * @details Front coding follows the {@value #PREFIX_PROPERTY} system property.
+     * @param books The books in file order.
+     * @param target The file to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void writeAll(Iterable<Book> books, Path target) throws IOException {
+        int flags = defaultFlags();
+        Encoder encoder = new Encoder(flags);
+        try (FileOutputStream output = new FileOutputStream(target.toFile());
+                DataOutputStream writer = new DataOutputStream(new BufferedOutputStream(output, BUFFER_SIZE))) {
+            FileHeader.of(FileHeader.COMPACT_MAGIC, flags, 0).write(writer);
+            long count = 0;
+            for (Book book : books) {
+                encoder.write(writer, book);
+                count++;
+            }
+            writer.flush();
+            FileHeader.writeCount(output.getChannel(), count);
+        }
+    }
+
+    /**
+     * @brief Visits every book of a compact file in file order without loading the catalog.
+     * @param path The path of the compact file.
+     * @param sink Receives the books.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void forEach(Path path, Consumer<Book> sink) throws IOException {
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            return;
+        }
+        try (Reader reader = new Reader(path)) {
+            Book book;
+            while ((book = reader.next()) != null) {
+                sink.accept(book);
+            }
+        }
+    }
+
+    /**
+     * @brief Opens a cursor over the books of a compact file.
+     * @param path The path of the compact file, which must exist.
+     * @return The cursor.
+     * @throws IOException If an I/O error occurs or the file is not in the compact format.
+     */
+    static BookCursor cursor(Path path) throws IOException {
+        return new Reader(path);
+    }
+
+    /**
+     * @brief Checks whether a file is in the compact format.
+     * @param path The path of the file.
+     * @return True if the file starts with the compact magic number.
+     * @throws IOException If an I/O error occurs.
+     */
+    static boolean isCompact(Path path) throws IOException {
+        if (!Files.exists(path) || Files.size(path) < FileHeader.SIZE) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            SlottedBookStore.readFully(channel, magic, 0);
+            magic.flip();
+            return magic.getInt() == FileHeader.COMPACT_MAGIC;
+        }
+    }
+
+    private static int defaultFlags() {
+        return Boolean.parseBoolean(System.getProperty(PREFIX_PROPERTY, "true")) ? FileHeader.FLAG_SHARED_PREFIX : 0;
+    }
+
+    /**
+     * @brief Encodes records, keeping the previous ID and title for the deltas.
+     */
+    private static final class Encoder {
+        private final boolean sharedPrefix;
+        private final byte[] header = new byte[MAX_RECORD_HEADER];
+        private byte[] previous = new byte[64];
+        private int previousLength;
+        private int previousId;
+
+        Encoder(int flags) {
+            this.sharedPrefix = (flags & FileHeader.FLAG_SHARED_PREFIX) != 0;
+        }
+
+        void continueAfter(int id, byte[] title) {
+            previousId = id;
+            previous = Arrays.copyOf(title, Math.max(64, title.length));
+            previousLength = title.length;
+        }
+
+        void write(OutputStream output, Book book) throws IOException {
+            byte[] title = book.getName().getBytes(StandardCharsets.UTF_8);
+            int shared = 0;
+            if (sharedPrefix) {
+                int limit = Math.min(title.length, previousLength);
+                while (shared < limit && title[shared] == previous[shared]) {
+                    shared++;
+                }
+            }
+            int delta = book.getId() - previousId;
+            int length = putVarint(header, 0, (delta << 1) ^ (delta >> 31));
+            header[length++] = (byte) ((book.isMarked() ? 1 : 0) | (book.isWishlist() ? 2 : 0)
+                    | (book.isLoaned() ? 4 : 0));
+            if (sharedPrefix) {
+                length = putVarint(header, length, shared);
+            }
+            length = putVarint(header, length, title.length - shared);
+            output.write(header, 0, length);
+            output.write(title, shared, title.length - shared);
+
+            previousId = book.getId();
+            if (previous.length < title.length) {
+                previous = new byte[Math.max(title.length, previous.length * 2)];
+            }
+            System.arraycopy(title, shared, previous, shared, title.length - shared);
+            previousLength = title.length;
+        }
+
+        private static int putVarint(byte[] target, int offset, int value) {
+            while ((value & ~0x7F) != 0) {
+                target[offset++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            target[offset++] = (byte) value;
+            return offset;
+        }
+    }
+
+    /**
+     * @brief Decodes the records of a compact file through a refilled buffer.
+     * @details Only the bytes the file had when it was opened are read.
+     */
+    private static final class Reader implements BookCursor {
+        private final FileChannel channel;
+        private final FileHeader header;
+        private final long end;
+        private final boolean sharedPrefix;
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private byte[] title = new byte[64];
+        private int titleLength;
+        private int previousId;
+
+        Reader(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            try {
+                header = FileHeader.read(channel, FileHeader.COMPACT_MAGIC);
+                if (header.isLegacy()) {
+                    throw new IOException("Not a compact books file");
+                }
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            sharedPrefix = header.hasFlag(FileHeader.FLAG_SHARED_PREFIX);
+            end = channel.size();
+            channel.position(header.dataOffset());
+            buffer.flip();
+        }
+
+        @Override
+        public Book next() throws IOException {
+            fill(MAX_RECORD_HEADER);
+            if (!buffer.hasRemaining()) {
+                return null;
+            }
+            int shared;
+            int length;
+            int flags;
+            try {
+                int zigzag = getVarint();
+                previousId += (zigzag >>> 1) ^ -(zigzag & 1);
+                flags = buffer.get();
+                shared = sharedPrefix ? getVarint() : 0;
+                length = getVarint();
+            } catch (BufferUnderflowException e) {
+                throw new EOFException("Truncated book record");
+            }
+            if (shared > titleLength || length < 0 || shared + length < 0) {
+                throw new IOException("Corrupt compact book record");
+            }
+            if (!fill(length)) {
+                throw new EOFException("Truncated book record");
+            }
+            if (title.length < shared + length) {
+                title = Arrays.copyOf(title, Math.max(shared + length, title.length * 2));
+            }
+            buffer.get(title, shared, length);
+            titleLength = shared + length;
+            return new Book(previousId, new String(title, 0, titleLength, StandardCharsets.UTF_8), (flags & 1) != 0,
+                    (flags & 2) != 0, (flags & 4) != 0);
+        }
+
+        private int getVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new BufferUnderflowException();
+        }
+
+        /**
+         * @brief Tries to have at least the given number of bytes buffered.
+         * @param wanted The number of bytes.
+         * @return True if they are buffered, false if the file ends earlier.
+         * @throws IOException If an I/O error occurs.
+         */
+        private boolean fill(int wanted) throws IOException {
+            if (buffer.remaining() >= wanted) {
+                return true;
+            }
+            if (buffer.capacity() < wanted) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(wanted, buffer.capacity() * 2));
+                larger.put(buffer);
+                buffer = larger;
+            } else {
+                buffer.compact();
+            }
+            long left = end - channel.position();
+            if (buffer.remaining() > left) {
+                buffer.limit(buffer.position() + (int) left);
+            }
+            while (buffer.position() < wanted && buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            return buffer.remaining() >= wanted;
+        }
+
+        @Override
+        public long recordCount() {
+            return header.getRecordCount();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * @file FileBookStore.java
+ * @brief Common base of stores that keep a catalog in a single file.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * @class FileBookStore
+ * @brief Base class for single-file stores that detects changes made by other writers.
+ * @details Subclasses call {@link #remember()} before every load and after every write, so
+ * the store is stale exactly when the file was changed by someone else. The static helpers
+ * implement the durable rewrite used by all stores: write a temporary file, force it to disk,
+ * rename it over the original and force the directory entry.
+ */
+public abstract class FileBookStore implements BookStore {
+    /** The path of the books file. */
+    protected final Path path;
+    /** Whether writes are forced to disk. */
+    protected final boolean forceWrites = SyncMode.configured().forcesWrites();
+    private FileStamp stamp;
+
+    /**
+     * @brief Constructor for FileBookStore.
+     * @param path The path to the file containing book information.
+     */
+    protected FileBookStore(Path path) {
+        this.path = path;
+    }
+
+    @Override
+    public boolean isStale() throws IOException {
+        return !FileStamp.of(path).equals(stamp);
+    }
+
+    /**
+     * @brief Records the current version of the file as the one this store knows.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected void remember() throws IOException {
+        stamp = FileStamp.of(path);
+    }
+
+    /**
+     * @brief Puts a book read from the file into the catalog being loaded.
+     * @details Old files may repeat an ID. Putting the second book would replace the first
+     * and lose it on the next rewrite, so the load fails instead.
+     * @param books The catalog being loaded.
+     * @param book The book read from the file.
+     * @throws IOException If the catalog already holds a book with the same ID.
+     */
+    protected void putLoaded(Map<Integer, Book> books, Book book) throws IOException {
+        if (books.containsKey(book.getId())) {
+            throw duplicateId(book.getId());
+        }
+        books.put(book.getId(), book);
+    }
+
+    /**
+     * @brief Creates the error for a file that contains an ID more than once.
+     * @param id The repeated ID.
+     * @return The exception to throw.
+     */
+    protected IOException duplicateId(int id) {
+        return new IOException("Book ID " + id + " occurs more than once in " + path);
+    }
+
+    /**
+     * @brief Gets the temporary file a rewrite of a file is written to.
+     * @param path The path of the file.
+     * @return The path of its temporary file.
+     */
+    static Path temporaryPathOf(Path path) {
+        return Paths.get(path.toString() + ".tmp");
+    }
+
+    /**
+     * @brief Forces the content of a file to disk.
+     * @param path The path of the file.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void force(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * @brief Atomically replaces a file with a completely written temporary file.
+     * @param temporary The temporary file, already forced to disk if required.
+     * @param target The file to be replaced.
+     * @param force Whether the directory entry is forced to disk after the rename.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void replace(Path temporary, Path target, boolean force) throws IOException {
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (force) {
+            forceDirectory(target);
+        }
+    }
+
+    /**
+     * @brief Forces the directory entry of a file to disk.
+     * @details Not every platform can open a directory for syncing; there the rename is
+     * left to the file system.
+     * @param path The path of the file whose directory is synced.
+     */
+    static void forceDirectory(Path path) {
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Directories cannot be synced on this platform.
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * @file FileHeader.java
+ * @brief Versioned header of the stream and compact books files and the users file.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @class FileHeader
+ * @brief The 16-byte header in front of the records of books.bin and users.bin.
+ * @details The header holds a magic number identifying the kind of file ({@code writeInt}),
+ * the format version ({@code writeShort}), feature flags ({@code writeShort}) and the number
+ * of records ({@code writeLong}). Files written before the header existed start directly
+ * with their first record; they are read as version {@value #LEGACY_VERSION}. A legacy books
+ * file whose first book ID happens to equal the magic number cannot be told apart, which
+ * sequentially allocated IDs never reach in practice.
+ * <p>
+ * Readers reject versions newer than {@value #CURRENT_VERSION} and flags they do not know
+ * instead of misparsing the records. The record count is rewritten after records are added;
+ * a crash in between leaves it too low, so it is a sizing hint and the records are
+ * authoritative.
+ * </p>
+ * <p>
+ * The lock file of a ProcessLock consists of this header alone; its record count is the
+ * number of changes written to the data file under the lock.
+ * </p>
+ */
+final class FileHeader {
+    /** Magic number of a books file in the stream format ("LSBK"). */
+    static final int BOOKS_MAGIC = 0x4C53424B;
+    /** Magic number of a users file ("LSUS"). */
+    static final int USERS_MAGIC = 0x4C535553;
+    /** Magic number of a books file in the compact format ("LSBC"). */
+    static final int COMPACT_MAGIC = 0x4C534243;
+    /** Magic number of the lock file next to a books or users file ("LSLK"). */
+    static final int LOCK_MAGIC = 0x4C534C4B;
+    /** Flag of compact files whose titles share their prefix with the previous title. */
+    static final int FLAG_SHARED_PREFIX = 1;
+    /** Size of the header in bytes. */
+    static final int SIZE = 16;
+    /** Version of files without a header. */
+    static final int LEGACY_VERSION = 0;
+    /** Version written by this code. */
+    static final int CURRENT_VERSION = 1;
+
+    /** Flags understood by this code. */
+    private static final int KNOWN_FLAGS = FLAG_SHARED_PREFIX;
+    /** Offset of the record count within the header. */
+    private static final int COUNT_OFFSET = 8;
+
+    private final int magic;
+    private final int version;
+    private final int flags;
+    private final long recordCount;
+
+    private FileHeader(int magic, int version, int flags, long recordCount) {
+        this.magic = magic;
+        this.version = version;
+        this.flags = flags;
+        this.recordCount = recordCount;
+    }
+
+    /**
+     * @brief Creates a header of the current version.
+     * @param magic The magic number of the kind of file.
+     * @param recordCount The number of records that follow.
+     * @return The header.
+     */
+    static FileHeader of(int magic, long recordCount) {
+        return of(magic, 0, recordCount);
+    }
+
+    /**
+     * @brief Creates a header of the current version with feature flags.
+     * @param magic The magic number of the kind of file.
+     * @param flags The feature flags.
+     * @param recordCount The number of records that follow.
+     * @return The header.
+     */
+    static FileHeader of(int magic, int flags, long recordCount) {
+        return new FileHeader(magic, CURRENT_VERSION, flags, recordCount);
+    }
+
+    /**
+     * @brief Reads the header of a file.
+     * @param path The path of the file.
+     * @param magic The magic number of the expected kind of file.
+     * @return The header; a legacy header if the file is missing, empty or has no header.
+     * @throws IOException If an I/O error occurs or the header has an unsupported version or flags.
+     */
+    static FileHeader read(Path path, int magic) throws IOException {
+        if (!Files.exists(path)) {
+            return new FileHeader(magic, LEGACY_VERSION, 0, 0);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel, magic);
+        }
+    }
+
+    /**
+     * @brief Reads the header at the start of an open file.
+     * @param channel The open file; its position is not changed.
+     * @param magic The magic number of the expected kind of file.
+     * @return The header; a legacy header if the file is empty or has no header.
+     * @throws IOException If an I/O error occurs or the header has an unsupported version or flags.
+     */
+    static FileHeader read(FileChannel channel, int magic) throws IOException {
+        if (channel.size() < SIZE) {
+            return new FileHeader(magic, LEGACY_VERSION, 0, 0);
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(SIZE);
+        SlottedBookStore.readFully(channel, bytes, 0);
+        bytes.flip();
+        if (bytes.getInt() != magic) {
+            return new FileHeader(magic, LEGACY_VERSION, 0, 0);
+        }
+        int version = bytes.getShort() & 0xFFFF;
+        int flags = bytes.getShort() & 0xFFFF;
+        if (version == LEGACY_VERSION || version > CURRENT_VERSION) {
+            throw new IOException("Unsupported file version " + version);
+        }
+        if ((flags & ~KNOWN_FLAGS) != 0) {
+            throw new IOException("Unsupported file flags 0x" + Integer.toHexString(flags));
+        }
+        return new FileHeader(magic, version, flags, bytes.getLong());
+    }
+
+    /**
+     * @brief Overwrites the record count of a file with a header.
+     * @param channel The file, opened for writing but not for appending.
+     * @param recordCount The new record count.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void writeCount(FileChannel channel, long recordCount) throws IOException {
+        ByteBuffer count = ByteBuffer.allocate(8);
+        count.putLong(recordCount).flip();
+        while (count.hasRemaining()) {
+            channel.write(count, COUNT_OFFSET + count.position());
+        }
+    }
+
+    /**
+     * @brief Writes this header.
+     * @param output The stream at the start of the file.
+     * @throws IOException If an I/O error occurs.
+     */
+    void write(DataOutput output) throws IOException {
+        output.writeInt(magic);
+        output.writeShort(version);
+        output.writeShort(flags);
+        output.writeLong(recordCount);
+    }
+
+    /**
+     * @brief Checks whether the file has no header.
+     * @return True for legacy files.
+     */
+    boolean isLegacy() {
+        return version == LEGACY_VERSION;
+    }
+
+    /**
+     * @brief Gets the format version.
+     * @return The version, {@value #LEGACY_VERSION} for files without a header.
+     */
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * @brief Checks whether a feature flag is set.
+     * @param flag The flag.
+     * @return True if the file uses the feature.
+     */
+    boolean hasFlag(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    /**
+     * @brief Gets the recorded number of records.
+     * @return The record count, 0 for files without a header.
+     */
+    long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @brief Gets the offset of the first record.
+     * @return 0 for legacy files, the header size otherwise.
+     */
+    long dataOffset() {
+        return isLegacy() ? 0 : SIZE;
+    }
+}
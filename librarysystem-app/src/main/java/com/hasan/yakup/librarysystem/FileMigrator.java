@@ -0,0 +1,195 @@
+/**
+ * @file FileMigrator.java
+ * @brief Upgrades books and users files written without a FileHeader.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @class FileMigrator
+ * @brief Puts a FileHeader in front of legacy books and users files.
+ * @details The records of a legacy file are already in the layout of version 1, so a
+ * migration only counts them and copies the file behind a new header. Counting walks the
+ * record lengths without decoding titles, emails or passwords, and the copy is a
+ * {@code transferTo} from the old file, so neither step holds more than a buffer in memory
+ * and both run at about disk speed. The copy is written to a temporary file that replaces
+ * the original, as for a format conversion. A migration holds the exclusive ProcessLock of
+ * the file, so repositories of any process wait for it and reload afterwards.
+ * <p>
+ * Only stream-format books files, including the snapshot of a log-format catalog, have no
+ * header of their own; slotted and block files are left as they are.
+ * </p>
+ * <p>
+ * Old stream files may also repeat a book ID, which the stores refuse to load. Migrating
+ * such a file, with or without a header, keeps the first book with each ID and gives every
+ * later one a new ID above the highest in the file. This rewrite decodes one record at a
+ * time; only the set of seen IDs grows with the file.
+ * </p>
+ */
+public final class FileMigrator {
+    private FileMigrator() {
+    }
+
+    /**
+     * @brief Migrates a legacy books file or renumbers the repeated IDs of a stream file.
+     * @param path The path to the file containing book information.
+     * @return The number of records migrated, or -1 if the file is missing, empty or needs no migration.
+     * @throws IOException If an I/O error occurs or the file is corrupt.
+     */
+    public static long migrateBooks(Path path) throws IOException {
+        ProcessLock lock = ProcessLock.of(path);
+        try (ProcessLock.Hold hold = lock.exclusive()) {
+            return recorded(lock, migrateBooksLocked(path));
+        }
+    }
+
+    private static long migrateBooksLocked(Path path) throws IOException {
+        BookFormat format = BookStores.detect(path);
+        if (format != BookFormat.STREAM && format != BookFormat.LOG || !Files.exists(path) || Files.size(path) == 0) {
+            return -1;
+        }
+        long count = 0;
+        int maxId = 0;
+        boolean repeated = false;
+        IdSet seen = new IdSet();
+        try (StreamRecordReader reader = StreamRecordReader.open(path)) {
+            while (reader.advance()) {
+                count++;
+                maxId = Math.max(maxId, reader.getId());
+                repeated |= !seen.add(reader.getId());
+            }
+        }
+        if (repeated) {
+            renumber(path, count, maxId);
+        } else if (needsMigration(path, FileHeader.BOOKS_MAGIC)) {
+            copyBehindHeader(path, FileHeader.of(FileHeader.BOOKS_MAGIC, count));
+        } else {
+            return -1;
+        }
+        return count;
+    }
+
+    /**
+     * @brief Migrates a legacy users file.
+     * @param path The path to the file containing user information.
+     * @return The number of records migrated, or -1 if the file is missing, empty or needs no migration.
+     * @throws IOException If an I/O error occurs or the file is corrupt.
+     */
+    public static long migrateUsers(Path path) throws IOException {
+        ProcessLock lock = ProcessLock.of(path);
+        try (ProcessLock.Hold hold = lock.exclusive()) {
+            if (!needsMigration(path, FileHeader.USERS_MAGIC)) {
+                return -1;
+            }
+            long count = UserFile.countRecords(path);
+            copyBehindHeader(path, FileHeader.of(FileHeader.USERS_MAGIC, count));
+            return recorded(lock, count);
+        }
+    }
+
+    /**
+     * @brief Counts a migration as a change of the file.
+     * @param lock The lock of the file, held exclusively.
+     * @param migrated The result of the migration.
+     * @return The result of the migration.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static long recorded(ProcessLock lock, long migrated) throws IOException {
+        if (migrated >= 0) {
+            lock.recordChange();
+        }
+        return migrated;
+    }
+
+    private static boolean needsMigration(Path path, int magic) throws IOException {
+        return Files.exists(path) && Files.size(path) > 0 && FileHeader.read(path, magic).isLegacy();
+    }
+
+    /**
+     * @brief Rewrites a stream books file with a header, giving repeated IDs new ones.
+     * @param path The path of the file.
+     * @param count The number of records in the file.
+     * @param maxId The highest ID in the file.
+     * @throws IOException If an I/O error occurs, the file is corrupt or the IDs run out.
+     */
+    private static void renumber(Path path, long count, int maxId) throws IOException {
+        Path temporary = FileBookStore.temporaryPathOf(path);
+        boolean force = SyncMode.configured().forcesWrites();
+        IdSet seen = new IdSet();
+        try (StreamRecordReader reader = StreamRecordReader.open(path);
+                FileOutputStream output = new FileOutputStream(temporary.toFile());
+                DataOutputStream writer = new DataOutputStream(new BufferedOutputStream(output, 1 << 16))) {
+            FileHeader.of(FileHeader.BOOKS_MAGIC, count).write(writer);
+            Book book;
+            while ((book = reader.next()) != null) {
+                if (!seen.add(book.getId())) {
+                    if (maxId == Integer.MAX_VALUE) {
+                        throw new IOException("No free book ID left to renumber " + path);
+                    }
+                    book.setId(++maxId);
+                }
+                StreamBookStore.writeBook(writer, book);
+            }
+            writer.flush();
+            if (force) {
+                output.getFD().sync();
+            }
+        }
+        FileBookStore.replace(temporary, path, force);
+    }
+
+    /**
+     * @class IdSet
+     * @brief Set of book IDs, one bit per non-negative ID.
+     */
+    private static final class IdSet {
+        private final BitSet ids = new BitSet();
+        private final Set<Integer> negativeIds = new HashSet<Integer>();
+
+        /**
+         * @brief Adds an ID.
+         * @param id The ID.
+         * @return False if the set already held the ID.
+         */
+        boolean add(int id) {
+            if (id < 0) {
+                return negativeIds.add(id);
+            }
+            if (ids.get(id)) {
+                return false;
+            }
+            ids.set(id);
+            return true;
+        }
+    }
+
+    private static void copyBehindHeader(Path path, FileHeader header) throws IOException {
+        Path temporary = FileBookStore.temporaryPathOf(path);
+        boolean force = SyncMode.configured().forcesWrites();
+        try (FileChannel source = FileChannel.open(path, StandardOpenOption.READ);
+                FileOutputStream output = new FileOutputStream(temporary.toFile())) {
+            header.write(new DataOutputStream(output));
+            FileChannel target = output.getChannel();
+            long size = source.size();
+            long position = 0;
+            while (position < size) {
+                position += source.transferTo(position, size - position, target);
+            }
+            if (force) {
+                output.getFD().sync();
+            }
+        }
+        FileBookStore.replace(temporary, path, force);
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * @file FileStamp.java
+ * @brief Cheap identity of a file version.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+
+/**
+ * @class FileStamp
+ * @brief Identity of a file version: existence, file key, size and modification time.
+ * @details Comparing two stamps costs one attribute lookup instead of reading the file,
+ * which is enough to notice that another writer replaced or changed it.
+ */
+final class FileStamp {
+    private final boolean exists;
+    private final Object fileKey;
+    private final long size;
+    private final FileTime modified;
+
+    private FileStamp(boolean exists, Object fileKey, long size, FileTime modified) {
+        this.exists = exists;
+        this.fileKey = fileKey;
+        this.size = size;
+        this.modified = modified;
+    }
+
+    /**
+     * @brief Takes the stamp of a file.
+     * @param path The path of the file.
+     * @return The current stamp; a missing file has a stamp of its own.
+     * @throws IOException If an I/O error occurs.
+     */
+    static FileStamp of(Path path) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new FileStamp(true, attributes.fileKey(), attributes.size(), attributes.lastModifiedTime());
+        } catch (NoSuchFileException e) {
+            return new FileStamp(false, null, 0, null);
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof FileStamp)) {
+            return false;
+        }
+        FileStamp that = (FileStamp) other;
+        return exists == that.exists && size == that.size && Objects.equals(modified, that.modified)
+                && Objects.equals(fileKey, that.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(exists, fileKey, size, modified);
+    }
+}
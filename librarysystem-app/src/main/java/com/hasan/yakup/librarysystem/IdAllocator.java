@@ -0,0 +1,152 @@
+/**
+ * @file IdAllocator.java
+ * @brief Persistent allocator of monotonic book IDs.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * @class IdAllocator
+ * @brief Hands out book IDs that are never reused, without scanning the catalog.
+ * @details IDs are leased in blocks: the end of the current block is written to the
+ * {@code <file>.ids} sidecar before the first ID of the block is handed out, and the IDs
+ * inside the block are then served from memory. After a restart allocation continues
+ * behind the persisted block end, so IDs of deleted books or of a block cut short by a
+ * crash are skipped rather than reused. Blocks are leased under the exclusive ProcessLock
+ * of the books file, behind the block end persisted by any process, so processes sharing
+ * the file never hand out the same ID.
+ */
+final class IdAllocator {
+    /** Number of IDs leased with one sidecar write. */
+    static final int BLOCK_SIZE = 64;
+
+    private static final int MAGIC = 0x424B4944;
+    private static final int VERSION = 1;
+
+    private final Path sidecar;
+    private final ProcessLock processLock;
+    private final boolean forceWrites = SyncMode.configured().forcesWrites();
+    private int next = 1;
+    private int limit;
+
+    /**
+     * @brief Constructor for IdAllocator.
+     * @param path The path to the file containing book information.
+     */
+    IdAllocator(Path path) {
+        this.sidecar = sidecarPathOf(path);
+        this.processLock = ProcessLock.of(path);
+    }
+
+    /**
+     * @brief Resets the allocator after the catalog was loaded.
+     * @details An empty catalog without a books file starts over at 1 and discards the sidecar.
+     * @param maxId The highest ID in the loaded catalog, or 0 if it is empty.
+     * @param catalogExists Whether the books file exists.
+     * @throws IOException If the sidecar cannot be read or deleted.
+     */
+    void reset(int maxId, boolean catalogExists) throws IOException {
+        if (!catalogExists) {
+            Files.deleteIfExists(sidecar);
+        }
+        limit = read();
+        next = Math.max(1, Math.max(limit, maxId + 1));
+    }
+
+    /**
+     * @brief Records an ID that was assigned outside the allocator.
+     * @param id The ID in use.
+     */
+    void observe(int id) {
+        if (id >= next) {
+            next = id + 1;
+        }
+    }
+
+    /**
+     * @brief Allocates the next ID.
+     * @return An ID that was never handed out for this catalog.
+     * @throws IOException If a new block cannot be leased.
+     */
+    int allocate() throws IOException {
+        if (next >= limit) {
+            lease(0);
+        }
+        return next++;
+    }
+
+    /**
+     * @brief Allocates a contiguous range of IDs with a single sidecar write.
+     * @param count The number of IDs needed.
+     * @return The first ID of the range; the range ends before {@code first + count}.
+     * @throws IOException If the range cannot be leased.
+     */
+    int reserve(int count) throws IOException {
+        if (next + count > limit) {
+            lease(count);
+        }
+        int first = next;
+        next += count;
+        return first;
+    }
+
+    /**
+     * @brief Gets the sidecar file of a books file.
+     * @param path The path of the books file.
+     * @return The path of its ID sidecar.
+     */
+    static Path sidecarPathOf(Path path) {
+        return Paths.get(path.toString() + ".ids");
+    }
+
+    /**
+     * @brief Leases a block behind every block leased so far by any process.
+     * @param count The number of IDs needed beyond the usual block.
+     * @throws IOException If the sidecar cannot be read or written.
+     */
+    private void lease(int count) throws IOException {
+        try (ProcessLock.Hold hold = processLock.exclusive()) {
+            next = Math.max(next, read());
+            limit = next + count + BLOCK_SIZE;
+            write(limit);
+        }
+    }
+
+    private int read() throws IOException {
+        if (!Files.exists(sidecar)) {
+            return 0;
+        }
+        try (DataInputStream reader = new DataInputStream(Files.newInputStream(sidecar))) {
+            if (reader.readInt() != MAGIC) {
+                throw new IOException("Not an ID sidecar: " + sidecar);
+            }
+            int version = reader.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported ID sidecar version " + version + ": " + sidecar);
+            }
+            return reader.readInt();
+        }
+    }
+
+    private void write(int blockEnd) throws IOException {
+        Path temporary = FileBookStore.temporaryPathOf(sidecar);
+        try (FileOutputStream output = new FileOutputStream(temporary.toFile());
+                DataOutputStream writer = new DataOutputStream(output)) {
+            writer.writeInt(MAGIC);
+            writer.writeInt(VERSION);
+            writer.writeInt(blockEnd);
+            writer.flush();
+            if (forceWrites) {
+                output.getFD().sync();
+            }
+        }
+        FileBookStore.replace(temporary, sidecar, forceWrites);
+    }
+}
@@ -0,0 +1,640 @@
+/**
+ * @file LibraryHttpServer.java
+ * @brief HTTP/JSON interface to the library operations on the JDK's built-in server.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @class LibraryHttpServer
+ * @brief Serves the catalog and its operations as a JSON API over HTTP, e.g. to kiosks.
+ * @details The resources are:
+ * <ul>
+ * <li>{@code GET /books[?flag=marked|wishlist|loaned]} lists all books, or those having the
+ * flag, as a JSON array of {@code {"id","title","marked","wishlist","loaned"}} objects.</li>
+ * <li>{@code GET /books/<id>} returns one book.</li>
+ * <li>{@code POST /books} with {@code {"title":...}} adds a book.</li>
+ * <li>{@code POST /books/<id>/borrow}, {@code POST /books/<id>/return} and
+ * {@code POST /books/<id>/read} lend, take back and mark a book as read;
+ * {@code PUT} and {@code DELETE /books/<id>/wishlist} put it on the wishlist or take it off.</li>
+ * <li>{@code POST /users} with {@code {"email":...,"password":...}} registers a user and
+ * {@code POST /login} with the same fields returns {@code {"token":...}}.</li>
+ * </ul>
+ * Requests that change the catalog need the header {@code Authorization: Bearer <token>};
+ * a token is valid for {@value #TOKEN_LIFETIME_HOURS} hours. A changed book is returned as
+ * it is after the change. Failures are answered with {@code {"error":<status>}}: 404 for
+ * NOT_FOUND, 409 for UNCHANGED, 401 for INVALID_CREDENTIALS and LOGIN_REQUIRED, 400 for
+ * BAD_REQUEST and 500 for IO, which also carries a {@code "message"}.
+ * <p>
+ * Listings are served from a snapshot of the resident catalog (BookRepository#snapshot()),
+ * like {@code GET /books/<id>}, so both show every change made so far, also in the
+ * asynchronous sync mode where changes reach the file later. The snapshot is decoded and
+ * written as a chunked response one book at a time, without a list of the catalog. Every
+ * listing carries the catalog version (BookRepository#getVersion()) as its ETag and
+ * {@code Cache-Control: no-cache}. Reading the version writes any queued change first, so
+ * the ETag changes with every change applied in memory. A client polling with
+ * {@code If-None-Match} gets {@code 304 Not Modified} while the catalog is unchanged, which
+ * costs one read of the version and no decoding. The version is shared by all processes
+ * using the file, so several servers of the same catalog hand out the same ETags.
+ * </p>
+ * <p>
+ * Exchanges run on a fixed pool of threads fed by a bounded queue. The pool size is read from
+ * the {@value #THREADS_PROPERTY} property and defaults to four threads per core, at least
+ * eight, since most requests wait for a commit rather than a core; the queue length is read
+ * from {@value #QUEUE_PROPERTY} and defaults to {@value #DEFAULT_QUEUE}. When the queue is full, the dispatcher
+ * thread waits for room instead of failing the exchange, which stops it from reading more
+ * requests until the pool catches up. Connections are kept alive between requests; unless
+ * they are set already, the JDK server properties are set to keep up to
+ * {@value #MAX_IDLE_CONNECTIONS} idle connections for {@value #IDLE_SECONDS} seconds and to
+ * disable Nagle's algorithm. The JDK reads them when the first server is created.
+ * </p>
+ */
+public class LibraryHttpServer implements Closeable {
+    /** Port used when none is given. */
+    public static final int DEFAULT_PORT = 8080;
+    /** System property with the number of threads serving exchanges. */
+    public static final String THREADS_PROPERTY = "librarysystem.http.threads";
+    /** System property with the number of exchanges that may wait for a thread. */
+    public static final String QUEUE_PROPERTY = "librarysystem.http.queue";
+    /** Default number of exchanges that may wait for a thread. */
+    static final int DEFAULT_QUEUE = 1024;
+    /** Length of the queue of connections not yet accepted. */
+    static final int BACKLOG = 1024;
+    /** Largest accepted request body in bytes. */
+    static final int MAX_BODY = 64 * 1024;
+    /** Hours a login token stays valid. */
+    static final int TOKEN_LIFETIME_HOURS = 12;
+    /** Idle connections the JDK server keeps open by default. */
+    static final int MAX_IDLE_CONNECTIONS = 1024;
+    /** Seconds an idle connection is kept open by default. */
+    static final int IDLE_SECONDS = 60;
+
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    static {
+        defaultProperty("sun.net.httpserver.nodelay", "true");
+        defaultProperty("sun.net.httpserver.maxIdleConnections", Integer.toString(MAX_IDLE_CONNECTIONS));
+        defaultProperty("sun.net.httpserver.idleInterval", Integer.toString(IDLE_SECONDS));
+    }
+
+    private final int port;
+    private final String pathFileUsers;
+    private final String pathFileBooks;
+    private final LibraryService service;
+    private final ConcurrentMap<String, Long> tokens = new ConcurrentHashMap<String, Long>();
+    private final SecureRandom random = new SecureRandom();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private HttpServer server;
+    private ThreadPoolExecutor executor;
+
+    /**
+     * @brief Constructor for LibraryHttpServer with a service of its own.
+     * @param port The port to listen on; 0 picks a free port.
+     * @param pathFileUsers The path to the file containing user information.
+     * @param pathFileBooks The path to the file containing book information.
+     */
+    public LibraryHttpServer(int port, String pathFileUsers, String pathFileBooks) {
+        this(port, pathFileUsers, pathFileBooks, new LibraryService());
+    }
+
+    /**
+     * @brief Constructor for LibraryHttpServer on top of an existing service.
+     * @param port The port to listen on; 0 picks a free port.
+     * @param pathFileUsers The path to the file containing user information.
+     * @param pathFileBooks The path to the file containing book information.
+     * @param service The service shared by all exchanges.
+     */
+    public LibraryHttpServer(int port, String pathFileUsers, String pathFileBooks, LibraryService service) {
+        this.port = port;
+        this.pathFileUsers = pathFileUsers;
+        this.pathFileBooks = pathFileBooks;
+        this.service = service;
+    }
+
+    /**
+     * @brief Binds the port and starts serving requests.
+     * @throws IOException If the port cannot be bound.
+     */
+    public void start() throws IOException {
+        int threads = Integer.getInteger(THREADS_PROPERTY,
+                Math.max(8, 4 * Runtime.getRuntime().availableProcessors()));
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(Integer.getInteger(QUEUE_PROPERTY, DEFAULT_QUEUE)),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new Thread(runnable, "library-http-" + threadCount.getAndIncrement());
+                    }
+                }, new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable exchange, ThreadPoolExecutor pool) {
+                        if (pool.isShutdown()) {
+                            throw new RejectedExecutionException("The server is closed");
+                        }
+                        try {
+                            pool.getQueue().put(exchange);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new RejectedExecutionException(e);
+                        }
+                    }
+                });
+        server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    dispatch(exchange);
+                } catch (IllegalArgumentException e) {
+                    sendError(exchange, 400, "BAD_REQUEST", e.getMessage());
+                } catch (IOException e) {
+                    sendError(exchange, 500, "IO", e.getMessage());
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * @brief Gets the port the server listens on.
+     * @return The bound port.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @brief Waits until the server is closed.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public void join() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * @brief Stops the server, giving running exchanges up to a second to finish.
+     */
+    @Override
+    public void close() {
+        stopped.countDown();
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        List<String> path = new ArrayList<String>();
+        for (String segment : exchange.getRequestURI().getPath().split("/")) {
+            if (!segment.isEmpty()) {
+                path.add(segment);
+            }
+        }
+        String resource = path.isEmpty() ? "" : path.get(0);
+        if (path.size() == 1 && "login".equals(resource)) {
+            if (allow(exchange, "POST")) {
+                login(exchange);
+            }
+        } else if (path.size() == 1 && "users".equals(resource)) {
+            if (allow(exchange, "POST")) {
+                register(exchange);
+            }
+        } else if (path.size() == 1 && "books".equals(resource)) {
+            if ("GET".equals(exchange.getRequestMethod())) {
+                list(exchange);
+            } else if (allow(exchange, "GET, POST") && authorized(exchange)) {
+                String title = readObject(exchange).get("title");
+                if (title == null || title.trim().isEmpty()) {
+                    throw new IllegalArgumentException("title is required");
+                }
+                sendResult(exchange, 201, service.addBook(title.trim(), pathFileBooks));
+            }
+        } else if (path.size() == 2 && "books".equals(resource)) {
+            if (allow(exchange, "GET")) {
+                sendResult(exchange, 200, service.findBook(parseId(path.get(1)), pathFileBooks));
+            }
+        } else if (path.size() == 3 && "books".equals(resource)) {
+            change(exchange, parseId(path.get(1)), path.get(2));
+        } else {
+            sendError(exchange, 404, "NOT_FOUND", null);
+        }
+    }
+
+    private void change(HttpExchange exchange, int bookId, String action) throws IOException {
+        String method = exchange.getRequestMethod();
+        if ("wishlist".equals(action)) {
+            if (allow(exchange, "PUT, DELETE") && authorized(exchange)) {
+                sendResult(exchange, 200, service.setWishlist(bookId, "PUT".equals(method), pathFileBooks));
+            }
+        } else if ("borrow".equals(action) || "return".equals(action) || "read".equals(action)) {
+            if (!allow(exchange, "POST") || !authorized(exchange)) {
+                return;
+            }
+            OperationResult result;
+            if ("borrow".equals(action)) {
+                result = service.borrowBook(bookId, pathFileBooks);
+            } else if ("return".equals(action)) {
+                result = service.returnBook(bookId, pathFileBooks);
+            } else {
+                result = service.markAsRead(bookId, pathFileBooks);
+            }
+            sendResult(exchange, 200, result);
+        } else {
+            sendError(exchange, 404, "NOT_FOUND", null);
+        }
+    }
+
+    /**
+     * @brief Sends the catalog as a JSON array, unless the client's copy is current.
+     * @details The version is read before the books, so the listing shows at least the
+     * changes its ETag stands for.
+     * @param exchange The exchange.
+     * @throws IOException If the catalog cannot be read.
+     */
+    private void list(HttpExchange exchange) throws IOException {
+        BookFlag flag = null;
+        String query = exchange.getRequestURI().getQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith("flag=")) {
+                    try {
+                        flag = BookFlag.valueOf(parameter.substring("flag=".length()).toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("flag must be marked, wishlist or loaned");
+                    }
+                }
+            }
+        }
+        String etag = "\"" + service.getCatalogVersion(pathFileBooks) + "\"";
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("ETag", etag);
+        headers.set("Cache-Control", "no-cache");
+        if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        Collection<Book> books = service.snapshotBooks(pathFileBooks);
+        headers.set("Content-Type", JSON);
+        exchange.sendResponseHeaders(200, 0);
+        Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8),
+                STREAM_BUFFER_SIZE);
+        StringBuilder json = new StringBuilder(256);
+        out.write('[');
+        boolean first = true;
+        for (Book book : books) {
+            if (flag != null && !flag.of(book)) {
+                continue;
+            }
+            json.setLength(0);
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            CatalogExporter.appendJson(json, book);
+            out.append(json);
+        }
+        out.write(']');
+        out.flush();
+    }
+
+    private void login(HttpExchange exchange) throws IOException {
+        User user = readUser(exchange);
+        OperationResult result = service.loginUser(user, pathFileUsers);
+        if (!result.isSuccess()) {
+            sendError(exchange, 401, result.getStatus().name(), null);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Iterator<Long> expiries = tokens.values().iterator();
+        while (expiries.hasNext()) {
+            if (expiries.next() < now) {
+                expiries.remove();
+            }
+        }
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        tokens.put(token, now + TimeUnit.HOURS.toMillis(TOKEN_LIFETIME_HOURS));
+        StringBuilder json = new StringBuilder("{\"token\":");
+        CatalogExporter.appendJson(json, token);
+        sendJson(exchange, 200, json.append('}').toString());
+    }
+
+    private void register(HttpExchange exchange) throws IOException {
+        User user = readUser(exchange);
+        service.registerUser(user, pathFileUsers);
+        StringBuilder json = new StringBuilder("{\"email\":");
+        CatalogExporter.appendJson(json, user.getEmail());
+        sendJson(exchange, 201, json.append('}').toString());
+    }
+
+    private User readUser(HttpExchange exchange) throws IOException {
+        Map<String, String> fields = readObject(exchange);
+        String email = fields.get("email");
+        String password = fields.get("password");
+        if (email == null || email.isEmpty() || password == null || password.isEmpty()) {
+            throw new IllegalArgumentException("email and password are required");
+        }
+        User user = new User();
+        user.setEmail(email);
+        user.setPassword(password);
+        return user;
+    }
+
+    /**
+     * @brief Checks the bearer token of a request, answering 401 if it is missing or expired.
+     * @return True if the request may go ahead.
+     */
+    private boolean authorized(HttpExchange exchange) throws IOException {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization != null && authorization.startsWith("Bearer ")) {
+            Long expiry = tokens.get(authorization.substring("Bearer ".length()).trim());
+            if (expiry != null && expiry >= System.currentTimeMillis()) {
+                return true;
+            }
+        }
+        exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+        sendError(exchange, 401, "LOGIN_REQUIRED", null);
+        return false;
+    }
+
+    /**
+     * @brief Checks the request method, answering 405 if it is not one of the allowed.
+     * @param allowed The allowed methods, separated by ", ".
+     * @return True if the method is allowed.
+     */
+    private static boolean allow(HttpExchange exchange, String allowed) throws IOException {
+        for (String method : allowed.split(", ")) {
+            if (method.equals(exchange.getRequestMethod())) {
+                return true;
+            }
+        }
+        exchange.getResponseHeaders().set("Allow", allowed);
+        sendError(exchange, 405, "METHOD_NOT_ALLOWED", null);
+        return false;
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int parseId(String segment) {
+        try {
+            return Integer.parseInt(segment);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a book ID: " + segment);
+        }
+    }
+
+    private static void sendResult(HttpExchange exchange, int status, OperationResult result) throws IOException {
+        switch (result.getStatus()) {
+            case OK:
+                StringBuilder json = new StringBuilder(128);
+                if (result.getBook() != null) {
+                    CatalogExporter.appendJson(json, result.getBook());
+                } else {
+                    json.append("{}");
+                }
+                sendJson(exchange, status, json.toString());
+                break;
+            case NOT_FOUND:
+                sendError(exchange, 404, result.getStatus().name(), null);
+                break;
+            case UNCHANGED:
+                sendError(exchange, 409, result.getStatus().name(), null);
+                break;
+            default:
+                sendError(exchange, 401, result.getStatus().name(), null);
+                break;
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String error, String message)
+            throws IOException {
+        if (exchange.getResponseCode() != -1) {
+            // The response is under way; closing the exchange cuts it short.
+            return;
+        }
+        StringBuilder json = new StringBuilder("{\"error\":\"").append(error).append('"');
+        if (message != null) {
+            json.append(",\"message\":");
+            CatalogExporter.appendJson(json, message);
+        }
+        sendJson(exchange, status, json.append('}').toString());
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    /**
+     * @brief Reads the request body as a flat JSON object.
+     * @return The members, with strings unquoted and other values as written.
+     * @throws IOException If the body cannot be read.
+     */
+    private static Map<String, String> readObject(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        InputStream in = exchange.getRequestBody();
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+            if (body.size() > MAX_BODY) {
+                throw new IllegalArgumentException("request body larger than " + MAX_BODY + " bytes");
+            }
+        }
+        return new JsonObjectReader(new String(body.toByteArray(), StandardCharsets.UTF_8)).read();
+    }
+
+    private static void defaultProperty(String name, String value) {
+        if (System.getProperty(name) == null) {
+            System.setProperty(name, value);
+        }
+    }
+
+    /**
+     * @class JsonObjectReader
+     * @brief Parses a JSON object whose members are strings, numbers, booleans or null.
+     */
+    private static final class JsonObjectReader {
+        private final String text;
+        private int position;
+
+        JsonObjectReader(String text) {
+            this.text = text;
+        }
+
+        Map<String, String> read() {
+            Map<String, String> members = new LinkedHashMap<String, String>();
+            expect('{');
+            if (peek() == '}') {
+                position++;
+            } else {
+                while (true) {
+                    expect('"');
+                    String name = string();
+                    expect(':');
+                    members.put(name, value());
+                    char next = peek();
+                    position++;
+                    if (next == '}') {
+                        break;
+                    }
+                    if (next != ',') {
+                        throw error("',' or '}'");
+                    }
+                }
+            }
+            if (peek() != 0) {
+                throw error("end of input");
+            }
+            return members;
+        }
+
+        private String value() {
+            char first = peek();
+            if (first == '"') {
+                position++;
+                return string();
+            }
+            if (first == '{' || first == '[') {
+                throw new IllegalArgumentException("nested JSON values are not supported");
+            }
+            int start = position;
+            while (position < text.length() && ",}: \t\r\n".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            if (start == position) {
+                throw error("a value");
+            }
+            String literal = text.substring(start, position);
+            return "null".equals(literal) ? null : literal;
+        }
+
+        /**
+         * @brief Reads a string whose opening quote was consumed.
+         */
+        private String string() {
+            StringBuilder value = new StringBuilder();
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw error("four hex digits");
+                        }
+                        value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                        break;
+                }
+            }
+            throw error("'\"'");
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw error("'" + c + "'");
+            }
+            position++;
+        }
+
+        /**
+         * @brief Skips white space and returns the next character, or 0 at the end.
+         */
+        private char peek() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+            return position < text.length() ? text.charAt(position) : 0;
+        }
+
+        private IllegalArgumentException error(String expected) {
+            return new IllegalArgumentException("malformed JSON: expected " + expected + " at offset " + position);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * @file LibraryServer.java
+ * @brief TCP server running one console session per connection on a virtual thread.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @class LibraryServer
+ * @brief Lets many librarians use one catalog at the same time over TCP.
+ * @details Every accepted connection gets its own Librarysystem reading from and writing
+ * to the socket, so a client such as {@code telnet} or {@code nc} sees exactly the menus of
+ * the console application. All sessions share one LibraryService and hence one resident,
+ * thread-safe BookRepository per books file.
+ * <p>
+ * Each session runs on its own virtual thread. A session waiting for its librarian to type
+ * is a parked virtual thread holding a few kilobytes of stack and buffers rather than a
+ * platform thread, so thousands of idle sessions cost little, while the active ones are
+ * spread over a carrier thread per core. Output is buffered and sent whenever the session
+ * is about to wait for input, which is after every prompt.
+ * </p>
+ */
+public class LibraryServer implements Closeable {
+    /** Port used when none is given. */
+    public static final int DEFAULT_PORT = 7070;
+    /** Length of the queue of connections not yet accepted. */
+    static final int BACKLOG = 1024;
+
+    private static final int OUTPUT_BUFFER_SIZE = 8192;
+
+    private final int port;
+    private final String pathFileUsers;
+    private final String pathFileBooks;
+    private final LibraryService service;
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private final ExecutorService sessions = Executors
+            .newThreadPerTaskExecutor(Thread.ofVirtual().name("library-session-", 0).factory());
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+
+    /**
+     * @brief Constructor for LibraryServer with a service of its own.
+     * @param port The port to listen on; 0 picks a free port.
+     * @param pathFileUsers The path to the file containing user information.
+     * @param pathFileBooks The path to the file containing book information.
+     */
+    public LibraryServer(int port, String pathFileUsers, String pathFileBooks) {
+        this(port, pathFileUsers, pathFileBooks, new LibraryService());
+    }
+
+    /**
+     * @brief Constructor for LibraryServer on top of an existing service.
+     * @param port The port to listen on; 0 picks a free port.
+     * @param pathFileUsers The path to the file containing user information.
+     * @param pathFileBooks The path to the file containing book information.
+     * @param service The service shared by all sessions.
+     */
+    public LibraryServer(int port, String pathFileUsers, String pathFileBooks, LibraryService service) {
+        this.port = port;
+        this.pathFileUsers = pathFileUsers;
+        this.pathFileBooks = pathFileBooks;
+        this.service = service;
+    }
+
+    /**
+     * @brief Binds the port and starts accepting connections in the background.
+     * @throws IOException If the port cannot be bound.
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port), BACKLOG);
+        acceptor = Thread.ofVirtual().name("library-acceptor").start(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        });
+    }
+
+    /**
+     * @brief Gets the port the server listens on.
+     * @return The bound port.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @brief Gets the number of open sessions.
+     * @return The number of connections whose session has not ended yet.
+     */
+    public int getSessionCount() {
+        return sessionCount.get();
+    }
+
+    /**
+     * @brief Waits until the server is closed.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public void join() throws InterruptedException {
+        acceptor.join();
+    }
+
+    /**
+     * @brief Stops accepting connections and ends all sessions.
+     * @details Open connections are closed, so their sessions end at their next read or write.
+     * @throws IOException If the server socket cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : sockets) {
+            closeQuietly(socket);
+        }
+        sessions.shutdown();
+        try {
+            sessions.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                // Closed by close(), or the connection was reset before it was accepted.
+                continue;
+            }
+            sockets.add(socket);
+            sessionCount.incrementAndGet();
+            try {
+                sessions.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            serve(socket);
+                        } finally {
+                            sockets.remove(socket);
+                            sessionCount.decrementAndGet();
+                            closeQuietly(socket);
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                // The executor is shut down.
+                sockets.remove(socket);
+                sessionCount.decrementAndGet();
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    /**
+     * @brief Runs the main menu for one connection until the client exits or disconnects.
+     * @param socket The connection.
+     */
+    private void serve(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            final PrintStream out = new PrintStream(
+                    new BufferedOutputStream(socket.getOutputStream(), OUTPUT_BUFFER_SIZE), false,
+                    StandardCharsets.UTF_8);
+            InputStream in = new FilterInputStream(socket.getInputStream()) {
+                @Override
+                public int read() throws IOException {
+                    out.flush();
+                    return super.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    out.flush();
+                    return super.read(buffer, offset, length);
+                }
+            };
+            Scanner scanner = new Scanner(in, StandardCharsets.UTF_8);
+            try {
+                new Librarysystem(scanner, out, service).mainMenu(pathFileUsers, pathFileBooks);
+            } catch (NoSuchElementException e) {
+                // The client disconnected.
+            } catch (IOException e) {
+                out.println("Session ended: " + e.getMessage());
+            }
+            out.flush();
+        } catch (SocketException e) {
+            // The connection was reset or closed by close().
+        } catch (IOException e) {
+            // The connection broke; nothing to report to.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already broken.
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/**
+ * @file LibraryService.java
+ * @brief Headless business operations of the library system.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * @class LibraryService
+ * @brief Carries out book and user operations and reports their outcome as values.
+ * @details The service never reads from or writes to the console, so it can be driven by
+ * the interactive menus of Librarysystem as well as by programs. Books are served from a
+ * resident BookRepository per books file; the repositories are thread-safe, so one service
+ * can be shared between threads. Operations on one book return the book as the repository
+ * read it back right after the change, so it shows that change and no later one, while
+ * operations on other books go ahead in parallel.
+ */
+public class LibraryService {
+    private final ConcurrentMap<String, BookRepository> repositories = new ConcurrentHashMap<String, BookRepository>();
+    private final Object usersLock = new Object();
+
+    /**
+     * @brief Returns the resident repository for a books file.
+     * @details The repository is created on first use and kept for the lifetime of this object,
+     * so the file is decoded once instead of on every operation.
+     * @param pathFileBooks The path to the file containing book information.
+     * @return The repository serving the given file.
+     */
+    BookRepository repository(String pathFileBooks) {
+        BookRepository repository = repositories.get(pathFileBooks);
+        if (repository == null) {
+            BookRepository created = new BookRepository(pathFileBooks);
+            repository = repositories.putIfAbsent(pathFileBooks, created);
+            if (repository == null) {
+                repository = created;
+            }
+        }
+        return repository;
+    }
+
+    /**
+     * @brief Gets a new unique ID for a book.
+     * @param pathFileBooks The path to the file containing book information.
+     * @return An ID that was never handed out for this catalog.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int getNewId(String pathFileBooks) throws IOException {
+        return repository(pathFileBooks).nextId();
+    }
+
+    /**
+     * @brief Lists all books.
+     * @param pathFileBooks The path to the file containing book information.
+     * @return Copies of the books in file order.
+     * @throws IOException If an I/O error occurs.
+     */
+    public List<Book> listBooks(String pathFileBooks) throws IOException {
+        return listBooks(pathFileBooks, null);
+    }
+
+    /**
+     * @brief Lists the books matching a condition.
+     * @param pathFileBooks The path to the file containing book information.
+     * @param filter The condition, or null for all books.
+     * @return Copies of the matching books in file order.
+     * @throws IOException If an I/O error occurs.
+     */
+    public List<Book> listBooks(String pathFileBooks, Predicate<Book> filter) throws IOException {
+        List<Book> books = repository(pathFileBooks).findAll();
+        if (filter == null) {
+            return books;
+        }
+        List<Book> matches = new ArrayList<Book>();
+        for (Book book : books) {
+            if (filter.test(book)) {
+                matches.add(book);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @brief Lists the books whose flag has the given value.
+     * @details Served from the flag bitsets of the catalog, so books that do not match are
+     * never decoded.
+     * @param pathFileBooks The path to the file containing book information.
+     * @param flag The flag to test.
+     * @param value The wanted value of the flag.
+     * @return Copies of the matching books in file order.
+     * @throws IOException If an I/O error occurs.
+     */
+    public List<Book> listBooks(String pathFileBooks, BookFlag flag, boolean value) throws IOException {
+        return repository(pathFileBooks).findByFlag(flag, value);
+    }
+
+    /**
+     * @brief Returns the books of a catalog as they are now, without building a list.
+     * @details See {@link BookRepository#snapshot()}; the books are decoded from a copy of
+     * the resident catalog while the caller iterates.
+     * @param pathFileBooks The path to the file containing book information.
+     * @return Copies of the books in file order.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Collection<Book> snapshotBooks(String pathFileBooks) throws IOException {
+        return repository(pathFileBooks).snapshot();
+    }
+
+    /**
+     * @brief Streams the books of a catalog without building a list.
+     * @details The books are decoded from the file one at a time, so listing a catalog
+     * needs constant memory; see {@link BookRepository#stream()}. Queued changes are written
+     * first, so interactive listings should use {@link #listBooks(String)}, which reads the
+     * resident catalog.
+     * @param pathFileBooks The path to the file containing book information.
+     * @return The books in file order; the stream should be closed unless it is consumed to the end.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Stream<Book> streamBooks(String pathFileBooks) throws IOException {
+        return repository(pathFileBooks).stream();
+    }
+
+    /**
+     * @brief Streams the books whose flag has the given value.
+     * @param pathFileBooks The path to the file containing book information.
+     * @param flag The flag to test.
+     * @param value The wanted value of the flag.
+     * @return The matching books in file order; the stream should be closed unless it is consumed to the end.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Stream<Book> streamBooks(String pathFileBooks, BookFlag flag, boolean value) throws IOException {
+        return repository(pathFileBooks).stream(flag, value);
+    }
+
+    /**
+     * @brief Visits every book of a catalog in file order.
+     * @param pathFileBooks The path to the file containing book information.
+     * @param action Receives the books.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void forEachBook(String pathFileBooks, Consumer<Book> action) throws IOException {
+        try (Stream<Book> books = streamBooks(pathFileBooks)) {
+            books.forEachOrdered(action);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @brief Gets the version of a catalog, which changes whenever a change is committed.
+     * @details See {@link BookRepository#getVersion()}; the same file has the same version
+     * in every process.
+     * @param pathFileBooks The path to the file containing book information.
+     * @return The version.
+     * @throws IOException If an I/O error occurs.
+     */
+    public long getCatalogVersion(String pathFileBooks) throws IOException {
+        return repository(pathFileBooks).getVersion();
+    }
+
+    /**
+     * @brief Counts the books whose flag has the given value.
+     * @param pathFileBooks The path to the file containing book information.
+     * @param flag The flag to test.
+     * @param value The wanted value of the flag.
+     * @return The number of matching books.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int countBooks(String pathFileBooks, BookFlag flag, boolean value) throws IOException {
+        return repository(pathFileBooks).count(flag, value);
+    }
+
+    /**
+     * @brief Looks up a book.
+     * @param bookId The ID of the book.
+     * @param pathFileBooks The path to the file containing book information.
+     * @return OK with a copy of the book, or NOT_FOUND.
+     * @throws IOException If an I/O error occurs.
+     */
+    public OperationResult findBook(int bookId, String pathFileBooks) throws IOException {
+        Book book = repository(pathFileBooks).findById(bookId);
+        return book == null ? OperationResult.of(OperationResult.Status.NOT_FOUND)
+                : OperationResult.ok(book);
+    }
+
+    /**
+     * @brief Adds a new book that is unread, not wishlisted and not loaned.
+     * @param bookName The name of the book.
+     * @param pathFileBooks The path to the file containing book information.
+     * @return OK with the added book.
+     * @throws IOException If an I/O error occurs.
+     */
+    public OperationResult addBook(String bookName, String pathFileBooks) throws IOException {
+        BookRepository repository = repository(pathFileBooks);
+        Book book = new Book(repository.nextId(), bookName, false, false, false);
+        repository.add(book);
+        return OperationResult.ok(book);
+    }
+
+    /**
+     * @brief Deletes a book.
+     * @param bookId The ID of the book.
+     * @param pathFileBooks The path to the file containing book information.
+     * @return OK, or NOT_FOUND.
+     * @throws IOException If an I/O error occurs.
+     */
+    public OperationResult deleteBook(int bookId, String pathFileBooks) throws IOException {
+        return repository(pathFileBooks).delete(bookId) ? OperationResult.ok(null)
+                : OperationResult.of(OperationResult.Status.NOT_FOUND);
+    }
+
+    /**
+     * @brief Renames a book.
+     * @param bookId The ID of the book.
+     * @param newBookName The new name.
+     * @param pathFileBooks The path to the file containing book information.
+     * @return OK with the renamed book, or NOT_FOUND.
+     * @throws IOException If an I/O error occurs.
+     */
+    public OperationResult renameBook(int bookId, String newBookName, String pathFileBooks) throws IOException {
+        return repository(pathFileBooks).retitle(bookId, newBookName);
+    }
+
+    /**
+     * @brief Lends a book out.
+     * @param bookId The ID of the book.
+     * @param pathFileBooks The path to the file containing book information.
+     * @return OK with the book, NOT_FOUND, or UNCHANGED if it is already loaned.
+     * @throws IOException If an I/O error occurs.
+     */
+    public OperationResult borrowBook(int bookId, String pathFileBooks) throws IOException {
+        return repository(pathFileBooks).apply(new BookOperation(bookId, BookOperation.Kind.BORROW));
+    }
+
+    /**
+     * @brief Takes a loaned book back.
+     * @param bookId The ID of the book.
+     * @param pathFileBooks The path to the file containing book information.
+     * @return OK with the book, NOT_FOUND, or UNCHANGED if it is not loaned.
+     * @throws IOException If an I/O error occurs.
+     */
+    public OperationResult returnBook(int bookId, String pathFileBooks) throws IOException {
+        return repository(pathFileBooks).apply(new BookOperation(bookId, BookOperation.Kind.RETURN));
+    }
+
+    /**
+     * @brief Puts a book on the wishlist or takes it off.
+     * @param bookId The ID of the book.
+     * @param wishlist True to add the book to the wishlist, false to remove it.
+     * @param pathFileBooks The path to the file containing book information.
+     * @return OK with the book, NOT_FOUND, or UNCHANGED if it already had that status.
+     * @throws IOException If an I/O error occurs.
+     */
+    public OperationResult setWishlist(int bookId, boolean wishlist, String pathFileBooks) throws IOException {
+        return repository(pathFileBooks).apply(new BookOperation(bookId, wishlist ? BookOperation.Kind.WISHLIST : BookOperation.Kind.UNWISHLIST));
+    }
+
+    /**
+     * @brief Marks a book as read.
+     * @param bookId The ID of the book.
+     * @param pathFileBooks The path to the file containing book information.
+     * @return OK with the book, NOT_FOUND, or UNCHANGED if it is already read.
+     * @throws IOException If an I/O error occurs.
+     */
+    public OperationResult markAsRead(int bookId, String pathFileBooks) throws IOException {
+        return repository(pathFileBooks).apply(new BookOperation(bookId, BookOperation.Kind.MARK_READ));
+    }
+
+    /**
+     * @brief Applies several status changes, e.g. checks in a returned cart of books.
+     * @details The operations are validated against one snapshot of the catalog and written
+     * back together; see {@link BookRepository#apply(List)}.
+     * @param operations The operations to apply, in order.
+     * @param pathFileBooks The path to the file containing book information.
+     * @return One result per operation: OK with the book, NOT_FOUND, or UNCHANGED.
+     * @throws IOException If an I/O error occurs.
+     */
+    public List<OperationResult> applyBatch(List<BookOperation> operations, String pathFileBooks)
+            throws IOException {
+        return repository(pathFileBooks).apply(operations);
+    }
+
+    /**
+     * @brief Checks an email and password against the registered users.
+     * @param user The user with the credentials to check.
+     * @param pathFileUsers The path to the file containing user information.
+     * @return OK, or INVALID_CREDENTIALS.
+     * @throws IOException If an I/O error occurs.
+     */
+    public OperationResult loginUser(User user, String pathFileUsers) throws IOException {
+        synchronized (usersLock) {
+            if (UserFile.contains(Paths.get(pathFileUsers), user.getEmail(), user.getPassword())) {
+                return OperationResult.ok(null);
+            }
+        }
+        return OperationResult.of(OperationResult.Status.INVALID_CREDENTIALS);
+    }
+
+    /**
+     * @brief Registers a new user.
+     * @param user The user to be registered.
+     * @param pathFileUsers The path to the file containing user information.
+     * @return OK.
+     * @throws IOException If an I/O error occurs.
+     */
+    public OperationResult registerUser(User user, String pathFileUsers) throws IOException {
+        synchronized (usersLock) {
+            UserFile.append(Paths.get(pathFileUsers), user);
+        }
+        return OperationResult.ok(null);
+    }
+}
@@ -6,12 +6,7 @@
  */
 package com.hasan.yakup.librarysystem;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
@@ -21,10 +16,13 @@ import java.util.Scanner;
 /**
  * @class Librarysystem
  * @brief Represents a library system with basic operations on books.
+ * @details This class is the console client of the library: it reads choices from the
+ * scanner, asks the LibraryService to carry them out and prints the outcome.
  */
 public class Librarysystem {
     private Scanner scanner;
     private PrintStream out;
+    private final LibraryService service;
 
     /**
      * @brief Constructor for Librarysystem.
@@ -32,30 +30,46 @@ public class Librarysystem {
      * @param out PrintStream object for output.
      */
     public Librarysystem(Scanner scanner, PrintStream out) {
+        this(scanner, out, new LibraryService());
+    }
+
+    /**
+     * @brief Constructor for Librarysystem on top of an existing service.
+     * @param scanner Scanner object for user input.
+     * @param out PrintStream object for output.
+     * @param service The service carrying out the operations.
+     */
+    public Librarysystem(Scanner scanner, PrintStream out, LibraryService service) {
         this.scanner = scanner;
         this.out = out;
+        this.service = service;
     }
 
      /**
-     * @brief Gets a new unique ID for a book based on the existing books in the library.
+     * @brief Gets a new unique ID for a book.
+     * @details IDs are allocated from a block leased in the {@code <file>.ids} sidecar, so the
+     * catalog is not scanned and IDs of deleted books are never handed out again.
      * @param pathFileBooks The path to the file containing book information.
      * @return A new unique ID for a book.
      * @throws FileNotFoundException If the specified file is not found.
      * @throws IOException If an I/O error occurs.
      */
     public int getNewId(String pathFileBooks) throws FileNotFoundException, IOException {
-        List<Book> books = loadBooks(pathFileBooks);
-        return books.size() + 1;
+        return service.getNewId(pathFileBooks);
     }
 
     /**
      * @brief Clears the console screen.
+     * @details {@code cls} clears the console of this process, so it is only run on Windows
+     * when the menus write to {@code System.out}. Any other output, e.g. the socket of a
+     * LibraryServer session, gets the ANSI clear sequence, which the client's terminal
+     * interprets.
      * @throws InterruptedException If the thread is interrupted while waiting.
      * @throws IOException If an I/O error occurs.
      */
     public void clearScreen() throws InterruptedException, IOException {
         String operatingSystem = System.getProperty("os.name");
-        if (operatingSystem.contains("Windows")) {
+        if (out == System.out && operatingSystem.contains("Windows")) {
             new ProcessBuilder("cmd", "/c", "cls").inheritIO().start().waitFor();
         } else {
             out.print("\033[H\033[2J");
@@ -96,33 +110,14 @@ public class Librarysystem {
 
     /**
  * @brief Loads books from a file and returns a list of Book objects.
- * @details Reads book information from the specified file and populates a List of Book objects.
+ * @details Returns copies of the books held by the resident repository of the specified file.
  * @param pathFileBooks The path to the file containing book information.
  * @return List of Book objects representing the books in the library.
  * @throws FileNotFoundException If the specified file is not found.
  * @throws IOException If an I/O error occurs.
  */
     public List<Book> loadBooks(String pathFileBooks) throws FileNotFoundException, IOException {
-        List<Book> books = new ArrayList<Book>();
-
-        // Checks if file path exists
-        if (new File(pathFileBooks).exists()) {
-            // Read books from file
-            try (DataInputStream reader = new DataInputStream(new FileInputStream(pathFileBooks))) {
-                while (reader.available() > 0) {
-                    Book book = new Book();
-                    book.setId(reader.readInt());
-                    book.setName(reader.readUTF());
-                    book.setMarked(reader.readBoolean());
-                    book.setWishlist(reader.readBoolean());
-                    book.setLoaned(reader.readBoolean());
-
-                    books.add(book);
-                }
-            }
-        }
-
-        return books;
+        return service.listBooks(pathFileBooks);
     }
 
     /**
@@ -134,10 +129,9 @@ public class Librarysystem {
  * @throws IOException If an I/O error occurs.
  */
     public boolean writeBooksToConsole(String pathFileBooks) throws FileNotFoundException, IOException {
-        List<Book> books = loadBooks(pathFileBooks);
         boolean isFound = false;
 
-        for (Book book : books) {
+        for (Book book : service.listBooks(pathFileBooks)) {
             isFound = true;
             String readStatus = book.isMarked() ? "Read" : "Unread";
             String wishlistStatus = book.isWishlist() ? "Wishlist" : "UnWishlisted";
@@ -162,18 +156,15 @@ public class Librarysystem {
  * @throws IOException If an I/O error occurs.
  */
     public boolean writeBorrowedBooksToConsole(String pathFileBooks) throws FileNotFoundException, IOException {
-        List<Book> books = loadBooks(pathFileBooks);
         boolean isFound = false;
 
-        for (Book book : books) {
-            if (book.isLoaned()) {
-                isFound = true;
-                String readStatus = book.isMarked() ? "Read" : "Unread";
-                String wishlistStatus = book.isWishlist() ? "Wishlist" : "UnWishlisted";
+        for (Book book : service.listBooks(pathFileBooks, BookFlag.LOANED, true)) {
+            isFound = true;
+            String readStatus = book.isMarked() ? "Read" : "Unread";
+            String wishlistStatus = book.isWishlist() ? "Wishlist" : "UnWishlisted";
 
-                out.println(
-                        String.format("%d. %s (%s : %s)", book.getId(), book.getName(), readStatus, wishlistStatus));
-            }
+            out.println(
+                    String.format("%d. %s (%s : %s)", book.getId(), book.getName(), readStatus, wishlistStatus));
         }
 
         if (!isFound) {
@@ -193,18 +184,15 @@ public class Librarysystem {
  * @throws IOException If an I/O error occurs.
  */
     public boolean writeUnBorrowedBooksToConsole(String pathFileBooks) throws FileNotFoundException, IOException {
-        List<Book> books = loadBooks(pathFileBooks);
         boolean isFound = false;
 
-        for (Book book : books) {
-            if (!book.isLoaned()) {
-                isFound = true;
-                String readStatus = book.isMarked() ? "Read" : "Unread";
-                String wishlistStatus = book.isWishlist() ? "Wishlist" : "UnWishlisted";
+        for (Book book : service.listBooks(pathFileBooks, BookFlag.LOANED, false)) {
+            isFound = true;
+            String readStatus = book.isMarked() ? "Read" : "Unread";
+            String wishlistStatus = book.isWishlist() ? "Wishlist" : "UnWishlisted";
 
-                out.println(
-                        String.format("%d. %s (%s : %s)", book.getId(), book.getName(), readStatus, wishlistStatus));
-            }
+            out.println(
+                    String.format("%d. %s (%s : %s)", book.getId(), book.getName(), readStatus, wishlistStatus));
         }
 
         if (!isFound) {
@@ -224,18 +212,15 @@ public class Librarysystem {
  * @throws IOException If an I/O error occurs.
  */
     public boolean writeWishlistedBooksToConsole(String pathFileBooks) throws FileNotFoundException, IOException {
-        List<Book> books = loadBooks(pathFileBooks);
         boolean isFound = false;
 
-        for (Book book : books) {
-            if (book.isWishlist()) {
-                isFound = true;
-                String readStatus = book.isMarked() ? "Read" : "Unread";
-                String wishlistStatus = book.isWishlist() ? "Wishlist" : "UnWishlisted";
+        for (Book book : service.listBooks(pathFileBooks, BookFlag.WISHLIST, true)) {
+            isFound = true;
+            String readStatus = book.isMarked() ? "Read" : "Unread";
+            String wishlistStatus = book.isWishlist() ? "Wishlist" : "UnWishlisted";
 
-                out.println(
-                        String.format("%d. %s (%s : %s)", book.getId(), book.getName(), readStatus, wishlistStatus));
-            }
+            out.println(
+                    String.format("%d. %s (%s : %s)", book.getId(), book.getName(), readStatus, wishlistStatus));
         }
 
         if (!isFound) {
@@ -255,18 +240,15 @@ public class Librarysystem {
  * @throws IOException If an I/O error occurs.
  */
     public boolean writeUnWishlistedBooksToConsole(String pathFileBooks) throws FileNotFoundException, IOException {
-        List<Book> books = loadBooks(pathFileBooks);
         boolean isFound = false;
 
-        for (Book book : books) {
-            if (!book.isWishlist()) {
-                isFound = true;
-                String readStatus = book.isMarked() ? "Read" : "Unread";
-                String wishlistStatus = book.isWishlist() ? "Wishlist" : "UnWishlisted";
+        for (Book book : service.listBooks(pathFileBooks, BookFlag.WISHLIST, false)) {
+            isFound = true;
+            String readStatus = book.isMarked() ? "Read" : "Unread";
+            String wishlistStatus = book.isWishlist() ? "Wishlist" : "UnWishlisted";
 
-                out.println(
-                        String.format("%d. %s (%s : %s)", book.getId(), book.getName(), readStatus, wishlistStatus));
-            }
+            out.println(
+                    String.format("%d. %s (%s : %s)", book.getId(), book.getName(), readStatus, wishlistStatus));
         }
 
         if (!isFound) {
@@ -286,18 +268,15 @@ public class Librarysystem {
  * @throws IOException If an I/O error occurs.
  */
     public boolean writeUnMarkedBooksToConsole(String pathFileBooks) throws FileNotFoundException, IOException {
-        List<Book> books = loadBooks(pathFileBooks);
         boolean isFound = false;
 
-        for (Book book : books) {
-            if (!book.isMarked()) {
-                isFound = true;
-                String readStatus = book.isMarked() ? "Read" : "Unread";
-                String wishlistStatus = book.isWishlist() ? "Wishlist" : "UnWishlisted";
+        for (Book book : service.listBooks(pathFileBooks, BookFlag.MARKED, false)) {
+            isFound = true;
+            String readStatus = book.isMarked() ? "Read" : "Unread";
+            String wishlistStatus = book.isWishlist() ? "Wishlist" : "UnWishlisted";
 
-                out.println(
-                        book.getId() + ". " + book.getName() + " (" + readStatus + " : " + wishlistStatus + ")");
-            }
+            out.println(
+                    book.getId() + ". " + book.getName() + " (" + readStatus + " : " + wishlistStatus + ")");
         }
 
         if (!isFound) {
@@ -316,18 +295,15 @@ public class Librarysystem {
  * @throws IOException If an I/O error occurs.
  */
     public boolean writeMarkedBooksToConsole(String pathFileBooks) throws FileNotFoundException, IOException {
-        List<Book> books = loadBooks(pathFileBooks);
         boolean isFound = false;
 
-        for (Book book : books) {
-            if (book.isMarked()) {
-                isFound = true;
-                String readStatus = book.isMarked() ? "Read" : "Unread";
-                String wishlistStatus = book.isWishlist() ? "Wishlist" : "UnWishlisted";
+        for (Book book : service.listBooks(pathFileBooks, BookFlag.MARKED, true)) {
+            isFound = true;
+            String readStatus = book.isMarked() ? "Read" : "Unread";
+            String wishlistStatus = book.isWishlist() ? "Wishlist" : "UnWishlisted";
 
-                out.println(
-                        book.getId() + ". " + book.getName() + " (" + readStatus + " : " + wishlistStatus + ")");
-            }
+            out.println(
+                    book.getId() + ". " + book.getName() + " (" + readStatus + " : " + wishlistStatus + ")");
         }
 
         if (!isFound) {
@@ -363,21 +339,7 @@ public class Librarysystem {
  * @throws IOException If an I/O error occurs.
  */
     public boolean addBook(String bookName, String pathFileBooks) throws FileNotFoundException, IOException {
-        Book newBook = new Book();
-        newBook.setId(getNewId(pathFileBooks));
-        newBook.setName(bookName);
-        newBook.setMarked(false);
-        newBook.setWishlist(false);
-        newBook.setLoaned(false);
-
-        try (DataOutputStream writer = new DataOutputStream(new FileOutputStream(pathFileBooks, true))) {
-            writer.writeInt(newBook.getId());
-            writer.writeUTF(newBook.getName());
-            writer.writeBoolean(newBook.isMarked());
-            writer.writeBoolean(newBook.isWishlist());
-            writer.writeBoolean(newBook.isLoaned());
-        }
-
+        service.addBook(bookName, pathFileBooks);
         return true;
     }
 
@@ -411,7 +373,7 @@ public class Librarysystem {
 
     /**
  * @brief Deletes a book from the library.
- * @details Loads the books, searches for the book with the specified ID, and removes it from the file.
+ * @details Looks up the book with the specified ID in the resident repository and removes it from the file.
  * @param bookId The ID of the book to be deleted.
  * @param pathFileBooks The path to the file containing book information.
  * @return True if the book is found and deleted, false otherwise.
@@ -419,22 +381,7 @@ public class Librarysystem {
  * @throws IOException If an I/O error occurs.
  */
     public boolean deleteBook(int bookId, String pathFileBooks) throws FileNotFoundException, IOException {
-        List<Book> books = loadBooks(pathFileBooks);
-        boolean isFound = false;
-
-        try (DataOutputStream writer = new DataOutputStream(new FileOutputStream(new File(pathFileBooks)))) {
-            for (Book book : books) {
-                if (book.getId() != bookId) {
-                    writer.writeInt(book.getId());
-                    writer.writeUTF(book.getName());
-                    writer.writeBoolean(book.isMarked());
-                    writer.writeBoolean(book.isWishlist());
-                    writer.writeBoolean(book.isLoaned());
-                } else {
-                    isFound = true;
-                }
-            }
-        }
+        boolean isFound = service.deleteBook(bookId, pathFileBooks).isSuccess();
 
         if (isFound) {
             out.println("Book with ID '" + bookId + "' has been deleted successfully.");
@@ -477,7 +424,7 @@ public class Librarysystem {
 
     /**
  * @brief Updates the name of a book in the library.
- * @details Loads the books, searches for the book with the specified ID, and updates its name in the file.
+ * @details Looks up the book with the specified ID in the resident repository and updates its name in the file.
  * @param bookId The ID of the book to be updated.
  * @param newBookName The new name for the book.
  * @param pathFileBooks The path to the file containing book information.
@@ -487,23 +434,7 @@ public class Librarysystem {
  */
     public boolean updateBook(int bookId, String newBookName, String pathFileBooks)
             throws FileNotFoundException, IOException {
-        List<Book> books = loadBooks(pathFileBooks);
-        boolean isFound = false;
-
-        try (DataOutputStream writer = new DataOutputStream(new FileOutputStream(new File(pathFileBooks)))) {
-            for (Book book : books) {
-                writer.writeInt(book.getId());
-                if (book.getId() != bookId) {
-                    writer.writeUTF(book.getName());
-                } else {
-                    writer.writeUTF(newBookName);
-                    isFound = true;
-                }
-                writer.writeBoolean(book.isMarked());
-                writer.writeBoolean(book.isWishlist());
-                writer.writeBoolean(book.isLoaned());
-            }
-        }
+        boolean isFound = service.renameBook(bookId, newBookName, pathFileBooks).isSuccess();
 
         if (isFound) {
             out.println("Book with ID '" + bookId + "' has been updated successfully.");
@@ -610,21 +541,10 @@ public class Librarysystem {
  * @throws IOException If an I/O error occurs.
  */
     public boolean loginUser(User user, String pathFileUsers) throws FileNotFoundException, IOException {
-        if (new File(pathFileUsers).exists()) {
-            try (DataInputStream reader = new DataInputStream(new FileInputStream(pathFileUsers))) {
-                while (reader.available() > 0) {
-                    User existingUser = new User();
-                    existingUser.setEmail(reader.readUTF());
-                    existingUser.setPassword(reader.readUTF());
-
-                    if (existingUser.getEmail().equals(user.getEmail())
-                            && existingUser.getPassword().equals(user.getPassword())) {
-                        out.println("Login successful.");
-                        enterToContinue();
-                        return true;
-                    }
-                }
-            }
+        if (service.loginUser(user, pathFileUsers).isSuccess()) {
+            out.println("Login successful.");
+            enterToContinue();
+            return true;
         }
         out.println("Invalid email or password. Please try again.");
         enterToContinue();
@@ -683,23 +603,67 @@ public class Librarysystem {
         clearScreen();
         writeBorrowedBooksToConsole(pathFileBooks);
 
-        out.print("Enter the ID of the book you want to give back: ");
+        out.print("Enter the ID of the book you want to give back (separate several IDs with commas): ");
 
-        int bookId = tryParseInt(scanner.nextLine());
+        String[] values = scanner.nextLine().split(",");
+        List<Integer> bookIds = new ArrayList<Integer>(values.length);
+        for (String value : values) {
+            int bookId = tryParseInt(value.trim());
+            if (bookId == -1) {
+                handleInputError();
+                enterToContinue();
+                return false;
+            }
+            bookIds.add(bookId);
+        }
 
-        if (bookId == -1) {
-            handleInputError();
-            enterToContinue();
-            return false;
+        if (bookIds.size() == 1) {
+            return giveBook(bookIds.get(0), pathFileBooks);
+        }
+        return giveBooks(bookIds, pathFileBooks);
+    }
+
+/**
+ * @brief Gives back several borrowed books at once, e.g. a returned cart.
+ * @details All books are checked in against the same state of the catalog and the file is written once.
+ * @param bookIds The IDs of the books to be given back.
+ * @param pathFileBooks The path to the file containing book information.
+ * @return True if every book was given back, false otherwise.
+ * @throws IOException If an I/O error occurs.
+ */
+    public boolean giveBooks(List<Integer> bookIds, String pathFileBooks) throws IOException {
+        List<BookOperation> operations = new ArrayList<BookOperation>(bookIds.size());
+        for (int bookId : bookIds) {
+            operations.add(new BookOperation(bookId, BookOperation.Kind.RETURN));
         }
 
-        return giveBook(bookId, pathFileBooks);
+        List<OperationResult> results = service.applyBatch(operations, pathFileBooks);
+        boolean allReturned = true;
+        for (int i = 0; i < results.size(); i++) {
+            int bookId = bookIds.get(i);
+            switch (results.get(i).getStatus()) {
+                case OK:
+                    out.println(String.format("%d. Book returned successfully.", bookId));
+                    break;
+                case UNCHANGED:
+                    allReturned = false;
+                    out.println(String.format("%d. The book is not borrowed.", bookId));
+                    break;
+                default:
+                    allReturned = false;
+                    out.println(String.format("%d. There is no book with this ID.", bookId));
+                    break;
+            }
+        }
+
+        enterToContinue();
+        return allReturned;
     }
 
     
 /**
  * @brief Gives back a borrowed book.
- * @details Loads the books, searches for the book with the specified ID, updates its loan status, and writes the changes to the file.
+ * @details Looks up the book with the specified ID in the resident repository, updates its loan status, and writes the change to the file.
  * @param bookId The ID of the book to be given back.
  * @param pathFileBooks The path to the file containing book information.
  * @return True if the book is given back successfully, false otherwise.
@@ -707,24 +671,7 @@ public class Librarysystem {
  * @throws IOException If an I/O error occurs.
  */
     public boolean giveBook(int bookId, String pathFileBooks) throws FileNotFoundException, IOException {
-        List<Book> books = loadBooks(pathFileBooks);
-        boolean isFound = false;
-
-        try (DataOutputStream writer = new DataOutputStream(new FileOutputStream(pathFileBooks))) {
-            for (Book book : books) {
-                writer.writeInt(book.getId());
-                writer.writeUTF(book.getName());
-                writer.writeBoolean(book.isMarked());
-                writer.writeBoolean(book.isWishlist());
-
-                if (book.getId() == bookId && book.isLoaned()) {
-                    writer.writeBoolean(false);
-                    isFound = true;
-                } else {
-                    writer.writeBoolean(book.isLoaned());
-                }
-            }
-        }
+        boolean isFound = service.returnBook(bookId, pathFileBooks).isSuccess();
 
         if (isFound) {
             out.println("Book returned successfully.");
@@ -766,7 +713,7 @@ public class Librarysystem {
 
     /**
  * @brief Borrows a book.
- * @details Loads the books, searches for the book with the specified ID, updates its loan status, and writes the changes to the file.
+ * @details Looks up the book with the specified ID in the resident repository, updates its loan status, and writes the change to the file.
  * @param bookId The ID of the book to be borrowed.
  * @param pathFileBooks The path to the file containing book information.
  * @return True if the book is borrowed successfully, false otherwise.
@@ -774,24 +721,7 @@ public class Librarysystem {
  * @throws IOException If an I/O error occurs.
  */
     public boolean borrowBook(int bookId, String pathFileBooks) throws FileNotFoundException, IOException {
-        List<Book> books = loadBooks(pathFileBooks);
-        boolean isFound = false;
-
-        try (DataOutputStream writer = new DataOutputStream(new FileOutputStream(pathFileBooks))) {
-            for (Book book : books) {
-                writer.writeInt(book.getId());
-                writer.writeUTF(book.getName());
-                writer.writeBoolean(book.isMarked());
-                writer.writeBoolean(book.isWishlist());
-
-                if (book.getId() == bookId && !book.isLoaned()) {
-                    writer.writeBoolean(true);
-                    isFound = true;
-                } else {
-                    writer.writeBoolean(book.isLoaned());
-                }
-            }
-        }
+        boolean isFound = service.borrowBook(bookId, pathFileBooks).isSuccess();
 
         if (isFound) {
             out.println("Book borrowed successfully.");
@@ -908,7 +838,7 @@ public class Librarysystem {
 
     /**
  * @brief Adds a book to the wishlist.
- * @details Loads the books, searches for the book with the specified ID, updates its wishlist status, and writes the changes to the file.
+ * @details Looks up the book with the specified ID in the resident repository, updates its wishlist status, and writes the change to the file.
  * @param bookId The ID of the book to be added to the wishlist.
  * @param pathFileBooks The path to the file containing book information.
  * @return True if the book is added to the wishlist successfully, false otherwise.
@@ -916,24 +846,7 @@ public class Librarysystem {
  * @throws IOException If an I/O error occurs.
  */
     public boolean addToWishList(int bookId, String pathFileBooks) throws FileNotFoundException, IOException {
-        List<Book> books = loadBooks(pathFileBooks);
-        boolean isFound = false;
-
-        try (DataOutputStream writer = new DataOutputStream(new FileOutputStream(pathFileBooks))) {
-            for (Book book : books) {
-                writer.writeInt(book.getId());
-                writer.writeUTF(book.getName());
-                writer.writeBoolean(book.isMarked());
-
-                if (book.getId() == bookId && !book.isWishlist()) {
-                    isFound = true;
-                    writer.writeBoolean(true);
-                } else {
-                    writer.writeBoolean(book.isWishlist());
-                }
-                writer.writeBoolean(book.isLoaned());
-            }
-        }
+        boolean isFound = service.setWishlist(bookId, true, pathFileBooks).isSuccess();
 
         if (isFound) {
             out.println("Book with ID '" + bookId + "' has been added to your wishlist.");
@@ -975,7 +888,7 @@ public class Librarysystem {
 
     /**
  * @brief Removes a book from the wishlist.
- * @details Loads the books, searches for the wishlisted book with the specified ID, updates its wishlist status, and writes the changes to the file.
+ * @details Looks up the wishlisted book with the specified ID in the resident repository, updates its wishlist status, and writes the change to the file.
  * @param bookId The ID of the book to be removed from the wishlist.
  * @param pathFileBooks The path to the file containing book information.
  * @return True if the book is removed from the wishlist successfully, false otherwise.
@@ -983,23 +896,7 @@ public class Librarysystem {
  * @throws IOException If an I/O error occurs.
  */
     public boolean removeFromWishList(int bookId, String pathFileBooks) throws FileNotFoundException, IOException {
-        List<Book> books = loadBooks(pathFileBooks);
-        boolean isFound = false;
-
-        try (DataOutputStream writer = new DataOutputStream(new FileOutputStream(pathFileBooks))) {
-            for (Book book : books) {
-                writer.writeInt(book.getId());
-                writer.writeUTF(book.getName());
-                writer.writeBoolean(book.isMarked());
-                if (book.getId() == bookId && book.isWishlist()) {
-                    isFound = true;
-                    writer.writeBoolean(false);
-                } else {
-                    writer.writeBoolean(book.isWishlist());
-                }
-                writer.writeBoolean(book.isLoaned());
-            }
-        }
+        boolean isFound = service.setWishlist(bookId, false, pathFileBooks).isSuccess();
 
         if (isFound) {
             out.println("Book with ID '" + bookId + "' has been removed from your wishlist.");
@@ -1121,7 +1018,7 @@ public class Librarysystem {
 
     /**
  * @brief Marks a book as read.
- * @details Loads the books, searches for the unmarked book with the specified ID, updates its read status, and writes the changes to the file.
+ * @details Looks up the unmarked book with the specified ID in the resident repository, updates its read status, and writes the change to the file.
  * @param bookId The ID of the book to be marked as read.
  * @param pathFileBooks The path to the file containing book information.
  * @return True if the book is marked as read successfully, false otherwise.
@@ -1129,25 +1026,7 @@ public class Librarysystem {
  * @throws IOException If an I/O error occurs.
  */
     public boolean markAsRead(int bookId, String pathFileBooks) throws FileNotFoundException, IOException {
-        List<Book> books = loadBooks(pathFileBooks);
-        boolean isFound = false;
-
-        try (DataOutputStream writer = new DataOutputStream(new FileOutputStream(pathFileBooks))) {
-            for (Book book : books) {
-                writer.writeInt(book.getId());
-                writer.writeUTF(book.getName());
-
-                if (book.getId() == bookId && !book.isMarked()) {
-                    writer.writeBoolean(true);
-                    isFound = true;
-                } else {
-                    writer.writeBoolean(book.isMarked());
-                }
-
-                writer.writeBoolean(book.isWishlist());
-                writer.writeBoolean(book.isLoaned());
-            }
-        }
+        boolean isFound = service.markAsRead(bookId, pathFileBooks).isSuccess();
 
         if (isFound) {
             out.println("Book with ID '" + bookId + "' has been marked as read successfully.");
@@ -1342,10 +1221,7 @@ public class Librarysystem {
  * @throws IOException If an I/O error occurs.
  */
     public boolean registerUser(User user, String pathFileUsers) throws FileNotFoundException, IOException {
-        try (DataOutputStream writer = new DataOutputStream(new FileOutputStream(new File(pathFileUsers), true))) {
-            writer.writeUTF(user.getEmail());
-            writer.writeUTF(user.getPassword());
-        }
+        service.registerUser(user, pathFileUsers);
         out.println("User registered successfully.");
         enterToContinue();
         return true;
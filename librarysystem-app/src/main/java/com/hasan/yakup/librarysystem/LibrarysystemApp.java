@@ -1,11 +1,12 @@
 /**
  * @file LibrarysystemApp.java
  * @brief Main class to start the Library System application.
- * 
+ *
  * This class contains the main method to initialize the Library System.
  * It creates a Scanner for user input, initializes a Librarysystem instance,
- * and invokes the mainMenu method to start the application.
- * 
+ * and invokes the mainMenu method to start the application. When command-line
+ * arguments are given, the named maintenance command is run instead.
+ *
  * @author Hasan Yakup
  * @version 1.0
  * @since 2024-01-11
@@ -14,22 +15,238 @@ package com.hasan.yakup.librarysystem;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Scanner;
 
 public class LibrarysystemApp {
      /**
      * The main entry point for the Library System application.
-     * 
-     * @param args Command-line arguments (not used).
+     *
+     * @param args Command-line arguments; empty to start the interactive menu.
      * @throws FileNotFoundException If a required file is not found.
      * @throws IOException           If an I/O error occurs.
      * @throws InterruptedException  If a thread is interrupted during execution.
      */
 	public static void main(String[] args) throws FileNotFoundException, IOException, InterruptedException {
+        if (args.length > 0) {
+            System.exit(runCommand(args, System.out));
+        }
         Scanner inputScanner = new Scanner(System.in);
         Librarysystem librarysystem = new Librarysystem(inputScanner, System.out);
         String pathFileBooks = "books.bin";
         String pathFileUsers = "users.bin";
         librarysystem.mainMenu(pathFileUsers, pathFileBooks);
     }
+
+    /**
+     * Runs a maintenance command.
+     * <p>
+     * Supported commands:
+     * <ul>
+     * <li>{@code convert <books-file> <stream|slotted|log|block|compact>} converts a books file to another format.</li>
+     * <li>{@code compact <books-file>} merges the change log of a log-format books file into its snapshot.</li>
+     * <li>{@code import <books-file> <titles-file> [csv|tsv|lines]} appends the titles of a file as new
+     * books, resuming an interrupted import of the same file.</li>
+     * <li>{@code export <books-file> <csv|jsonl> [<output-file>|-] [--gzip]} streams the catalog to a file
+     * or to standard output; output files ending in {@code .gz} are compressed as well.</li>
+     * <li>{@code migrate <books-file> [<users-file>]} adds the versioned file header to books and users
+     * files written by older versions and renumbers books whose ID repeats an earlier one.</li>
+     * <li>{@code serve [<port> [<books-file> [<users-file>]]]} serves the interactive menu to any number of
+     * TCP clients at once, one session per connection, until the process is stopped.</li>
+     * <li>{@code serve-commands [<port> [<books-file> [<users-file>]]]} serves the line-oriented command
+     * protocol of CommandServer to any number of TCP clients until the process is stopped.</li>
+     * <li>{@code serve-http [<port> [<books-file> [<users-file>]]]} serves the JSON API of LibraryHttpServer
+     * until the process is stopped.</li>
+     * </ul>
+     * </p>
+     *
+     * @param args The command name followed by its arguments.
+     * @param out  The stream for messages.
+     * @return The process exit code.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static int runCommand(String[] args, PrintStream out) throws IOException {
+        String command = args[0];
+        if ("convert".equals(command) && args.length == 3) {
+            BookFormat format = parseEnum(BookFormat.class, args[2]);
+            if (format == null) {
+                return usage(out);
+            }
+            if (BookStores.convert(args[1], format)) {
+                out.println(args[1] + " converted to " + format + " format.");
+            } else {
+                out.println(args[1] + " is missing or already in " + format + " format.");
+            }
+            return 0;
+        }
+        if ("compact".equals(command) && args.length == 2) {
+            Path path = Paths.get(args[1]);
+            if (BookStores.detect(path) != BookFormat.LOG) {
+                out.println(args[1] + " is not in LOG format.");
+                return 1;
+            }
+            try (LogBookStore store = new LogBookStore(path)) {
+                store.compact();
+            }
+            out.println(args[1] + " compacted.");
+            return 0;
+        }
+        if ("import".equals(command) && (args.length == 3 || args.length == 4)) {
+            Path source = Paths.get(args[2]);
+            BulkImporter.SourceFormat format = args.length == 4
+                    ? parseEnum(BulkImporter.SourceFormat.class, args[3])
+                    : BulkImporter.SourceFormat.of(source);
+            if (format == null) {
+                return usage(out);
+            }
+            BulkImporter importer = new BulkImporter(Paths.get(args[1]), source, format,
+                    Runtime.getRuntime().availableProcessors());
+            BulkImporter.Result result = importer.run(out);
+            out.printf("%d titles imported into %s (%d lines skipped, %.0f rows/s).%n", result.getRows(), args[1],
+                    result.getSkipped(), result.getRowsPerSecond());
+            return 0;
+        }
+        if ("export".equals(command) && args.length >= 3 && args.length <= 5) {
+            CatalogExporter.Format format = parseEnum(CatalogExporter.Format.class, args[2]);
+            if (format == null) {
+                return usage(out);
+            }
+            String target = "-";
+            boolean gzip = false;
+            for (int i = 3; i < args.length; i++) {
+                if ("--gzip".equals(args[i])) {
+                    gzip = true;
+                } else {
+                    target = args[i];
+                }
+            }
+            gzip |= target.endsWith(".gz");
+            long count = CatalogExporter.export(Paths.get(args[1]), format, target, gzip, out);
+            if (!"-".equals(target)) {
+                out.println(count + " books exported to " + target + ".");
+            }
+            return 0;
+        }
+
+        if ("migrate".equals(command) && (args.length == 2 || args.length == 3)) {
+            report(out, args[1], FileMigrator.migrateBooks(Paths.get(args[1])));
+            if (args.length == 3) {
+                report(out, args[2], FileMigrator.migrateUsers(Paths.get(args[2])));
+            }
+            return 0;
+        }
+
+        if ("serve".equals(command) && args.length <= 4) {
+            int port = args.length > 1 ? parsePort(args[1]) : LibraryServer.DEFAULT_PORT;
+            if (port < 0) {
+                return usage(out);
+            }
+            String pathFileBooks = args.length > 2 ? args[2] : "books.bin";
+            String pathFileUsers = args.length > 3 ? args[3] : "users.bin";
+            LibraryServer server = new LibraryServer(port, pathFileUsers, pathFileBooks);
+            server.start();
+            out.println("Serving " + pathFileBooks + " on port " + server.getPort() + ".");
+            try {
+                server.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                server.close();
+            }
+            return 0;
+        }
+
+        if ("serve-commands".equals(command) && args.length <= 4) {
+            int port = args.length > 1 ? parsePort(args[1]) : CommandServer.DEFAULT_PORT;
+            if (port < 0) {
+                return usage(out);
+            }
+            String pathFileBooks = args.length > 2 ? args[2] : "books.bin";
+            String pathFileUsers = args.length > 3 ? args[3] : "users.bin";
+            CommandServer server = new CommandServer(port, pathFileUsers, pathFileBooks);
+            server.start();
+            out.println("Serving " + pathFileBooks + " commands on port " + server.getPort() + ".");
+            out.flush();
+            try {
+                server.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                server.close();
+            }
+            return 0;
+        }
+
+        if ("serve-http".equals(command) && args.length <= 4) {
+            int port = args.length > 1 ? parsePort(args[1]) : LibraryHttpServer.DEFAULT_PORT;
+            if (port < 0) {
+                return usage(out);
+            }
+            String pathFileBooks = args.length > 2 ? args[2] : "books.bin";
+            String pathFileUsers = args.length > 3 ? args[3] : "users.bin";
+            LibraryHttpServer server = new LibraryHttpServer(port, pathFileUsers, pathFileBooks);
+            server.start();
+            out.println("Serving " + pathFileBooks + " over HTTP on port " + server.getPort() + ".");
+            out.flush();
+            try {
+                server.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                server.close();
+            }
+            return 0;
+        }
+
+        return usage(out);
+    }
+
+    private static int usage(PrintStream out) {
+        out.println("Usage: convert <books-file> <stream|slotted|log|block|compact>");
+        out.println("       compact <books-file>");
+        out.println("       import <books-file> <titles-file> [csv|tsv|lines]");
+        out.println("       export <books-file> <csv|jsonl> [<output-file>|-] [--gzip]");
+        out.println("       migrate <books-file> [<users-file>]");
+        out.println("       serve [<port> [<books-file> [<users-file>]]]");
+        out.println("       serve-commands [<port> [<books-file> [<users-file>]]]");
+        out.println("       serve-http [<port> [<books-file> [<users-file>]]]");
+        return 2;
+    }
+
+    /**
+     * Parses a constant name case-insensitively.
+     *
+     * @return The constant, or null if the type has none of that name.
+     */
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String name) {
+        try {
+            return Enum.valueOf(type, name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses a TCP port; 0 picks a free one.
+     *
+     * @return The port, or -1 if the argument is not a number between 0 and 65535.
+     */
+    private static int parsePort(String value) {
+        try {
+            int port = Integer.parseInt(value);
+            return port >= 0 && port <= 65535 ? port : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void report(PrintStream out, String file, long migrated) {
+        if (migrated < 0) {
+            out.println(file + " is missing or already has a file header.");
+        } else {
+            out.println(file + " migrated (" + migrated + " records).");
+        }
+    }
 }
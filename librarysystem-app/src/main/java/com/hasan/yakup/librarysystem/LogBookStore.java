@@ -0,0 +1,765 @@
+/**
+ * @file LogBookStore.java
+ * @brief BookStore that appends mutations to a log over a stream-format snapshot.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+
+/**
+ * @class LogBookStore
+ * @brief Persists every change as a small record appended to {@code <file>.log}.
+ * @details The books file itself stays in the stream format and acts as the snapshot.
+ * Loading reads the snapshot and replays the log over it. Every write is an append of
+ * (operation, book ID, value) records, so its cost does not depend on the catalog size.
+ * <p>
+ * When the log grows beyond a size limit, or when too many of its entries have been
+ * superseded by later entries for the same book, it is compacted in the background:
+ * the log is moved aside to {@code <file>.log.compacting}, new appends go to a fresh log,
+ * and the snapshot plus the moved log are merged into a new snapshot that atomically
+ * replaces the old one. All log records carry absolute values, so replaying a log that
+ * was already merged (after a crash during compaction) is harmless.
+ * </p>
+ * <p>
+ * Several processes may share the files. Moving the log aside and replacing the snapshot
+ * happen under the exclusive ProcessLock, and the merge reads the files under the shared
+ * lock, so a compaction never overlaps a write or another compaction's switch. A process
+ * whose open log was moved aside by another process's compaction notices it on its next
+ * write and reopens the log.
+ * </p>
+ */
+public class LogBookStore implements BookStore {
+    /** System property with the log size in bytes that triggers a compaction. */
+    public static final String MAX_LOG_BYTES_PROPERTY = "librarysystem.log.maxBytes";
+    /** System property with the share of superseded log entries that triggers a compaction. */
+    public static final String MAX_DEAD_RATIO_PROPERTY = "librarysystem.log.maxDeadRatio";
+    /** Default log size that triggers a compaction. */
+    public static final long DEFAULT_MAX_LOG_BYTES = 4L << 20;
+    /** Default share of superseded entries that triggers a compaction. */
+    public static final double DEFAULT_MAX_DEAD_RATIO = 0.5;
+    /** Number of entries below which the dead-entry ratio is not considered. */
+    static final int MIN_ENTRIES_FOR_RATIO = 1024;
+
+    static final int LOG_MAGIC = 0x424B4C47;
+    static final int LOG_VERSION = 1;
+    static final int LOG_HEADER_SIZE = 8;
+
+    private static final byte OP_ADD = 1;
+    private static final byte OP_RENAME = 2;
+    private static final byte OP_FLAGS = 3;
+    private static final byte OP_DELETE = 4;
+
+    private static final int FLAG_MARKED = 1;
+    private static final int FLAG_WISHLIST = 1 << 1;
+    private static final int FLAG_LOANED = 1 << 2;
+
+    private final Path path;
+    private final Path logPath;
+    private final Path compactingPath;
+    private final long maxLogBytes;
+    private final double maxDeadRatio;
+    private final ExecutorService compactor;
+    private final ProcessLock processLock;
+
+    private final boolean forceWrites = SyncMode.configured().forcesWrites();
+    private FileOutputStream logOutput;
+    private DataOutputStream log;
+    private long logBytesAtOpen;
+    private long logBytes;
+    private int entries;
+    private final Set<Integer> touched = new HashSet<Integer>();
+    private FileStamp baseStamp;
+    private FileStamp logStamp;
+    private Future<?> compaction;
+    private IOException compactionFailure;
+
+    /**
+     * @brief Constructor for LogBookStore with thresholds taken from system properties.
+     * @param path The path to the file containing book information.
+     */
+    public LogBookStore(Path path) {
+        this(path, Long.getLong(MAX_LOG_BYTES_PROPERTY, DEFAULT_MAX_LOG_BYTES),
+                Double.parseDouble(System.getProperty(MAX_DEAD_RATIO_PROPERTY, String.valueOf(DEFAULT_MAX_DEAD_RATIO))));
+    }
+
+    /**
+     * @brief Constructor for LogBookStore.
+     * @param path The path to the file containing book information.
+     * @param maxLogBytes The log size in bytes that triggers a compaction.
+     * @param maxDeadRatio The share of superseded entries (0..1) that triggers a compaction.
+     */
+    public LogBookStore(Path path, long maxLogBytes, double maxDeadRatio) {
+        this.path = path;
+        this.logPath = logPathOf(path);
+        this.compactingPath = Paths.get(path.toString() + ".log.compacting");
+        this.maxLogBytes = maxLogBytes;
+        this.maxDeadRatio = maxDeadRatio;
+        this.processLock = ProcessLock.of(path);
+        this.compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "book-log-compactor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public BookFormat getFormat() {
+        return BookFormat.LOG;
+    }
+
+    @Override
+    public synchronized void load(Map<Integer, Book> books) throws IOException {
+        closeLog();
+        baseStamp = FileStamp.of(path);
+        if (Files.exists(path)) {
+            new StreamBookStore(path).load(books);
+        }
+        if (Files.exists(compactingPath)) {
+            replay(compactingPath, books, false);
+        }
+
+        entries = 0;
+        touched.clear();
+        logBytes = Files.exists(logPath) ? replay(logPath, books, true) : 0;
+        logStamp = FileStamp.of(logPath);
+    }
+
+    @Override
+    public synchronized void write(List<BookChange> changes, Collection<Book> books) throws IOException {
+        if (compactionFailure != null) {
+            IOException failure = compactionFailure;
+            compactionFailure = null;
+            throw failure;
+        }
+
+        if (log != null && !FileStamp.of(logPath).equals(logStamp)) {
+            // The log was compacted by another process since this store wrote to it.
+            closeLog();
+        }
+        DataOutputStream writer = openLog();
+        long committed = logOutput.getChannel().size();
+        int committedEntries = entries;
+        List<Integer> newlyTouched = new ArrayList<Integer>();
+        try {
+            for (BookChange change : changes) {
+                writeEntry(writer, change);
+                entries++;
+                if (touched.add(change.getBook().getId())) {
+                    newlyTouched.add(change.getBook().getId());
+                }
+            }
+            writer.flush();
+            if (forceWrites) {
+                logOutput.getFD().sync();
+            }
+        } catch (IOException | RuntimeException e) {
+            rollBack(committed, e);
+            entries = committedEntries;
+            touched.removeAll(newlyTouched);
+            throw e;
+        }
+        logBytes = writer.size() + logBytesAtOpen;
+        logStamp = FileStamp.of(logPath);
+
+        if (needsCompaction() && (compaction == null || compaction.isDone())) {
+            compaction = compactor.submit(compactionTask());
+        }
+    }
+
+    @Override
+    public synchronized boolean isStale() throws IOException {
+        return !FileStamp.of(path).equals(baseStamp) || !FileStamp.of(logPath).equals(logStamp);
+    }
+
+    /**
+     * @brief Merges the snapshot and the current log into a new snapshot and waits for it.
+     * @details The merge runs on the compaction thread, so it never overlaps a compaction
+     * that was started in the background.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void compact() throws IOException {
+        Future<?> running;
+        synchronized (this) {
+            running = compactor.submit(compactionTask());
+            compaction = running;
+        }
+        awaitCompaction();
+    }
+
+    private Runnable compactionTask() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compactNow();
+                } catch (IOException e) {
+                    synchronized (LogBookStore.this) {
+                        compactionFailure = e;
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * @brief Performs a compaction in the calling thread.
+     * @details Appends may continue while the merge is running; they go to a fresh log that
+     * is replayed over the new snapshot.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void compactNow() throws IOException {
+        try (ProcessLock.Hold hold = processLock.exclusive()) {
+            synchronized (this) {
+                if (!Files.exists(compactingPath)) {
+                    closeLog();
+                    if (!Files.exists(logPath)) {
+                        return;
+                    }
+                    Files.move(logPath, compactingPath, StandardCopyOption.ATOMIC_MOVE);
+                    createLog(path);
+                    entries = 0;
+                    touched.clear();
+                    logBytes = LOG_HEADER_SIZE;
+                    logStamp = FileStamp.of(logPath);
+                }
+            }
+        }
+
+        Map<Integer, Book> books = new LinkedHashMap<Integer, Book>();
+        FileStamp merged;
+        try (ProcessLock.Hold hold = processLock.shared()) {
+            if (!Files.exists(compactingPath)) {
+                // Another process completed the compaction.
+                return;
+            }
+            merged = FileStamp.of(path);
+            if (Files.exists(path)) {
+                new StreamBookStore(path).load(books);
+            }
+            replay(compactingPath, books, false);
+        }
+
+        Path directory = path.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, path.getFileName() + ".", ".compact.tmp");
+        try (FileOutputStream output = new FileOutputStream(temporary.toFile());
+                DataOutputStream writer = new DataOutputStream(new BufferedOutputStream(output, 1 << 16))) {
+            FileHeader.of(FileHeader.BOOKS_MAGIC, books.size()).write(writer);
+            for (Book book : books.values()) {
+                StreamBookStore.writeBook(writer, book);
+            }
+            writer.flush();
+            output.getFD().sync();
+        }
+
+        try (ProcessLock.Hold hold = processLock.exclusive()) {
+            synchronized (this) {
+                if (!Files.exists(compactingPath) || !FileStamp.of(path).equals(merged)) {
+                    // Another process replaced the snapshot with the same merge meanwhile.
+                    Files.delete(temporary);
+                    return;
+                }
+                FileBookStore.replace(temporary, path, true);
+                Files.delete(compactingPath);
+                baseStamp = FileStamp.of(path);
+            }
+        }
+    }
+
+    /**
+     * @brief Gets the current size of the log in bytes.
+     * @return The log size.
+     */
+    public synchronized long getLogBytes() {
+        return logBytes;
+    }
+
+    /**
+     * @brief Gets the share of log entries superseded by later entries for the same book.
+     * @return The dead-entry ratio between 0 and 1.
+     */
+    public synchronized double getDeadRatio() {
+        return entries == 0 ? 0 : (double) (entries - touched.size()) / entries;
+    }
+
+    /**
+     * @brief Waits for a running background compaction.
+     * @throws IOException If the compaction failed.
+     */
+    public void awaitCompaction() throws IOException {
+        Future<?> running;
+        synchronized (this) {
+            running = compaction;
+        }
+        if (running == null) {
+            return;
+        }
+        try {
+            running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for compaction", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Compaction failed", e.getCause());
+        }
+        synchronized (this) {
+            if (compactionFailure != null) {
+                IOException failure = compactionFailure;
+                compactionFailure = null;
+                throw failure;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            awaitCompaction();
+        } finally {
+            compactor.shutdown();
+            synchronized (this) {
+                closeLog();
+            }
+        }
+    }
+
+    /**
+     * @brief Gets the log file of a books file.
+     * @param path The path of the books file.
+     * @return The path of its log.
+     */
+    static Path logPathOf(Path path) {
+        return Paths.get(path.toString() + ".log");
+    }
+
+    /**
+     * @brief Checks whether a books file is kept in log mode.
+     * @param path The path of the books file.
+     * @return True if a log or a log being compacted exists next to the file.
+     */
+    static boolean hasLog(Path path) {
+        return Files.exists(logPathOf(path)) || Files.exists(Paths.get(path.toString() + ".log.compacting"));
+    }
+
+    /**
+     * @brief Starts log mode for a books file by creating an empty log.
+     * @param path The path of the books file.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void createLog(Path path) throws IOException {
+        try (DataOutputStream writer = new DataOutputStream(new FileOutputStream(logPathOf(path).toFile()))) {
+            writer.writeInt(LOG_MAGIC);
+            writer.writeInt(LOG_VERSION);
+        }
+    }
+
+    /**
+     * @brief Ends log mode for a books file by deleting its logs.
+     * @param path The path of the books file.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void deleteLogs(Path path) throws IOException {
+        Files.deleteIfExists(logPathOf(path));
+        Files.deleteIfExists(Paths.get(path.toString() + ".log.compacting"));
+    }
+
+    private DataOutputStream openLog() throws IOException {
+        if (log == null) {
+            boolean fresh = !Files.exists(logPath) || Files.size(logPath) == 0;
+            logOutput = new FileOutputStream(logPath.toFile(), true);
+            log = new DataOutputStream(new BufferedOutputStream(logOutput));
+            logBytesAtOpen = fresh ? 0 : Files.size(logPath);
+            if (fresh) {
+                log.writeInt(LOG_MAGIC);
+                log.writeInt(LOG_VERSION);
+            }
+        }
+        return log;
+    }
+
+    /**
+     * @brief Cuts a failed write off the log, so that no partial entry is left behind.
+     * @details The log is closed without writing what is still buffered, and reopened by
+     * the next write.
+     * @param committed The length of the log before the write.
+     * @param failure The failure of the write; a failure to roll back is added to it.
+     */
+    private void rollBack(long committed, Exception failure) {
+        FileOutputStream output = logOutput;
+        log = null;
+        logOutput = null;
+        try {
+            output.getChannel().truncate(committed);
+            logStamp = FileStamp.of(logPath);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        } finally {
+            try {
+                output.close();
+            } catch (IOException e) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    private void closeLog() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+            logOutput = null;
+        }
+    }
+
+    private boolean needsCompaction() {
+        if (logBytes >= maxLogBytes) {
+            return true;
+        }
+        return entries >= MIN_ENTRIES_FOR_RATIO && getDeadRatio() >= maxDeadRatio;
+    }
+
+    /**
+     * @brief Applies the records of a log to a catalog.
+     * @param log The log to replay.
+     * @param books The catalog to update.
+     * @param active True for the log that receives appends; its statistics are collected and
+     * a torn record at its end is cut off.
+     * @return The number of valid bytes in the log.
+     * @throws IOException If an I/O error occurs or the log is not a book log.
+     */
+    private long replay(Path log, final Map<Integer, Book> books, final boolean active) throws IOException {
+        long valid = readLog(log, new Consumer<Entry>() {
+            @Override
+            public void accept(Entry entry) {
+                entry.applyTo(books);
+                if (active) {
+                    entries++;
+                    touched.add(entry.id);
+                }
+            }
+        });
+
+        if (active && valid < Files.size(log)) {
+            try (RandomAccessFile file = new RandomAccessFile(log.toFile(), "rw")) {
+                file.setLength(valid);
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * @brief Visits every book of a log-format catalog in file order without loading it.
+     * @details The logs are folded into one pending change per touched book first, so memory
+     * grows with the size of the logs but not with the size of the snapshot, which is then
+     * streamed with the pending changes applied. The visited books match those of
+     * {@link #load}.
+     * @param path The path to the file containing book information.
+     * @param sink Receives the books.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void forEach(Path path, Consumer<Book> sink) throws IOException {
+        final Map<Integer, Pending> pending = new LinkedHashMap<Integer, Pending>();
+        Consumer<Entry> fold = new Consumer<Entry>() {
+            @Override
+            public void accept(Entry entry) {
+                Pending change = pending.get(entry.id);
+                if (change == null) {
+                    change = new Pending();
+                    pending.put(entry.id, change);
+                }
+                change.fold(entry);
+            }
+        };
+        Path compacting = Paths.get(path.toString() + ".log.compacting");
+        if (Files.exists(compacting)) {
+            readLog(compacting, fold);
+        }
+        if (hasLog(path)) {
+            readLog(logPathOf(path), fold);
+        }
+
+        if (Files.exists(path)) {
+            try (StreamRecordReader reader = StreamRecordReader.open(path)) {
+                Book book;
+                while ((book = reader.next()) != null) {
+                    Pending change = pending.get(book.getId());
+                    Book current = change == null ? book : change.applyTo(book);
+                    if (current != null) {
+                        sink.accept(current);
+                    }
+                }
+            }
+        }
+        for (Pending change : pending.values()) {
+            if (!change.seen && change.book != null) {
+                sink.accept(change.book);
+            }
+        }
+    }
+
+    /**
+     * @brief Reads the records of a log up to its end or its first torn record.
+     * @param log The log to read.
+     * @param handler Receives each record; the entry object is reused.
+     * @return The number of valid bytes in the log.
+     * @throws IOException If an I/O error occurs or the log is not a book log.
+     */
+    private static long readLog(Path log, Consumer<Entry> handler) throws IOException {
+        long valid = 0;
+        try (DataInputStream reader = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(log.toFile()), 1 << 16))) {
+            if (Files.size(log) >= LOG_HEADER_SIZE) {
+                if (reader.readInt() != LOG_MAGIC) {
+                    throw new IOException("Not a book log: " + log);
+                }
+                int version = reader.readInt();
+                if (version != LOG_VERSION) {
+                    throw new IOException("Unsupported book log version " + version + ": " + log);
+                }
+                valid = LOG_HEADER_SIZE;
+            }
+
+            Entry entry = new Entry();
+            while (valid > 0) {
+                try {
+                    int size = entry.read(reader);
+                    if (size < 0) {
+                        break;
+                    }
+                    valid += size;
+                } catch (EOFException e) {
+                    break;
+                }
+                handler.accept(entry);
+            }
+        }
+        return valid;
+    }
+
+    private static void writeEntry(DataOutputStream writer, BookChange change) throws IOException {
+        Book book = change.getBook();
+        switch (change.getKind()) {
+            case ADD:
+                writer.writeByte(OP_ADD);
+                writer.writeInt(book.getId());
+                writer.writeUTF(book.getName());
+                writer.writeByte(flagsOf(book));
+                break;
+            case RENAME:
+                writer.writeByte(OP_RENAME);
+                writer.writeInt(book.getId());
+                writer.writeUTF(book.getName());
+                break;
+            case FLAGS:
+                writer.writeByte(OP_FLAGS);
+                writer.writeInt(book.getId());
+                writer.writeByte(flagsOf(book));
+                break;
+            case DELETE:
+                writer.writeByte(OP_DELETE);
+                writer.writeInt(book.getId());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown change: " + change.getKind());
+        }
+    }
+
+    /**
+     * @brief One decoded log record.
+     */
+    private static final class Entry {
+        private int op;
+        private int id;
+        private String name;
+        private int flags;
+
+        /**
+         * @brief Reads the next record into this entry.
+         * @param reader The log stream.
+         * @return The size of the record in bytes, or -1 at the end of the log.
+         * @throws IOException If an I/O error occurs or the record is torn.
+         */
+        private int read(DataInputStream reader) throws IOException {
+            op = reader.read();
+            if (op < 0) {
+                return -1;
+            }
+            id = reader.readInt();
+            name = null;
+            switch (op) {
+                case OP_ADD:
+                    name = reader.readUTF();
+                    flags = reader.readUnsignedByte();
+                    return 5 + 2 + utfLength(name) + 1;
+                case OP_RENAME:
+                    name = reader.readUTF();
+                    return 5 + 2 + utfLength(name);
+                case OP_FLAGS:
+                    flags = reader.readUnsignedByte();
+                    return 5 + 1;
+                case OP_DELETE:
+                    return 5;
+                default:
+                    throw new IOException("Unknown book log operation " + op);
+            }
+        }
+
+        /**
+         * @brief Applies the record to a catalog.
+         * @param books The catalog to update. Changed books are put back, so its {@code get} may
+         * return copies.
+         */
+        private void applyTo(Map<Integer, Book> books) {
+            switch (op) {
+                case OP_ADD: {
+                    Book book = new Book(id, name, false, false, false);
+                    setFlags(book, flags);
+                    books.put(id, book);
+                    break;
+                }
+                case OP_RENAME: {
+                    Book book = books.get(id);
+                    if (book != null) {
+                        book.setName(name);
+                        books.put(id, book);
+                    }
+                    break;
+                }
+                case OP_FLAGS: {
+                    Book book = books.get(id);
+                    if (book != null) {
+                        setFlags(book, flags);
+                        books.put(id, book);
+                    }
+                    break;
+                }
+                default:
+                    books.remove(id);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * @brief The folded effect of all log records of one book.
+     */
+    private static final class Pending {
+        private Book book;
+        private boolean deleted;
+        private String name;
+        private int flags = -1;
+        private boolean seen;
+
+        private void fold(Entry entry) {
+            switch (entry.op) {
+                case OP_ADD:
+                    book = new Book(entry.id, entry.name, false, false, false);
+                    setFlags(book, entry.flags);
+                    deleted = false;
+                    name = null;
+                    flags = -1;
+                    break;
+                case OP_RENAME:
+                    if (book != null) {
+                        book.setName(entry.name);
+                    } else {
+                        name = entry.name;
+                    }
+                    break;
+                case OP_FLAGS:
+                    if (book != null) {
+                        setFlags(book, entry.flags);
+                    } else {
+                        flags = entry.flags;
+                    }
+                    break;
+                default:
+                    book = null;
+                    deleted = true;
+                    name = null;
+                    flags = -1;
+                    break;
+            }
+        }
+
+        /**
+         * @brief Applies the folded records to the snapshot record of the book.
+         * @param base The book as stored in the snapshot.
+         * @return The current book, or null if it was deleted.
+         */
+        private Book applyTo(Book base) {
+            seen = true;
+            if (book != null || deleted) {
+                return book;
+            }
+            if (name != null) {
+                base.setName(name);
+            }
+            if (flags >= 0) {
+                setFlags(base, flags);
+            }
+            return base;
+        }
+    }
+
+    private static void setFlags(Book book, int flags) {
+        book.setMarked((flags & FLAG_MARKED) != 0);
+        book.setWishlist((flags & FLAG_WISHLIST) != 0);
+        book.setLoaned((flags & FLAG_LOANED) != 0);
+    }
+
+    private static int utfLength(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length++;
+            } else if (c > 0x07FF) {
+                length += 3;
+            } else {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+    private static byte flagsOf(Book book) {
+        int flags = 0;
+        if (book.isMarked()) {
+            flags |= FLAG_MARKED;
+        }
+        if (book.isWishlist()) {
+            flags |= FLAG_WISHLIST;
+        }
+        if (book.isLoaned()) {
+            flags |= FLAG_LOANED;
+        }
+        return (byte) flags;
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * @file ModifiedUtf8.java
+ * @brief Encoding and decoding of the modified UTF-8 used by DataOutputStream.writeUTF.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+
+/**
+ * @class ModifiedUtf8
+ * @brief Encodes and decodes modified UTF-8 the same way DataOutputStream.writeUTF and
+ * DataInputStream.readUTF do.
+ */
+final class ModifiedUtf8 {
+    private ModifiedUtf8() {
+    }
+
+    /**
+     * @brief Decodes a modified UTF-8 string.
+     * @details Consumes exactly {@code length} bytes starting at the buffer position. ASCII
+     * titles take a fast path that copies one byte per character.
+     * @param buffer The buffer positioned at the first byte of the string.
+     * @param length The encoded length in bytes.
+     * @param chars Scratch space of at least {@code length} characters.
+     * @return The decoded string.
+     * @throws UTFDataFormatException If the bytes are not valid modified UTF-8.
+     */
+    static String decode(ByteBuffer buffer, int length, char[] chars) throws UTFDataFormatException {
+        String value = decode(buffer, buffer.position(), length, chars);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * @brief Decodes a modified UTF-8 string at an absolute offset.
+     * @details The position of the buffer is not changed, so threads may decode from the
+     * same buffer concurrently as long as each passes its own scratch space.
+     * @param buffer The buffer holding the string.
+     * @param offset The index of the first byte.
+     * @param length The encoded length in bytes.
+     * @param chars Scratch space of at least {@code length} characters.
+     * @return The decoded string.
+     * @throws UTFDataFormatException If the bytes are not valid modified UTF-8.
+     */
+    static String decode(ByteBuffer buffer, int offset, int length, char[] chars) throws UTFDataFormatException {
+        int count = 0;
+        int end = offset + length;
+        int position = offset;
+
+        while (position < end) {
+            int c = buffer.get(position) & 0xFF;
+            if (c > 0x7F) {
+                break;
+            }
+            chars[count++] = (char) c;
+            position++;
+        }
+
+        while (position < end) {
+            int c = buffer.get(position) & 0xFF;
+            switch (c >> 4) {
+                case 0: case 1: case 2: case 3: case 4: case 5: case 6: case 7:
+                    position++;
+                    chars[count++] = (char) c;
+                    break;
+                case 12: case 13: {
+                    if (position + 2 > end) {
+                        throw new UTFDataFormatException("malformed input: partial character at end");
+                    }
+                    int c2 = buffer.get(position + 1);
+                    if ((c2 & 0xC0) != 0x80) {
+                        throw new UTFDataFormatException("malformed input around byte " + (position + 1));
+                    }
+                    chars[count++] = (char) (((c & 0x1F) << 6) | (c2 & 0x3F));
+                    position += 2;
+                    break;
+                }
+                case 14: {
+                    if (position + 3 > end) {
+                        throw new UTFDataFormatException("malformed input: partial character at end");
+                    }
+                    int c2 = buffer.get(position + 1);
+                    int c3 = buffer.get(position + 2);
+                    if (((c2 & 0xC0) != 0x80) || ((c3 & 0xC0) != 0x80)) {
+                        throw new UTFDataFormatException("malformed input around byte " + (position + 2));
+                    }
+                    chars[count++] = (char) (((c & 0x0F) << 12) | ((c2 & 0x3F) << 6) | (c3 & 0x3F));
+                    position += 3;
+                    break;
+                }
+                default:
+                    throw new UTFDataFormatException("malformed input around byte " + position);
+            }
+        }
+
+        return new String(chars, 0, count);
+    }
+
+    /**
+     * @brief Computes the encoded length of a string.
+     * @param value The string.
+     * @return The number of bytes {@link #encode} writes for it.
+     */
+    static int encodedLength(String value) {
+        int length = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == 0 || c > 0x7F) {
+                length += c > 0x07FF ? 2 : 1;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @brief Encodes a string into a buffer at an absolute offset.
+     * @details The position of the buffer is not changed.
+     * @param value The string.
+     * @param buffer The target buffer with room for {@link #encodedLength} bytes.
+     * @param offset The index of the first byte.
+     * @return The index after the last written byte.
+     */
+    static int encode(String value, ByteBuffer buffer, int offset) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != 0 && c <= 0x7F) {
+                buffer.put(offset++, (byte) c);
+            } else if (c <= 0x07FF) {
+                buffer.put(offset++, (byte) (0xC0 | (c >> 6)));
+                buffer.put(offset++, (byte) (0x80 | (c & 0x3F)));
+            } else {
+                buffer.put(offset++, (byte) (0xE0 | (c >> 12)));
+                buffer.put(offset++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put(offset++, (byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * @file OperationResult.java
+ * @brief Outcome of a LibraryService operation.
+ */
+package com.hasan.yakup.librarysystem;
+
+/**
+ * @class OperationResult
+ * @brief Tells the caller of a LibraryService operation what happened, without any console output.
+ * @details Successful book operations carry a copy of the affected book as it is after the
+ * operation.
+ */
+public final class OperationResult {
+    /**
+     * @brief The possible outcomes of an operation.
+     */
+    public enum Status {
+        /** The operation was carried out. */
+        OK,
+        /** There is no book with the given ID. */
+        NOT_FOUND,
+        /** The book already had the requested state, so nothing changed. */
+        UNCHANGED,
+        /** The email and password did not match a registered user. */
+        INVALID_CREDENTIALS
+    }
+
+    private final Status status;
+    private final Book book;
+
+    private OperationResult(Status status, Book book) {
+        this.status = status;
+        this.book = book;
+    }
+
+    /**
+     * @brief Creates a successful result.
+     * @param book The affected book, or null for operations without one.
+     * @return The result.
+     */
+    static OperationResult ok(Book book) {
+        return new OperationResult(Status.OK, book);
+    }
+
+    /**
+     * @brief Creates an unsuccessful result.
+     * @param status The reason of the failure.
+     * @return The result.
+     */
+    static OperationResult of(Status status) {
+        return new OperationResult(status, null);
+    }
+
+    /**
+     * @brief Gets the outcome.
+     * @return The status of the operation.
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @brief Checks whether the operation was carried out.
+     * @return True if the status is OK.
+     */
+    public boolean isSuccess() {
+        return status == Status.OK;
+    }
+
+    /**
+     * @brief Gets the affected book.
+     * @return A copy of the book after the operation, or null.
+     */
+    public Book getBook() {
+        return book;
+    }
+}
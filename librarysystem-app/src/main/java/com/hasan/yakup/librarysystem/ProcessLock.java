@@ -0,0 +1,287 @@
+/**
+ * @file ProcessLock.java
+ * @brief Readers-writer lock on a data file shared by several processes.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * @class ProcessLock
+ * @brief Serializes writers of a data file across processes and counts their changes.
+ * @details The lock is a FileChannel lock on the {@code <file>.lock} sidecar: readers share
+ * it, writers hold it exclusively. The data file itself cannot carry the lock, since most
+ * stores replace it with a new file on every rewrite and a lock on the old file would not
+ * keep anyone away from the new one. The sidecar starts with a FileHeader whose record count
+ * is the change counter: every writer increments it before releasing the lock, so a process
+ * that remembers the counter of its last load knows with one 16-byte read whether another
+ * process changed the file since.
+ * <p>
+ * A FileChannel lock belongs to the whole process, and locking a region the process already
+ * locks fails. Hence there is one instance per file and process ({@link #of(Path)}); it keeps
+ * the sidecar open, takes a ReentrantReadWriteLock among the threads of the process first
+ * and holds the file lock while any thread holds the lock. A thread holding the exclusive
+ * lock may take either lock again; a thread holding the shared lock must not ask for the
+ * exclusive one. If the sidecar is deleted, e.g. while cleaning up, the next acquisition
+ * opens the new one.
+ * </p>
+ */
+final class ProcessLock {
+    private static final ConcurrentMap<Path, ProcessLock> LOCKS = new ConcurrentHashMap<Path, ProcessLock>();
+
+    private final Path lockPath;
+    private final ReentrantReadWriteLock threads = new ReentrantReadWriteLock();
+    private final Object opening = new Object();
+    private volatile FileChannel channel;
+    private Object fileKey;
+    private FileLock fileLock;
+    private int sharedHolders;
+
+    private ProcessLock(Path lockPath) {
+        this.lockPath = lockPath;
+    }
+
+    /**
+     * @brief Gets the lock of a data file.
+     * @param path The path of the data file.
+     * @return The lock shared by all users of the file in this process.
+     */
+    static ProcessLock of(Path path) {
+        Path key = path.toAbsolutePath().normalize();
+        ProcessLock lock = LOCKS.get(key);
+        if (lock == null) {
+            ProcessLock created = new ProcessLock(lockPathOf(key));
+            lock = LOCKS.putIfAbsent(key, created);
+            if (lock == null) {
+                lock = created;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * @brief Gets the lock file of a data file.
+     * @param path The path of the data file.
+     * @return The path of its lock file.
+     */
+    static Path lockPathOf(Path path) {
+        return Paths.get(path.toString() + ".lock");
+    }
+
+    /**
+     * @brief Takes the lock shared with other readers, waiting for writers of any process.
+     * @return The hold to be closed when reading is done.
+     * @throws IOException If the lock file cannot be opened or locked.
+     */
+    Hold shared() throws IOException {
+        if (threads.isWriteLockedByCurrentThread()) {
+            return exclusive();
+        }
+        threads.readLock().lock();
+        boolean locked = false;
+        try {
+            synchronized (this) {
+                if (sharedHolders == 0) {
+                    fileLock = currentChannel().lock(0, Long.MAX_VALUE, true);
+                }
+                sharedHolders++;
+            }
+            locked = true;
+        } finally {
+            if (!locked) {
+                threads.readLock().unlock();
+            }
+        }
+        return new Hold(false);
+    }
+
+    /**
+     * @brief Takes the lock exclusively, waiting for readers and writers of any process.
+     * @return The hold to be closed when writing is done.
+     * @throws IOException If the lock file cannot be opened or locked.
+     */
+    Hold exclusive() throws IOException {
+        threads.writeLock().lock();
+        if (threads.getWriteHoldCount() == 1) {
+            boolean locked = false;
+            try {
+                synchronized (this) {
+                    fileLock = currentChannel().lock(0, Long.MAX_VALUE, false);
+                }
+                locked = true;
+            } finally {
+                if (!locked) {
+                    threads.writeLock().unlock();
+                }
+            }
+        }
+        return new Hold(true);
+    }
+
+    /**
+     * @brief Reads the change counter.
+     * @details Needs no lock: the counter is one aligned 8-byte field. Under the shared or
+     * exclusive lock the value matches the data file; without it, it may be outdated by the
+     * time it is returned and is only good for deciding whether to reload. If the sidecar
+     * was deleted or replaced since it was opened, the current one is read instead; the open
+     * channel is only switched when the lock is taken next.
+     * @return The number of changes recorded so far; 0 if no writer locked the file yet.
+     * @throws IOException If an I/O error occurs.
+     */
+    long changeCount() throws IOException {
+        FileChannel open;
+        try {
+            open = channel();
+            if (isCurrent()) {
+                return FileHeader.read(open, FileHeader.LOCK_MAGIC).getRecordCount();
+            }
+        } catch (ClosedChannelException e) {
+            // The sidecar was reopened meanwhile.
+        }
+        try (FileChannel current = FileChannel.open(lockPath, StandardOpenOption.READ)) {
+            return FileHeader.read(current, FileHeader.LOCK_MAGIC).getRecordCount();
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @brief Checks whether the open channel belongs to the sidecar at the lock path.
+     * @return False if the sidecar was deleted or replaced since it was opened.
+     * @throws IOException If an I/O error occurs.
+     */
+    private boolean isCurrent() throws IOException {
+        Object current = fileKeyOf(lockPath);
+        synchronized (opening) {
+            return current != null && current.equals(fileKey);
+        }
+    }
+
+    /**
+     * @brief Increments the change counter after the data file was changed.
+     * @details Must be called with the exclusive lock held.
+     * @return The new value of the counter.
+     * @throws IOException If an I/O error occurs.
+     */
+    long recordChange() throws IOException {
+        FileChannel file = channel();
+        if (file.size() < FileHeader.SIZE) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(FileHeader.SIZE);
+            FileHeader.of(FileHeader.LOCK_MAGIC, 1).write(new DataOutputStream(bytes));
+            ByteBuffer header = ByteBuffer.wrap(bytes.toByteArray());
+            while (header.hasRemaining()) {
+                file.write(header, header.position());
+            }
+            return 1;
+        }
+        long count = changeCount() + 1;
+        FileHeader.writeCount(file, count);
+        return count;
+    }
+
+    private FileChannel channel() throws IOException {
+        FileChannel open = channel;
+        if (open == null || !open.isOpen()) {
+            synchronized (opening) {
+                open = channel;
+                if (open == null || !open.isOpen()) {
+                    // An interrupt during I/O closes a FileChannel; the next use opens it again.
+                    open = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                            StandardOpenOption.WRITE);
+                    fileKey = fileKeyOf(lockPath);
+                    channel = open;
+                }
+            }
+        }
+        return open;
+    }
+
+    /**
+     * @brief Gets the channel to lock, reopening the sidecar if it was deleted or replaced.
+     * @details Must be called while no thread of this process holds the file lock.
+     * @return The open channel of the current sidecar.
+     * @throws IOException If an I/O error occurs.
+     */
+    private FileChannel currentChannel() throws IOException {
+        FileChannel open = channel();
+        synchronized (opening) {
+            Object current = fileKeyOf(lockPath);
+            if (current == null || !current.equals(fileKey)) {
+                open.close();
+                open = channel();
+            }
+        }
+        return open;
+    }
+
+    private static Object fileKeyOf(Path path) throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private void release(boolean exclusive) throws IOException {
+        if (exclusive) {
+            try {
+                if (threads.getWriteHoldCount() == 1) {
+                    synchronized (this) {
+                        fileLock.release();
+                        fileLock = null;
+                    }
+                }
+            } finally {
+                threads.writeLock().unlock();
+            }
+        } else {
+            try {
+                synchronized (this) {
+                    if (--sharedHolders == 0) {
+                        fileLock.release();
+                        fileLock = null;
+                    }
+                }
+            } finally {
+                threads.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * @class Hold
+     * @brief One acquisition of the lock, released by closing it.
+     */
+    final class Hold implements Closeable {
+        private final boolean exclusive;
+        private boolean released;
+
+        private Hold(boolean exclusive) {
+            this.exclusive = exclusive;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!released) {
+                released = true;
+                release(exclusive);
+            }
+        }
+    }
+}
@@ -0,0 +1,352 @@
+/**
+ * @file SlottedBookStore.java
+ * @brief BookStore for the fixed-width slotted books file format.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * @class SlottedBookStore
+ * @brief Stores every book in a fixed-size slot so a record can be updated in place.
+ * @details The file starts with a header (magic, version, slot size) followed by slots.
+ * A slot holds a status byte, a flag byte, the book ID, the title length and the title.
+ * Titles that do not fit into the slot are appended to a side heap file
+ * ({@code <file>.heap}) and the slot keeps their heap offset instead.
+ * <p>
+ * A flag change is a single one-byte positioned write, a delete only tombstones the slot,
+ * and tombstoned slots are reused by later additions.
+ * </p>
+ */
+public class SlottedBookStore extends FileBookStore {
+    /** Magic number at the start of a slotted books file ("BKSL"). */
+    static final int MAGIC = 0x424B534C;
+    /** Version of the slotted layout. */
+    static final int VERSION = 1;
+    /** Size of the file header in bytes. */
+    static final int HEADER_SIZE = 16;
+    /** Slot size used for new files. */
+    static final int DEFAULT_SLOT_SIZE = 96;
+
+    private static final int SLOT_HEADER_SIZE = 12;
+    private static final int STATUS_OFFSET = 0;
+    private static final int FLAGS_OFFSET = 1;
+    private static final byte STATUS_FREE = 0;
+    private static final byte STATUS_LIVE = 1;
+
+    private static final int FLAG_MARKED = 1;
+    private static final int FLAG_WISHLIST = 1 << 1;
+    private static final int FLAG_LOANED = 1 << 2;
+
+    private final Path heapPath;
+    private int slotSize = DEFAULT_SLOT_SIZE;
+    private int slotCount;
+    private final Map<Integer, Integer> slotsById = new HashMap<Integer, Integer>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<Integer>();
+
+    /**
+     * @brief Constructor for SlottedBookStore.
+     * @param path The path to the file containing book information.
+     */
+    public SlottedBookStore(Path path) {
+        super(path);
+        this.heapPath = heapPathOf(path);
+    }
+
+    @Override
+    public BookFormat getFormat() {
+        return BookFormat.SLOTTED;
+    }
+
+    @Override
+    public void load(Map<Integer, Book> books) throws IOException {
+        slotsById.clear();
+        freeSlots.clear();
+        slotCount = 0;
+        remember();
+        if (Files.exists(path) && Files.size(path) > 0) {
+            scan(books, null);
+        }
+    }
+
+    /**
+     * @brief Visits every live book of a slotted file in slot order without loading it.
+     * @param path The path of the slotted file.
+     * @param sink Receives the books.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void forEach(Path path, Consumer<Book> sink) throws IOException {
+        if (Files.exists(path) && Files.size(path) > 0) {
+            new SlottedBookStore(path).scan(null, sink);
+        }
+    }
+
+    /**
+     * @brief Reads all slots.
+     * @param books The map to fill and index the slots for, or null to only visit the books.
+     * @param sink Receives the books when no map is given.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void scan(Map<Integer, Book> books, Consumer<Book> sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a slotted books file: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported slotted books file version " + version + ": " + path);
+            }
+            slotSize = header.getInt();
+            slotCount = (int) ((channel.size() - HEADER_SIZE) / slotSize);
+
+            FileChannel heap = null;
+            try {
+                ByteBuffer slot = ByteBuffer.allocate(slotSize);
+                for (int index = 0; index < slotCount; index++) {
+                    slot.clear();
+                    readFully(channel, slot, slotOffset(index));
+                    slot.flip();
+                    if (slot.get(STATUS_OFFSET) != STATUS_LIVE) {
+                        if (books != null) {
+                            freeSlots.add(index);
+                        }
+                        continue;
+                    }
+                    if (heap == null && titleLength(slot) > inlineCapacity() && Files.exists(heapPath)) {
+                        heap = FileChannel.open(heapPath, StandardOpenOption.READ);
+                    }
+                    Book book = decodeSlot(slot, heap);
+                    if (books == null) {
+                        sink.accept(book);
+                        continue;
+                    }
+                    putLoaded(books, book);
+                    slotsById.put(book.getId(), index);
+                }
+            } finally {
+                if (heap != null) {
+                    heap.close();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void write(List<BookChange> changes, Collection<Book> books) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE)) {
+            if (channel.size() < HEADER_SIZE) {
+                writeHeader(channel, slotSize);
+            }
+            for (BookChange change : changes) {
+                Book book = change.getBook();
+                switch (change.getKind()) {
+                    case ADD: {
+                        Integer free = freeSlots.poll();
+                        int index = free != null ? free : slotCount++;
+                        writeSlot(channel, index, book);
+                        slotsById.put(book.getId(), index);
+                        break;
+                    }
+                    case RENAME:
+                        writeSlot(channel, slotOf(book.getId()), book);
+                        break;
+                    case FLAGS:
+                        writeByte(channel, slotOffset(slotOf(book.getId())) + FLAGS_OFFSET, flagsOf(book));
+                        break;
+                    case DELETE: {
+                        int index = slotOf(book.getId());
+                        writeByte(channel, slotOffset(index) + STATUS_OFFSET, STATUS_FREE);
+                        slotsById.remove(book.getId());
+                        freeSlots.add(index);
+                        break;
+                    }
+                    default:
+                        throw new IllegalArgumentException("Unknown change: " + change.getKind());
+                }
+            }
+            if (forceWrites) {
+                channel.force(false);
+            }
+        }
+        remember();
+    }
+
+    /**
+     * @brief Writes a complete slotted file from a sequence of books.
+     * @details Slots are written sequentially, so the books are never held in memory.
+     * @param books The books to be written.
+     * @param target The path of the slotted file to create.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void writeAll(Iterable<Book> books, Path target) throws IOException {
+        Files.deleteIfExists(heapPathOf(target));
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(channel, DEFAULT_SLOT_SIZE);
+            SlottedBookStore store = new SlottedBookStore(target);
+            for (Book book : books) {
+                store.writeSlot(channel, store.slotCount++, book);
+            }
+        }
+    }
+
+    /**
+     * @brief Checks whether the file starts with the slotted magic number.
+     * @param path The path of the file.
+     * @return True if the file is a slotted books file.
+     * @throws IOException If an I/O error occurs.
+     */
+    static boolean isSlotted(Path path) throws IOException {
+        if (!Files.exists(path) || Files.size(path) < HEADER_SIZE) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            readFully(channel, magic, 0);
+            magic.flip();
+            return magic.getInt() == MAGIC;
+        }
+    }
+
+    /**
+     * @brief Gets the side heap file of a slotted file.
+     * @param path The path of the slotted file.
+     * @return The path of its heap file.
+     */
+    static Path heapPathOf(Path path) {
+        return Paths.get(path.toString() + ".heap");
+    }
+
+    private int slotOf(int bookId) throws IOException {
+        Integer index = slotsById.get(bookId);
+        if (index == null) {
+            throw new IOException("Book " + bookId + " has no slot in " + path);
+        }
+        return index;
+    }
+
+    private long slotOffset(int index) {
+        return HEADER_SIZE + (long) index * slotSize;
+    }
+
+    private int inlineCapacity() {
+        return slotSize - SLOT_HEADER_SIZE;
+    }
+
+    private static int titleLength(ByteBuffer slot) {
+        return slot.getInt(8);
+    }
+
+    private Book decodeSlot(ByteBuffer slot, FileChannel heap) throws IOException {
+        int flags = slot.get(FLAGS_OFFSET);
+        int id = slot.getInt(4);
+        int length = titleLength(slot);
+        byte[] title = new byte[length];
+        if (length <= inlineCapacity()) {
+            slot.position(SLOT_HEADER_SIZE);
+            slot.get(title);
+        } else {
+            if (heap == null) {
+                throw new IOException("Missing title heap " + heapPath);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(title);
+            readFully(heap, buffer, slot.getLong(SLOT_HEADER_SIZE));
+        }
+        return new Book(id, new String(title, StandardCharsets.UTF_8), (flags & FLAG_MARKED) != 0,
+                (flags & FLAG_WISHLIST) != 0, (flags & FLAG_LOANED) != 0);
+    }
+
+    private void writeSlot(FileChannel channel, int index, Book book) throws IOException {
+        byte[] title = book.getName().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer slot = ByteBuffer.allocate(slotSize);
+        slot.put(STATUS_LIVE);
+        slot.put(flagsOf(book));
+        slot.putShort((short) 0);
+        slot.putInt(book.getId());
+        slot.putInt(title.length);
+        if (title.length <= inlineCapacity()) {
+            slot.put(title);
+        } else {
+            slot.putLong(appendToHeap(title));
+        }
+        slot.clear();
+        writeFully(channel, slot, slotOffset(index));
+    }
+
+    private long appendToHeap(byte[] title) throws IOException {
+        try (FileChannel heap = FileChannel.open(heapPath, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            long offset = heap.size();
+            writeFully(heap, ByteBuffer.wrap(title), offset);
+            if (forceWrites) {
+                heap.force(false);
+            }
+            return offset;
+        }
+    }
+
+    private static byte flagsOf(Book book) {
+        int flags = 0;
+        if (book.isMarked()) {
+            flags |= FLAG_MARKED;
+        }
+        if (book.isWishlist()) {
+            flags |= FLAG_WISHLIST;
+        }
+        if (book.isLoaned()) {
+            flags |= FLAG_LOANED;
+        }
+        return (byte) flags;
+    }
+
+    private static void writeHeader(FileChannel channel, int slotSize) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(slotSize).putInt(0);
+        header.flip();
+        writeFully(channel, header, 0);
+    }
+
+    private static void writeByte(FileChannel channel, long position, byte value) throws IOException {
+        writeFully(channel, ByteBuffer.wrap(new byte[] { value }), position);
+    }
+
+    /**
+     * @brief Fills a buffer from a file with positional reads.
+     * @param channel The file to read.
+     * @param buffer The buffer to fill up to its limit.
+     * @param position The file position of the first byte.
+     * @throws IOException If an I/O error occurs or the file ends first.
+     */
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * @file StreamBookStore.java
+ * @brief BookStore for the original variable-length books file format.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @class StreamBookStore
+ * @brief Stores books as consecutive DataOutputStream records.
+ * @details Each record is the book ID ({@code writeInt}), its name ({@code writeUTF}) and the
+ * marked, wishlist and loaned flags ({@code writeBoolean}). The records follow a FileHeader;
+ * files written before the header existed are still read, and keep their layout until they
+ * are rewritten or migrated with FileMigrator. Records have no fixed offset, so
+ * additions are appended and every other change rewrites the file. A rewrite goes to a
+ * temporary file that is renamed over the original, so the old catalog stays intact until
+ * the new one is complete. An append that fails is cut off again, and one that was cut
+ * short by a crash leaves a torn record at the end. Loads and the readers of BookStores
+ * take it for the end of the file; the file is only changed under the exclusive
+ * ProcessLock, so the next append cuts it off before writing, and a rewrite drops it.
+ */
+public class StreamBookStore extends FileBookStore {
+    private long tornAt = -1;
+
+    /**
+     * @brief Constructor for StreamBookStore.
+     * @param path The path to the file containing book information.
+     */
+    public StreamBookStore(Path path) {
+        super(path);
+    }
+
+    @Override
+    public BookFormat getFormat() {
+        return BookFormat.STREAM;
+    }
+
+    @Override
+    public void load(Map<Integer, Book> books) throws IOException {
+        remember();
+        if (!Files.exists(path)) {
+            return;
+        }
+        tornAt = -1;
+        try (StreamRecordReader reader = StreamRecordReader.open(path)) {
+            if (books instanceof BookTable.Loader) {
+                // Titles are copied into the table as raw bytes and are never decoded.
+                BookTable table = ((BookTable.Loader) books).table();
+                while (reader.advanceWhole()) {
+                    if (!table.add(reader.getId(), reader.titleView(), reader.flag(BookFlag.MARKED),
+                            reader.flag(BookFlag.WISHLIST), reader.flag(BookFlag.LOANED))) {
+                        throw duplicateId(reader.getId());
+                    }
+                }
+            } else {
+                while (reader.advanceWhole()) {
+                    putLoaded(books, reader.current());
+                }
+            }
+            if (reader.isTorn()) {
+                tornAt = reader.validLength();
+            }
+        }
+    }
+
+    @Override
+    protected IOException duplicateId(int id) {
+        return new IOException("Book ID " + id + " occurs more than once in " + path + "; run 'migrate " + path
+                + "' to renumber the later books");
+    }
+
+    @Override
+    public boolean rewrites(List<BookChange> changes) {
+        for (BookChange change : changes) {
+            if (change.getKind() != BookChange.Kind.ADD) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void write(List<BookChange> changes, Collection<Book> books) throws IOException {
+        if (rewrites(changes)) {
+            Path temporary = temporaryPathOf(path);
+            try (FileOutputStream output = new FileOutputStream(temporary.toFile());
+                    DataOutputStream writer = new DataOutputStream(new BufferedOutputStream(output, 1 << 16))) {
+                FileHeader.of(FileHeader.BOOKS_MAGIC, books.size()).write(writer);
+                for (Book book : books) {
+                    writeBook(writer, book);
+                }
+                writer.flush();
+                if (forceWrites) {
+                    output.getFD().sync();
+                }
+            }
+            replace(temporary, path, forceWrites);
+            tornAt = -1;
+        } else {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                FileHeader header = FileHeader.read(channel, FileHeader.BOOKS_MAGIC);
+                if (tornAt >= 0 && channel.size() > tornAt) {
+                    channel.truncate(tornAt);
+                }
+                long committed = channel.size();
+                boolean created = committed == 0;
+                channel.position(committed);
+                try {
+                    DataOutputStream writer = new DataOutputStream(
+                            new BufferedOutputStream(Channels.newOutputStream(channel)));
+                    if (created) {
+                        FileHeader.of(FileHeader.BOOKS_MAGIC, 0).write(writer);
+                    }
+                    for (BookChange change : changes) {
+                        writeBook(writer, change.getBook());
+                    }
+                    writer.flush();
+                    if (created || !header.isLegacy()) {
+                        FileHeader.writeCount(channel, header.getRecordCount() + changes.size());
+                    }
+                    if (forceWrites) {
+                        channel.force(false);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    rollBack(channel, committed, created || header.isLegacy() ? -1 : header.getRecordCount(), e);
+                    throw e;
+                }
+                tornAt = -1;
+            }
+        }
+        remember();
+    }
+
+    /**
+     * @brief Cuts a failed append off again, so it leaves no partial records behind.
+     * @param channel The open file.
+     * @param committed The length of the file before the append.
+     * @param recordCount The record count to restore in the header, or -1 to leave it.
+     * @param failure The failure of the append; a failure to roll back is added to it.
+     */
+    private static void rollBack(FileChannel channel, long committed, long recordCount, Exception failure) {
+        try {
+            channel.truncate(committed);
+            if (recordCount >= 0) {
+                FileHeader.writeCount(channel, recordCount);
+            }
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * @brief Writes a complete stream file from a sequence of books.
+     * @param books The books to be written.
+     * @param target The path of the file to create.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void writeAll(Iterable<Book> books, Path target) throws IOException {
+        try (FileOutputStream output = new FileOutputStream(target.toFile());
+                DataOutputStream writer = new DataOutputStream(new BufferedOutputStream(output, 1 << 16))) {
+            FileHeader.of(FileHeader.BOOKS_MAGIC, 0).write(writer);
+            long count = 0;
+            for (Book book : books) {
+                writeBook(writer, book);
+                count++;
+            }
+            writer.flush();
+            FileHeader.writeCount(output.getChannel(), count);
+        }
+    }
+
+    /**
+     * @brief Reads one book record.
+     * @param reader The stream to read from.
+     * @return The book, or null at the end of the stream.
+     * @throws IOException If an I/O error occurs or the record is truncated.
+     */
+    static Book readBook(DataInputStream reader) throws IOException {
+        int id;
+        try {
+            id = reader.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        Book book = new Book();
+        book.setId(id);
+        book.setName(reader.readUTF());
+        book.setMarked(reader.readBoolean());
+        book.setWishlist(reader.readBoolean());
+        book.setLoaned(reader.readBoolean());
+        return book;
+    }
+
+    /**
+     * @brief Writes one book record.
+     * @param writer The stream to write to.
+     * @param book The book to be written.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void writeBook(DataOutputStream writer, Book book) throws IOException {
+        writer.writeInt(book.getId());
+        writer.writeUTF(book.getName());
+        writer.writeBoolean(book.isMarked());
+        writer.writeBoolean(book.isWishlist());
+        writer.writeBoolean(book.isLoaned());
+    }
+}
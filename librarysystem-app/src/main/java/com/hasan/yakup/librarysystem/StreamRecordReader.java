@@ -0,0 +1,503 @@
+/**
+ * @file StreamRecordReader.java
+ * @brief Sequential readers for stream-format books files.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @class StreamRecordReader
+ * @brief Reads the records of a stream-format books file one at a time.
+ * @details Files that fit into a single mapping are decoded straight from a
+ * MappedByteBuffer, which avoids a read call per field. Larger files fall back to a
+ * buffered DataInputStream. Both readers detect the end of the file from the position
+ * instead of calling {@code available()}, and start after the FileHeader if the file has one.
+ * <p>
+ * Besides {@link #next()}, which decodes whole records, a reader can {@link #advance()} to
+ * the next record and only read its ID and flags. The title is skipped using its length
+ * prefix and decoded on request, or handed out as raw modified UTF-8 bytes, so a filter on
+ * flags does not pay for decoding titles it throws away.
+ * </p>
+ * <p>
+ * A mapped reader releases its mapping when it is closed, so that the next rewrite of the file
+ * does not hit a live mapping on Windows. Nothing it hands out points into the mapping: books
+ * are decoded and raw titles are copied into a buffer of the reader.
+ * </p>
+ */
+public abstract class StreamRecordReader implements BookCursor {
+    /** Largest file that is read through a single mapping. */
+    static final long MAPPING_LIMIT = Integer.MAX_VALUE;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private long recordCount = -1;
+    private long dataOffset;
+    private long dataEnd;
+    private int id;
+    private boolean marked;
+    private boolean wishlist;
+    private boolean loaned;
+    private char[] chars = new char[64];
+
+    /**
+     * @brief Opens a reader for a stream-format books file.
+     * @param path The path of the file.
+     * @return A mapped reader if the file fits into one mapping, a buffered reader otherwise.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static StreamRecordReader open(Path path) throws IOException {
+        return open(path, MAPPING_LIMIT);
+    }
+
+    /**
+     * @brief Opens a reader with an explicit mapping limit.
+     * @param path The path of the file.
+     * @param mappingLimit The largest file size that is mapped.
+     * @return The reader.
+     * @throws IOException If an I/O error occurs.
+     */
+    static StreamRecordReader open(Path path, long mappingLimit) throws IOException {
+        FileHeader header;
+        long size;
+        StreamRecordReader reader = null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            header = FileHeader.read(channel, FileHeader.BOOKS_MAGIC);
+            size = channel.size() - header.dataOffset();
+            if (size <= mappingLimit) {
+                reader = new Mapped(channel.map(FileChannel.MapMode.READ_ONLY, header.dataOffset(), size));
+            }
+        }
+        if (reader == null) {
+            FileInputStream input = new FileInputStream(path.toFile());
+            input.getChannel().position(header.dataOffset());
+            reader = new Buffered(new DataInputStream(new BufferedInputStream(bounded(input, size), BUFFER_SIZE)));
+        }
+        reader.recordCount = header.isLegacy() ? -1 : header.getRecordCount();
+        reader.dataOffset = header.dataOffset();
+        reader.dataEnd = header.dataOffset() + size;
+        return reader;
+    }
+
+    /**
+     * @brief Limits a stream to the bytes the file had when it was opened.
+     * @details A record that is being appended while the file is read is then never seen
+     * half-written; like the mapped reader, the reader sees the file as it was at open.
+     * @param input The stream positioned at the first record.
+     * @param size The number of bytes to read.
+     * @return The limited stream.
+     */
+    private static InputStream bounded(InputStream input, final long size) {
+        return new FilterInputStream(input) {
+            private long remaining = size;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int b = super.read();
+                if (b >= 0) {
+                    remaining--;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+                if (read > 0) {
+                    remaining -= read;
+                }
+                return read;
+            }
+
+            @Override
+            public long skip(long count) throws IOException {
+                long skipped = super.skip(Math.min(count, remaining));
+                remaining -= skipped;
+                return skipped;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return (int) Math.min(super.available(), remaining);
+            }
+        };
+    }
+
+    /**
+     * @brief Reads the next record.
+     * @return The next book, or null at the end of the file.
+     * @throws IOException If an I/O error occurs or the record is truncated.
+     */
+    @Override
+    public Book next() throws IOException {
+        if (!advance()) {
+            return null;
+        }
+        return current();
+    }
+
+    /**
+     * @brief Decodes the current record.
+     * @return The book.
+     * @throws UTFDataFormatException If the title is not valid modified UTF-8.
+     */
+    Book current() throws UTFDataFormatException {
+        return new Book(id, readTitle(), marked, wishlist, loaned);
+    }
+
+    @Override
+    public long recordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @brief Reads the next record whose flag has the given value.
+     * @details Titles of the skipped records are never decoded.
+     * @param flag The flag to test.
+     * @param value The wanted value of the flag.
+     * @return The next matching book, or null at the end of the file.
+     * @throws IOException If an I/O error occurs or a record is truncated.
+     */
+    public Book next(BookFlag flag, boolean value) throws IOException {
+        while (advance()) {
+            if (flag(flag) == value) {
+                return current();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @brief Moves to the next record without decoding its title.
+     * @return True if there is a record, false at the end of the file.
+     * @throws IOException If an I/O error occurs or the record is truncated.
+     */
+    public abstract boolean advance() throws IOException;
+
+    /**
+     * @brief Moves to the next record, stopping before a torn record at the end of the file.
+     * @details An append that was cut short, e.g. by a crash, leaves part of a record at the
+     * end of the file. Its group was never reported as written, so a reader that repairs the
+     * file treats it as the end; {@link #isTorn()} then tells whether such a tail is left.
+     * @return True if there is a complete record, false at the end of the file or at a torn record.
+     * @throws IOException If an I/O error occurs.
+     */
+    boolean advanceWhole() throws IOException {
+        try {
+            return advance();
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @brief Reads the next complete record, taking a torn record at the end for the end.
+     * @details Readers of the catalog use this, so a torn append left by a crash does not
+     * fail them before the next writer cuts it off.
+     * @return The next book, or null at the end of the file or at a torn record.
+     * @throws IOException If an I/O error occurs.
+     */
+    Book nextWhole() throws IOException {
+        return advanceWhole() ? current() : null;
+    }
+
+    /**
+     * @brief Reads the next complete record whose flag has the given value.
+     * @details See {@link #nextWhole()} and {@link #next(BookFlag, boolean)}.
+     * @param flag The flag to test.
+     * @param value The wanted value of the flag.
+     * @return The next matching book, or null at the end of the file or at a torn record.
+     * @throws IOException If an I/O error occurs.
+     */
+    Book nextWhole(BookFlag flag, boolean value) throws IOException {
+        while (advanceWhole()) {
+            if (flag(flag) == value) {
+                return current();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @brief Gets the length of the file up to the end of the last record read.
+     * @return The file offset after the last complete record.
+     */
+    long validLength() {
+        return dataOffset + consumed();
+    }
+
+    /**
+     * @brief Checks whether the records read so far end before the file does.
+     * @details Only meaningful once {@link #advanceWhole()} has returned false.
+     * @return True if the file ends in a torn record.
+     */
+    boolean isTorn() {
+        return validLength() < dataEnd;
+    }
+
+    /**
+     * @brief Gets the number of record bytes read up to the end of the last complete record.
+     * @return The number of bytes after the header.
+     */
+    abstract long consumed();
+
+    /**
+     * @brief Gets the raw title of the current record.
+     * @details The buffer is shared and only valid until the next call on this reader. It is
+     * a heap buffer, never a view of a mapping, so it may still be read after the reader is
+     * closed.
+     * @return A buffer whose remaining bytes are the modified UTF-8 title.
+     */
+    abstract ByteBuffer rawTitle();
+
+    /**
+     * @brief Gets the title of the current record where the reader holds it.
+     * @details Unlike {@link #rawTitle()} this may be a view of a mapping; it must not leave
+     * the reader.
+     * @return A buffer whose remaining bytes are the modified UTF-8 title.
+     */
+    abstract ByteBuffer titleView();
+
+    /**
+     * @brief Decodes the title of the current record.
+     * @return The title.
+     * @throws UTFDataFormatException If the bytes are not valid modified UTF-8.
+     */
+    public String readTitle() throws UTFDataFormatException {
+        ByteBuffer title = titleView();
+        int start = title.position();
+        int length = title.remaining();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        String name = ModifiedUtf8.decode(title, length, chars);
+        title.position(start);
+        return name;
+    }
+
+    /**
+     * @brief Gets the ID of the current record.
+     * @return The book ID.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @brief Gets a flag of the current record.
+     * @param flag The flag to read.
+     * @return The value of the flag.
+     */
+    public boolean flag(BookFlag flag) {
+        switch (flag) {
+            case MARKED:
+                return marked;
+            case WISHLIST:
+                return wishlist;
+            default:
+                return loaned;
+        }
+    }
+
+    /**
+     * @brief Stores the fields of the record that was just read.
+     * @param id The book ID.
+     * @param marked The marked flag.
+     * @param wishlist The wishlist flag.
+     * @param loaned The loaned flag.
+     */
+    void setRecord(int id, boolean marked, boolean wishlist, boolean loaned) {
+        this.id = id;
+        this.marked = marked;
+        this.wishlist = wishlist;
+        this.loaned = loaned;
+    }
+
+    /**
+     * @class Mapped
+     * @brief Decodes records directly from a mapped file.
+     */
+    static final class Mapped extends StreamRecordReader {
+        private final MappedByteBuffer buffer;
+        private final ByteBuffer title;
+        private ByteBuffer copy = ByteBuffer.allocate(256);
+        private int end;
+        private boolean closed;
+
+        Mapped(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+            this.title = buffer.duplicate();
+        }
+
+        @Override
+        public boolean advance() throws IOException {
+            if (closed) {
+                throw new IOException("The reader is closed");
+            }
+            if (!buffer.hasRemaining()) {
+                return false;
+            }
+            try {
+                int id = buffer.getInt();
+                int length = buffer.getShort() & 0xFFFF;
+                if (buffer.remaining() < length) {
+                    throw new BufferUnderflowException();
+                }
+                int start = buffer.position();
+                buffer.position(start + length);
+                boolean marked = buffer.get() != 0;
+                boolean wishlist = buffer.get() != 0;
+                boolean loaned = buffer.get() != 0;
+                title.limit(start + length).position(start);
+                setRecord(id, marked, wishlist, loaned);
+                end = buffer.position();
+                return true;
+            } catch (BufferUnderflowException e) {
+                throw new EOFException("Truncated book record");
+            }
+        }
+
+        @Override
+        ByteBuffer rawTitle() {
+            int length = title.remaining();
+            if (copy.capacity() < length) {
+                copy = ByteBuffer.allocate(Math.max(length, copy.capacity() * 2));
+            }
+            copy.clear();
+            copy.put(title.duplicate()).flip();
+            return copy;
+        }
+
+        @Override
+        ByteBuffer titleView() {
+            return title;
+        }
+
+        @Override
+        long consumed() {
+            return end;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                unmap(buffer);
+            }
+        }
+    }
+
+    /**
+     * @class Buffered
+     * @brief Reads records through a buffered stream.
+     */
+    static final class Buffered extends StreamRecordReader {
+        private final DataInputStream reader;
+        private ByteBuffer title = ByteBuffer.allocate(256);
+        private long consumed;
+
+        Buffered(DataInputStream reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean advance() throws IOException {
+            int id;
+            try {
+                id = reader.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            int length = reader.readUnsignedShort();
+            if (title.capacity() < length) {
+                title = ByteBuffer.allocate(Math.max(length, title.capacity() * 2));
+            }
+            reader.readFully(title.array(), 0, length);
+            title.limit(length).position(0);
+            boolean marked = reader.readBoolean();
+            boolean wishlist = reader.readBoolean();
+            boolean loaned = reader.readBoolean();
+            setRecord(id, marked, wishlist, loaned);
+            consumed += 4 + 2 + length + 3;
+            return true;
+        }
+
+        @Override
+        ByteBuffer rawTitle() {
+            return title;
+        }
+
+        @Override
+        ByteBuffer titleView() {
+            return title;
+        }
+
+        @Override
+        long consumed() {
+            return consumed;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * @brief Releases a mapping without waiting for the garbage collector.
+     * @details Open mappings keep the file locked on Windows, which would make the next
+     * rewrite of the file fail. Unmapping uses JDK internals and is skipped silently when
+     * they are not accessible.
+     * @param buffer The mapped buffer; it must not be used afterwards.
+     */
+    static void unmap(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            return;
+        }
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (NoSuchMethodException e) {
+            unmapJava8(buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Left to the garbage collector.
+        }
+    }
+
+    private static void unmapJava8(ByteBuffer buffer) {
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Left to the garbage collector.
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * @file StripedLocks.java
+ * @brief Fixed set of locks shared out by book ID.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @class StripedLocks
+ * @brief Maps every book ID to one of a fixed number of reentrant locks.
+ * @details Book {@code id} uses stripe {@code floorMod(id, stripes)}, so operations on the
+ * same book always meet at the same lock while operations on different books only collide
+ * when their IDs share a stripe. The number of stripes is read from the system property
+ * {@value #STRIPES_PROPERTY} and defaults to {@value #DEFAULT_STRIPES}.
+ */
+final class StripedLocks {
+    /** System property with the number of stripes per catalog. */
+    static final String STRIPES_PROPERTY = "librarysystem.repository.stripes";
+    /** Default number of stripes. */
+    static final int DEFAULT_STRIPES = 64;
+
+    private final ReentrantLock[] stripes;
+
+    /**
+     * @brief Constructor for StripedLocks.
+     * @param count The number of stripes; at least 1.
+     */
+    StripedLocks(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Stripe count must be positive: " + count);
+        }
+        stripes = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * @brief Creates the stripes selected by the system property.
+     * @return The locks.
+     */
+    static StripedLocks configured() {
+        return new StripedLocks(Integer.getInteger(STRIPES_PROPERTY, DEFAULT_STRIPES));
+    }
+
+    /**
+     * @brief Gets the lock guarding a book.
+     * @param bookId The ID of the book.
+     * @return The stripe of the ID.
+     */
+    Lock of(int bookId) {
+        return stripes[Math.floorMod(bookId, stripes.length)];
+    }
+
+    /**
+     * @brief Gets the number of stripes.
+     * @return The stripe count.
+     */
+    int size() {
+        return stripes.length;
+    }
+}
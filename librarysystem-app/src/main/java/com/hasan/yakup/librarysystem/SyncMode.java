@@ -0,0 +1,69 @@
+/**
+ * @file SyncMode.java
+ * @brief Durability modes for commits to a books file.
+ */
+package com.hasan.yakup.librarysystem;
+
+/**
+ * @enum SyncMode
+ * @brief Controls whether commits are forced to disk and whether they wait for company.
+ * @details The mode is read from the {@code librarysystem.commit.sync} system property
+ * ({@code none}, {@code commit}, {@code group} or {@code async}); {@link #COMMIT} is used
+ * when it is not set.
+ * In every mode, a rewritten file replaces the old one by an atomic rename, so a crash never
+ * leaves a half-written catalog behind.
+ */
+public enum SyncMode {
+    /** Commits are not forced to disk; the operating system flushes them eventually. */
+    NONE,
+    /** Every commit is forced to disk before the mutation returns. */
+    COMMIT,
+    /** Like COMMIT, but the committing thread first waits a short window for more changes. */
+    GROUP,
+    /**
+     * Flag changes, renames and deletes return as soon as they are applied in memory; a
+     * background thread of the repository forces them to disk in groups. Additions behave
+     * as in COMMIT.
+     */
+    ASYNC;
+
+    /** System property selecting the sync mode. */
+    public static final String SYNC_PROPERTY = "librarysystem.commit.sync";
+    /** System property with the group commit window in microseconds. */
+    public static final String WINDOW_PROPERTY = "librarysystem.commit.windowMicros";
+    /** Default group commit window in microseconds. */
+    public static final long DEFAULT_WINDOW_MICROS = 1000;
+
+    /**
+     * @brief Gets the mode selected by the system property.
+     * @return The configured sync mode.
+     */
+    public static SyncMode configured() {
+        String mode = System.getProperty(SYNC_PROPERTY);
+        return mode == null ? COMMIT : valueOf(mode.trim().toUpperCase());
+    }
+
+    /**
+     * @brief Checks whether commits in this mode are forced to disk.
+     * @return True if writes have to be synced.
+     */
+    public boolean forcesWrites() {
+        return this != NONE;
+    }
+
+    /**
+     * @brief Checks whether flag changes are persisted in the background.
+     * @return True if a single-book change returns before it is committed.
+     */
+    public boolean commitsAsync() {
+        return this == ASYNC;
+    }
+
+    /**
+     * @brief Gets how long a committing thread waits for more changes.
+     * @return The window in nanoseconds, or 0 if commits start immediately.
+     */
+    public long windowNanos() {
+        return this == GROUP ? Long.getLong(WINDOW_PROPERTY, DEFAULT_WINDOW_MICROS) * 1000L : 0;
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * @file UserFile.java
+ * @brief Reading and appending the records of a users file.
+ */
+package com.hasan.yakup.librarysystem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @class UserFile
+ * @brief Accesses a users file: a FileHeader followed by email and password records.
+ * @details Each record is the email and the password written with {@code writeUTF}. Files
+ * written before the header existed are read from their first byte and appended to without
+ * a header until FileMigrator upgrades them. Lookups hold the shared and appends the
+ * exclusive ProcessLock of the file, so a process never reads a record another process is
+ * still appending, and appends of several processes do not interleave.
+ */
+final class UserFile {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private UserFile() {
+    }
+
+    /**
+     * @brief Checks whether a users file holds a record with the given credentials.
+     * @param path The path of the users file.
+     * @param email The email to look for.
+     * @param password The password to look for.
+     * @return True if a record matches both.
+     * @throws IOException If an I/O error occurs or the file is truncated.
+     */
+    static boolean contains(Path path, String email, String password) throws IOException {
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try (ProcessLock.Hold hold = ProcessLock.of(path).shared(); DataInputStream reader = open(path)) {
+            while (true) {
+                String storedEmail;
+                try {
+                    storedEmail = reader.readUTF();
+                } catch (EOFException e) {
+                    return false;
+                }
+                String storedPassword = reader.readUTF();
+                if (storedEmail.equals(email) && storedPassword.equals(password)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * @brief Appends a record, creating the file with a header if it does not exist.
+     * @param path The path of the users file.
+     * @param user The user to add.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void append(Path path, User user) throws IOException {
+        try (ProcessLock.Hold hold = ProcessLock.of(path).exclusive();
+                FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE)) {
+            FileHeader header = FileHeader.read(channel, FileHeader.USERS_MAGIC);
+            boolean created = channel.size() == 0;
+            channel.position(channel.size());
+            DataOutputStream writer = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            if (created) {
+                FileHeader.of(FileHeader.USERS_MAGIC, 0).write(writer);
+            }
+            writer.writeUTF(user.getEmail());
+            writer.writeUTF(user.getPassword());
+            writer.flush();
+            if (created || !header.isLegacy()) {
+                FileHeader.writeCount(channel, header.getRecordCount() + 1);
+            }
+        }
+    }
+
+    /**
+     * @brief Counts the records of a users file without decoding them.
+     * @param path The path of the users file.
+     * @return The number of complete records.
+     * @throws IOException If an I/O error occurs or the last record is truncated.
+     */
+    static long countRecords(Path path) throws IOException {
+        long count = 0;
+        byte[] skipped = new byte[0xFFFF];
+        try (DataInputStream reader = open(path)) {
+            while (true) {
+                int emailLength;
+                try {
+                    emailLength = reader.readUnsignedShort();
+                } catch (EOFException e) {
+                    return count;
+                }
+                reader.readFully(skipped, 0, emailLength);
+                reader.readFully(skipped, 0, reader.readUnsignedShort());
+                count++;
+            }
+        }
+    }
+
+    private static DataInputStream open(Path path) throws IOException {
+        long offset = FileHeader.read(path, FileHeader.USERS_MAGIC).dataOffset();
+        FileInputStream input = new FileInputStream(path.toFile());
+        input.getChannel().position(offset);
+        return new DataInputStream(new BufferedInputStream(input, BUFFER_SIZE));
+    }
+}
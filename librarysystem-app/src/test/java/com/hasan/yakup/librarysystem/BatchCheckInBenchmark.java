@@ -0,0 +1,67 @@
+package com.hasan.yakup.librarysystem;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @class BatchCheckInBenchmark
+ * @brief Compares checking in a cart of books one by one with LibraryService.applyBatch.
+ * @details Run with {@code java -cp target/classes:target/test-classes
+ * com.hasan.yakup.librarysystem.BatchCheckInBenchmark [<books> [<cart>]]}. Every round lends
+ * out a cart of books in one batch and then returns them, either with one returnBook call per
+ * book or with one applyBatch call; the best of five rounds is reported. Stream files are
+ * rewritten on every flag change, so this is where batching matters most.
+ */
+public class BatchCheckInBenchmark {
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int cart = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        Path path = Paths.get("benchmark_batch_books.bin");
+        List<Book> catalog = new ArrayList<Book>(count);
+        for (int id = 1; id <= count; id++) {
+            catalog.add(new Book(id, "Kitap " + id, false, false, false));
+        }
+
+        try {
+            for (BookFormat format : new BookFormat[] { BookFormat.STREAM, BookFormat.SLOTTED }) {
+                StreamBookStore.writeAll(catalog, path);
+                BookStores.convert(path.toString(), format);
+                LibraryService service = new LibraryService();
+                List<BookOperation> borrow = new ArrayList<BookOperation>(cart);
+                List<BookOperation> giveBack = new ArrayList<BookOperation>(cart);
+                for (int i = 0; i < cart; i++) {
+                    int id = 1 + (int) ((long) i * count / cart);
+                    borrow.add(new BookOperation(id, BookOperation.Kind.BORROW));
+                    giveBack.add(new BookOperation(id, BookOperation.Kind.RETURN));
+                }
+
+                long single = Long.MAX_VALUE;
+                long batch = Long.MAX_VALUE;
+                for (int round = 0; round < ROUNDS; round++) {
+                    service.applyBatch(borrow, path.toString());
+                    long start = System.nanoTime();
+                    for (BookOperation operation : giveBack) {
+                        service.returnBook(operation.getBookId(), path.toString());
+                    }
+                    single = Math.min(single, System.nanoTime() - start);
+
+                    service.applyBatch(borrow, path.toString());
+                    start = System.nanoTime();
+                    service.applyBatch(giveBack, path.toString());
+                    batch = Math.min(batch, System.nanoTime() - start);
+                }
+                System.out.printf("%-8s %d books, cart of %d: one by one %8.1f ms, batch %8.1f ms%n", format, count,
+                        cart, single / 1e6, batch / 1e6);
+            }
+        } finally {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(IdAllocator.sidecarPathOf(path));
+            Files.deleteIfExists(ProcessLock.lockPathOf(path));
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.hasan.yakup.librarysystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class BlockBookStoreTest {
+    private String testFilePathBooks = "test_block_books.bin";
+    private Path path = Paths.get(testFilePathBooks);
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(IdAllocator.sidecarPathOf(path));
+        Files.deleteIfExists(ProcessLock.lockPathOf(path));
+    }
+
+    @Test
+    public void testConvert_ShouldKeepBooks() throws IOException {
+        StreamBookStore.writeAll(books(20000), path);
+
+        assertTrue(BookStores.convert(testFilePathBooks, BookFormat.BLOCK));
+        assertEquals(BookFormat.BLOCK, BookStores.detect(path));
+        assertFalse(BookStores.convert(testFilePathBooks, BookFormat.BLOCK));
+        assertEquals(20000, new BookRepository(testFilePathBooks).size());
+
+        assertTrue(BookStores.convert(testFilePathBooks, BookFormat.STREAM));
+        assertEquals(BookFormat.STREAM, BookStores.detect(path));
+        assertEquals("Kitap 12345 ğüş", new BookRepository(testFilePathBooks).findById(12345).getName());
+    }
+
+    @Test
+    public void testParallelLoad_ShouldMatchFileOrderForMapsAndTables() throws IOException {
+        List<Book> expected = books(50000);
+        BlockBookStore.writeAll(expected, path);
+
+        Map<Integer, Book> map = new LinkedHashMap<Integer, Book>();
+        new BlockBookStore(path).load(map);
+        BookTable table = new BookTable();
+        new BlockBookStore(path).load(table.asMap());
+
+        List<Book> fromMap = new ArrayList<Book>(map.values());
+        List<Book> fromTable = table.list();
+        assertEquals(expected.size(), fromMap.size());
+        assertEquals(expected.size(), fromTable.size());
+        for (int i = 0; i < expected.size(); i++) {
+            for (Book book : new Book[] { fromMap.get(i), fromTable.get(i) }) {
+                assertEquals(expected.get(i).getId(), book.getId());
+                assertEquals(expected.get(i).getName(), book.getName());
+                assertEquals(expected.get(i).isLoaned(), book.isLoaned());
+                assertEquals(expected.get(i).isWishlist(), book.isWishlist());
+            }
+        }
+        assertEquals(expected.size() / 7 + 1, table.count(BookFlag.LOANED, true));
+    }
+
+    @Test
+    public void testChanges_ShouldAppendAddsAndRewriteTheRest() throws IOException {
+        System.setProperty(BookStores.FORMAT_PROPERTY, "block");
+        try {
+            BookRepository repository = new BookRepository(testFilePathBooks);
+            repository.add(new Book(1, "Book1", false, false, false));
+            repository.add(new Book(2, "Book2", false, false, false));
+            assertEquals(BookFormat.BLOCK, BookStores.detect(path));
+            repository.add(new Book(3, "Book3", false, false, false));
+            assertTrue(repository.setLoaned(1, true));
+            assertTrue(repository.rename(3, "Renamed"));
+            assertTrue(repository.delete(2));
+        } finally {
+            System.clearProperty(BookStores.FORMAT_PROPERTY);
+        }
+
+        BookRepository reloaded = new BookRepository(testFilePathBooks);
+        assertEquals(2, reloaded.size());
+        assertTrue(reloaded.findById(1).isLoaned());
+        assertNull(reloaded.findById(2));
+        assertEquals("Renamed", reloaded.findById(3).getName());
+    }
+
+    @Test
+    public void testTornBlock_ShouldBeIgnoredAndOverwritten() throws IOException {
+        BlockBookStore.writeAll(books(10), path);
+        BookRepository repository = new BookRepository(testFilePathBooks);
+        repository.add(new Book(100, "Torn", false, false, false));
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        BookRepository reloaded = new BookRepository(testFilePathBooks);
+        assertEquals(10, reloaded.size());
+        reloaded.add(new Book(101, "Appended", false, false, false));
+
+        BookRepository again = new BookRepository(testFilePathBooks);
+        assertEquals(11, again.size());
+        assertNull(again.findById(100));
+        assertEquals("Appended", again.findById(101).getName());
+    }
+
+    @Test
+    public void testDeflate_ShouldShrinkFileAndKeepBooks() throws IOException {
+        List<Book> expected = books(50000);
+        BlockBookStore.writeAll(expected, path);
+        long plain = Files.size(path);
+        Files.delete(path);
+        System.setProperty(BlockCodec.CODEC_PROPERTY, "deflate");
+        try {
+            BlockBookStore.writeAll(expected, path);
+        } finally {
+            System.clearProperty(BlockCodec.CODEC_PROPERTY);
+        }
+        assertTrue(Files.size(path) < plain / 2);
+
+        BookRepository repository = new BookRepository(testFilePathBooks);
+        assertEquals(50000, repository.size());
+        assertEquals("Kitap 4321 ğüş", repository.findById(4321).getName());
+        repository.add(new Book(50001, "Appended", false, false, false));
+        assertTrue(repository.setLoaned(8, false));
+
+        BlockBookStore store = new BlockBookStore(path);
+        Map<Integer, Book> map = new LinkedHashMap<Integer, Book>();
+        store.load(map);
+        assertEquals(BlockCodec.DEFLATE, store.getCodec());
+        assertEquals(50001, map.size());
+        assertFalse(map.get(8).isLoaned());
+        assertEquals("Appended", map.get(50001).getName());
+    }
+
+    @Test
+    public void testSingleAdds_ShouldBeRewrittenIntoFullBlocks() throws IOException {
+        List<Book> expected = books(1000);
+        StreamBookStore.writeAll(expected, path);
+        long stream = Files.size(path);
+        Files.delete(path);
+        System.setProperty(BookStores.FORMAT_PROPERTY, "block");
+        System.setProperty(BlockCodec.CODEC_PROPERTY, "deflate");
+        try {
+            BookRepository repository = new BookRepository(testFilePathBooks);
+            for (Book book : expected) {
+                repository.add(book);
+            }
+            BlockBookStore.writeAll(expected, Paths.get("test_block_rewritten.bin"));
+        } finally {
+            System.clearProperty(BookStores.FORMAT_PROPERTY);
+            System.clearProperty(BlockCodec.CODEC_PROPERTY);
+        }
+        long rewritten = Files.size(Paths.get("test_block_rewritten.bin"));
+        Files.delete(Paths.get("test_block_rewritten.bin"));
+
+        assertTrue(Files.size(path) + " of " + stream, Files.size(path) < stream / 4);
+        assertTrue(Files.size(path) + " of " + rewritten, Files.size(path) < rewritten * 2);
+        BookRepository reloaded = new BookRepository(testFilePathBooks);
+        assertEquals(1000, reloaded.size());
+        assertEquals("Kitap 777 ğüş", reloaded.findById(777).getName());
+        assertEquals("Kitap 1000 ğüş", new BlockBookStore(path).find(1000).getName());
+    }
+
+    @Test
+    public void testFind_ShouldReadOnlyMatchingBlocks() throws IOException {
+        System.setProperty(BlockCodec.CODEC_PROPERTY, "deflate");
+        try {
+            BlockBookStore.writeAll(books(50000), path);
+        } finally {
+            System.clearProperty(BlockCodec.CODEC_PROPERTY);
+        }
+        BlockBookStore store = new BlockBookStore(path);
+        assertEquals("Kitap 1 ğüş", store.find(1).getName());
+        assertEquals("Kitap 33333 ğüş", store.find(33333).getName());
+        assertEquals(33334 % 7 == 1, store.find(33334).isLoaned());
+        assertNull(store.find(50001));
+
+        BookRepository repository = new BookRepository(testFilePathBooks);
+        assertTrue(repository.rename(33333, "Renamed"));
+        assertEquals("Renamed", store.find(33333).getName());
+    }
+
+    @Test
+    public void testVersion1File_ShouldLoadAndUpgradeOnChange() throws IOException {
+        try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(path))) {
+            output.writeInt(BlockBookStore.MAGIC);
+            output.writeInt(1);
+            output.writeInt(BlockBookStore.DEFAULT_BLOCK_SIZE);
+            output.writeInt(0);
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            DataOutputStream records = new DataOutputStream(payload);
+            StreamBookStore.writeBook(records, new Book(1, "Old", false, false, true));
+            StreamBookStore.writeBook(records, new Book(2, "Older", true, false, false));
+            output.writeInt(2);
+            output.writeInt(payload.size());
+            payload.writeTo(output);
+        }
+
+        BlockBookStore store = new BlockBookStore(path);
+        assertEquals("Older", store.find(2).getName());
+        BookRepository repository = new BookRepository(testFilePathBooks);
+        assertEquals(2, repository.size());
+        assertTrue(repository.findById(1).isLoaned());
+        repository.add(new Book(3, "New", false, false, false));
+
+        try (DataInputStream input = new DataInputStream(Files.newInputStream(path))) {
+            input.readInt();
+            assertEquals(BlockBookStore.VERSION, input.readInt());
+        }
+        assertEquals(3, new BookRepository(testFilePathBooks).size());
+    }
+
+    private static List<Book> books(int count) {
+        List<Book> books = new ArrayList<Book>();
+        for (int id = 1; id <= count; id++) {
+            books.add(new Book(id, "Kitap " + id + " ğüş", id % 3 == 0, id % 5 == 0, id % 7 == 1));
+        }
+        return books;
+    }
+}
@@ -0,0 +1,70 @@
+package com.hasan.yakup.librarysystem;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * @class BlockCompressionBenchmark
+ * @brief Compares uncompressed and Deflate block files by size, load time and point lookups.
+ * @details Run with {@code java -cp target/classes:target/test-classes
+ * com.hasan.yakup.librarysystem.BlockCompressionBenchmark <stream file>}; one block copy per
+ * codec is written next to it. Loads are the best of three passes into a BookTable; lookups
+ * are the average of random {@link BlockBookStore#find(int)} calls after one warm-up round.
+ */
+public class BlockCompressionBenchmark {
+    private static final int ROUNDS = 3;
+    private static final int LOOKUPS = 20000;
+
+    public static void main(String[] args) throws Exception {
+        Path stream = Paths.get(args[0]);
+        int maxId = 0;
+        try (StreamRecordReader reader = StreamRecordReader.open(stream)) {
+            while (reader.advance()) {
+                maxId = Math.max(maxId, reader.getId());
+            }
+        }
+
+        System.out.printf("%-8s %10s %12s %12s %12s%n", "codec", "size", "load", "find hot", "find cold");
+        for (BlockCodec codec : BlockCodec.values()) {
+            Path block = Paths.get(args[0] + "." + codec.name().toLowerCase());
+            if (!Files.exists(block)) {
+                System.setProperty(BlockCodec.CODEC_PROPERTY, codec.name());
+                try {
+                    BlockBookStore.writeAll(BookStores.streamRecords(stream), block);
+                } finally {
+                    System.clearProperty(BlockCodec.CODEC_PROPERTY);
+                }
+            }
+
+            long load = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                BookTable table = new BookTable();
+                new BlockBookStore(block).load(table.asMap());
+                load = Math.min(load, System.nanoTime() - start);
+            }
+
+            BlockBookStore store = new BlockBookStore(block);
+            Random random = new Random(42);
+            int hotRange = Math.max(1, maxId / 1000);
+            long hot = 0;
+            long cold = 0;
+            for (int round = 0; round < 2; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < LOOKUPS; i++) {
+                    store.find(1 + random.nextInt(hotRange));
+                }
+                hot = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int i = 0; i < LOOKUPS / 10; i++) {
+                    store.find(1 + random.nextInt(maxId));
+                }
+                cold = System.nanoTime() - start;
+            }
+            System.out.printf("%-8s %8dMB %10dms %10.1fus %10.1fus%n", codec, Files.size(block) >> 20,
+                    load / 1000000, hot / 1e3 / LOOKUPS, cold / 1e3 / (LOOKUPS / 10));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.hasan.yakup.librarysystem;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @class BlockLoadBenchmark
+ * @brief Compares loading a stream file with loading the same catalog in the block format.
+ * @details Run with {@code java -cp target/classes:target/test-classes
+ * com.hasan.yakup.librarysystem.BlockLoadBenchmark <stream file>}; the block copy is written
+ * next to it. The block loads use the common ForkJoinPool, whose size can be set with
+ * {@code -Djava.util.concurrent.ForkJoinPool.common.parallelism=<n>}. Best of three passes.
+ */
+public class BlockLoadBenchmark {
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        Path stream = Paths.get(args[0]);
+        Path block = Paths.get(args[0] + ".block");
+        if (!Files.exists(block)) {
+            Files.copy(stream, block, StandardCopyOption.REPLACE_EXISTING);
+            BookStores.convert(block.toString(), BookFormat.BLOCK);
+        }
+
+        System.out.printf("%s, %d MB stream, %d MB block, parallelism %d%n", stream, Files.size(stream) >> 20,
+                Files.size(block) >> 20, ForkJoinPool.getCommonPoolParallelism());
+        System.out.printf("%-8s %12s %12s%n", "", "map", "table");
+        for (Path path : new Path[] { stream, block }) {
+            long map = Long.MAX_VALUE;
+            long table = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                Map<Integer, Book> books = new LinkedHashMap<Integer, Book>();
+                BookStores.open(path).load(books);
+                map = Math.min(map, System.nanoTime() - start);
+                books = null;
+
+                start = System.nanoTime();
+                BookTable loaded = new BookTable();
+                BookStores.open(path).load(loaded.asMap());
+                table = Math.min(table, System.nanoTime() - start);
+            }
+            System.out.printf("%-8s %10dms %10dms%n", BookStores.detect(path), map / 1000000, table / 1000000);
+        }
+    }
+}
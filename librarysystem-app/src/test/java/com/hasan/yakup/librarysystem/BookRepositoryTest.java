@@ -0,0 +1,413 @@
+package com.hasan.yakup.librarysystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class BookRepositoryTest {
+    private String testFilePathBooks = "test_repository_books.bin";
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(Paths.get(testFilePathBooks));
+        Files.deleteIfExists(IdAllocator.sidecarPathOf(Paths.get(testFilePathBooks)));
+        Files.deleteIfExists(ProcessLock.lockPathOf(Paths.get(testFilePathBooks)));
+    }
+
+    @Test
+    public void testFindAll_MissingFileIsEmpty() throws IOException {
+        BookRepository repository = new BookRepository(testFilePathBooks);
+
+        assertEquals(0, repository.size());
+        assertTrue(repository.findAll().isEmpty());
+    }
+
+    @Test
+    public void testFindById_ShouldServeBooksFromFile() throws IOException {
+        createTestFile();
+
+        BookRepository repository = new BookRepository(testFilePathBooks);
+
+        assertEquals(4, repository.size());
+        assertEquals("Book3", repository.findById(3).getName());
+        assertNull(repository.findById(5));
+    }
+
+    @Test
+    public void testApply_ShouldReturnBookAsChanged() throws IOException {
+        createTestFile();
+
+        BookRepository repository = new BookRepository(testFilePathBooks);
+        OperationResult borrowed = repository.apply(new BookOperation(1, BookOperation.Kind.BORROW));
+        OperationResult again = repository.apply(new BookOperation(1, BookOperation.Kind.BORROW));
+        OperationResult missing = repository.apply(new BookOperation(9, BookOperation.Kind.BORROW));
+        OperationResult renamed = repository.retitle(1, "Renamed");
+
+        assertEquals(OperationResult.Status.OK, borrowed.getStatus());
+        assertTrue(borrowed.getBook().isLoaned());
+        assertEquals(OperationResult.Status.UNCHANGED, again.getStatus());
+        assertEquals(OperationResult.Status.NOT_FOUND, missing.getStatus());
+        assertEquals("Renamed", renamed.getBook().getName());
+        assertTrue(renamed.getBook().isLoaned());
+        assertEquals(OperationResult.Status.NOT_FOUND, repository.retitle(9, "Missing").getStatus());
+    }
+
+    @Test
+    public void testMutations_ShouldBeVisibleToNewRepository() throws IOException {
+        createTestFile();
+
+        BookRepository repository = new BookRepository(testFilePathBooks);
+        assertTrue(repository.setLoaned(1, true));
+        assertFalse(repository.setLoaned(1, true));
+        assertTrue(repository.rename(3, "Renamed"));
+        assertTrue(repository.delete(4));
+        repository.add(new Book(5, "Book5", false, true, false));
+
+        BookRepository reloaded = new BookRepository(testFilePathBooks);
+        assertEquals(4, reloaded.size());
+        assertTrue(reloaded.findById(1).isLoaned());
+        assertEquals("Renamed", reloaded.findById(3).getName());
+        assertNull(reloaded.findById(4));
+        assertTrue(reloaded.findById(5).isWishlist());
+    }
+
+    @Test
+    public void testRefresh_ShouldPickUpExternalRewrite() throws IOException {
+        BookRepository repository = new BookRepository(testFilePathBooks);
+        assertEquals(0, repository.size());
+
+        createTestFile();
+
+        assertEquals(4, repository.size());
+    }
+
+    @Test
+    public void testNextId_ShouldNotReuseIdsAcrossRestarts() throws IOException {
+        createTestFile();
+
+        BookRepository repository = new BookRepository(testFilePathBooks);
+        assertTrue(repository.delete(4));
+        int first = repository.nextId();
+        assertEquals(5, first);
+        repository.add(new Book(first, "Book5", false, false, false));
+        assertTrue(repository.delete(first));
+
+        int second = new BookRepository(testFilePathBooks).nextId();
+        assertTrue(second > first);
+        assertTrue(Files.exists(IdAllocator.sidecarPathOf(Paths.get(testFilePathBooks))));
+    }
+
+    @Test
+    public void testNextId_MissingFileStartsOver() throws IOException {
+        createTestFile();
+        new BookRepository(testFilePathBooks).nextId();
+        Files.delete(Paths.get(testFilePathBooks));
+
+        assertEquals(1, new BookRepository(testFilePathBooks).nextId());
+    }
+
+    @Test
+    public void testRewrite_ShouldNotLeaveTemporaryFile() throws IOException {
+        createTestFile();
+
+        BookRepository repository = new BookRepository(testFilePathBooks);
+        assertTrue(repository.rename(2, "Renamed"));
+
+        assertFalse(Files.exists(FileBookStore.temporaryPathOf(Paths.get(testFilePathBooks))));
+        assertEquals("Renamed", new BookRepository(testFilePathBooks).findById(2).getName());
+    }
+
+    @Test
+    public void testConcurrentMutations_ShouldAllBeCommitted() throws Exception {
+        final BookRepository repository = new BookRepository(testFilePathBooks);
+        final int threads = 8;
+        final int booksPerThread = 25;
+        List<Thread> workers = new ArrayList<Thread>();
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        for (int t = 0; t < threads; t++) {
+            final int first = t * booksPerThread + 1;
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int id = first; id < first + booksPerThread; id++) {
+                            repository.add(new Book(id, "Book" + id, false, false, false));
+                            repository.setLoaned(id, true);
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertTrue(failures.isEmpty());
+        assertTrue(repository.getCommitCount() <= threads * booksPerThread * 2);
+        BookRepository reloaded = new BookRepository(testFilePathBooks);
+        assertEquals(threads * booksPerThread, reloaded.size());
+        for (Book book : reloaded.findAll()) {
+            assertTrue(book.isLoaned());
+        }
+    }
+
+    @Test
+    public void testContendedBorrows_ShouldNotLoseUpdatesOrBlockReaders() throws Exception {
+        final int shelf = 16;
+        final BookRepository repository = new BookRepository(testFilePathBooks);
+        for (int id = 1; id <= shelf; id++) {
+            repository.add(new Book(id, "Book" + id, false, false, false));
+        }
+        final AtomicIntegerArray borrows = new AtomicIntegerArray(shelf + 1);
+        final AtomicIntegerArray returns = new AtomicIntegerArray(shelf + 1);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicInteger reads = new AtomicInteger();
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        List<Thread> writers = new ArrayList<Thread>();
+        for (int t = 0; t < 6; t++) {
+            final Random random = new Random(t);
+            writers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 60; i++) {
+                            int id = 1 + random.nextInt(shelf);
+                            if (random.nextBoolean()) {
+                                if (repository.setLoaned(id, true)) {
+                                    borrows.incrementAndGet(id);
+                                }
+                            } else if (repository.setLoaned(id, false)) {
+                                returns.incrementAndGet(id);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            }));
+        }
+        List<Thread> readers = new ArrayList<Thread>();
+        for (int t = 0; t < 2; t++) {
+            readers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (writing.get()) {
+                            int id = 1 + reads.incrementAndGet() % shelf;
+                            assertEquals("Book" + id, repository.findById(id).getName());
+                            assertEquals(shelf, repository.size());
+                            assertTrue(repository.count(BookFlag.LOANED, true) <= shelf);
+                            for (Book book : repository.findByFlag(BookFlag.LOANED, true)) {
+                                assertTrue(book.isLoaned());
+                            }
+                            assertEquals(shelf, repository.findAll().size());
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            }));
+        }
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertTrue(reads.get() > 0);
+        BookRepository reloaded = new BookRepository(testFilePathBooks);
+        for (int id = 1; id <= shelf; id++) {
+            int balance = borrows.get(id) - returns.get(id);
+            assertTrue(balance == 0 || balance == 1);
+            assertEquals(balance == 1, repository.findById(id).isLoaned());
+            assertEquals(balance == 1, reloaded.findById(id).isLoaned());
+        }
+    }
+
+    @Test
+    public void testAsyncMode_ShouldBorrowOnceAndCommitInBackground() throws Exception {
+        System.setProperty(SyncMode.SYNC_PROPERTY, "async");
+        try {
+            createTestFile();
+            final BookRepository repository = new BookRepository(testFilePathBooks);
+            final AtomicInteger borrowed = new AtomicInteger();
+            final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+            List<Thread> desks = new ArrayList<Thread>();
+            for (int t = 0; t < 4; t++) {
+                desks.add(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (repository.setLoaned(1, true)) {
+                                borrowed.incrementAndGet();
+                            }
+                            repository.setLoaned(2, false);
+                            repository.setMarked(4, true);
+                        } catch (Throwable e) {
+                            failures.add(e);
+                        }
+                    }
+                }));
+            }
+            for (Thread desk : desks) {
+                desk.start();
+            }
+            for (Thread desk : desks) {
+                desk.join();
+            }
+            repository.flush();
+
+            assertTrue(failures.isEmpty());
+            assertEquals(1, borrowed.get());
+            long commits = repository.getCommitCount();
+            assertTrue(commits >= 1 && commits <= 3);
+        } finally {
+            System.clearProperty(SyncMode.SYNC_PROPERTY);
+        }
+
+        BookRepository reloaded = new BookRepository(testFilePathBooks);
+        assertTrue(reloaded.findById(1).isLoaned());
+        assertFalse(reloaded.findById(2).isLoaned());
+        assertTrue(reloaded.findById(4).isMarked());
+    }
+
+    @Test
+    public void testStripedRenamesAndDeletes_ShouldMatchReloadedFile() throws Exception {
+        final BookRepository repository = new BookRepository(testFilePathBooks);
+        final int threads = 6;
+        final int books = 120;
+        for (int id = 1; id <= books; id++) {
+            repository.add(new Book(id, "Book" + id, false, false, false));
+        }
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final int first = t + 1;
+            workers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int id = first; id <= books; id += threads) {
+                            assertTrue(repository.rename(id, "Renamed" + id));
+                            assertTrue(repository.setLoaned(id, true));
+                            if (id % 3 == 0) {
+                                assertTrue(repository.delete(id));
+                                assertFalse(repository.rename(id, "Gone"));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            }));
+        }
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        List<Book> expected = repository.findAll();
+        List<Book> actual = new BookRepository(testFilePathBooks).findAll();
+        assertEquals(books - books / 3, actual.size());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            assertEquals("Renamed" + actual.get(i).getId(), actual.get(i).getName());
+            assertTrue(actual.get(i).isLoaned());
+        }
+    }
+
+    @Test
+    public void testTornAppend_ShouldBeIgnoredAndCutOffByNextAppend() throws IOException {
+        createTestFile();
+        long committed = Files.size(Paths.get(testFilePathBooks));
+        try (DataOutputStream writer = new DataOutputStream(new FileOutputStream(testFilePathBooks, true))) {
+            writer.writeInt(5);
+            writer.writeUTF("Book5 was being appended");
+        }
+        long torn = Files.size(Paths.get(testFilePathBooks));
+
+        BookRepository repository = new BookRepository(testFilePathBooks);
+        assertEquals(4, repository.size());
+        assertEquals(torn, Files.size(Paths.get(testFilePathBooks)));
+        try (Stream<Book> books = repository.stream()) {
+            assertEquals(4, books.count());
+        }
+        try (Stream<Book> books = repository.stream(BookFlag.LOANED, true)) {
+            assertEquals(2, books.count());
+        }
+
+        repository.add(new Book(5, "Book5", false, false, false));
+        assertEquals(committed + 4 + 2 + "Book5".length() + 3, Files.size(Paths.get(testFilePathBooks)));
+        BookRepository reloaded = new BookRepository(testFilePathBooks);
+        assertEquals(5, reloaded.size());
+        assertEquals("Book5", reloaded.findById(5).getName());
+    }
+
+    @Test
+    public void testStream_ShouldIncludeQueuedChangesInAsyncMode() throws IOException {
+        System.setProperty(SyncMode.SYNC_PROPERTY, "async");
+        try {
+            createTestFile();
+            BookRepository repository = new BookRepository(testFilePathBooks);
+            assertTrue(repository.setLoaned(1, true));
+
+            List<Integer> loaned = new ArrayList<Integer>();
+            try (Stream<Book> books = repository.stream(BookFlag.LOANED, true)) {
+                Iterator<Book> iterator = books.iterator();
+                while (iterator.hasNext()) {
+                    loaned.add(iterator.next().getId());
+                }
+            }
+            assertEquals(Arrays.asList(1, 2, 4), loaned);
+        } finally {
+            System.clearProperty(SyncMode.SYNC_PROPERTY);
+        }
+    }
+
+    private void createTestFile() throws IOException {
+        try (DataOutputStream writer = new DataOutputStream(new FileOutputStream(testFilePathBooks))) {
+            StreamBookStore.writeBook(writer, new Book(1, "Book1", false, false, false));
+            StreamBookStore.writeBook(writer, new Book(2, "Book2", true, true, true));
+            StreamBookStore.writeBook(writer, new Book(3, "Book3", true, true, false));
+            StreamBookStore.writeBook(writer, new Book(4, "Book4", false, false, true));
+        }
+    }
+}
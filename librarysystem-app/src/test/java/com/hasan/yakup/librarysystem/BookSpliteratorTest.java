@@ -0,0 +1,177 @@
+package com.hasan.yakup.librarysystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class BookSpliteratorTest {
+    private String testFilePathBooks = "test_spliterator_books.bin";
+    private Path path = Paths.get(testFilePathBooks);
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(IdAllocator.sidecarPathOf(path));
+        Files.deleteIfExists(ProcessLock.lockPathOf(path));
+    }
+
+    @Test
+    public void testStream_ShouldDecodeBooksInFileOrderForEveryFormat() throws IOException {
+        List<Book> expected = books(5000);
+        StreamBookStore.writeAll(expected, path);
+        for (BookFormat format : BookFormat.values()) {
+            BookStores.convert(testFilePathBooks, format);
+            List<Book> books;
+            try (Stream<Book> stream = BookStores.stream(path)) {
+                books = stream.collect(Collectors.<Book>toList());
+            }
+            assertEquals(format.name(), expected.size(), books.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(format.name(), expected.get(i).getId(), books.get(i).getId());
+                assertEquals(format.name(), expected.get(i).getName(), books.get(i).getName());
+                assertEquals(format.name(), expected.get(i).isLoaned(), books.get(i).isLoaned());
+            }
+        }
+    }
+
+    @Test
+    public void testShortCircuit_ShouldStopDecodingAndCloseTheCursor() throws IOException {
+        CountingCursor cursor = new CountingCursor(books(100000));
+        BookSpliterator spliterator = new BookSpliterator(cursor);
+        assertEquals(100000, spliterator.estimateSize());
+        assertFalse(spliterator.hasCharacteristics(Spliterator.SIZED));
+
+        final List<Book> first = new ArrayList<Book>();
+        for (int i = 0; i < 3; i++) {
+            spliterator.tryAdvance(new Consumer<Book>() {
+                @Override
+                public void accept(Book book) {
+                    first.add(book);
+                }
+            });
+        }
+        spliterator.close();
+        assertEquals(3, cursor.reads);
+        assertTrue(cursor.closed);
+        assertEquals(3, first.get(2).getId());
+
+        StreamBookStore.writeAll(books(100000), path);
+        try (Stream<Book> stream = BookStores.stream(path, BookFlag.LOANED, true)) {
+            assertEquals(1, stream.findFirst().get().getId());
+        }
+    }
+
+    @Test
+    public void testParallel_ShouldVisitEveryBookOnce() throws IOException {
+        CompactBookStore.writeAll(books(50000), path);
+        ToLongFunction<Book> id = new ToLongFunction<Book>() {
+            @Override
+            public long applyAsLong(Book book) {
+                return book.getId();
+            }
+        };
+        long sequential;
+        try (Stream<Book> stream = BookStores.stream(path)) {
+            sequential = stream.mapToLong(id).sum();
+        }
+        try (Stream<Book> stream = BookStores.stream(path)) {
+            assertEquals(sequential, stream.parallel().mapToLong(id).sum());
+        }
+        try (Stream<Book> stream = BookStores.stream(path)) {
+            assertEquals(50000, stream.parallel().count());
+        }
+        assertEquals(50000L * 50001 / 2, sequential);
+
+        CountingCursor cursor = new CountingCursor(books(10));
+        BookSpliterator rest = new BookSpliterator(cursor);
+        Spliterator<Book> batch = rest.trySplit();
+        assertEquals(10, batch.getExactSizeIfKnown());
+        assertFalse(rest.tryAdvance(new Consumer<Book>() {
+            @Override
+            public void accept(Book book) {
+            }
+        }));
+        assertTrue(cursor.closed);
+    }
+
+    @Test
+    public void testServiceStream_ShouldMatchListedBooks() throws IOException {
+        StreamBookStore.writeAll(books(300), path);
+        LibraryService service = new LibraryService();
+        service.borrowBook(7, testFilePathBooks);
+        service.returnBook(8, testFilePathBooks);
+
+        List<Book> listed = service.listBooks(testFilePathBooks, BookFlag.LOANED, true);
+        List<Book> streamed;
+        try (Stream<Book> stream = service.streamBooks(testFilePathBooks, BookFlag.LOANED, true)) {
+            streamed = stream.collect(Collectors.<Book>toList());
+        }
+        assertEquals(listed.size(), streamed.size());
+        for (int i = 0; i < listed.size(); i++) {
+            assertEquals(listed.get(i).getId(), streamed.get(i).getId());
+        }
+        assertEquals(7, streamed.get(1).getId());
+        assertEquals(15, streamed.get(2).getId());
+
+        final int[] count = new int[1];
+        service.forEachBook(testFilePathBooks, new Consumer<Book>() {
+            @Override
+            public void accept(Book book) {
+                count[0]++;
+            }
+        });
+        assertEquals(300, count[0]);
+    }
+
+    private static List<Book> books(int count) {
+        List<Book> books = new ArrayList<Book>();
+        for (int id = 1; id <= count; id++) {
+            books.add(new Book(id, "Kitap " + id + " ğüş", id % 3 == 0, id % 5 == 0, id % 7 == 1));
+        }
+        return books;
+    }
+
+    private static final class CountingCursor implements BookCursor {
+        private final List<Book> books;
+        private int reads;
+        private boolean closed;
+
+        CountingCursor(List<Book> books) {
+            this.books = books;
+        }
+
+        @Override
+        public Book next() {
+            assertFalse(closed);
+            if (reads == books.size()) {
+                return null;
+            }
+            return books.get(reads++);
+        }
+
+        @Override
+        public long recordCount() {
+            return books.size();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.hasan.yakup.librarysystem;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @class BookTableBenchmark
+ * @brief Compares filtered listings over a map of Book objects with the BookTable bitsets.
+ * @details Run with {@code java -cp target/classes:target/test-classes
+ * com.hasan.yakup.librarysystem.BookTableBenchmark [books]}. One book in a hundred is loaned,
+ * so the listing of loaned books is a selective filter; the count is answered by popcount.
+ * Heap sizes are measured after a full GC and are only approximate.
+ */
+public class BookTableBenchmark {
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        long before = usedHeap();
+        Map<Integer, Book> map = new LinkedHashMap<Integer, Book>();
+        for (int id = 1; id <= count; id++) {
+            map.put(id, new Book(id, "The collected works of author number " + id, id % 3 == 0, id % 7 == 0,
+                    id % 100 == 0));
+        }
+        long mapHeap = usedHeap() - before;
+
+        before = usedHeap();
+        BookTable table = BookTable.of(map.values());
+        long tableHeap = usedHeap() - before;
+
+        long sink = 0;
+        long mapList = Long.MAX_VALUE;
+        long tableList = Long.MAX_VALUE;
+        long mapCount = Long.MAX_VALUE;
+        long tableCount = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            List<Book> loaned = new ArrayList<Book>();
+            for (Book book : map.values()) {
+                if (book.isLoaned()) {
+                    loaned.add(BookRepository.copyOf(book));
+                }
+            }
+            mapList = Math.min(mapList, System.nanoTime() - start);
+            sink += loaned.size();
+
+            start = System.nanoTime();
+            sink += table.select(BookFlag.LOANED, true).size();
+            tableList = Math.min(tableList, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            int unread = 0;
+            for (Book book : map.values()) {
+                if (!book.isMarked()) {
+                    unread++;
+                }
+            }
+            mapCount = Math.min(mapCount, System.nanoTime() - start);
+            sink += unread;
+
+            start = System.nanoTime();
+            sink += table.count(BookFlag.MARKED, false);
+            tableCount = Math.min(tableCount, System.nanoTime() - start);
+        }
+
+        System.out.printf("%d books (checksum %d)%n", count, sink);
+        System.out.printf("%-22s %12s %12s%n", "", "map", "table");
+        System.out.printf("%-22s %11.2fms %11.2fms%n", "list loaned", mapList / 1e6, tableList / 1e6);
+        System.out.printf("%-22s %11.2fms %11.2fms%n", "count unread", mapCount / 1e6, tableCount / 1e6);
+        System.out.printf("%-22s %10.1fMB %10.1fMB (arrays %.1fMB)%n", "heap", mapHeap / 1048576.0,
+                tableHeap / 1048576.0, (table.footprint(false) + table.footprint(true)) / 1048576.0);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
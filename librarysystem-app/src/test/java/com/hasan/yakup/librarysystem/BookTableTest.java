@@ -0,0 +1,222 @@
+package com.hasan.yakup.librarysystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class BookTableTest {
+    @Test
+    public void testPutAndGet_ShouldRoundTripAllFields() {
+        BookTable table = new BookTable();
+        table.put(new Book(7, "Çalıkuşu \u0000 日本", true, false, true));
+
+        Book book = table.get(7);
+        assertEquals(7, book.getId());
+        assertEquals("Çalıkuşu \u0000 日本", book.getName());
+        assertTrue(book.isMarked());
+        assertFalse(book.isWishlist());
+        assertTrue(book.isLoaned());
+        assertNull(table.get(8));
+    }
+
+    @Test
+    public void testSelectAndCount_ShouldMatchFilteringBooks() {
+        List<Book> books = new ArrayList<Book>();
+        for (int id = 1; id <= 300; id++) {
+            books.add(new Book(id, "Book" + id, id % 3 == 0, id % 5 == 0, id % 7 == 0));
+        }
+        BookTable table = BookTable.of(books);
+        table.remove(14);
+        table.set(15, BookFlag.LOANED, true);
+
+        for (BookFlag flag : BookFlag.values()) {
+            for (boolean value : new boolean[] { true, false }) {
+                List<Integer> expected = new ArrayList<Integer>();
+                for (Book book : table.values()) {
+                    if (flag.of(book) == value) {
+                        expected.add(book.getId());
+                    }
+                }
+                List<Integer> actual = new ArrayList<Integer>();
+                for (Book book : table.select(flag, value)) {
+                    actual.add(book.getId());
+                }
+                assertEquals(expected, actual);
+                assertEquals(expected.size(), table.count(flag, value));
+            }
+        }
+    }
+
+    @Test
+    public void testSet_ShouldReportOnlyChanges() {
+        BookTable table = new BookTable();
+        table.put(new Book(1, "Book1", false, false, false));
+
+        assertTrue(table.set(1, BookFlag.WISHLIST, true));
+        assertFalse(table.set(1, BookFlag.WISHLIST, true));
+        assertFalse(table.set(2, BookFlag.WISHLIST, true));
+        assertTrue(table.get(1).isWishlist());
+    }
+
+    @Test
+    public void testRemoveAndRename_ShouldKeepOrderAcrossCompaction() {
+        BookTable table = new BookTable();
+        for (int id = 1; id <= 1000; id++) {
+            table.put(new Book(id, "Book" + id, false, false, id % 2 == 0));
+        }
+        for (int id = 1; id <= 1000; id++) {
+            if (id % 10 != 0) {
+                assertTrue(table.remove(id));
+            }
+        }
+        for (int round = 0; round < 50; round++) {
+            table.rename(500, "Renamed" + round);
+        }
+        assertFalse(table.remove(1));
+
+        assertEquals(100, table.size());
+        assertEquals(1000, table.maxId());
+        assertEquals("Renamed49", table.get(500).getName());
+        assertEquals(100, table.count(BookFlag.LOANED, true));
+        int expectedId = 10;
+        for (Book book : table.values()) {
+            assertEquals(expectedId, book.getId());
+            assertEquals(expectedId == 500 ? "Renamed49" : "Book" + expectedId, book.getName());
+            expectedId += 10;
+        }
+    }
+
+    @Test
+    public void testCopy_ShouldBeIndependent() {
+        BookTable table = new BookTable();
+        table.put(new Book(1, "Book1", false, false, false));
+        BookTable copy = table.copy();
+        table.rename(1, "Renamed");
+        table.put(new Book(2, "Book2", false, false, false));
+
+        assertEquals(1, copy.size());
+        assertEquals("Book1", copy.get(1).getName());
+    }
+
+    @Test
+    public void testSnapshot_ShouldKeepBooksAsTheyWere() {
+        BookTable table = BookTable.of(Arrays.asList(new Book(1, "Book1", false, false, false),
+                new Book(2, "Book2", false, true, false), new Book(3, "Book3", true, false, false)), true);
+        table.remove(2);
+        Collection<Book> snapshot = table.snapshot();
+        table.rename(1, "Renamed");
+        table.set(3, BookFlag.LOANED, true);
+        table.put(new Book(4, "Book4", false, false, false));
+
+        List<Book> books = new ArrayList<Book>(snapshot);
+        assertEquals(2, snapshot.size());
+        assertEquals(2, books.size());
+        assertEquals("Book1", books.get(0).getName());
+        assertEquals(3, books.get(1).getId());
+        assertTrue(books.get(1).isMarked());
+        assertFalse(books.get(1).isLoaned());
+    }
+
+    @Test
+    public void testOffHeap_ShouldBehaveLikeHeap() {
+        List<Book> books = new ArrayList<Book>();
+        for (int id = 1; id <= 500; id++) {
+            books.add(new Book(id, "Kitap " + id + " ğüşıöç", id % 2 == 0, false, id % 4 == 0));
+        }
+        BookTable heap = BookTable.of(books, false);
+        BookTable direct = BookTable.of(books, true);
+        for (BookTable table : new BookTable[] { heap, direct }) {
+            for (int id = 1; id <= 400; id++) {
+                table.remove(id);
+            }
+            table.rename(450, "Renamed");
+            table.put(new Book(501, "Book501", false, true, false));
+        }
+
+        assertTrue(direct.isOffHeap());
+        assertEquals(0, heap.footprint(true));
+        assertTrue(direct.footprint(true) > 0);
+        assertEquals(heap.size(), direct.size());
+        List<Book> expected = heap.list();
+        List<Book> actual = direct.list();
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            assertEquals(expected.get(i).getName(), actual.get(i).getName());
+            assertEquals(expected.get(i).isLoaned(), actual.get(i).isLoaned());
+        }
+    }
+
+    @Test
+    public void testViews_ShouldReuseOneReadOnlyBook() {
+        BookTable table = new BookTable(true);
+        table.put(new Book(1, "Book1", true, false, false));
+        table.put(new Book(2, "Book2", false, false, true));
+
+        Iterator<Book> views = table.views().iterator();
+        Book first = views.next();
+        assertEquals("Book1", first.getName());
+        assertTrue(first.isMarked());
+        Book second = views.next();
+        assertSame(first, second);
+        assertEquals(2, second.getId());
+        assertTrue(second.isLoaned());
+        assertFalse(views.hasNext());
+        try {
+            second.setLoaned(false);
+            fail("Views should be read-only");
+        } catch (UnsupportedOperationException e) {
+            assertTrue(table.get(2).isLoaned());
+        }
+    }
+
+    @Test
+    public void testSet_ShouldLetOneOfManyBorrowersWin() throws InterruptedException {
+        final BookTable table = new BookTable();
+        for (int id = 1; id <= 128; id++) {
+            table.put(new Book(id, "Book" + id, false, false, false));
+        }
+        final AtomicInteger[] wins = new AtomicInteger[129];
+        for (int id = 1; id <= 128; id++) {
+            wins[id] = new AtomicInteger();
+        }
+        List<Thread> borrowers = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            borrowers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int id = 1; id <= 128; id++) {
+                        if (table.set(id, BookFlag.LOANED, true)) {
+                            wins[id].incrementAndGet();
+                        }
+                        table.set(id, BookFlag.MARKED, true);
+                    }
+                }
+            }));
+        }
+        for (Thread borrower : borrowers) {
+            borrower.start();
+        }
+        for (Thread borrower : borrowers) {
+            borrower.join();
+        }
+
+        for (int id = 1; id <= 128; id++) {
+            assertEquals(1, wins[id].get());
+        }
+        assertEquals(128, table.count(BookFlag.LOANED, true));
+        assertEquals(128, table.count(BookFlag.MARKED, true));
+        assertEquals(0, table.count(BookFlag.WISHLIST, true));
+    }
+}
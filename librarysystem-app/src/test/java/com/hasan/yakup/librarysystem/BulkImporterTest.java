@@ -0,0 +1,140 @@
+package com.hasan.yakup.librarysystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class BulkImporterTest {
+    private Path path = Paths.get("test_import_books.bin");
+    private Path source = Paths.get("test_import_titles.csv");
+    private PrintStream out = new PrintStream(new ByteArrayOutputStream());
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(IdAllocator.sidecarPathOf(path));
+        Files.deleteIfExists(ProcessLock.lockPathOf(path));
+        Files.deleteIfExists(BulkImporter.checkpointPathOf(path));
+    }
+
+    @Test
+    public void testImport_ShouldAppendCsvTitlesWithFreshIds() throws IOException {
+        try (DataOutputStream writer = new DataOutputStream(new FileOutputStream(path.toFile()))) {
+            StreamBookStore.writeBook(writer, new Book(7, "Existing", true, false, false));
+        }
+        Files.write(source, Arrays.asList("title,author", "Plain,Someone", "\"Quoted, with comma\",X",
+                "\"Say \"\"hi\"\"\",Y", "", "Last"), StandardCharsets.UTF_8);
+
+        BulkImporter.Result result = new BulkImporter(path, source, BulkImporter.SourceFormat.of(source), 2).run(out);
+
+        assertEquals(4, result.getRows());
+        assertEquals(2, result.getSkipped());
+        List<Book> books = load();
+        assertEquals(5, books.size());
+        assertEquals("Plain", books.get(1).getName());
+        assertEquals("Quoted, with comma", books.get(2).getName());
+        assertEquals("Say \"hi\"", books.get(3).getName());
+        assertEquals(8, books.get(1).getId());
+        assertEquals(11, books.get(4).getId());
+        assertFalse(Files.exists(BulkImporter.checkpointPathOf(path)));
+    }
+
+    @Test
+    public void testImport_ShouldWaitForReadersAndCountAsChange() throws Exception {
+        Files.write(source, Arrays.asList("First", "Second"), StandardCharsets.UTF_8);
+        ProcessLock lock = ProcessLock.of(path);
+        long changes;
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        Thread importer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    new BulkImporter(path, source, BulkImporter.SourceFormat.LINES, 1).run(out);
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }
+        });
+        try (ProcessLock.Hold hold = lock.shared()) {
+            changes = lock.changeCount();
+            importer.start();
+            importer.join(300);
+            assertTrue(importer.isAlive());
+            assertFalse(Files.exists(path));
+        }
+        importer.join();
+
+        assertTrue(failures.isEmpty());
+        assertEquals(2, load().size());
+        try (ProcessLock.Hold hold = lock.shared()) {
+            assertEquals(changes + 1, lock.changeCount());
+        }
+    }
+
+    @Test
+    public void testImport_ManyChunksShouldKeepOrderAndUniqueIds() throws IOException {
+        List<String> titles = new ArrayList<String>();
+        for (int i = 0; i < BulkImporter.CHUNK_ROWS * 3 + 17; i++) {
+            titles.add("Title " + i);
+        }
+        Files.write(source, titles, StandardCharsets.UTF_8);
+
+        new BulkImporter(path, source, BulkImporter.SourceFormat.LINES, 4).run(out);
+
+        List<Book> books = load();
+        assertEquals(titles.size(), books.size());
+        Set<Integer> ids = new HashSet<Integer>();
+        for (int i = 0; i < books.size(); i++) {
+            assertEquals(titles.get(i), books.get(i).getName());
+            assertTrue(ids.add(books.get(i).getId()));
+        }
+        assertTrue(new BookRepository(path.toString()).nextId() > titles.size());
+    }
+
+    @Test
+    public void testImport_ShouldResumeFromCheckpoint() throws IOException {
+        Files.write(source, Arrays.asList("A", "B", "C", "D", "E"), StandardCharsets.UTF_8);
+        try (DataOutputStream writer = new DataOutputStream(new FileOutputStream(path.toFile()))) {
+            StreamBookStore.writeBook(writer, new Book(1, "A", false, false, false));
+            StreamBookStore.writeBook(writer, new Book(2, "B", false, false, false));
+        }
+        long length = Files.size(path);
+        try (FileOutputStream writer = new FileOutputStream(path.toFile(), true)) {
+            writer.write(new byte[] { 0, 0, 0, 3, 0 });
+        }
+        BulkImporter importer = new BulkImporter(path, source, BulkImporter.SourceFormat.LINES, 2);
+        importer.writeCheckpoint(new BulkImporter.Checkpoint(source.toAbsolutePath().toString(), 2, length, 2, 0));
+
+        BulkImporter.Result result = importer.run(out);
+
+        assertTrue(result.isResumed());
+        assertEquals(5, result.getRows());
+        List<Book> books = load();
+        assertEquals(5, books.size());
+        assertEquals("C", books.get(2).getName());
+        assertEquals("E", books.get(4).getName());
+    }
+
+    private List<Book> load() throws IOException {
+        return new ArrayList<Book>(new BookRepository(path.toString()).findAll());
+    }
+}
@@ -0,0 +1,102 @@
+package com.hasan.yakup.librarysystem;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class CatalogExporterTest {
+    private Path path = Paths.get("test_export_books.bin");
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(SlottedBookStore.heapPathOf(path));
+        LogBookStore.deleteLogs(path);
+        Files.deleteIfExists(IdAllocator.sidecarPathOf(path));
+        Files.deleteIfExists(ProcessLock.lockPathOf(path));
+    }
+
+    @Test
+    public void testCsv_ShouldQuoteSpecialTitles() throws IOException {
+        createTestFile();
+
+        assertEquals("id,title,marked,wishlist,loaned\n"
+                + "1,Plain,false,false,false\n"
+                + "2,\"Comma, \"\"quoted\"\"\",true,true,true\n"
+                + "3,Çalıkuşu,true,false,false\n", export(CatalogExporter.Format.CSV, false));
+    }
+
+    @Test
+    public void testJsonl_ShouldEscapeTitles() throws IOException {
+        createTestFile();
+
+        assertEquals("{\"id\":1,\"title\":\"Plain\",\"marked\":false,\"wishlist\":false,\"loaned\":false}\n"
+                + "{\"id\":2,\"title\":\"Comma, \\\"quoted\\\"\",\"marked\":true,\"wishlist\":true,\"loaned\":true}\n"
+                + "{\"id\":3,\"title\":\"Çalıkuşu\",\"marked\":true,\"wishlist\":false,\"loaned\":false}\n",
+                export(CatalogExporter.Format.JSONL, false));
+    }
+
+    @Test
+    public void testGzip_ShouldMatchPlainOutput() throws IOException {
+        createTestFile();
+
+        assertEquals(export(CatalogExporter.Format.CSV, false), export(CatalogExporter.Format.CSV, true));
+    }
+
+    @Test
+    public void testAllFormats_ShouldExportCurrentCatalog() throws IOException {
+        createTestFile();
+        String expected = export(CatalogExporter.Format.JSONL, false);
+
+        BookStores.convert(path.toString(), BookFormat.SLOTTED);
+        assertEquals(expected, export(CatalogExporter.Format.JSONL, false));
+
+        BookStores.convert(path.toString(), BookFormat.LOG);
+        BookRepository repository = new BookRepository(path.toString());
+        repository.setMarked(1, true);
+        repository.rename(3, "Renamed");
+        repository.delete(2);
+        repository.add(new Book(4, "Added", false, false, true));
+        assertEquals("{\"id\":1,\"title\":\"Plain\",\"marked\":true,\"wishlist\":false,\"loaned\":false}\n"
+                + "{\"id\":3,\"title\":\"Renamed\",\"marked\":true,\"wishlist\":false,\"loaned\":false}\n"
+                + "{\"id\":4,\"title\":\"Added\",\"marked\":false,\"wishlist\":false,\"loaned\":true}\n",
+                export(CatalogExporter.Format.JSONL, false));
+    }
+
+    private String export(CatalogExporter.Format format, boolean gzip) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CatalogExporter.export(path, format, "-", gzip, output);
+        InputStream input = new ByteArrayInputStream(output.toByteArray());
+        if (gzip) {
+            input = new GZIPInputStream(input);
+        }
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = input.read(buffer)) > 0) {
+            text.write(buffer, 0, read);
+        }
+        return new String(text.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private void createTestFile() throws IOException {
+        try (DataOutputStream writer = new DataOutputStream(new FileOutputStream(path.toFile()))) {
+            StreamBookStore.writeBook(writer, new Book(1, "Plain", false, false, false));
+            StreamBookStore.writeBook(writer, new Book(2, "Comma, \"quoted\"", true, true, true));
+            StreamBookStore.writeBook(writer, new Book(3, "Çalıkuşu", true, false, false));
+        }
+    }
+}
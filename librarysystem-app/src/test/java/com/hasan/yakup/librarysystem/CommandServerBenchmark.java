@@ -0,0 +1,303 @@
+package com.hasan.yakup.librarysystem;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @class CommandServerBenchmark
+ * @brief Load generator measuring CommandServer with many pipelining connections.
+ * @details Run with {@code java -cp target/classes:target/test-classes
+ * com.hasan.yakup.librarysystem.CommandServerBenchmark [<connections> [<depth> [<seconds>]]]}.
+ * The server runs in a child process started with {@code LibrarysystemApp serve-commands},
+ * so that client and server sockets do not share the descriptor limit of one process; the
+ * {@code librarysystem.commit.sync} property is passed on to it. The load generator is a
+ * single non-blocking client thread: every connection logs in and then keeps {@code depth}
+ * commands in flight, alternately borrowing and returning a book of its own, and sends a
+ * new command for every reply. The rate of replies and their latency percentiles, from
+ * sending a command to reading its reply, are reported.
+ */
+public class CommandServerBenchmark {
+    private static final Pattern PORT = Pattern.compile("on port (\\d+)");
+    private static final int MAX_CONNECTING = 256;
+
+    /**
+     * @brief One client connection and the send times of its commands in flight.
+     */
+    private static final class Client {
+        private final int bookId;
+        private final SocketChannel channel;
+        private final long[] sentAt;
+        private int head;
+        private int inFlight;
+        private long sent;
+        private boolean loggedIn;
+        private ByteBuffer unsent;
+
+        Client(int bookId, SocketChannel channel, int depth) {
+            this.bookId = bookId;
+            this.channel = channel;
+            this.sentAt = new long[depth];
+        }
+    }
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(64 * 1024);
+    private long[] latencies = new long[1 << 20];
+    private int latencyCount;
+    private long errors;
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        Path books = Paths.get("benchmark_command_books.bin");
+        Path users = Paths.get("benchmark_command_users.bin");
+        List<Book> catalog = new ArrayList<Book>(connections);
+        for (int id = 1; id <= connections; id++) {
+            catalog.add(new Book(id, "Kitap " + id, false, false, false));
+        }
+        StreamBookStore.writeAll(catalog, books);
+        BookStores.convert(books.toString(), BookFormat.SLOTTED);
+        User librarian = new User();
+        librarian.setEmail("librarian@example.com");
+        librarian.setPassword("secret");
+        new LibraryService().registerUser(librarian, users.toString());
+
+        Process server = startServer(books, users);
+        try {
+            int port = readPort(server);
+            System.out.printf("%d connections, %d commands in flight each, sync mode %s, %d available processors%n",
+                    connections, depth, SyncMode.configured(), Runtime.getRuntime().availableProcessors());
+            new CommandServerBenchmark().run(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                    connections, depth, seconds);
+        } finally {
+            server.destroy();
+            server.waitFor(30, TimeUnit.SECONDS);
+            Files.deleteIfExists(books);
+            Files.deleteIfExists(SlottedBookStore.heapPathOf(books));
+            Files.deleteIfExists(users);
+            Files.deleteIfExists(IdAllocator.sidecarPathOf(books));
+            Files.deleteIfExists(ProcessLock.lockPathOf(books));
+            Files.deleteIfExists(ProcessLock.lockPathOf(users));
+        }
+    }
+
+    private void run(InetSocketAddress address, int connections, int depth, int seconds) throws IOException {
+        List<Client> clients = new ArrayList<Client>(connections);
+        try (Selector selector = Selector.open()) {
+            long connectStart = System.nanoTime();
+            int connecting = 0;
+            int loggedIn = 0;
+            while (loggedIn < connections) {
+                while (clients.size() < connections && connecting < MAX_CONNECTING) {
+                    SocketChannel channel = SocketChannel.open();
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    Client client = new Client(clients.size() + 1, channel, depth);
+                    clients.add(client);
+                    channel.connect(address);
+                    channel.register(selector, SelectionKey.OP_CONNECT, client);
+                    connecting++;
+                }
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Client client = (Client) key.attachment();
+                    if (key.isConnectable()) {
+                        client.channel.finishConnect();
+                        key.interestOps(SelectionKey.OP_READ);
+                        send(client, key, "LOGIN librarian@example.com secret\n");
+                    } else if (key.isReadable() && receive(client, key, Long.MAX_VALUE, false) > 0) {
+                        client.loggedIn = true;
+                        connecting--;
+                        loggedIn++;
+                    }
+                }
+            }
+            System.out.printf("connected and logged in: %d connections in %d ms%n", connections,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStart));
+
+            long start = System.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(seconds);
+            for (Client client : clients) {
+                SelectionKey key = client.channel.keyFor(selector);
+                StringBuilder commands = new StringBuilder();
+                for (int i = 0; i < depth; i++) {
+                    commands.append(next(client, start));
+                }
+                send(client, key, commands.toString());
+            }
+            int busy = connections;
+            while (busy > 0) {
+                selector.select(1000);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Client client = (Client) key.attachment();
+                    if (key.isValid() && key.isWritable()) {
+                        flush(client, key);
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        receive(client, key, end, true);
+                        if (client.inFlight == 0) {
+                            key.cancel();
+                            busy--;
+                        }
+                    }
+                }
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            long[] sorted = Arrays.copyOf(latencies, latencyCount);
+            Arrays.sort(sorted);
+            System.out.printf("%d replies in %.1f s: %.0f commands/s, p50 %.2f ms, p99 %.2f ms, max %.2f ms, "
+                    + "%d errors%n", latencyCount, elapsed, latencyCount / elapsed, percentile(sorted, 50) / 1e6,
+                    percentile(sorted, 99) / 1e6, sorted[sorted.length - 1] / 1e6, errors);
+        } finally {
+            for (Client client : clients) {
+                client.channel.close();
+            }
+        }
+    }
+
+    /**
+     * @brief Records the send time of the next command of a client and returns it.
+     */
+    private static String next(Client client, long now) {
+        client.sentAt[(client.head + client.inFlight) % client.sentAt.length] = now;
+        client.inFlight++;
+        return ((client.sent++ & 1) == 0 ? "BORROW " : "RETURN ") + client.bookId + "\n";
+    }
+
+    /**
+     * @brief Reads the replies a client has received and sends a new command for each.
+     * @param measure True to record latencies and keep the pipeline full until the end time.
+     * @return The number of complete reply lines read.
+     */
+    private int receive(Client client, SelectionKey key, long end, boolean measure) throws IOException {
+        readBuffer.clear();
+        int read = client.channel.read(readBuffer);
+        if (read == -1) {
+            throw new IOException("The server closed connection " + client.bookId);
+        }
+        readBuffer.flip();
+        int replies = 0;
+        boolean lineStart = true;
+        while (readBuffer.hasRemaining()) {
+            byte b = readBuffer.get();
+            if (lineStart && b == 'E') {
+                errors++;
+            }
+            lineStart = b == '\n';
+            if (lineStart) {
+                replies++;
+            }
+        }
+        if (!measure || replies == 0) {
+            return replies;
+        }
+        long now = System.nanoTime();
+        StringBuilder commands = new StringBuilder();
+        for (int i = 0; i < replies; i++) {
+            record(now - client.sentAt[client.head]);
+            client.head = (client.head + 1) % client.sentAt.length;
+            client.inFlight--;
+            if (now < end) {
+                commands.append(next(client, now));
+            }
+        }
+        if (commands.length() > 0) {
+            send(client, key, commands.toString());
+        }
+        return replies;
+    }
+
+    private void send(Client client, SelectionKey key, String commands) throws IOException {
+        byte[] bytes = commands.getBytes(StandardCharsets.US_ASCII);
+        if (client.unsent != null) {
+            ByteBuffer joined = ByteBuffer.allocate(client.unsent.remaining() + bytes.length);
+            joined.put(client.unsent).put(bytes).flip();
+            client.unsent = joined;
+        } else {
+            client.unsent = ByteBuffer.wrap(bytes);
+        }
+        flush(client, key);
+    }
+
+    private void flush(Client client, SelectionKey key) throws IOException {
+        writeBuffer.clear();
+        ByteBuffer part = client.unsent.duplicate();
+        if (part.remaining() > writeBuffer.remaining()) {
+            part.limit(part.position() + writeBuffer.remaining());
+        }
+        writeBuffer.put(part).flip();
+        int written = client.channel.write(writeBuffer);
+        client.unsent.position(client.unsent.position() + written);
+        if (client.unsent.hasRemaining()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } else {
+            client.unsent = null;
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void record(long latency) {
+        if (latencyCount == latencies.length) {
+            latencies = Arrays.copyOf(latencies, latencies.length * 2);
+        }
+        latencies[latencyCount++] = latency;
+    }
+
+    private static Process startServer(Path books, Path users) throws IOException {
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        String sync = System.getProperty(SyncMode.SYNC_PROPERTY);
+        if (sync != null) {
+            command.add("-D" + SyncMode.SYNC_PROPERTY + "=" + sync);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(LibrarysystemApp.class.getName());
+        command.add("serve-commands");
+        command.add("0");
+        command.add(books.toString());
+        command.add(users.toString());
+        return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+
+    private static int readPort(Process server) throws IOException {
+        BufferedReader out = new BufferedReader(new InputStreamReader(server.getInputStream(), StandardCharsets.UTF_8));
+        String line = out.readLine();
+        Matcher matcher = line == null ? null : PORT.matcher(line);
+        if (matcher == null || !matcher.find()) {
+            throw new IOException("The server did not start: " + line);
+        }
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        return sorted[Math.min(sorted.length - 1, (int) ((long) sorted.length * percent / 100))];
+    }
+}
@@ -0,0 +1,216 @@
+package com.hasan.yakup.librarysystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommandServerTest {
+    private static final String LOGIN = "LOGIN librarian@example.com secret\n";
+
+    private Path books = Paths.get("test_command_books.bin");
+    private Path users = Paths.get("test_command_users.bin");
+    private LibraryService service;
+    private CommandServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        List<Book> catalog = new ArrayList<Book>();
+        for (int id = 1; id <= 300; id++) {
+            catalog.add(new Book(id, "Book" + id, false, false, false));
+        }
+        StreamBookStore.writeAll(catalog, books);
+        service = new LibraryService();
+        User librarian = new User();
+        librarian.setEmail("librarian@example.com");
+        librarian.setPassword("secret");
+        service.registerUser(librarian, users.toString());
+        server = new CommandServer(0, users.toString(), books.toString(), service);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        Files.deleteIfExists(books);
+        Files.deleteIfExists(users);
+        Files.deleteIfExists(IdAllocator.sidecarPathOf(books));
+        Files.deleteIfExists(ProcessLock.lockPathOf(books));
+        Files.deleteIfExists(ProcessLock.lockPathOf(users));
+    }
+
+    @Test
+    public void testPipelinedCommands_ShouldBeAnsweredInOrder() throws Exception {
+        String transcript = converse(LOGIN
+                + "BORROW 2\r\n"
+                + "borrow 2\n"
+                + "WISH 3\n"
+                + "MARK 3\n"
+                + "RETURN 2\n"
+                + "RETURN 2\n"
+                + "BORROW 3\n"
+                + "LIST LOANED\n"
+                + "ADD Yeni Kitap\n"
+                + "RENAME 301 Renamed Book\n"
+                + "DELETE 1\n"
+                + "FIND 1\n"
+                + "QUIT\n"
+                + "BORROW 4\n");
+
+        assertEquals("OK\n"
+                + "OK 2 --L Book2\n"
+                + "ERR UNCHANGED\n"
+                + "OK 3 -W- Book3\n"
+                + "OK 3 MW- Book3\n"
+                + "OK 2 --- Book2\n"
+                + "ERR UNCHANGED\n"
+                + "OK 3 MWL Book3\n"
+                + "OK 1\n"
+                + "3 MWL Book3\n"
+                + "OK 301 --- Yeni Kitap\n"
+                + "OK 301 --- Renamed Book\n"
+                + "OK\n"
+                + "ERR NOT_FOUND\n"
+                + "OK\n", transcript);
+        // Commands after QUIT are not executed.
+        assertTrue(!service.findBook(4, books.toString()).getBook().isLoaned());
+    }
+
+    @Test
+    public void testCommands_ShouldRequireLoginAndValidArguments() throws Exception {
+        String transcript = converse("LIST\n"
+                + "LOGIN librarian@example.com wrong\n"
+                + "BORROW 2\n"
+                + LOGIN
+                + "BORROW two\n"
+                + "LIST LENT\n"
+                + "\n"
+                + "FETCH 2\n");
+
+        assertEquals("ERR LOGIN_REQUIRED\n"
+                + "ERR INVALID_CREDENTIALS\n"
+                + "ERR LOGIN_REQUIRED\n"
+                + "OK\n"
+                + "ERR BAD_REQUEST BORROW takes a book ID\n"
+                + "ERR BAD_REQUEST LIST takes MARKED, WISHLIST or LOANED\n"
+                + "ERR BAD_REQUEST empty command\n"
+                + "ERR BAD_REQUEST unknown command FETCH\n", transcript);
+    }
+
+    @Test
+    public void testManyConnections_ShouldShareOneCatalog() throws Exception {
+        List<Socket> sockets = new ArrayList<Socket>();
+        try {
+            for (int id = 1; id <= 300; id++) {
+                Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+                sockets.add(socket);
+                socket.getOutputStream().write((LOGIN + "BORROW " + id + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            for (int id = 1; id <= 300; id++) {
+                Socket socket = sockets.get(id - 1);
+                socket.shutdownOutput();
+                assertEquals("OK\nOK " + id + " --L Book" + id + "\n", readAll(socket.getInputStream()));
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+        assertEquals(300, service.countBooks(books.toString(), BookFlag.LOANED, true));
+        long deadline = System.currentTimeMillis() + 10000;
+        while (server.getConnectionCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, server.getConnectionCount());
+    }
+
+    @Test
+    public void testLongLine_ShouldBeRejectedAndEndTheConnection() throws Exception {
+        char[] title = new char[CommandServer.MAX_LINE];
+        Arrays.fill(title, 'x');
+        String transcript = converse(LOGIN + "ADD " + new String(title) + "\nFIND 1\n");
+
+        assertEquals("OK\nERR BAD_REQUEST line longer than " + CommandServer.MAX_LINE + " bytes\n", transcript);
+        assertEquals(300, service.listBooks(books.toString()).size());
+    }
+
+    @Test
+    public void testLargeReplies_ShouldBeSentCompletely() throws Exception {
+        StringBuilder input = new StringBuilder(LOGIN);
+        for (int i = 0; i < 100; i++) {
+            input.append("LIST\n");
+        }
+        String transcript = converse(input.toString());
+
+        String[] lines = transcript.split("\n");
+        assertEquals(1 + 100 * 301, lines.length);
+        assertEquals("OK 300", lines[lines.length - 301]);
+        assertEquals("300 --- Book300", lines[lines.length - 1]);
+    }
+
+    @Test
+    public void testLineBreaksInTitles_ShouldBeEscaped() throws Exception {
+        service.renameBook(3, "Two\nLines\\", books.toString());
+        String transcript = converse(LOGIN
+                + "FIND 3\n"
+                + "RENAME 2 Carriage\rReturn\n"
+                + "FE\rTCH 2\n");
+
+        assertEquals("OK\n"
+                + "OK 3 --- Two\\nLines\\\\\n"
+                + "OK 2 --- Carriage\\rReturn\n"
+                + "ERR BAD_REQUEST unknown command FE\\rTCH\n", transcript);
+    }
+
+    @Test
+    public void testCommandsBeyondTheBacklog_ShouldAllBeAnswered() throws Exception {
+        StringBuilder input = new StringBuilder(LOGIN);
+        for (int i = 0; i < 3 * CommandServer.MAX_QUEUED_COMMANDS; i++) {
+            input.append("FIND ").append(i % 300 + 1).append('\n');
+        }
+        String transcript = converse(input.toString());
+
+        String[] lines = transcript.split("\n");
+        assertEquals(1 + 3 * CommandServer.MAX_QUEUED_COMMANDS, lines.length);
+        for (int i = 0; i < 3 * CommandServer.MAX_QUEUED_COMMANDS; i++) {
+            int id = i % 300 + 1;
+            assertEquals("OK " + id + " --- Book" + id, lines[i + 1]);
+        }
+    }
+
+    private String converse(String input) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(input.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            socket.shutdownOutput();
+            return readAll(socket.getInputStream());
+        }
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream transcript = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            transcript.write(buffer, 0, read);
+        }
+        return new String(transcript.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,82 @@
+package com.hasan.yakup.librarysystem;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @class CommitBenchmark
+ * @brief Measures committed mutations per second under each SyncMode.
+ * @details Run with {@code java -cp target/classes:target/test-classes
+ * com.hasan.yakup.librarysystem.CommitBenchmark [threads] [seconds] [format]}. Each thread
+ * toggles the loaned flag of its own books; the report shows mutations and store writes
+ * (commits, each one fsync when the mode forces writes) per second.
+ */
+public class CommitBenchmark {
+    private static final int BOOKS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        String format = args.length > 2 ? args[2] : "slotted";
+        System.setProperty(BookStores.FORMAT_PROPERTY, format);
+
+        System.out.printf("%-7s %8s %12s %12s %10s%n", "mode", "threads", "ops/s", "commits/s", "ops/commit");
+        for (SyncMode mode : SyncMode.values()) {
+            System.setProperty(SyncMode.SYNC_PROPERTY, mode.name());
+            run(mode, threads, seconds);
+        }
+    }
+
+    private static void run(SyncMode mode, final int threads, int seconds) throws Exception {
+        Path path = Paths.get("benchmark_commit_books.bin");
+        cleanUp(path);
+        final BookRepository repository = new BookRepository(path.toString());
+        for (int id = 1; id <= BOOKS; id++) {
+            repository.add(new Book(id, "Book" + id, false, false, false));
+        }
+        long commitsBefore = repository.getCommitCount();
+
+        final AtomicLong operations = new AtomicLong();
+        final long deadline = System.nanoTime() + seconds * 1000000000L;
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; System.nanoTime() < deadline; i++) {
+                            int id = (offset + i * threads) % BOOKS + 1;
+                            Book book = repository.findById(id);
+                            repository.setLoaned(id, !book.isLoaned());
+                            operations.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        long commits = repository.getCommitCount() - commitsBefore;
+        System.out.printf("%-7s %8d %12.0f %12.0f %10.1f%n", mode, threads, operations.get() / (double) seconds,
+                commits / (double) seconds, operations.get() / (double) Math.max(1, commits));
+        cleanUp(path);
+    }
+
+    private static void cleanUp(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(SlottedBookStore.heapPathOf(path));
+        LogBookStore.deleteLogs(path);
+    }
+}
@@ -0,0 +1,120 @@
+package com.hasan.yakup.librarysystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class CompactBookStoreTest {
+    private String testFilePathBooks = "test_compact_books.bin";
+    private Path path = Paths.get(testFilePathBooks);
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(IdAllocator.sidecarPathOf(path));
+        Files.deleteIfExists(ProcessLock.lockPathOf(path));
+    }
+
+    @Test
+    public void testConvert_ShouldKeepBooksInLessSpace() throws IOException {
+        List<Book> expected = books(20000);
+        StreamBookStore.writeAll(expected, path);
+        long streamSize = Files.size(path);
+
+        assertTrue(BookStores.convert(testFilePathBooks, BookFormat.COMPACT));
+        assertEquals(BookFormat.COMPACT, BookStores.detect(path));
+        assertTrue(Files.size(path) < streamSize / 2);
+
+        Map<Integer, Book> loaded = new LinkedHashMap<Integer, Book>();
+        new CompactBookStore(path).load(loaded);
+        List<Book> books = new ArrayList<Book>(loaded.values());
+        assertEquals(expected.size(), books.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), books.get(i).getId());
+            assertEquals(expected.get(i).getName(), books.get(i).getName());
+            assertEquals(expected.get(i).isMarked(), books.get(i).isMarked());
+            assertEquals(expected.get(i).isWishlist(), books.get(i).isWishlist());
+            assertEquals(expected.get(i).isLoaned(), books.get(i).isLoaned());
+        }
+
+        assertTrue(BookStores.convert(testFilePathBooks, BookFormat.STREAM));
+        assertEquals("Seri 12 Cilt 12345 ğüş", new BookRepository(testFilePathBooks).findById(12345).getName());
+    }
+
+    @Test
+    public void testChanges_ShouldContinueDeltasAcrossAppends() throws IOException {
+        System.setProperty(BookStores.FORMAT_PROPERTY, "compact");
+        try {
+            BookRepository repository = new BookRepository(testFilePathBooks);
+            repository.add(new Book(10, "Series Volume 1", false, false, false));
+            repository.add(new Book(3, "Series Volume 2", true, false, false));
+            assertEquals(BookFormat.COMPACT, BookStores.detect(path));
+            repository.add(new Book(500000, "Series Volume 10", false, true, false));
+            assertTrue(repository.setLoaned(3, true));
+            assertTrue(repository.delete(10));
+            repository.add(new Book(-5, "", false, false, true));
+        } finally {
+            System.clearProperty(BookStores.FORMAT_PROPERTY);
+        }
+
+        BookRepository reloaded = new BookRepository(testFilePathBooks);
+        assertEquals(3, reloaded.size());
+        assertNull(reloaded.findById(10));
+        assertTrue(reloaded.findById(3).isLoaned());
+        assertEquals("Series Volume 10", reloaded.findById(500000).getName());
+        assertTrue(reloaded.findById(-5).isLoaned());
+        assertEquals(3, FileHeader.read(path, FileHeader.COMPACT_MAGIC).getRecordCount());
+    }
+
+    @Test
+    public void testLongTitles_ShouldNotBeLimitedByWriteUtf() throws IOException {
+        StringBuilder title = new StringBuilder();
+        while (title.length() < 70000) {
+            title.append("çok uzun başlık ");
+        }
+        List<Book> expected = new ArrayList<Book>();
+        expected.add(new Book(1, title.toString(), false, false, false));
+        expected.add(new Book(2, title + "devam", true, true, true));
+        System.setProperty(CompactBookStore.PREFIX_PROPERTY, "false");
+        try {
+            CompactBookStore.writeAll(expected, path);
+        } finally {
+            System.clearProperty(CompactBookStore.PREFIX_PROPERTY);
+        }
+        assertFalse(FileHeader.read(path, FileHeader.COMPACT_MAGIC).hasFlag(FileHeader.FLAG_SHARED_PREFIX));
+
+        final List<Book> books = new ArrayList<Book>();
+        CompactBookStore.forEach(path, new Consumer<Book>() {
+            @Override
+            public void accept(Book book) {
+                books.add(book);
+            }
+        });
+        assertEquals(2, books.size());
+        assertEquals(expected.get(0).getName(), books.get(0).getName());
+        assertEquals(expected.get(1).getName(), books.get(1).getName());
+    }
+
+    private static List<Book> books(int count) {
+        List<Book> books = new ArrayList<Book>();
+        for (int id = 1; id <= count; id++) {
+            books.add(new Book(id, "Seri " + (id / 1000) + " Cilt " + id + " ğüş", id % 3 == 0, id % 5 == 0,
+                    id % 7 == 1));
+        }
+        return books;
+    }
+}
@@ -0,0 +1,99 @@
+package com.hasan.yakup.librarysystem;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * @class CompactEncodingBenchmark
+ * @brief Compares the size and decode speed of the stream and compact books formats.
+ * @details Run with {@code java -cp target/classes:target/test-classes
+ * com.hasan.yakup.librarysystem.CompactEncodingBenchmark [<books>]}. The generated catalog
+ * mixes series volumes in shelf order with standalone titles, has gaps in the IDs from
+ * deleted books and uses Turkish and English words. Decoding visits every book with
+ * BookStores.forEach; the best of five passes is reported.
+ */
+public class CompactEncodingBenchmark {
+    private static final int ROUNDS = 5;
+    private static final String[] WORDS = { "the", "of", "and", "kitap", "gece", "yolculuk", "history", "garden",
+            "deniz", "şehir", "love", "war", "çocuk", "ışık", "secret", "winter", "dağ", "istanbul", "river", "song" };
+    private static final String[] SERIES = { "The Chronicles of the Northern Kingdom", "Osmanlı Tarihi Ansiklopedisi",
+            "Introduction to Algorithms Study Guide", "Sherlock Holmes Complete Stories", "Türk Edebiyatı Antolojisi",
+            "The Wheel of Time", "Discworld", "Encyclopaedia Britannica" };
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        List<Book> catalog = generate(count);
+
+        Path stream = Paths.get("benchmark_encoding_stream.bin");
+        Path plain = Paths.get("benchmark_encoding_compact.bin");
+        Path prefix = Paths.get("benchmark_encoding_prefix.bin");
+        try {
+            StreamBookStore.writeAll(catalog, stream);
+            System.setProperty(CompactBookStore.PREFIX_PROPERTY, "false");
+            CompactBookStore.writeAll(catalog, plain);
+            System.clearProperty(CompactBookStore.PREFIX_PROPERTY);
+            CompactBookStore.writeAll(catalog, prefix);
+            catalog = null;
+
+            System.out.printf("%d books%n%-22s %12s %14s %12s%n", count, "format", "bytes/book", "decode", "books/s");
+            report("stream", stream, count);
+            report("compact", plain, count);
+            report("compact, front coded", prefix, count);
+        } finally {
+            Files.deleteIfExists(stream);
+            Files.deleteIfExists(plain);
+            Files.deleteIfExists(prefix);
+        }
+    }
+
+    private static void report(String name, Path path, int count) throws Exception {
+        final long[] sink = new long[1];
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            BookStores.forEach(path, new Consumer<Book>() {
+                @Override
+                public void accept(Book book) {
+                    sink[0] += book.getName().length();
+                }
+            });
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-22s %12.1f %12.0fms %12.0f%n", name, (double) (Files.size(path) - FileHeader.SIZE) / count,
+                best / 1e6, count * 1e9 / best);
+    }
+
+    private static List<Book> generate(int count) {
+        Random random = new Random(42);
+        List<Book> books = new ArrayList<Book>(count);
+        int id = 0;
+        while (books.size() < count) {
+            id += random.nextInt(10) == 0 ? 2 + random.nextInt(5) : 1;
+            if (random.nextInt(3) == 0) {
+                String series = SERIES[random.nextInt(SERIES.length)];
+                int volumes = Math.min(1 + random.nextInt(40), count - books.size());
+                for (int volume = 1; volume <= volumes; volume++) {
+                    books.add(new Book(id++, series + ", Volume " + volume, random.nextInt(4) == 0,
+                            random.nextInt(10) == 0, random.nextInt(20) == 0));
+                }
+            } else {
+                StringBuilder title = new StringBuilder();
+                int words = 2 + random.nextInt(6);
+                for (int word = 0; word < words; word++) {
+                    if (word > 0) {
+                        title.append(' ');
+                    }
+                    title.append(WORDS[random.nextInt(WORDS.length)]);
+                }
+                books.add(new Book(id, title.toString(), random.nextInt(4) == 0, random.nextInt(10) == 0,
+                        random.nextInt(20) == 0));
+            }
+        }
+        return books;
+    }
+}
@@ -0,0 +1,144 @@
+package com.hasan.yakup.librarysystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class FileMigratorTest {
+    private String testFilePathBooks = "test_migrate_books.bin";
+    private String testFilePathUsers = "test_migrate_users.bin";
+    private Path books = Paths.get(testFilePathBooks);
+    private Path users = Paths.get(testFilePathUsers);
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(books);
+        Files.deleteIfExists(users);
+        Files.deleteIfExists(IdAllocator.sidecarPathOf(books));
+        Files.deleteIfExists(ProcessLock.lockPathOf(books));
+        Files.deleteIfExists(ProcessLock.lockPathOf(users));
+    }
+
+    @Test
+    public void testMigrateBooks_ShouldAddHeaderAndKeepRecords() throws IOException {
+        try (DataOutputStream writer = new DataOutputStream(new FileOutputStream(testFilePathBooks))) {
+            for (int id = 1; id <= 1000; id++) {
+                StreamBookStore.writeBook(writer, new Book(id, "Kitap " + id + " ğüş", id % 2 == 0, false, id == 7));
+            }
+        }
+        long legacySize = Files.size(books);
+        assertTrue(FileHeader.read(books, FileHeader.BOOKS_MAGIC).isLegacy());
+
+        assertEquals(1000, FileMigrator.migrateBooks(books));
+
+        FileHeader header = FileHeader.read(books, FileHeader.BOOKS_MAGIC);
+        assertEquals(FileHeader.CURRENT_VERSION, header.getVersion());
+        assertEquals(1000, header.getRecordCount());
+        assertEquals(legacySize + FileHeader.SIZE, Files.size(books));
+        assertEquals(-1, FileMigrator.migrateBooks(books));
+
+        BookRepository repository = new BookRepository(testFilePathBooks);
+        List<Book> all = repository.findAll();
+        assertEquals(1000, all.size());
+        assertEquals("Kitap 500 ğüş", all.get(499).getName());
+        assertTrue(repository.findById(7).isLoaned());
+    }
+
+    @Test
+    public void testRepeatedIds_ShouldBeRefusedAndRenumberedByMigration() throws IOException {
+        try (DataOutputStream writer = new DataOutputStream(new FileOutputStream(testFilePathBooks))) {
+            StreamBookStore.writeBook(writer, new Book(1, "Book1", false, false, false));
+            StreamBookStore.writeBook(writer, new Book(2, "Book2", false, false, false));
+            StreamBookStore.writeBook(writer, new Book(2, "Copy of Book2", false, false, true));
+        }
+        try {
+            new BookRepository(testFilePathBooks).size();
+            fail("Expected the repeated ID to be refused");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Book ID 2 occurs more than once"));
+        }
+
+        assertEquals(3, FileMigrator.migrateBooks(books));
+
+        assertEquals(3, FileHeader.read(books, FileHeader.BOOKS_MAGIC).getRecordCount());
+        assertEquals(-1, FileMigrator.migrateBooks(books));
+        BookRepository repository = new BookRepository(testFilePathBooks);
+        assertEquals(3, repository.size());
+        assertEquals("Book2", repository.findById(2).getName());
+        assertEquals("Copy of Book2", repository.findById(3).getName());
+        assertTrue(repository.findById(3).isLoaned());
+        assertEquals(4, repository.nextId());
+    }
+
+    @Test
+    public void testAppends_ShouldKeepRecordCount() throws IOException {
+        BookRepository repository = new BookRepository(testFilePathBooks);
+        repository.add(new Book(1, "Book1", false, false, false));
+        repository.add(new Book(2, "Book2", false, false, false));
+        assertEquals(2, FileHeader.read(books, FileHeader.BOOKS_MAGIC).getRecordCount());
+        assertTrue(repository.delete(1));
+        assertEquals(1, FileHeader.read(books, FileHeader.BOOKS_MAGIC).getRecordCount());
+
+        LibraryService service = new LibraryService();
+        service.registerUser(user("a@b.c", "secret"), testFilePathUsers);
+        service.registerUser(user("d@e.f", "other"), testFilePathUsers);
+        assertEquals(2, FileHeader.read(users, FileHeader.USERS_MAGIC).getRecordCount());
+        assertTrue(service.loginUser(user("d@e.f", "other"), testFilePathUsers).isSuccess());
+        assertEquals(-1, FileMigrator.migrateUsers(users));
+    }
+
+    @Test
+    public void testMigrateUsers_ShouldKeepLogins() throws IOException {
+        try (DataOutputStream writer = new DataOutputStream(new FileOutputStream(testFilePathUsers))) {
+            writer.writeUTF("a@b.c");
+            writer.writeUTF("secret");
+            writer.writeUTF("ç@ğ.ş");
+            writer.writeUTF("şifre");
+        }
+        LibraryService service = new LibraryService();
+        assertTrue(service.loginUser(user("ç@ğ.ş", "şifre"), testFilePathUsers).isSuccess());
+
+        assertEquals(2, FileMigrator.migrateUsers(users));
+
+        assertEquals(2, FileHeader.read(users, FileHeader.USERS_MAGIC).getRecordCount());
+        assertTrue(service.loginUser(user("a@b.c", "secret"), testFilePathUsers).isSuccess());
+        assertTrue(service.loginUser(user("ç@ğ.ş", "şifre"), testFilePathUsers).isSuccess());
+        assertFalse(service.loginUser(user("a@b.c", "şifre"), testFilePathUsers).isSuccess());
+    }
+
+    @Test
+    public void testNewerVersion_ShouldBeRejected() throws IOException {
+        StreamBookStore.writeAll(Collections.singletonList(new Book(1, "Book1", false, false, false)), books);
+        try (RandomAccessFile file = new RandomAccessFile(books.toFile(), "rw")) {
+            file.seek(4);
+            file.writeShort(FileHeader.CURRENT_VERSION + 1);
+        }
+        try {
+            new BookRepository(testFilePathBooks).size();
+            fail("Expected an unsupported version");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("version"));
+        }
+    }
+
+    private static User user(String email, String password) {
+        User user = new User();
+        user.setEmail(email);
+        user.setPassword(password);
+        return user;
+    }
+}
@@ -0,0 +1,101 @@
+package com.hasan.yakup.librarysystem;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @class HttpPollBenchmark
+ * @brief Compares full catalog polls with conditional ones against LibraryHttpServer.
+ * @details Run with {@code java -cp target/classes:target/test-classes
+ * com.hasan.yakup.librarysystem.HttpPollBenchmark [<books> [<clients> [<polls>]]]}. Each client
+ * polls {@code GET /books} over one kept-alive connection, first without and then with
+ * {@code If-None-Match}; the rate, latency percentiles and bytes per poll are reported.
+ */
+public class HttpPollBenchmark {
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int polls = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        Path books = Paths.get("benchmark_http_books.bin");
+        Path users = Paths.get("benchmark_http_users.bin");
+        List<Book> catalog = new ArrayList<Book>(size);
+        for (int id = 1; id <= size; id++) {
+            catalog.add(new Book(id, "Kitap " + id, false, false, id % 3 == 0));
+        }
+        StreamBookStore.writeAll(catalog, books);
+        BookStores.convert(books.toString(), BookFormat.SLOTTED);
+
+        try (LibraryHttpServer server = new LibraryHttpServer(0, users.toString(), books.toString())) {
+            server.start();
+            URI uri = URI.create("http://127.0.0.1:" + server.getPort() + "/books");
+            System.out.printf("%d books, %d clients, %d polls each, %d available processors%n", size, clients, polls,
+                    Runtime.getRuntime().availableProcessors());
+            String etag = HttpClient.newHttpClient().send(HttpRequest.newBuilder(uri).build(),
+                    HttpResponse.BodyHandlers.discarding()).headers().firstValue("ETag").get();
+            run("full", uri, null, clients, polls);
+            run("conditional", uri, etag, clients, polls * 100);
+        } finally {
+            Files.deleteIfExists(books);
+            Files.deleteIfExists(SlottedBookStore.heapPathOf(books));
+            Files.deleteIfExists(users);
+            Files.deleteIfExists(IdAllocator.sidecarPathOf(books));
+            Files.deleteIfExists(ProcessLock.lockPathOf(books));
+        }
+    }
+
+    private static void run(String name, final URI uri, final String etag, int clients, final int polls)
+            throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            results.add(pool.submit(new Callable<long[]>() {
+                @Override
+                public long[] call() throws Exception {
+                    HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                    HttpRequest.Builder builder = HttpRequest.newBuilder(uri);
+                    if (etag != null) {
+                        builder.header("If-None-Match", etag);
+                    }
+                    HttpRequest request = builder.build();
+                    // Index 0 holds the body bytes of the last poll.
+                    long[] samples = new long[polls + 1];
+                    for (int i = 1; i <= polls; i++) {
+                        long begin = System.nanoTime();
+                        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                        samples[i] = System.nanoTime() - begin;
+                        samples[0] = response.body().length;
+                    }
+                    return samples;
+                }
+            }));
+        }
+        long[] all = new long[0];
+        long bytes = 0;
+        for (Future<long[]> result : results) {
+            long[] samples = result.get();
+            bytes = samples[0];
+            int offset = all.length;
+            all = Arrays.copyOf(all, offset + polls);
+            System.arraycopy(samples, 1, all, offset, polls);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+        Arrays.sort(all);
+        System.out.printf("%s: %.0f polls/s, p50 %.3f ms, p99 %.3f ms, %d body bytes per poll%n", name,
+                all.length / seconds, all[all.length / 2] / 1e6,
+                all[Math.min(all.length - 1, all.length * 99 / 100)] / 1e6, bytes);
+    }
+}
@@ -0,0 +1,72 @@
+package com.hasan.yakup.librarysystem;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * @class LazyDecodeBenchmark
+ * @brief Compares decoding every record of a stream file with skipping the titles.
+ * @details Run with {@code java -cp target/classes:target/test-classes
+ * com.hasan.yakup.librarysystem.LazyDecodeBenchmark <stream file>}, e.g. on the file that
+ * OffHeapBenchmark generates. The report shows the best of five passes for listing the loaned
+ * books with full decoding, with {@link StreamRecordReader#next(BookFlag, boolean)}, and for
+ * loading the file into a BookTable with and without raw title copies.
+ */
+public class LazyDecodeBenchmark {
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        Path path = Paths.get(args[0]);
+        long sink = 0;
+        long decodeAll = Long.MAX_VALUE;
+        long skipTitles = Long.MAX_VALUE;
+        long loadDecoded = Long.MAX_VALUE;
+        long loadRaw = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            try (StreamRecordReader reader = StreamRecordReader.open(path)) {
+                Book book;
+                while ((book = reader.next()) != null) {
+                    if (book.isLoaned()) {
+                        sink += book.getName().length();
+                    }
+                }
+            }
+            decodeAll = Math.min(decodeAll, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            try (StreamRecordReader reader = StreamRecordReader.open(path)) {
+                Book book;
+                while ((book = reader.next(BookFlag.LOANED, true)) != null) {
+                    sink += book.getName().length();
+                }
+            }
+            skipTitles = Math.min(skipTitles, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            BookTable table = new BookTable();
+            try (StreamRecordReader reader = StreamRecordReader.open(path)) {
+                Book book;
+                while ((book = reader.next()) != null) {
+                    table.put(book);
+                }
+            }
+            sink += table.size();
+            table = null;
+            loadDecoded = Math.min(loadDecoded, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            table = new BookTable();
+            new StreamBookStore(path).load(table.asMap());
+            sink += table.size();
+            table = null;
+            loadRaw = Math.min(loadRaw, System.nanoTime() - start);
+        }
+
+        System.out.printf("%s (checksum %d)%n", path, sink);
+        System.out.printf("%-28s %10.1fms%n", "list loaned, decode all", decodeAll / 1e6);
+        System.out.printf("%-28s %10.1fms%n", "list loaned, skip titles", skipTitles / 1e6);
+        System.out.printf("%-28s %10.1fms%n", "load table, decode titles", loadDecoded / 1e6);
+        System.out.printf("%-28s %10.1fms%n", "load table, raw titles", loadRaw / 1e6);
+    }
+}
@@ -0,0 +1,223 @@
+package com.hasan.yakup.librarysystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LibraryHttpServerTest {
+    private static final String CREDENTIALS = "{\"email\":\"kiosk@example.com\",\"password\":\"secret\"}";
+
+    private Path books = Paths.get("test_http_books.bin");
+    private Path users = Paths.get("test_http_users.bin");
+    private LibraryHttpServer server;
+    private HttpClient client = HttpClient.newHttpClient();
+
+    @Before
+    public void setUp() throws IOException {
+        List<Book> catalog = new ArrayList<Book>();
+        for (int id = 1; id <= 3; id++) {
+            catalog.add(new Book(id, "Book" + id, false, false, false));
+        }
+        StreamBookStore.writeAll(catalog, books);
+        server = new LibraryHttpServer(0, users.toString(), books.toString());
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        Files.deleteIfExists(books);
+        Files.deleteIfExists(users);
+        Files.deleteIfExists(IdAllocator.sidecarPathOf(books));
+        Files.deleteIfExists(ProcessLock.lockPathOf(books));
+        Files.deleteIfExists(ProcessLock.lockPathOf(users));
+    }
+
+    @Test
+    public void testListing_ShouldBeRevalidatedWithETag() throws Exception {
+        HttpResponse<String> listing = send("GET", "/books", null, null, null);
+        assertEquals(200, listing.statusCode());
+        assertEquals("[{\"id\":1,\"title\":\"Book1\",\"marked\":false,\"wishlist\":false,\"loaned\":false},"
+                + "{\"id\":2,\"title\":\"Book2\",\"marked\":false,\"wishlist\":false,\"loaned\":false},"
+                + "{\"id\":3,\"title\":\"Book3\",\"marked\":false,\"wishlist\":false,\"loaned\":false}]",
+                listing.body());
+        String etag = listing.headers().firstValue("ETag").get();
+
+        HttpResponse<String> unchanged = send("GET", "/books", null, null, etag);
+        assertEquals(304, unchanged.statusCode());
+        assertEquals("", unchanged.body());
+        assertEquals(etag, unchanged.headers().firstValue("ETag").get());
+
+        assertEquals(200, send("POST", "/books/2/borrow", login(), "", null).statusCode());
+
+        HttpResponse<String> changed = send("GET", "/books", null, null, etag);
+        assertEquals(200, changed.statusCode());
+        assertNotEquals(etag, changed.headers().firstValue("ETag").get());
+        assertTrue(changed.body(), changed.body().contains("{\"id\":2,\"title\":\"Book2\",\"marked\":false,"
+                + "\"wishlist\":false,\"loaned\":true}"));
+        assertEquals("[{\"id\":2,\"title\":\"Book2\",\"marked\":false,\"wishlist\":false,\"loaned\":true}]",
+                send("GET", "/books?flag=loaned", null, null, null).body());
+        assertEquals(304, send("GET", "/books?flag=loaned", null, null,
+                changed.headers().firstValue("ETag").get()).statusCode());
+    }
+
+    @Test
+    public void testListing_ShouldAgreeWithLookupInAsyncMode() throws Exception {
+        System.setProperty(SyncMode.SYNC_PROPERTY, "async");
+        try {
+            String token = login();
+            String etag = send("GET", "/books", null, null, null).headers().firstValue("ETag").get();
+            assertEquals(200, send("POST", "/books/2/borrow", token, "", null).statusCode());
+
+            String book = "{\"id\":2,\"title\":\"Book2\",\"marked\":false,\"wishlist\":false,\"loaned\":true}";
+            assertEquals(book, send("GET", "/books/2", null, null, null).body());
+            HttpResponse<String> listing = send("GET", "/books", null, null, etag);
+            assertEquals(200, listing.statusCode());
+            assertTrue(listing.body().contains(book));
+            assertEquals("[" + book + "]", send("GET", "/books?flag=loaned", null, null, null).body());
+        } finally {
+            System.clearProperty(SyncMode.SYNC_PROPERTY);
+        }
+    }
+
+    @Test
+    public void testOperations_ShouldMapResultsToStatusCodes() throws Exception {
+        assertEquals(401, send("POST", "/books/2/borrow", null, "", null).statusCode());
+        assertEquals(401, send("POST", "/login", null, CREDENTIALS, null).statusCode());
+        String token = login();
+
+        HttpResponse<String> borrowed = send("POST", "/books/2/borrow", token, "", null);
+        assertEquals(200, borrowed.statusCode());
+        assertEquals("{\"id\":2,\"title\":\"Book2\",\"marked\":false,\"wishlist\":false,\"loaned\":true}",
+                borrowed.body());
+        HttpResponse<String> again = send("POST", "/books/2/borrow", token, "", null);
+        assertEquals(409, again.statusCode());
+        assertEquals("{\"error\":\"UNCHANGED\"}", again.body());
+        assertEquals(404, send("POST", "/books/99/borrow", token, "", null).statusCode());
+        assertEquals(200, send("POST", "/books/2/return", token, "", null).statusCode());
+        assertEquals(200, send("PUT", "/books/3/wishlist", token, "", null).statusCode());
+        assertEquals(200, send("POST", "/books/3/read", token, "", null).statusCode());
+        assertEquals("{\"id\":3,\"title\":\"Book3\",\"marked\":true,\"wishlist\":false,\"loaned\":false}",
+                send("DELETE", "/books/3/wishlist", token, "", null).body());
+
+        HttpResponse<String> added = send("POST", "/books", token, "{ \"title\" : \"Yeni \\\"Kitap\\\" \\u00e7\" }",
+                null);
+        assertEquals(201, added.statusCode());
+        assertEquals("{\"id\":4,\"title\":\"Yeni \\\"Kitap\\\" \u00e7\",\"marked\":false,\"wishlist\":false,"
+                + "\"loaned\":false}", added.body());
+        assertEquals(added.body(), send("GET", "/books/4", null, null, null).body());
+
+        assertEquals(400, send("POST", "/books", token, "{\"title\":", null).statusCode());
+        assertEquals(400, send("GET", "/books/four", null, null, null).statusCode());
+        assertEquals(400, send("GET", "/books?flag=lent", null, null, null).statusCode());
+        assertEquals(404, send("GET", "/shelves", null, null, null).statusCode());
+        HttpResponse<String> notAllowed = send("DELETE", "/books", token, null, null);
+        assertEquals(405, notAllowed.statusCode());
+        assertEquals("GET, POST", notAllowed.headers().firstValue("Allow").get());
+    }
+
+    @Test
+    public void testConnection_ShouldBeKeptAliveBetweenRequests() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            for (int id = 1; id <= 3; id++) {
+                out.write(("GET /books/" + id + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                String response = readResponse(in);
+                assertTrue(response, response.startsWith("HTTP/1.1 200"));
+                assertTrue(response, response.endsWith("\"title\":\"Book" + id
+                        + "\",\"marked\":false,\"wishlist\":false,\"loaned\":false}"));
+            }
+        }
+    }
+
+    @Test
+    public void testLargeListing_ShouldBeStreamedCompletely() throws Exception {
+        List<Book> catalog = new ArrayList<Book>();
+        for (int id = 1; id <= 20000; id++) {
+            catalog.add(new Book(id, "Kitap " + id, id % 2 == 0, false, false));
+        }
+        StreamBookStore.writeAll(catalog, books);
+
+        String all = send("GET", "/books", null, null, null).body();
+        String marked = send("GET", "/books?flag=marked", null, null, null).body();
+
+        assertEquals(20000, count(all, "\"id\":"));
+        assertEquals(10000, count(marked, "\"marked\":true"));
+        assertEquals(10000, count(marked, "\"id\":"));
+        assertTrue(all.endsWith("\"title\":\"Kitap 20000\",\"marked\":true,\"wishlist\":false,\"loaned\":false}]"));
+    }
+
+    private String login() throws Exception {
+        assertEquals(201, send("POST", "/users", null, CREDENTIALS, null).statusCode());
+        HttpResponse<String> response = send("POST", "/login", null, CREDENTIALS, null);
+        assertEquals(200, response.statusCode());
+        Matcher token = Pattern.compile("\\{\"token\":\"([^\"]+)\"\\}").matcher(response.body());
+        assertTrue(response.body(), token.matches());
+        return token.group(1);
+    }
+
+    private HttpResponse<String> send(String method, String path, String token, String body, String ifNoneMatch)
+            throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @brief Reads one response with a Content-Length body.
+     */
+    private static String readResponse(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        while (!head.toString(StandardCharsets.ISO_8859_1).endsWith("\r\n\r\n")) {
+            int next = in.read();
+            if (next == -1) {
+                throw new IOException("Connection closed after " + head);
+            }
+            head.write(next);
+        }
+        Matcher length = Pattern.compile("(?i)content-length: *(\\d+)").matcher(head.toString(StandardCharsets.ISO_8859_1));
+        assertTrue(head.toString(StandardCharsets.ISO_8859_1), length.find());
+        byte[] body = in.readNBytes(Integer.parseInt(length.group(1)));
+        return head.toString(StandardCharsets.ISO_8859_1) + new String(body, StandardCharsets.UTF_8);
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int at = text.indexOf(part); at >= 0; at = text.indexOf(part, at + part.length())) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,155 @@
+package com.hasan.yakup.librarysystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LibraryServerTest {
+    private Path books = Paths.get("test_server_books.bin");
+    private Path users = Paths.get("test_server_users.bin");
+    private LibraryService service;
+    private LibraryServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        List<Book> catalog = new ArrayList<Book>();
+        for (int id = 1; id <= 4; id++) {
+            catalog.add(new Book(id, "Book" + id, false, false, false));
+        }
+        StreamBookStore.writeAll(catalog, books);
+        service = new LibraryService();
+        User librarian = new User();
+        librarian.setEmail("librarian@example.com");
+        librarian.setPassword("secret");
+        service.registerUser(librarian, users.toString());
+        server = new LibraryServer(0, users.toString(), books.toString(), service);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        Files.deleteIfExists(books);
+        Files.deleteIfExists(users);
+        Files.deleteIfExists(IdAllocator.sidecarPathOf(books));
+        Files.deleteIfExists(ProcessLock.lockPathOf(books));
+        Files.deleteIfExists(ProcessLock.lockPathOf(users));
+    }
+
+    @Test
+    public void testSessions_ShouldShareOneCatalog() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<String>> transcripts = new ArrayList<Future<String>>();
+            for (final int bookId : new int[] { 2, 3 }) {
+                transcripts.add(clients.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws IOException {
+                        return converse(borrowScript(bookId));
+                    }
+                }));
+            }
+            for (Future<String> transcript : transcripts) {
+                String output = transcript.get();
+                assertTrue(output, output.contains("Login successful."));
+                assertTrue(output, output.contains("Book borrowed successfully."));
+                assertTrue(output, output.endsWith("Exit Program\n"));
+            }
+        } finally {
+            clients.shutdown();
+        }
+
+        assertTrue(service.findBook(2, books.toString()).getBook().isLoaned());
+        assertTrue(service.findBook(3, books.toString()).getBook().isLoaned());
+        String output = converse(borrowScript(2));
+        assertTrue(output, output.contains("There is no book you want!"));
+    }
+
+    @Test
+    public void testIdleSessions_ShouldEachGetTheirOwnMenu() throws Exception {
+        List<Socket> sockets = new ArrayList<Socket>();
+        try {
+            for (int i = 0; i < 200; i++) {
+                Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+                sockets.add(socket);
+                assertTrue(readUntil(socket.getInputStream(), "Please enter a number to select:\n"));
+            }
+            assertEquals(200, server.getSessionCount());
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (server.getSessionCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, server.getSessionCount());
+    }
+
+    @Test
+    public void testClose_ShouldEndOpenSessions() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            InputStream in = socket.getInputStream();
+            assertTrue(readUntil(in, "Please enter a number to select:\n"));
+
+            server.close();
+
+            assertEquals(-1, in.read());
+        }
+    }
+
+    private static String borrowScript(int bookId) {
+        return "1\nlibrarian@example.com\nsecret\n\n" // login
+                + "2\n2\n" + bookId + "\n\n" // loan management, borrow
+                + "4\n5\n4\n"; // back to the main menu and exit
+    }
+
+    private String converse(String input) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(input.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            ByteArrayOutputStream transcript = new ByteArrayOutputStream();
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                transcript.write(buffer, 0, read);
+            }
+            return new String(transcript.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static boolean readUntil(InputStream in, String marker) throws IOException {
+        ByteArrayOutputStream seen = new ByteArrayOutputStream();
+        int next;
+        while ((next = in.read()) != -1) {
+            seen.write(next);
+            if (new String(seen.toByteArray(), StandardCharsets.UTF_8).endsWith(marker)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
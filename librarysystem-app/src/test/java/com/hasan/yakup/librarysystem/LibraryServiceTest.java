@@ -0,0 +1,166 @@
+package com.hasan.yakup.librarysystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class LibraryServiceTest {
+    private String testFilePathBooks = "test_service_books.bin";
+    private String testFilePathUsers = "test_service_users.bin";
+    private LibraryService service = new LibraryService();
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(Paths.get(testFilePathBooks));
+        Files.deleteIfExists(IdAllocator.sidecarPathOf(Paths.get(testFilePathBooks)));
+        Files.deleteIfExists(ProcessLock.lockPathOf(Paths.get(testFilePathBooks)));
+        Files.deleteIfExists(Paths.get(testFilePathUsers));
+        Files.deleteIfExists(ProcessLock.lockPathOf(Paths.get(testFilePathUsers)));
+    }
+
+    @Test
+    public void testAddBook_ShouldReturnAddedBook() throws IOException {
+        OperationResult first = service.addBook("Book1", testFilePathBooks);
+        OperationResult second = service.addBook("Book2", testFilePathBooks);
+
+        assertTrue(first.isSuccess());
+        assertEquals(1, first.getBook().getId());
+        assertEquals(2, second.getBook().getId());
+        assertEquals(2, service.listBooks(testFilePathBooks).size());
+    }
+
+    @Test
+    public void testBorrowBook_ShouldReportEveryOutcome() throws IOException {
+        int id = service.addBook("Book1", testFilePathBooks).getBook().getId();
+
+        OperationResult borrowed = service.borrowBook(id, testFilePathBooks);
+        assertEquals(OperationResult.Status.OK, borrowed.getStatus());
+        assertTrue(borrowed.getBook().isLoaned());
+        assertEquals(OperationResult.Status.UNCHANGED, service.borrowBook(id, testFilePathBooks).getStatus());
+        assertEquals(OperationResult.Status.NOT_FOUND, service.borrowBook(99, testFilePathBooks).getStatus());
+        assertTrue(service.returnBook(id, testFilePathBooks).isSuccess());
+    }
+
+    @Test
+    public void testApplyBatch_ShouldReportEveryItemAndWriteOnce() throws IOException {
+        List<BookOperation> cart = new ArrayList<BookOperation>();
+        for (int i = 0; i < 50; i++) {
+            int id = service.addBook("Book" + i, testFilePathBooks).getBook().getId();
+            service.borrowBook(id, testFilePathBooks);
+            cart.add(new BookOperation(id, BookOperation.Kind.RETURN));
+        }
+        cart.add(new BookOperation(1, BookOperation.Kind.RETURN));
+        cart.add(new BookOperation(99, BookOperation.Kind.RETURN));
+        cart.add(new BookOperation(2, BookOperation.Kind.MARK_READ));
+        long commits = service.repository(testFilePathBooks).getCommitCount();
+
+        List<OperationResult> results = service.applyBatch(cart, testFilePathBooks);
+
+        assertEquals(commits + 1, service.repository(testFilePathBooks).getCommitCount());
+        assertEquals(53, results.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(OperationResult.Status.OK, results.get(i).getStatus());
+            assertFalse(results.get(i).getBook().isLoaned());
+        }
+        assertEquals(OperationResult.Status.UNCHANGED, results.get(50).getStatus());
+        assertEquals(OperationResult.Status.NOT_FOUND, results.get(51).getStatus());
+        assertTrue(results.get(52).getBook().isMarked());
+        assertFalse(results.get(52).getBook().isLoaned());
+
+        BookRepository reloaded = new BookRepository(testFilePathBooks);
+        assertEquals(0, reloaded.count(BookFlag.LOANED, true));
+        assertTrue(reloaded.findById(2).isMarked());
+        assertTrue(service.applyBatch(new ArrayList<BookOperation>(), testFilePathBooks).isEmpty());
+    }
+
+    @Test
+    public void testRenameBook_ShouldReturnItsOwnChangeUnderContention() throws Exception {
+        final int id = service.addBook("Book1", testFilePathBooks).getBook().getId();
+        final List<String> mismatches = Collections.synchronizedList(new ArrayList<String>());
+        List<Thread> clerks = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            final String name = "Clerk" + t;
+            clerks.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 25; i++) {
+                            String returned = service.renameBook(id, name, testFilePathBooks).getBook().getName();
+                            if (!name.equals(returned)) {
+                                mismatches.add(returned);
+                            }
+                        }
+                    } catch (IOException e) {
+                        mismatches.add(e.toString());
+                    }
+                }
+            }));
+        }
+        for (Thread clerk : clerks) {
+            clerk.start();
+        }
+        for (Thread clerk : clerks) {
+            clerk.join();
+        }
+
+        assertTrue(mismatches.toString(), mismatches.isEmpty());
+    }
+
+    @Test
+    public void testListBooks_ShouldFilterAndReturnCopies() throws IOException {
+        service.addBook("Book1", testFilePathBooks);
+        int id = service.addBook("Book2", testFilePathBooks).getBook().getId();
+        service.setWishlist(id, true, testFilePathBooks);
+
+        List<Book> wishlisted = service.listBooks(testFilePathBooks, new Predicate<Book>() {
+            @Override
+            public boolean test(Book book) {
+                return book.isWishlist();
+            }
+        });
+        assertEquals(1, wishlisted.size());
+        wishlisted.get(0).setName("Changed");
+
+        assertEquals("Book2", service.findBook(id, testFilePathBooks).getBook().getName());
+    }
+
+    @Test
+    public void testDeleteAndRename_ShouldReportMissingBooks() throws IOException {
+        int id = service.addBook("Book1", testFilePathBooks).getBook().getId();
+
+        assertEquals("Renamed", service.renameBook(id, "Renamed", testFilePathBooks).getBook().getName());
+        assertTrue(service.deleteBook(id, testFilePathBooks).isSuccess());
+        assertEquals(OperationResult.Status.NOT_FOUND, service.deleteBook(id, testFilePathBooks).getStatus());
+        assertEquals(OperationResult.Status.NOT_FOUND,
+                service.renameBook(id, "Again", testFilePathBooks).getStatus());
+    }
+
+    @Test
+    public void testLoginUser_ShouldMatchRegisteredUsers() throws IOException {
+        assertFalse(service.loginUser(user("a@b.c", "secret"), testFilePathUsers).isSuccess());
+
+        service.registerUser(user("a@b.c", "secret"), testFilePathUsers);
+
+        assertTrue(service.loginUser(user("a@b.c", "secret"), testFilePathUsers).isSuccess());
+        assertEquals(OperationResult.Status.INVALID_CREDENTIALS,
+                service.loginUser(user("a@b.c", "wrong"), testFilePathUsers).getStatus());
+    }
+
+    private User user(String email, String password) {
+        User user = new User();
+        user.setEmail(email);
+        user.setPassword(password);
+        return user;
+    }
+}
@@ -21,4 +21,23 @@ import org.junit.Test;
 
 public class LibrarysystemAppTest {
 
+    @Test
+    public void testRunCommand_ShouldPrintUsageForBadFormatsAndPorts() throws Exception {
+        String[][] commands = {
+            {"convert", "books.bin", "csv"},
+            {"import", "books.bin", "titles.txt", "xml"},
+            {"export", "books.bin", "xml"},
+            {"serve", "port"},
+            {"serve-commands", "70000"},
+            {"serve-http", "-1"},
+        };
+        for (String[] command : commands) {
+            ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+
+            int exitCode = LibrarysystemApp.runCommand(command, new PrintStream(outContent));
+
+            assertEquals(2, exitCode);
+            assertTrue(outContent.toString().startsWith("Usage: convert"));
+        }
+    }
 }
@@ -17,6 +17,7 @@ import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
 
@@ -51,6 +52,20 @@ public class LibrarysystemTest {
         assertTrue(result);
     }
 
+    @Test
+    public void testClearScreen_ShouldWriteAnsiToSessionStreamOnWindows() throws InterruptedException, IOException {
+        String operatingSystem = System.getProperty("os.name");
+        System.setProperty("os.name", "Windows 10");
+        try {
+            Librarysystem library = new Librarysystem(new Scanner(""), new PrintStream(outContent));
+            library.clearScreen();
+        } finally {
+            System.setProperty("os.name", operatingSystem);
+        }
+
+        assertEquals("\033[H\033[2J", outContent.toString());
+    }
+
     @Test
     public void testGetNewId_ShouldReturnCorrectId() throws FileNotFoundException, IOException {
 
@@ -542,6 +557,24 @@ public class LibrarysystemTest {
         assertFalse(result);
     }
 
+    @Test
+    public void testGiveBookMenu_ShouldGiveSeveralBooksBack()
+            throws FileNotFoundException, IOException, InterruptedException {
+
+        createTestFile();
+
+        String inputString = "2, 4\n\n\n";
+        InputStream in = new ByteArrayInputStream(inputString.getBytes());
+        Scanner testScanner = new Scanner(in);
+        Librarysystem library = new Librarysystem(testScanner, new PrintStream(outContent));
+
+        boolean result = library.giveBookMenu(testFilePathBooks);
+
+        assertTrue(result);
+        assertTrue(outContent.toString().contains("4. Book returned successfully."));
+        assertFalse(library.giveBooks(Arrays.asList(1, 9), testFilePathBooks));
+    }
+
     @Test
     public void testGiveBook_ShouldGiveBookBackAndReturnTrue() throws IOException {
 
@@ -643,6 +676,19 @@ public class LibrarysystemTest {
         assertTrue(result);
     }
 
+    @Test
+    public void addBook_AfterDeleteShouldNotReuseId() throws FileNotFoundException, IOException {
+        createTestFile();
+
+        Librarysystem library = new Librarysystem(new Scanner("\n"), new PrintStream(outContent));
+        library.deleteBook(4, testFilePathBooks);
+        library.addBook("Test Book", testFilePathBooks);
+
+        List<Book> books = library.loadBooks(testFilePathBooks);
+        assertEquals(4, books.size());
+        assertEquals(5, books.get(3).getId());
+    }
+
     @Test
     public void testRemoveFromWishListMenu_InvalidBookId() throws IOException,
             InterruptedException {
@@ -981,10 +1027,13 @@ public class LibrarysystemTest {
 
     private void cleanupTestDataBook() throws IOException {
         deleteFile(testFilePathBooks);
+        deleteFile(testFilePathBooks + ".ids");
+        deleteFile(testFilePathBooks + ".lock");
     }
 
     private void cleanupTestDataUser() throws IOException {
         deleteFile(testFilePathUsers);
+        deleteFile(testFilePathUsers + ".lock");
     }
 
     private void deleteFile(String filePath) throws IOException {
@@ -0,0 +1,139 @@
+package com.hasan.yakup.librarysystem;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * @class LoanContentionBenchmark
+ * @brief Compares compare-and-set loan transitions with a global lock under contention.
+ * @details Run with {@code java -cp target/classes:target/test-classes
+ * com.hasan.yakup.librarysystem.LoanContentionBenchmark [<threads> [<books>]]}. Every thread
+ * borrows or returns random books of a small shelf, so threads keep hitting the same bitset
+ * words. The table part measures the in-memory transition alone: BookTable.set behind one
+ * ReentrantLock against BookTable.set under a shared StampedLock read lock. The repository
+ * part measures whole operations on a slotted file: every call behind one global lock with a
+ * synchronous commit, as before, against async mode, where only the transition is on the
+ * caller's path.
+ */
+public class LoanContentionBenchmark {
+    private static final int TABLE_OPERATIONS = 2000000;
+    private static final int FILE_OPERATIONS = 4000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int shelf = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        System.out.printf("%d threads, %d books, %d available processors%n", threads, shelf,
+                Runtime.getRuntime().availableProcessors());
+
+        final BookTable table = new BookTable();
+        for (int id = 1; id <= shelf; id++) {
+            table.put(new Book(id, "Book" + id, false, false, false));
+        }
+        final ReentrantLock global = new ReentrantLock();
+        final StampedLock stamped = new StampedLock();
+        for (int round = 0; round < 3; round++) {
+            long locked = run(threads, TABLE_OPERATIONS, shelf, new Loan() {
+                @Override
+                public boolean set(int id, boolean loaned) {
+                    global.lock();
+                    try {
+                        return table.set(id, BookFlag.LOANED, loaned);
+                    } finally {
+                        global.unlock();
+                    }
+                }
+            });
+            long lockFree = run(threads, TABLE_OPERATIONS, shelf, new Loan() {
+                @Override
+                public boolean set(int id, boolean loaned) {
+                    long stamp = stamped.readLock();
+                    try {
+                        return table.set(id, BookFlag.LOANED, loaned);
+                    } finally {
+                        stamped.unlockRead(stamp);
+                    }
+                }
+            });
+            System.out.printf("table      global lock %10.0f ops/s, compare-and-set %10.0f ops/s%n",
+                    TABLE_OPERATIONS * 1e9 / locked, TABLE_OPERATIONS * 1e9 / lockFree);
+        }
+
+        Path path = Paths.get("benchmark_loan_books.bin");
+        List<Book> catalog = new ArrayList<Book>(shelf);
+        for (int id = 1; id <= shelf; id++) {
+            catalog.add(new Book(id, "Book" + id, false, false, false));
+        }
+        try {
+            StreamBookStore.writeAll(catalog, path);
+            BookStores.convert(path.toString(), BookFormat.SLOTTED);
+            final BookRepository synchronous = new BookRepository(path.toString());
+            final Object monitor = new Object();
+            long locked = run(threads, FILE_OPERATIONS, shelf, new Loan() {
+                @Override
+                public boolean set(int id, boolean loaned) throws Exception {
+                    synchronized (monitor) {
+                        return synchronous.setLoaned(id, loaned);
+                    }
+                }
+            });
+
+            System.setProperty(SyncMode.SYNC_PROPERTY, "async");
+            final BookRepository async = new BookRepository(path.toString());
+            System.clearProperty(SyncMode.SYNC_PROPERTY);
+            long start = System.nanoTime();
+            long lockFree = run(threads, FILE_OPERATIONS, shelf, new Loan() {
+                @Override
+                public boolean set(int id, boolean loaned) throws Exception {
+                    return async.setLoaned(id, loaned);
+                }
+            });
+            async.flush();
+            long durable = System.nanoTime() - start;
+            System.out.printf("repository global lock %10.0f ops/s, async %10.0f ops/s (%.0f ops/s until flushed, "
+                    + "%d commits)%n", FILE_OPERATIONS * 1e9 / locked, FILE_OPERATIONS * 1e9 / lockFree,
+                    FILE_OPERATIONS * 1e9 / durable, async.getCommitCount());
+        } finally {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(IdAllocator.sidecarPathOf(path));
+            Files.deleteIfExists(ProcessLock.lockPathOf(path));
+        }
+    }
+
+    private interface Loan {
+        boolean set(int id, boolean loaned) throws Exception;
+    }
+
+    private static long run(int threads, int operations, final int shelf, final Loan loan) throws Exception {
+        final int perThread = operations / threads;
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final Random random = new Random(t);
+            workers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < perThread; i++) {
+                            loan.set(1 + random.nextInt(shelf), random.nextBoolean());
+                        }
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,176 @@
+package com.hasan.yakup.librarysystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class LogBookStoreTest {
+    private String testFilePathBooks = "test_log_books.bin";
+    private Path path = Paths.get(testFilePathBooks);
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+        LogBookStore.deleteLogs(path);
+        Files.deleteIfExists(ProcessLock.lockPathOf(path));
+    }
+
+    @Test
+    public void testMutations_ShouldAppendToLogOnly() throws IOException {
+        createTestFile();
+        assertTrue(BookStores.convert(testFilePathBooks, BookFormat.LOG));
+        assertEquals(BookFormat.LOG, BookStores.detect(path));
+        byte[] snapshot = Files.readAllBytes(path);
+
+        BookRepository repository = new BookRepository(testFilePathBooks);
+        assertTrue(repository.setLoaned(1, true));
+        assertTrue(repository.rename(2, "Renamed"));
+        assertTrue(repository.delete(3));
+        repository.add(new Book(5, "Book5", true, false, false));
+
+        assertTrue(Arrays.equals(snapshot, Files.readAllBytes(path)));
+
+        BookRepository reloaded = new BookRepository(testFilePathBooks);
+        assertEquals(4, reloaded.size());
+        assertTrue(reloaded.findById(1).isLoaned());
+        assertEquals("Renamed", reloaded.findById(2).getName());
+        assertNull(reloaded.findById(3));
+        assertTrue(reloaded.findById(5).isMarked());
+    }
+
+    @Test
+    public void testLogSize_ShouldTriggerCompaction() throws IOException {
+        createTestFile();
+        LogBookStore.createLog(path);
+
+        LogBookStore store = new LogBookStore(path, 64, 1.0);
+        Map<Integer, Book> books = new LinkedHashMap<Integer, Book>();
+        store.load(books);
+        for (int id = 5; id < 15; id++) {
+            Book book = new Book(id, "Book" + id, false, false, false);
+            books.put(id, book);
+            store.write(Collections.singletonList(BookChange.add(book)), books.values());
+        }
+        store.awaitCompaction();
+        store.close();
+
+        assertTrue(store.getLogBytes() < 64);
+        Map<Integer, Book> snapshot = new LinkedHashMap<Integer, Book>();
+        new StreamBookStore(path).load(snapshot);
+        assertTrue(snapshot.size() > 4);
+        assertEquals(BookFormat.LOG, BookStores.detect(path));
+        assertEquals(14, new BookRepository(testFilePathBooks).size());
+    }
+
+    @Test
+    public void testDeadRatio_ShouldTriggerCompaction() throws IOException {
+        createTestFile();
+        LogBookStore.createLog(path);
+
+        LogBookStore store = new LogBookStore(path, Long.MAX_VALUE, 0.5);
+        Map<Integer, Book> books = new LinkedHashMap<Integer, Book>();
+        store.load(books);
+        Book book = books.get(1);
+        for (int i = 0; i < LogBookStore.MIN_ENTRIES_FOR_RATIO; i++) {
+            book.setLoaned(i % 2 == 0);
+            store.write(Collections.singletonList(BookChange.flags(book)), books.values());
+        }
+        store.awaitCompaction();
+        store.close();
+
+        assertTrue(store.getDeadRatio() < 0.5);
+        Map<Integer, Book> reloaded = new LinkedHashMap<Integer, Book>();
+        new LogBookStore(path).load(reloaded);
+        assertFalse(reloaded.get(1).isLoaned());
+    }
+
+    @Test
+    public void testTornRecord_ShouldBeCutOff() throws IOException {
+        createTestFile();
+        BookStores.convert(testFilePathBooks, BookFormat.LOG);
+
+        BookRepository repository = new BookRepository(testFilePathBooks);
+        assertTrue(repository.setMarked(1, true));
+        assertTrue(repository.setMarked(4, true));
+
+        Path log = LogBookStore.logPathOf(path);
+        try (RandomAccessFile file = new RandomAccessFile(log.toFile(), "rw")) {
+            file.setLength(file.length() - 1);
+        }
+
+        BookRepository reloaded = new BookRepository(testFilePathBooks);
+        assertTrue(reloaded.findById(1).isMarked());
+        assertFalse(reloaded.findById(4).isMarked());
+        assertTrue(reloaded.setWishlist(4, true));
+        assertTrue(new BookRepository(testFilePathBooks).findById(4).isWishlist());
+    }
+
+    @Test
+    public void testConvertBack_ShouldMergeLog() throws IOException {
+        createTestFile();
+        BookStores.convert(testFilePathBooks, BookFormat.LOG);
+        new BookRepository(testFilePathBooks).setLoaned(1, true);
+
+        assertTrue(BookStores.convert(testFilePathBooks, BookFormat.STREAM));
+
+        assertFalse(LogBookStore.hasLog(path));
+        assertTrue(new BookRepository(testFilePathBooks).findById(1).isLoaned());
+    }
+
+    @Test
+    public void testFailedWrite_ShouldLeaveNoPartialEntries() throws IOException {
+        createTestFile();
+        LogBookStore.createLog(path);
+        LogBookStore store = new LogBookStore(path);
+        store.load(new LinkedHashMap<Integer, Book>());
+        long logBytes = store.getLogBytes();
+        char[] title = new char[20000];
+        Arrays.fill(title, 'x');
+        char[] tooLong = new char[70000];
+        Arrays.fill(tooLong, 'y');
+
+        try {
+            store.write(Arrays.asList(BookChange.add(new Book(6, new String(title), false, false, false)),
+                    BookChange.add(new Book(7, new String(tooLong), false, false, false))),
+                    Collections.<Book>emptyList());
+            fail("Expected the title to be too long");
+        } catch (IOException e) {
+            // The group is not written at all.
+        }
+        assertEquals(logBytes, store.getLogBytes());
+        assertEquals(logBytes, Files.size(LogBookStore.logPathOf(path)));
+
+        store.write(Collections.singletonList(BookChange.add(new Book(5, "Book5", false, false, false))),
+                Collections.<Book>emptyList());
+        Map<Integer, Book> books = new LinkedHashMap<Integer, Book>();
+        new LogBookStore(path).load(books);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), new ArrayList<Integer>(books.keySet()));
+    }
+
+    private void createTestFile() throws IOException {
+        try (DataOutputStream writer = new DataOutputStream(new FileOutputStream(testFilePathBooks))) {
+            StreamBookStore.writeBook(writer, new Book(1, "Book1", false, false, false));
+            StreamBookStore.writeBook(writer, new Book(2, "Book2", true, true, true));
+            StreamBookStore.writeBook(writer, new Book(3, "Book3", true, true, false));
+            StreamBookStore.writeBook(writer, new Book(4, "Book4", false, false, true));
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.hasan.yakup.librarysystem;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * @class OffHeapBenchmark
+ * @brief Compares load time, resident memory and GC pauses of the catalog representations.
+ * @details Run once per mode, each in a fresh JVM: {@code java -Xmx4g -cp
+ * target/classes:target/test-classes com.hasan.yakup.librarysystem.OffHeapBenchmark
+ * <objects|heap|offheap> [books] [seconds]}. Each run generates the books file in a temporary
+ * directory and deletes it with its sidecars at the end. {@code objects} loads the catalog into
+ * a map of Book objects, the other
+ * modes load a BookRepository whose BookTable uses heap or direct buffers. After loading, the
+ * benchmark allocates short-lived garbage while listing loaned books, and reports the
+ * stop-the-world pauses of the whole run.
+ */
+public class OffHeapBenchmark {
+    private static final List<Long> pauses = Collections.synchronizedList(new ArrayList<Long>());
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "offheap";
+        final int count = args.length > 1 ? Integer.parseInt(args[1]) : 10000000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        Path directory = Files.createTempDirectory("benchmark_offheap");
+        Path path = directory.resolve("books.bin");
+        try {
+            generate(path, count);
+            run(mode, path, seconds);
+        } finally {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(IdAllocator.sidecarPathOf(path));
+            Files.deleteIfExists(ProcessLock.lockPathOf(path));
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static void run(String mode, Path path, int seconds) throws IOException {
+        System.setProperty(BookTable.OFF_HEAP_PROPERTY, String.valueOf("offheap".equals(mode)));
+        recordPauses();
+
+        long start = System.nanoTime();
+        Object catalog;
+        int size;
+        if ("objects".equals(mode)) {
+            Map<Integer, Book> books = new LinkedHashMap<Integer, Book>();
+            BookStores.open(path).load(books);
+            catalog = books;
+            size = books.size();
+        } else {
+            BookRepository repository = new BookRepository(path.toString());
+            catalog = repository;
+            size = repository.size();
+        }
+        long loadMillis = (System.nanoTime() - start) / 1000000;
+
+        long sink = 0;
+        long end = System.nanoTime() + seconds * 1000000000L;
+        Object[] survivors = new Object[1 << 16];
+        int next = 0;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 100000; i++) {
+                survivors[next++ & (survivors.length - 1)] = new byte[64];
+            }
+            sink += listLoaned(catalog);
+        }
+
+        List<Long> sorted = new ArrayList<Long>(pauses);
+        Collections.sort(sorted);
+        System.out.printf("%-8s books=%d load=%dms rss=%dMB pauses=%d total=%dms p50=%dms p99=%dms max=%dms"
+                + " (checksum %d)%n", mode, size, loadMillis, residentMegabytes(), sorted.size(), sum(sorted),
+                percentile(sorted, 50), percentile(sorted, 99), percentile(sorted, 100), sink);
+    }
+
+    private static int listLoaned(Object catalog) throws IOException {
+        if (catalog instanceof BookRepository) {
+            return ((BookRepository) catalog).findByFlag(BookFlag.LOANED, true).size();
+        }
+        @SuppressWarnings("unchecked")
+        Map<Integer, Book> books = (Map<Integer, Book>) catalog;
+        List<Book> loaned = new ArrayList<Book>();
+        for (Book book : books.values()) {
+            if (book.isLoaned()) {
+                loaned.add(BookRepository.copyOf(book));
+            }
+        }
+        return loaned.size();
+    }
+
+    private static void generate(Path path, final int count) throws IOException {
+        StreamBookStore.writeAll(new Iterable<Book>() {
+            @Override
+            public Iterator<Book> iterator() {
+                return new Iterator<Book>() {
+                    private int id;
+
+                    @Override
+                    public boolean hasNext() {
+                        return id < count;
+                    }
+
+                    @Override
+                    public Book next() {
+                        id++;
+                        return new Book(id, "The collected works of author number " + id, id % 3 == 0, id % 7 == 0,
+                                id % 1000 == 0);
+                    }
+                };
+            }
+        }, path);
+    }
+
+    private static void recordPauses() {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener(new NotificationListener() {
+                @Override
+                public void handleNotification(Notification notification, Object handback) {
+                    if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION
+                            .equals(notification.getType())) {
+                        return;
+                    }
+                    GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+                            .from((CompositeData) notification.getUserData());
+                    if (!info.getGcName().contains("Concurrent")) {
+                        pauses.add(info.getGcInfo().getDuration());
+                    }
+                }
+            }, null, null);
+        }
+    }
+
+    private static long residentMegabytes() throws IOException {
+        for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+            if (line.startsWith("VmRSS:")) {
+                return Long.parseLong(line.replaceAll("[^0-9]", "")) / 1024;
+            }
+        }
+        return -1;
+    }
+
+    private static long sum(List<Long> values) {
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    private static long percentile(List<Long> sorted, int percent) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        return sorted.get(Math.min(sorted.size() - 1, (sorted.size() * percent + 99) / 100 - 1));
+    }
+}
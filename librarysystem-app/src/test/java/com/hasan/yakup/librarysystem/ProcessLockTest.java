@@ -0,0 +1,215 @@
+package com.hasan.yakup.librarysystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ProcessLockTest {
+    private static final int PROCESSES = 3;
+    private static final int BOOKS_PER_PROCESS = 20;
+    private static final int ROUNDS = 3;
+    private static final int EXIT_BUSY = 3;
+
+    private Path path = Paths.get("test_process_books.bin");
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(IdAllocator.sidecarPathOf(path));
+        Files.deleteIfExists(ProcessLock.lockPathOf(path));
+    }
+
+    @Test
+    public void testConcurrentProcesses_ShouldNotLoseChanges() throws Exception {
+        List<Book> catalog = new ArrayList<Book>();
+        for (int id = 1; id <= PROCESSES * BOOKS_PER_PROCESS; id++) {
+            catalog.add(new Book(id, "Kitap " + id, false, false, false));
+        }
+        StreamBookStore.writeAll(catalog, path);
+
+        List<Process> processes = new ArrayList<Process>();
+        for (int i = 0; i < PROCESSES; i++) {
+            processes.add(start("borrow", path.toString(), Integer.toString(i)));
+        }
+        for (Process process : processes) {
+            assertEquals(0, process.waitFor());
+        }
+
+        Map<Integer, Book> books = new LinkedHashMap<Integer, Book>();
+        new StreamBookStore(path).load(books);
+        assertEquals(catalog.size(), books.size());
+        for (Book book : books.values()) {
+            assertTrue("Book " + book.getId() + " should be loaned", book.isLoaned());
+        }
+        // Every process borrows and returns its books ROUNDS times and borrows them once more.
+        try (ProcessLock.Hold hold = ProcessLock.of(path).shared()) {
+            assertEquals(PROCESSES * BOOKS_PER_PROCESS * (2 * ROUNDS + 1), ProcessLock.of(path).changeCount());
+        }
+    }
+
+    @Test
+    public void testChangeCounter_ShouldRevealChangesOfOtherProcesses() throws Exception {
+        List<Book> catalog = new ArrayList<Book>();
+        catalog.add(new Book(1, "Book1", false, false, false));
+        catalog.add(new Book(2, "Book2", false, false, false));
+        StreamBookStore.writeAll(catalog, path);
+        BookRepository repository = new BookRepository(path.toString());
+        assertTrue(repository.setLoaned(2, true));
+        long before = ProcessLock.of(path).changeCount();
+
+        assertEquals(0, start("borrow-one", path.toString(), "1").waitFor());
+
+        assertEquals(before + 1, ProcessLock.of(path).changeCount());
+        assertTrue(repository.findById(1).isLoaned());
+        assertTrue(repository.setMarked(1, true));
+        Map<Integer, Book> books = new LinkedHashMap<Integer, Book>();
+        new StreamBookStore(path).load(books);
+        assertTrue(books.get(1).isLoaned());
+        assertTrue(books.get(1).isMarked());
+        assertTrue(books.get(2).isLoaned());
+    }
+
+    @Test
+    public void testChangeCounter_ShouldFollowReplacedSidecar() throws IOException {
+        ProcessLock lock = ProcessLock.of(path);
+        try (ProcessLock.Hold hold = lock.exclusive()) {
+            lock.recordChange();
+            lock.recordChange();
+        }
+        Files.delete(ProcessLock.lockPathOf(path));
+        assertEquals(0, lock.changeCount());
+
+        try (ProcessLock.Hold hold = lock.exclusive()) {
+            assertEquals(1, lock.recordChange());
+        }
+        assertEquals(1, lock.changeCount());
+    }
+
+    @Test
+    public void testStaleGroup_ShouldBeRejectedAndRetried() throws Exception {
+        List<Book> catalog = new ArrayList<Book>();
+        catalog.add(new Book(1, "Book1", false, false, false));
+        StreamBookStore.writeAll(catalog, path);
+        System.setProperty(SyncMode.SYNC_PROPERTY, "async");
+        BookRepository repository;
+        try {
+            repository = new BookRepository(path.toString());
+        } finally {
+            System.clearProperty(SyncMode.SYNC_PROPERTY);
+        }
+
+        ProcessLock lock = ProcessLock.of(path);
+        try (ProcessLock.Hold hold = lock.exclusive()) {
+            // The background commit waits for the lock, and meanwhile another writer changes the file.
+            assertTrue(repository.setLoaned(1, true));
+            lock.recordChange();
+        }
+        try {
+            repository.flush();
+            fail("The stale group should have been rejected");
+        } catch (IOException e) {
+            // Expected.
+        }
+
+        Map<Integer, Book> books = new LinkedHashMap<Integer, Book>();
+        new StreamBookStore(path).load(books);
+        assertFalse(books.get(1).isLoaned());
+        assertTrue(repository.setLoaned(1, true));
+        repository.flush();
+        books.clear();
+        new StreamBookStore(path).load(books);
+        assertTrue(books.get(1).isLoaned());
+    }
+
+    @Test
+    public void testLocks_ShouldKeepOtherProcessesOut() throws Exception {
+        ProcessLock lock = ProcessLock.of(path);
+        try (ProcessLock.Hold hold = lock.exclusive()) {
+            assertEquals(EXIT_BUSY, start("probe", path.toString(), "true").waitFor());
+        }
+        try (ProcessLock.Hold hold = lock.shared()) {
+            assertEquals(0, start("probe", path.toString(), "true").waitFor());
+            assertEquals(EXIT_BUSY, start("probe", path.toString(), "false").waitFor());
+        }
+        assertEquals(0, start("probe", path.toString(), "false").waitFor());
+    }
+
+    /**
+     * @brief Entry point of the child processes started by the tests.
+     * @param args The mode followed by its arguments.
+     * @throws Exception If the child fails.
+     */
+    public static void main(String[] args) throws Exception {
+        String books = args[1];
+        if ("borrow".equals(args[0])) {
+            int process = Integer.parseInt(args[2]);
+            LibraryService service = new LibraryService();
+            for (int round = 0; round <= ROUNDS; round++) {
+                for (int id = 1 + process; id <= PROCESSES * BOOKS_PER_PROCESS; id += PROCESSES) {
+                    setLoaned(service, books, id, true);
+                }
+                if (round < ROUNDS) {
+                    for (int id = 1 + process; id <= PROCESSES * BOOKS_PER_PROCESS; id += PROCESSES) {
+                        setLoaned(service, books, id, false);
+                    }
+                }
+            }
+        } else if ("borrow-one".equals(args[0])) {
+            new LibraryService().borrowBook(Integer.parseInt(args[2]), books);
+        } else {
+            boolean shared = Boolean.parseBoolean(args[2]);
+            try (FileChannel channel = FileChannel.open(ProcessLock.lockPathOf(Paths.get(books)),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                FileLock lock = channel.tryLock(0, Long.MAX_VALUE, shared);
+                if (lock == null) {
+                    System.exit(EXIT_BUSY);
+                }
+                lock.release();
+            }
+        }
+        System.exit(0);
+    }
+
+    private static void setLoaned(LibraryService service, String books, int id, boolean loaned) {
+        while (true) {
+            try {
+                OperationResult result = loaned ? service.borrowBook(id, books) : service.returnBook(id, books);
+                if (result.getStatus() != OperationResult.Status.OK) {
+                    throw new IllegalStateException("Book " + id + ": " + result.getStatus());
+                }
+                return;
+            } catch (IOException e) {
+                // Another process changed the file first; the catalog is reloaded on retry.
+            }
+        }
+    }
+
+    private static Process start(String... args) throws IOException {
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ProcessLockTest.class.getName());
+        for (String arg : args) {
+            command.add(arg);
+        }
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+}
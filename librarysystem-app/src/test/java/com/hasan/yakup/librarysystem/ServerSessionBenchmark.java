@@ -0,0 +1,174 @@
+package com.hasan.yakup.librarysystem;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @class ServerSessionBenchmark
+ * @brief Measures LibraryServer with many idle and some active sessions.
+ * @details Run with {@code java -cp target/classes:target/test-classes
+ * com.hasan.yakup.librarysystem.ServerSessionBenchmark [<idle> [<active> [<seconds>]]]}. The
+ * idle sessions connect and stay at the main menu; the memory and platform threads they take
+ * are reported. The active sessions log in and then keep borrowing and returning a book of
+ * their own through the loan management menus, as a librarian would type it; the rate of
+ * these cycles and their latency percentiles are reported. Clients and server share the JVM.
+ */
+public class ServerSessionBenchmark {
+    private static final String MAIN_MENU = "4. Exit Program\nPlease enter a number to select:\n";
+    private static final String USER_MENU = "5. Return to Main Menu\nPlease enter a number to select:\n";
+
+    public static void main(String[] args) throws Exception {
+        int idle = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        final int active = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        Path books = Paths.get("benchmark_server_books.bin");
+        Path users = Paths.get("benchmark_server_users.bin");
+        List<Book> catalog = new ArrayList<Book>(active);
+        for (int id = 1; id <= active; id++) {
+            catalog.add(new Book(id, "Kitap " + id, false, false, false));
+        }
+        StreamBookStore.writeAll(catalog, books);
+        BookStores.convert(books.toString(), BookFormat.SLOTTED);
+        LibraryService service = new LibraryService();
+        User librarian = new User();
+        librarian.setEmail("librarian@example.com");
+        librarian.setPassword("secret");
+        service.registerUser(librarian, users.toString());
+
+        List<Socket> idleSockets = new ArrayList<Socket>(idle);
+        try (LibraryServer server = new LibraryServer(0, users.toString(), books.toString(), service)) {
+            server.start();
+            final int port = server.getPort();
+            System.out.printf("%d idle sessions, %d active sessions, %d available processors%n", idle, active,
+                    Runtime.getRuntime().availableProcessors());
+
+            long heapBefore = usedHeap();
+            int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+            for (int i = 0; i < idle; i++) {
+                Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                idleSockets.add(socket);
+                readUntil(socket.getInputStream(), MAIN_MENU);
+            }
+            long heapAfter = usedHeap();
+            System.out.printf("idle: %d sessions open, %d platform threads before, %d after, %.1f KiB heap per session%n",
+                    server.getSessionCount(), threadsBefore, ManagementFactory.getThreadMXBean().getThreadCount(),
+                    (heapAfter - heapBefore) / 1024.0 / idle);
+
+            final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            final List<long[]> latencies = new ArrayList<long[]>();
+            ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+            for (int c = 0; c < active; c++) {
+                final int bookId = c + 1;
+                final long[] samples = new long[1 << 14];
+                latencies.add(samples);
+                clients.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            cycle(port, bookId, end, samples);
+                        } catch (IOException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                });
+            }
+            clients.shutdown();
+            clients.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+
+            long[] all = new long[0];
+            for (long[] samples : latencies) {
+                int count = (int) samples[0];
+                int offset = all.length;
+                all = Arrays.copyOf(all, offset + count);
+                System.arraycopy(samples, 1, all, offset, count);
+            }
+            Arrays.sort(all);
+            System.out.printf("active: %.0f borrow/return cycles/s, p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                    all.length / (double) seconds, percentile(all, 50) / 1e6, percentile(all, 99) / 1e6,
+                    all[all.length - 1] / 1e6);
+        } finally {
+            for (Socket socket : idleSockets) {
+                socket.close();
+            }
+            Files.deleteIfExists(books);
+            Files.deleteIfExists(SlottedBookStore.heapPathOf(books));
+            Files.deleteIfExists(users);
+            Files.deleteIfExists(IdAllocator.sidecarPathOf(books));
+            Files.deleteIfExists(ProcessLock.lockPathOf(books));
+            Files.deleteIfExists(ProcessLock.lockPathOf(users));
+        }
+    }
+
+    /**
+     * @brief Logs in and borrows and returns one book until the end time.
+     * @param samples Receives the number of cycles at index 0 and their durations after it.
+     */
+    private static void cycle(int port, int bookId, long end, long[] samples) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            byte[] login = "1\nlibrarian@example.com\nsecret\n\n".getBytes(StandardCharsets.UTF_8);
+            byte[] borrowAndReturn = ("2\n2\n" + bookId + "\n\n1\n" + bookId + "\n\n4\n")
+                    .getBytes(StandardCharsets.UTF_8);
+            readUntil(in, MAIN_MENU);
+            out.write(login);
+            readUntil(in, USER_MENU);
+            int count = 0;
+            while (System.nanoTime() < end && count < samples.length - 1) {
+                long start = System.nanoTime();
+                out.write(borrowAndReturn);
+                readUntil(in, USER_MENU);
+                samples[++count] = System.nanoTime() - start;
+            }
+            samples[0] = count;
+            out.write("5\n4\n".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void readUntil(InputStream in, String marker) throws IOException {
+        byte[] tail = marker.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream seen = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (true) {
+            int read = in.read(buffer);
+            if (read == -1) {
+                throw new IOException("Session ended before " + marker.trim() + ": " + seen);
+            }
+            seen.write(buffer, 0, read);
+            byte[] bytes = seen.toByteArray();
+            if (bytes.length >= tail.length
+                    && Arrays.equals(bytes, bytes.length - tail.length, bytes.length, tail, 0, tail.length)) {
+                return;
+            }
+        }
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        return sorted[Math.min(sorted.length - 1, (int) ((long) sorted.length * percent / 100))];
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
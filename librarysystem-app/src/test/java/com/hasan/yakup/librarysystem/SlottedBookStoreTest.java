@@ -0,0 +1,106 @@
+package com.hasan.yakup.librarysystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class SlottedBookStoreTest {
+    private String testFilePathBooks = "test_slotted_books.bin";
+    private Path path = Paths.get(testFilePathBooks);
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(SlottedBookStore.heapPathOf(path));
+        Files.deleteIfExists(ProcessLock.lockPathOf(path));
+    }
+
+    @Test
+    public void testConvert_ShouldKeepBooks() throws IOException {
+        createTestFile();
+
+        assertTrue(BookStores.convert(testFilePathBooks, BookFormat.SLOTTED));
+        assertEquals(BookFormat.SLOTTED, BookStores.detect(path));
+        assertFalse(BookStores.convert(testFilePathBooks, BookFormat.SLOTTED));
+
+        BookRepository repository = new BookRepository(testFilePathBooks);
+        assertEquals(4, repository.size());
+        assertTrue(repository.findById(2).isLoaned());
+        assertEquals("Book3", repository.findById(3).getName());
+
+        assertTrue(BookStores.convert(testFilePathBooks, BookFormat.STREAM));
+        assertEquals(BookFormat.STREAM, BookStores.detect(path));
+        assertEquals(4, new BookRepository(testFilePathBooks).size());
+    }
+
+    @Test
+    public void testFlagChange_ShouldUpdateSlotInPlace() throws IOException {
+        createTestFile();
+        BookStores.convert(testFilePathBooks, BookFormat.SLOTTED);
+        long size = Files.size(path);
+
+        BookRepository repository = new BookRepository(testFilePathBooks);
+        assertTrue(repository.setLoaned(1, true));
+        assertTrue(repository.setMarked(1, true));
+
+        assertEquals(size, Files.size(path));
+        Book book = new BookRepository(testFilePathBooks).findById(1);
+        assertTrue(book.isLoaned());
+        assertTrue(book.isMarked());
+    }
+
+    @Test
+    public void testDelete_ShouldReuseTombstonedSlot() throws IOException {
+        createTestFile();
+        BookStores.convert(testFilePathBooks, BookFormat.SLOTTED);
+        long size = Files.size(path);
+
+        BookRepository repository = new BookRepository(testFilePathBooks);
+        assertTrue(repository.delete(2));
+        assertEquals(size, Files.size(path));
+
+        repository.add(new Book(5, "Book5", false, false, false));
+        assertEquals(size, Files.size(path));
+
+        BookRepository reloaded = new BookRepository(testFilePathBooks);
+        assertNull(reloaded.findById(2));
+        assertEquals("Book5", reloaded.findById(5).getName());
+        assertEquals(4, reloaded.size());
+    }
+
+    @Test
+    public void testLongTitle_ShouldBeStoredInHeap() throws IOException {
+        createTestFile();
+        BookStores.convert(testFilePathBooks, BookFormat.SLOTTED);
+
+        StringBuilder title = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            title.append("Kitap ");
+        }
+        BookRepository repository = new BookRepository(testFilePathBooks);
+        assertTrue(repository.rename(4, title.toString()));
+
+        assertTrue(Files.exists(SlottedBookStore.heapPathOf(path)));
+        assertEquals(title.toString(), new BookRepository(testFilePathBooks).findById(4).getName());
+    }
+
+    private void createTestFile() throws IOException {
+        try (DataOutputStream writer = new DataOutputStream(new FileOutputStream(testFilePathBooks))) {
+            StreamBookStore.writeBook(writer, new Book(1, "Book1", false, false, false));
+            StreamBookStore.writeBook(writer, new Book(2, "Book2", true, true, true));
+            StreamBookStore.writeBook(writer, new Book(3, "Book3", true, true, false));
+            StreamBookStore.writeBook(writer, new Book(4, "Book4", false, false, true));
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.hasan.yakup.librarysystem;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class StreamRecordReaderTest {
+    private static final String[] TITLES = { "Book1", "Çalıkuşu", "Nul\u0000Title", "€ uro", "" };
+
+    private Path path = Paths.get("test_reader_books.bin");
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(ProcessLock.lockPathOf(path));
+    }
+
+    @Test
+    public void testMappedReader_ShouldDecodeAllRecords() throws IOException {
+        createTestFile();
+
+        try (StreamRecordReader reader = StreamRecordReader.open(path)) {
+            assertTrue(reader instanceof StreamRecordReader.Mapped);
+            assertRecords(reader);
+        }
+    }
+
+    @Test
+    public void testBufferedReader_ShouldDecodeAllRecords() throws IOException {
+        createTestFile();
+
+        try (StreamRecordReader reader = StreamRecordReader.open(path, 0)) {
+            assertTrue(reader instanceof StreamRecordReader.Buffered);
+            assertRecords(reader);
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void testMappedReader_TruncatedRecordShouldFail() throws IOException {
+        createTestFile();
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(file.length() - 2);
+        }
+
+        try (StreamRecordReader reader = StreamRecordReader.open(path)) {
+            while (reader.next() != null) {
+                continue;
+            }
+        }
+    }
+
+    @Test
+    public void testAdvanceWhole_ShouldStopBeforeTornRecord() throws IOException {
+        createTestFile();
+        long complete;
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            complete = file.length();
+            file.setLength(complete - 2);
+        }
+        long lastComplete = complete - (4 + 2 + 3);
+
+        for (long mappingLimit : new long[] { StreamRecordReader.MAPPING_LIMIT, 0 }) {
+            try (StreamRecordReader reader = StreamRecordReader.open(path, mappingLimit)) {
+                int records = 0;
+                while (reader.advanceWhole()) {
+                    records++;
+                }
+                assertEquals(TITLES.length - 1, records);
+                assertTrue(reader.isTorn());
+                assertEquals(lastComplete, reader.validLength());
+            }
+        }
+    }
+
+    @Test
+    public void testRawTitle_ShouldStayReadableAfterClose() throws IOException {
+        createTestFile();
+        ByteBuffer title;
+
+        try (StreamRecordReader reader = StreamRecordReader.open(path)) {
+            assertTrue(reader.advance());
+            assertTrue(reader.advance());
+            title = reader.rawTitle().slice();
+        }
+        System.gc();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new DataOutputStream(expected).writeUTF(TITLES[1]);
+        byte[] bytes = new byte[title.remaining()];
+        title.get(bytes);
+        assertArrayEquals(Arrays.copyOfRange(expected.toByteArray(), 2, expected.size()), bytes);
+    }
+
+    @Test(expected = IOException.class)
+    public void testMappedReader_ShouldRefuseToReadAfterClose() throws IOException {
+        createTestFile();
+        StreamRecordReader reader = StreamRecordReader.open(path);
+        assertTrue(reader.advance());
+        reader.close();
+
+        reader.advance();
+    }
+
+    @Test
+    public void testNextWithFlag_ShouldReturnOnlyMatchingRecords() throws IOException {
+        createTestFile();
+
+        for (long mappingLimit : new long[] { StreamRecordReader.MAPPING_LIMIT, 0 }) {
+            try (StreamRecordReader reader = StreamRecordReader.open(path, mappingLimit)) {
+                assertEquals("Book1", reader.next(BookFlag.WISHLIST, true).getName());
+                assertEquals("€ uro", reader.next(BookFlag.WISHLIST, true).getName());
+                assertNull(reader.next(BookFlag.WISHLIST, true));
+            }
+        }
+    }
+
+    @Test
+    public void testLoadIntoTable_ShouldCopyRawTitles() throws IOException {
+        createTestFile();
+        BookTable table = new BookTable();
+
+        new StreamBookStore(path).load(table.asMap());
+
+        assertEquals(TITLES.length, table.size());
+        for (int i = 0; i < TITLES.length; i++) {
+            Book book = table.get(i + 1);
+            assertEquals(TITLES[i], book.getName());
+            assertEquals(i % 3 == 0, book.isWishlist());
+        }
+    }
+
+    private void assertRecords(StreamRecordReader reader) throws IOException {
+        for (int i = 0; i < TITLES.length; i++) {
+            Book book = reader.next();
+            assertEquals(i + 1, book.getId());
+            assertEquals(TITLES[i], book.getName());
+            assertEquals(i % 2 == 0, book.isMarked());
+            assertEquals(i % 3 == 0, book.isWishlist());
+            assertEquals(i == 4, book.isLoaned());
+        }
+        assertNull(reader.next());
+    }
+
+    private void createTestFile() throws IOException {
+        try (DataOutputStream writer = new DataOutputStream(new FileOutputStream(path.toFile()))) {
+            for (int i = 0; i < TITLES.length; i++) {
+                StreamBookStore.writeBook(writer, new Book(i + 1, TITLES[i], i % 2 == 0, i % 3 == 0, i == 4));
+            }
+        }
+    }
+}
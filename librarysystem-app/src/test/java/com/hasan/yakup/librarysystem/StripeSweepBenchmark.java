@@ -0,0 +1,102 @@
+package com.hasan.yakup.librarysystem;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @class StripeSweepBenchmark
+ * @brief Measures single-book service operations for several stripe and thread counts.
+ * @details Run with {@code java -cp target/classes:target/test-classes
+ * com.hasan.yakup.librarysystem.StripeSweepBenchmark [<operations> [<books>]]}. Every thread
+ * borrows, returns or renames random books of a slotted file through one LibraryService. A
+ * flag change holds its book's stripe only while it changes the table and reads the book
+ * back, never while its group is committed, so the stripe count should barely matter; a
+ * falling rate with fewer stripes would mean the stripes serialize the commits again.
+ * Stripe counts come from {@value StripedLocks#STRIPES_PROPERTY}.
+ */
+public class StripeSweepBenchmark {
+    private static final int[] STRIPES = { 1, 4, 16, 64 };
+    private static final int[] THREADS = { 1, 4, 16 };
+
+    public static void main(String[] args) throws Exception {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        Path path = Paths.get("benchmark_stripe_books.bin");
+        List<Book> catalog = new ArrayList<Book>(count);
+        for (int id = 1; id <= count; id++) {
+            catalog.add(new Book(id, "Kitap " + id, false, false, false));
+        }
+
+        System.out.printf("%d operations on %d books, sync mode %s, %d available processors%n", operations, count,
+                SyncMode.configured(), Runtime.getRuntime().availableProcessors());
+        System.out.printf("%8s", "stripes");
+        for (int threads : THREADS) {
+            System.out.printf("%16s", threads + " threads");
+        }
+        System.out.println();
+        try {
+            for (int stripes : STRIPES) {
+                System.out.printf("%8d", stripes);
+                for (int threads : THREADS) {
+                    StreamBookStore.writeAll(catalog, path);
+                    BookStores.convert(path.toString(), BookFormat.SLOTTED);
+                    System.setProperty(StripedLocks.STRIPES_PROPERTY, Integer.toString(stripes));
+                    LibraryService service = new LibraryService();
+                    service.listBooks(path.toString(), BookFlag.LOANED, true);
+                    long nanos = run(service, path.toString(), threads, operations, count);
+                    System.out.printf("%10.0f ops/s", operations * 1e9 / nanos);
+                }
+                System.out.println();
+            }
+        } finally {
+            System.clearProperty(StripedLocks.STRIPES_PROPERTY);
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(IdAllocator.sidecarPathOf(path));
+            Files.deleteIfExists(ProcessLock.lockPathOf(path));
+        }
+    }
+
+    private static long run(final LibraryService service, final String path, int threads, int operations,
+            final int count) throws Exception {
+        final int perThread = operations / threads;
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final Random random = new Random(t);
+            workers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < perThread; i++) {
+                            int id = 1 + random.nextInt(count);
+                            switch (random.nextInt(3)) {
+                                case 0:
+                                    service.borrowBook(id, path);
+                                    break;
+                                case 1:
+                                    service.returnBook(id, path);
+                                    break;
+                                default:
+                                    service.renameBook(id, "Kitap " + id + " " + i, path);
+                                    break;
+                            }
+                        }
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return System.nanoTime() - start;
+    }
+}